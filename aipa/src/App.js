@@ -431,11 +431,8 @@ function App() {
 
   const handleAddEventFromText = async (newEvents) => {
     try {
-      const addedEvents = [];
-      for (const event of newEvents) {
-        const response = await axios.post('/api/calendar/add-event', event);
-        addedEvents.push(response.data);
-      }
+      const response = await axios.post('/api/calendar/add-events', newEvents);
+      const addedEvents = response.data.events;
       setEvents(prev => [...prev, ...addedEvents]);
       toast.success(`${addedEvents.length} event(s) added from text!`);
       
@@ -42,6 +42,7 @@ const Calendar = React.forwardRef(({ events, backendOnline, darkMode = false },
   const [showUndoButton, setShowUndoButton] = useState(false);
   const [isProcessing, setIsProcessing] = useState(false);
   const [deletingEventIds, setDeletingEventIds] = useState(new Set()); // Track events being deleted
+  const [visibleRange, setVisibleRange] = useState(null); // Date range currently shown by FullCalendar
   const modalRef = useRef(null);
   
   // Format events for FullCalendar
@@ -99,7 +100,10 @@ const Calendar = React.forwardRef(({ events, backendOnline, darkMode = false },
       setIsLoading(true);
       setHasError(false);
       
-      const response = await axios.get('/api/calendar/events');
+      // Only load the range the calendar is showing instead of the whole history
+      const response = await axios.get('/api/calendar/events', {
+        params: visibleRange ? { from: visibleRange.from, to: visibleRange.to } : undefined
+      });
       
       if (!response || !response.data) {
         setInternalEvents([]);
@@ -110,6 +114,14 @@ const Calendar = React.forwardRef(({ events, backendOnline, darkMode = false },
       
       const formattedEvents = formatEvents(response.data);
       setInternalEvents(formattedEvents);
+      
+      // The backend caps a range at app.calendar.max-range-results
+      if (response.headers?.['x-results-truncated'] === 'true' && !silent) {
+        toast.warn('Too many events to show at once, zoom in to see all of them', {
+          toastId: 'calendar-range-truncated',
+          autoClose: 5000
+        });
+      }
       setLastUpdated(new Date());
     } catch (error) {
       console.error('Error fetching events:', error);
@@ -125,7 +137,7 @@ const Calendar = React.forwardRef(({ events, backendOnline, darkMode = false },
     } finally {
       setIsLoading(false);
     }
-  }, [backendOnline, formatEvents]);
+  }, [backendOnline, formatEvents, visibleRange]);
   
   // Function was moved above before useEffect
 
@@ -628,6 +640,11 @@ const Calendar = React.forwardRef(({ events, backendOnline, darkMode = false },
           }}
           height="auto"
           events={internalEvents}
+          datesSet={(info) => {
+            const from = info.startStr.split('T')[0];
+            const to = info.endStr.split('T')[0];
+            setVisibleRange(prev => (prev && prev.from === from && prev.to === to) ? prev : { from, to });
+          }}
           eventClick={handleEventClick}
           dateClick={handleDateClick}
           nowIndicator={true}
@@ -102,13 +102,11 @@ export const Plan = ({ planData, onUpdatePlan, darkMode = false }) => {
   
   const handleAgree = async () => {
     try {
-      let addedCount = 0;
-      
       // Log the current plan title for debugging
       console.log('Adding events with plan title:', planTitle);
       
-      // Add each step as a calendar event
-      for (const step of steps) {
+      // Build every step as a calendar event and send them in one batch
+      const eventsData = steps.map(step => {
         // Extract day number from the day string (e.g. "3 days from today")
         const dayOffset = extractDayNumber(step.day);
         
@@ -117,8 +115,7 @@ export const Plan = ({ planData, onUpdatePlan, darkMode = false }) => {
         date.setDate(date.getDate() + dayOffset);
         const formattedDate = date.toISOString().split('T')[0];
         
-        // Create the event object
-        const eventData = {
+        return {
           title: step.title,
           start: formattedDate,
           isAllDay: true,
@@ -127,14 +124,13 @@ export const Plan = ({ planData, onUpdatePlan, darkMode = false }) => {
           planTitle: planTitle, // Store the plan title with the event
           isPlanEvent: true  // Mark as a plan event for identification later
         };
-        
-        console.log('Sending event to backend:', eventData);
-        
-        // Send to backend
-        const response = await axios.post('/api/calendar/add-event', eventData);
-        console.log('Backend response:', response.data);
-        addedCount++;
-      }
+      });
+      
+      console.log('Sending events to backend:', eventsData);
+      
+      const response = await axios.post('/api/calendar/add-events', eventsData);
+      console.log('Backend response:', response.data);
+      const addedCount = response.data.events.length;
       
       toast.success(`Added ${addedCount} events to your calendar!`);
       
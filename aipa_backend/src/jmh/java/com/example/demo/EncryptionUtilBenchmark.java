@@ -0,0 +1,47 @@
+package com.example.demo;
+
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encrypting and decrypting one memory. Every memory read decrypts each row it returns, so
+ * {@code decrypt} is paid once per stored memory on each chat message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EncryptionUtilBenchmark {
+
+    private EncryptionUtil encryptionUtil;
+    private String[] memories;
+    private String[] encrypted;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        encryptionUtil = new EncryptionUtil("benchmark-encryption-key");
+        memories = PromptCorpus.memories();
+        encrypted = new String[memories.length];
+        for (int i = 0; i < memories.length; i++) {
+            encrypted[i] = encryptionUtil.encrypt(memories[i]);
+        }
+    }
+
+    private int nextIndex() {
+        next = next + 1 < memories.length ? next + 1 : 0;
+        return next;
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return encryptionUtil.encrypt(memories[nextIndex()]);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return encryptionUtil.decrypt(encrypted[nextIndex()]);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo;
+
+import org.openjdk.jmh.annotations.*;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MemoryService#getRelevantMemories} for a user with 10, 1k and 10k memories, matched
+ * against the {@link PromptCorpus} prompts in turn. The repository is an in-memory stand-in
+ * returning the user's rows, so this is the decrypt-and-match cost on top of the query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MemoryServiceBenchmark {
+
+    private static final String[] CATEGORIES = {"Personal", "Preferences", "Goals", "Family", "Work"};
+
+    @Param({"10", "1000", "10000"})
+    public int memories;
+
+    private final UUID userId = UUID.randomUUID();
+    private MemoryService memoryService;
+    private String[] contexts;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        EncryptionUtil encryptionUtil = new EncryptionUtil("benchmark-encryption-key");
+        String[] corpus = PromptCorpus.memories();
+        List<Memory> rows = new ArrayList<>(memories);
+        for (int i = 0; i < memories; i++) {
+            Memory memory = new Memory();
+            memory.setId(UUID.randomUUID());
+            memory.setCategory(CATEGORIES[i % CATEGORIES.length]);
+            memory.setEncryptedContent(encryptionUtil.encrypt(corpus[i % corpus.length] + " (" + i + ")"));
+            memory.setActive(true);
+            rows.add(memory);
+        }
+        memoryService = new MemoryService(repository(rows), encryptionUtil, null, null);
+        contexts = PromptCorpus.all();
+    }
+
+    @Benchmark
+    public List<String> getRelevantMemories() {
+        next = next + 1 < contexts.length ? next + 1 : 0;
+        return memoryService.getRelevantMemories(userId, contexts[next]);
+    }
+
+    /** Answers the three queries getRelevantMemories makes from {@code rows}. */
+    private static MemoryRepository repository(List<Memory> rows) {
+        List<String> categories = new ArrayList<>(new LinkedHashSet<>(rows.stream().map(Memory::getCategory).toList()));
+        Map<String, List<Memory>> byCategory = new HashMap<>();
+        for (Memory row : rows) {
+            byCategory.computeIfAbsent(row.getCategory(), category -> new ArrayList<>()).add(row);
+        }
+        return (MemoryRepository) Proxy.newProxyInstance(MemoryRepository.class.getClassLoader(),
+            new Class<?>[] {MemoryRepository.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "findByUserIdAndIsActiveTrue":
+                        return rows;
+                    case "findDistinctCategoriesByUserId":
+                        return categories;
+                    case "findByUserIdAndCategoryAndIsActiveTrue":
+                        return byCategory.getOrDefault((String) args[1], List.of());
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return "MemoryRepository(" + rows.size() + " rows)";
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+}
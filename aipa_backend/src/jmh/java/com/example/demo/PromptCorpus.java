@@ -0,0 +1,56 @@
+package com.example.demo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmark inputs from {@link TestPromptDatabase}, so the benchmarks see the same mix of
+ * event, memory and edge-case prompts the testing suite uses.
+ */
+final class PromptCorpus {
+
+    private PromptCorpus() {
+    }
+
+    /** Every event, memory and edge-case prompt. */
+    static String[] all() {
+        List<String> prompts = new ArrayList<>(TestPromptDatabase.getAllEventPrompts());
+        prompts.addAll(TestPromptDatabase.getAllMemoryPrompts());
+        prompts.addAll(Arrays.asList(TestPromptDatabase.EDGE_CASE_PROMPTS));
+        return prompts.toArray(new String[0]);
+    }
+
+    static String[] events() {
+        return TestPromptDatabase.getAllEventPrompts().toArray(new String[0]);
+    }
+
+    static String[] memories() {
+        return TestPromptDatabase.getAllMemoryPrompts().toArray(new String[0]);
+    }
+
+    /**
+     * A model reply for each event prompt in the format the chat prompt asks for. Every
+     * third one wrongly says {@code Calendar: None} and every fourth repeats its calendar
+     * line, so the validator's fix and de-duplication paths are exercised too.
+     */
+    static String[] calendarReplies(String[] events) {
+        String[] replies = new String[events.length];
+        for (int i = 0; i < events.length; i++) {
+            String calendar = i % 3 == 0
+                ? "Calendar: None.!..!"
+                : "Calendar: " + (i % 14 + 1) + " days from today " + title(events[i]) + ".!..!";
+            if (i % 4 == 0) {
+                calendar = calendar + "\n" + calendar;
+            }
+            replies[i] = ")*!\nNoted, here is what I understood from your message.\n)*!\n"
+                + "Sounds good, I will keep that in mind.\n" + calendar + "\n)*!\nNothing else to add.\n)*!";
+        }
+        return replies;
+    }
+
+    private static String title(String prompt) {
+        String[] words = prompt.split("\\s+");
+        return String.join(" ", Arrays.copyOfRange(words, Math.max(0, words.length - 3), words.length));
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.demo;
+
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The keyword and regex rule engines every chat message goes through before Gemini is
+ * called. Each invocation takes the next prompt of the {@link PromptCorpus}, so a score is
+ * the mean over the whole corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleEngineBenchmark {
+
+    private MemoryFilterService memoryFilterService;
+    private InputRoutingService inputRoutingService;
+    private CalendarEventEnhancementService calendarEventEnhancementService;
+    private CalendarResponseValidationService calendarResponseValidationService;
+    private PlanAnalysisService planAnalysisService;
+
+    private String[] prompts;
+    private String[] events;
+    private String[] replies;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        memoryFilterService = new MemoryFilterService();
+        inputRoutingService = new InputRoutingService(memoryFilterService);
+        calendarEventEnhancementService = new CalendarEventEnhancementService(memoryFilterService);
+        calendarResponseValidationService = new CalendarResponseValidationService();
+        planAnalysisService = new PlanAnalysisService();
+        prompts = PromptCorpus.all();
+        events = PromptCorpus.events();
+        replies = PromptCorpus.calendarReplies(events);
+    }
+
+    private String nextPrompt() {
+        next = next + 1 < prompts.length ? next + 1 : 0;
+        return prompts[next];
+    }
+
+    @Benchmark
+    public MemoryFilterService.MemoryWorthinessResult analyzeMemoryWorthiness() {
+        return memoryFilterService.analyzeMemoryWorthiness(nextPrompt());
+    }
+
+    @Benchmark
+    public InputRoutingService.RoutingDecision routeInput() {
+        return inputRoutingService.routeInput(nextPrompt());
+    }
+
+    @Benchmark
+    public CalendarEventEnhancementService.CalendarEventAnalysis analyzeForCalendarEvents() {
+        return calendarEventEnhancementService.analyzeForCalendarEvents(nextPrompt());
+    }
+
+    @Benchmark
+    public PlanAnalysisService.PlanAnalysisResult analyzeForPlan() {
+        return planAnalysisService.analyzeForPlan(nextPrompt());
+    }
+
+    @Benchmark
+    public String validateAndFixCalendarResponse() {
+        next = next + 1 < events.length ? next + 1 : 0;
+        return calendarResponseValidationService.validateAndFixCalendarResponse(replies[next], events[next]);
+    }
+}
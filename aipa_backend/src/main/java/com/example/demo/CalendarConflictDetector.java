@@ -0,0 +1,362 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Answers "which of the user's events overlap this one" on the server instead of asking
+ * the LLM to spot conflicts in the prompt. Every user's events are kept as time intervals
+ * in a map sorted by start minute, loaded once and then kept current by write-through
+ * calls like {@link UpcomingEventsCache}. An overlap query only scans starts between
+ * {@code start - longest interval} and {@code end}, i.e. O(log n + k).
+ *
+ * Events without a start time are all-day and cover their whole date (or
+ * {@code durationMinutes} rounded up to whole days); timed events default to one hour.
+ * Two all-day events on the same date are not reported unless
+ * {@code app.calendar.conflicts.include-all-day-pairs} is set, since extraction creates
+ * most events as all-day and such pairs are rarely real clashes.
+ *
+ * Indexes are evicted like {@link UpcomingEventsCache} entries: after
+ * {@code app.calendar.conflicts.idle-minutes} without use, and least recently used first
+ * beyond {@code app.calendar.conflicts.max-users}.
+ */
+@Component
+public class CalendarConflictDetector {
+
+    private static final int DEFAULT_DURATION_MINUTES = 60;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final CalendarEventRepository calendarEventRepository;
+    private final Map<UUID, IntervalIndex> indexes = new ConcurrentHashMap<>();
+    // Bumped by every write-through, striped by user, so a load can tell it raced a write
+    private final AtomicLongArray writeStamps = new AtomicLongArray(64);
+
+    @Value("${app.calendar.conflicts.include-all-day-pairs:false}")
+    private boolean includeAllDayPairs;
+
+    @Value("${app.calendar.conflicts.max-users:10000}")
+    private int maxUsers;
+
+    @Value("${app.calendar.conflicts.idle-minutes:30}")
+    private long idleMinutes;
+
+    public CalendarConflictDetector(CalendarEventRepository calendarEventRepository) {
+        this.calendarEventRepository = calendarEventRepository;
+    }
+
+    /**
+     * Stored events overlapping {@code event}, ignoring the event itself when it already has an id.
+     */
+    public List<Conflict> findConflicts(UUID userId, CalendarEvent event) {
+        Interval candidate = Interval.of(event);
+        if (candidate == null) {
+            return new ArrayList<>();
+        }
+        IntervalIndex index = index(userId);
+        synchronized (index) {
+            return index.overlapping(candidate, includeAllDayPairs);
+        }
+    }
+
+    /**
+     * Conflicts for a batch of new events, including overlaps between events of the same
+     * batch. Keyed by identity because unsaved events have no id and compare equal.
+     * Must be called before the batch is persisted so a first load cannot pick it up.
+     */
+    public Map<CalendarEvent, List<Conflict>> findConflicts(UUID userId, List<CalendarEvent> events) {
+        Map<CalendarEvent, List<Conflict>> result = new IdentityHashMap<>();
+        if (events.isEmpty()) {
+            return result;
+        }
+
+        IntervalIndex index = index(userId);
+        IntervalIndex batch = new IntervalIndex();
+        for (CalendarEvent event : events) {
+            Interval candidate = Interval.of(event);
+            if (candidate == null) {
+                continue;
+            }
+            List<Conflict> conflicts;
+            synchronized (index) {
+                conflicts = index.overlapping(candidate, includeAllDayPairs);
+            }
+            conflicts.addAll(batch.overlapping(candidate, includeAllDayPairs));
+            batch.add(candidate);
+            if (!conflicts.isEmpty()) {
+                result.put(event, conflicts);
+            }
+        }
+        return result;
+    }
+
+    public void onEventSaved(UUID userId, CalendarEvent event) {
+        Interval snapshot = Interval.of(event);
+        UUID eventId = event.getId();
+        UpcomingEventsCache.afterCommit(() -> {
+            bumpWriteStamp(userId);
+            indexes.computeIfPresent(userId, (id, index) -> {
+                synchronized (index) {
+                    if (snapshot != null) {
+                        index.add(snapshot);
+                    } else {
+                        index.remove(eventId);
+                    }
+                }
+                return index;
+            });
+        });
+    }
+
+    public void onEventDeleted(UUID userId, UUID eventId) {
+        UpcomingEventsCache.afterCommit(() -> {
+            bumpWriteStamp(userId);
+            indexes.computeIfPresent(userId, (id, index) -> {
+                synchronized (index) {
+                    index.remove(eventId);
+                }
+                return index;
+            });
+        });
+    }
+
+    public void invalidate(UUID userId) {
+        UpcomingEventsCache.afterCommit(() -> {
+            bumpWriteStamp(userId);
+            indexes.remove(userId);
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.calendar.cache-sweep-interval-ms:60000}")
+    public void evictIdle() {
+        long idleBefore = System.currentTimeMillis() - idleMinutes * 60_000;
+        indexes.values().removeIf(index -> index.lastAccess <= idleBefore);
+    }
+
+    public int size() { return indexes.size(); }
+
+    /**
+     * The user's index, loaded on a miss outside the map so the query does not hold a bin
+     * lock. An index loaded while a write-through committed serves this call only.
+     */
+    private IntervalIndex index(UUID userId) {
+        long now = System.currentTimeMillis();
+        IntervalIndex index = indexes.get(userId);
+        if (index == null) {
+            int stripe = stripe(userId);
+            long stamp = writeStamps.get(stripe);
+            IntervalIndex loaded = load(userId);
+            makeRoom();
+            index = indexes.putIfAbsent(userId, loaded);
+            if (index == null) {
+                index = loaded;
+                if (writeStamps.get(stripe) != stamp) {
+                    indexes.remove(userId, loaded);
+                }
+            }
+        }
+        index.lastAccess = now;
+        return index;
+    }
+
+    private void makeRoom() {
+        if (indexes.size() < maxUsers) {
+            return;
+        }
+        evictIdle();
+        while (indexes.size() >= maxUsers) {
+            UUID eldest = null;
+            long eldestAccess = Long.MAX_VALUE;
+            for (Map.Entry<UUID, IntervalIndex> entry : indexes.entrySet()) {
+                if (entry.getValue().lastAccess < eldestAccess) {
+                    eldest = entry.getKey();
+                    eldestAccess = entry.getValue().lastAccess;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            indexes.remove(eldest);
+        }
+    }
+
+    private int stripe(UUID userId) {
+        return userId.hashCode() & (writeStamps.length() - 1);
+    }
+
+    private void bumpWriteStamp(UUID userId) {
+        writeStamps.incrementAndGet(stripe(userId));
+    }
+
+    private IntervalIndex load(UUID userId) {
+        IntervalIndex index = new IntervalIndex();
+        for (CalendarEvent event : calendarEventRepository.findAllForUser(userId)) {
+            Interval interval = Interval.of(event);
+            if (interval != null) {
+                index.add(interval);
+            }
+        }
+        return index;
+    }
+
+    private static class IntervalIndex {
+        final NavigableMap<Long, List<Interval>> byStart = new TreeMap<>();
+        final Map<UUID, Interval> byId = new HashMap<>();
+        // Count of stored intervals per length, so the longest is known again after it is deleted
+        final NavigableMap<Long, Integer> lengths = new TreeMap<>();
+        volatile long lastAccess;
+
+        void add(Interval interval) {
+            if (interval.id != null) {
+                remove(interval.id);
+                byId.put(interval.id, interval);
+            }
+            byStart.computeIfAbsent(interval.startMinute, k -> new ArrayList<>(1)).add(interval);
+            lengths.merge(interval.length(), 1, Integer::sum);
+        }
+
+        void remove(UUID eventId) {
+            Interval existing = eventId != null ? byId.remove(eventId) : null;
+            if (existing == null) {
+                return;
+            }
+            List<Interval> bucket = byStart.get(existing.startMinute);
+            bucket.remove(existing);
+            if (bucket.isEmpty()) {
+                byStart.remove(existing.startMinute);
+            }
+            lengths.computeIfPresent(existing.length(), (length, count) -> count > 1 ? count - 1 : null);
+        }
+
+        List<Conflict> overlapping(Interval candidate, boolean includeAllDayPairs) {
+            List<Conflict> conflicts = new ArrayList<>();
+            long maxLength = lengths.isEmpty() ? 0 : lengths.lastKey();
+            // Anything starting at or before start - maxLength has already ended
+            for (List<Interval> bucket : byStart.subMap(candidate.startMinute - maxLength, false,
+                                                        candidate.endMinute, false).values()) {
+                for (Interval other : bucket) {
+                    if (other.endMinute > candidate.startMinute
+                            && (includeAllDayPairs || !(candidate.allDay && other.allDay))
+                            && (candidate.id == null || !candidate.id.equals(other.id))) {
+                        conflicts.add(new Conflict(other, candidate));
+                    }
+                }
+            }
+            return conflicts;
+        }
+    }
+
+    private static class Interval {
+        final UUID id;
+        final String title;
+        final LocalDate date;
+        final LocalTime startTime;
+        final boolean allDay;
+        final long startMinute;
+        final long endMinute;
+
+        private Interval(CalendarEvent event, long startMinute, long endMinute) {
+            this.id = event.getId();
+            this.title = event.getTitle();
+            this.date = event.getStart();
+            this.startTime = event.getStartTime();
+            this.allDay = event.getStartTime() == null;
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+        }
+
+        static Interval of(CalendarEvent event) {
+            if (event.getStart() == null) {
+                return null;
+            }
+            Integer duration = event.getDurationMinutes();
+            if (event.getStartTime() == null) {
+                long start = epochMinute(event.getStart().atStartOfDay());
+                long days = duration != null && duration > 0
+                    ? (duration + MINUTES_PER_DAY - 1) / MINUTES_PER_DAY
+                    : 1;
+                return new Interval(event, start, start + days * MINUTES_PER_DAY);
+            }
+            long start = epochMinute(event.getStart().atTime(event.getStartTime()));
+            return new Interval(event, start,
+                start + (duration != null && duration > 0 ? duration : DEFAULT_DURATION_MINUTES));
+        }
+
+        long length() {
+            return endMinute - startMinute;
+        }
+
+        private static long epochMinute(LocalDateTime dateTime) {
+            return dateTime.toEpochSecond(ZoneOffset.UTC) / 60;
+        }
+    }
+
+    public static class Conflict {
+        private final UUID eventId;
+        private final String title;
+        private final LocalDate start;
+        private final LocalTime startTime;
+        private final boolean allDay;
+        private final long overlapMinutes;
+
+        private Conflict(Interval existing, Interval candidate) {
+            this.eventId = existing.id;
+            this.title = existing.title;
+            this.start = existing.date;
+            this.startTime = existing.startTime;
+            this.allDay = existing.allDay;
+            this.overlapMinutes = Math.min(existing.endMinute, candidate.endMinute)
+                - Math.max(existing.startMinute, candidate.startMinute);
+        }
+
+        public UUID getEventId() { return eventId; }
+        public String getTitle() { return title; }
+        public LocalDate getStart() { return start; }
+        public LocalTime getStartTime() { return startTime; }
+        public boolean isAllDay() { return allDay; }
+        public long getOverlapMinutes() { return overlapMinutes; }
+
+        @Override
+        public String toString() {
+            return String.format("Conflict{title='%s', start=%s%s, overlapMinutes=%d}",
+                title, start, startTime != null ? " " + startTime : "", overlapMinutes);
+        }
+    }
+
+    /**
+     * A newly saved event together with the existing events it overlaps.
+     */
+    public static class ConflictReport {
+        private final UUID eventId;
+        private final String title;
+        private final LocalDate start;
+        private final LocalTime startTime;
+        private final List<Conflict> conflicts;
+
+        public ConflictReport(CalendarEvent event, List<Conflict> conflicts) {
+            this.eventId = event.getId();
+            this.title = event.getTitle();
+            this.start = event.getStart();
+            this.startTime = event.getStartTime();
+            this.conflicts = conflicts;
+        }
+
+        public UUID getEventId() { return eventId; }
+        public String getTitle() { return title; }
+        public LocalDate getStart() { return start; }
+        public LocalTime getStartTime() { return startTime; }
+        public List<Conflict> getConflicts() { return conflicts; }
+
+        @Override
+        public String toString() {
+            return String.format("ConflictReport{title='%s', start=%s, conflicts=%s}", title, start, conflicts);
+        }
+    }
+}
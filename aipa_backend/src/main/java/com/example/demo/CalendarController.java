@@ -1,12 +1,21 @@
 package com.example.demo;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
@@ -20,26 +29,38 @@ public class CalendarController {
 
     private static final Logger logger = Logger.getLogger(CalendarController.class.getName());
 
+    /** Set on range responses; {@code true} when more events matched than were returned. */
+    static final String RESULTS_TRUNCATED_HEADER = "X-Results-Truncated";
+
     @PersistenceContext
     private EntityManager entityManager;
 
-    private final JwtUtil jwtUtil;
-    private final UserRepository userRepository;
+    private final CalendarEventRepository calendarEventRepository;
+    private final CalendarEventBatchService calendarEventBatchService;
+    private final CalendarImportExportService calendarImportExportService;
+    private final UpcomingEventsCache upcomingEventsCache;
+    private final CalendarConflictDetector conflictDetector;
+
+    @Value("${app.calendar.max-range-results:1000}")
+    private int maxRangeResults;
 
-    public CalendarController(JwtUtil jwtUtil, UserRepository userRepository) {
-        this.jwtUtil = jwtUtil;
-        this.userRepository = userRepository;
+    public CalendarController(CalendarEventRepository calendarEventRepository,
+                              CalendarEventBatchService calendarEventBatchService,
+                              CalendarImportExportService calendarImportExportService,
+                              UpcomingEventsCache upcomingEventsCache,
+                              CalendarConflictDetector conflictDetector) {
+        this.calendarEventRepository = calendarEventRepository;
+        this.calendarEventBatchService = calendarEventBatchService;
+        this.calendarImportExportService = calendarImportExportService;
+        this.upcomingEventsCache = upcomingEventsCache;
+        this.conflictDetector = conflictDetector;
     }
 
     @PostMapping("/add-event")
     @Transactional
     public ResponseEntity<?> addEvent(@RequestBody CalendarEvent event, 
-                                    HttpServletRequest request) {
+                                    @CurrentUser User user) {
         try {
-            String token = extractToken(request);
-            String email = jwtUtil.extractUsername(token);
-            User user = userRepository.findByEmail(email);
-            
             if (user == null) {
                 return ResponseEntity.status(404).body(Map.of("error", "User not found"));
             }
@@ -50,23 +71,22 @@ public class CalendarController {
             }
 
             
-            List<CalendarEvent> existingEvents = entityManager
-                .createQuery("SELECT e FROM CalendarEvent e WHERE e.title = :title AND e.start = :start AND e.user = :user", CalendarEvent.class)
-                .setParameter("title", event.getTitle())
-                .setParameter("start", event.getStart())
-                .setParameter("user", user)
-                .getResultList();
+            CalendarEventBatchService.BatchResult result = 
+                calendarEventBatchService.saveNewEvents(user, List.of(event));
             
-            if (!existingEvents.isEmpty()) {
+            if (!result.getInvalidEvents().isEmpty()) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Event needs a title and a start date"));
+            }
+            if (result.getSavedEvents().isEmpty()) {
                 return ResponseEntity.badRequest()
                     .body(Map.of("error", "Event already exists"));
             }
-
-            event.setUser(user);
-            entityManager.persist(event);
             
             
             Map<String, Object> eventDto = convertToDto(event);
+            eventDto.put("conflicts", result.getConflicts().isEmpty() 
+                ? List.of() : result.getConflicts().get(0).getConflicts());
             return ResponseEntity.ok(eventDto);
             
         } catch (Exception e) {
@@ -76,12 +96,46 @@ public class CalendarController {
         }
     }
 
+    @PostMapping("/add-events")
+    @Transactional
+    public ResponseEntity<?> addEvents(@RequestBody List<CalendarEvent> events,
+                                       @CurrentUser User user) {
+        try {
+            if (user == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+            }
+            
+            if (events == null || events.isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of("error", "No events supplied"));
+            }
+            
+            CalendarEventBatchService.BatchResult result = calendarEventBatchService.saveNewEvents(user, events);
+            
+            List<Map<String, Object>> savedDtos = new ArrayList<>();
+            for (CalendarEvent saved : result.getSavedEvents()) {
+                savedDtos.add(convertToDto(saved));
+            }
+            
+            return ResponseEntity.ok(Map.of(
+                "events", savedDtos,
+                "duplicates", result.getDuplicateEvents().size(),
+                "invalid", result.getInvalidEvents().size(),
+                "conflicts", result.getConflicts()
+            ));
+            
+        } catch (Exception e) {
+            logger.severe("Error adding events: " + e.getMessage());
+            e.printStackTrace();
+            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized: " + e.getMessage()));
+        }
+    }
+
     @Transactional
     private ResponseEntity<?> updateEvent(CalendarEvent updatedEvent, User user) {
         try {
             CalendarEvent existingEvent = entityManager.find(CalendarEvent.class, updatedEvent.getId());
             
-            if (existingEvent == null || !existingEvent.getUser().equals(user)) {
+            if (existingEvent == null || !existingEvent.getUser().getId().equals(user.getId())) {
                 return ResponseEntity.status(404).body(Map.of("error", "Event not found"));
             }
             
@@ -96,6 +150,12 @@ public class CalendarController {
             if (updatedEvent.getAllDay() != null) {
                 existingEvent.setAllDay(updatedEvent.getAllDay());
             }
+            if (updatedEvent.getStartTime() != null) {
+                existingEvent.setStartTime(updatedEvent.getStartTime());
+            }
+            if (updatedEvent.getDurationMinutes() != null) {
+                existingEvent.setDurationMinutes(updatedEvent.getDurationMinutes());
+            }
             if (updatedEvent.getEventColor() != null) {
                 existingEvent.setEventColor(updatedEvent.getEventColor());
             }
@@ -103,10 +163,17 @@ public class CalendarController {
                 existingEvent.setPlanTitle(updatedEvent.getPlanTitle());
             }
             
+            List<CalendarConflictDetector.Conflict> conflicts = 
+                conflictDetector.findConflicts(user.getId(), existingEvent);
+            
             entityManager.merge(existingEvent);
+            upcomingEventsCache.onEventSaved(user.getId(), existingEvent);
+            conflictDetector.onEventSaved(user.getId(), existingEvent);
             
             logger.info("Event updated successfully: " + existingEvent.getId());
-            return ResponseEntity.ok(convertToDto(existingEvent));
+            Map<String, Object> eventDto = convertToDto(existingEvent);
+            eventDto.put("conflicts", conflicts);
+            return ResponseEntity.ok(eventDto);
             
         } catch (Exception e) {
             logger.severe("Error updating event: " + e.getMessage());
@@ -115,21 +182,132 @@ public class CalendarController {
         }
     }
 
-    @GetMapping("/events")
-    public ResponseEntity<?> getEvents(HttpServletRequest request) {
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> importEventsFile(@RequestParam("file") MultipartFile file,
+                                              @RequestParam(value = "format", required = false) String format,
+                                              @CurrentUser User user) {
+        CalendarImportExportService.CalendarFileFormat fileFormat = 
+            CalendarImportExportService.CalendarFileFormat.fromName(format != null ? format : file.getOriginalFilename());
+        if (fileFormat == null) {
+            fileFormat = CalendarImportExportService.CalendarFileFormat.fromName(file.getContentType());
+        }
+        
+        try (var input = file.getInputStream()) {
+            return importEvents(input, fileFormat, user);
+        } catch (java.io.IOException e) {
+            logger.severe("Error reading import file: " + e.getMessage());
+            return ResponseEntity.status(400).body(Map.of("error", "Could not read file: " + e.getMessage()));
+        }
+    }
+
+    @PostMapping(value = "/import", consumes = {"text/calendar", "application/x-ndjson"})
+    public ResponseEntity<?> importEventsStream(HttpServletRequest request, @CurrentUser User user) {
+        try (var input = request.getInputStream()) {
+            return importEvents(input, 
+                CalendarImportExportService.CalendarFileFormat.fromName(request.getContentType()), user);
+        } catch (java.io.IOException e) {
+            logger.severe("Error reading import stream: " + e.getMessage());
+            return ResponseEntity.status(400).body(Map.of("error", "Could not read request body: " + e.getMessage()));
+        }
+    }
+
+    private ResponseEntity<?> importEvents(java.io.InputStream input, 
+                                           CalendarImportExportService.CalendarFileFormat format,
+                                           User user) {
+        try {
+            if (user == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+            }
+            
+            if (format == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Unsupported format, expected .ics or .ndjson"));
+            }
+            
+            CalendarImportExportService.ImportResult result = 
+                calendarImportExportService.importEvents(user, input, format);
+            
+            return ResponseEntity.ok(Map.of(
+                "imported", result.getImported(),
+                "duplicates", result.getDuplicates(),
+                "rejected", result.getRejected(),
+                "failed", result.getFailed(),
+                "errors", result.getErrors()
+            ));
+            
+        } catch (Exception e) {
+            logger.severe("Error importing events: " + e.getMessage());
+            e.printStackTrace();
+            return ResponseEntity.status(500).body(Map.of("error", "Import failed: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<?> exportEvents(@RequestParam(value = "format", defaultValue = "ics") String format,
+                                          @CurrentUser User user) {
         try {
-            String token = extractToken(request);
-            String email = jwtUtil.extractUsername(token);
-            User user = userRepository.findByEmail(email);
+            if (user == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+            }
+            
+            CalendarImportExportService.CalendarFileFormat fileFormat = 
+                CalendarImportExportService.CalendarFileFormat.fromName(format);
+            if (fileFormat == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Unsupported format, expected ics or ndjson"));
+            }
             
+            StreamingResponseBody body = output -> calendarImportExportService.exportEvents(user, fileFormat, output);
+            
+            return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, 
+                    "attachment; filename=\"calendar." + fileFormat.getExtension() + "\"")
+                .contentType(MediaType.parseMediaType(fileFormat.getContentType()))
+                .body(body);
+            
+        } catch (Exception e) {
+            logger.severe("Error exporting events: " + e.getMessage());
+            e.printStackTrace();
+            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Without parameters returns every event of the user. With {@code from} and/or {@code to}
+     * (ISO dates, {@code to} exclusive like FullCalendar's visible range) only that window is
+     * loaded, capped at {@code app.calendar.max-range-results}. A range response carries
+     * {@value #RESULTS_TRUNCATED_HEADER} so the client can tell a full window from a cut-off one.
+     * Reads go through repository queries, which run read-only and so use the sqlite reader pool.
+     */
+    @GetMapping("/events")
+    public ResponseEntity<?> getEvents(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @CurrentUser User user) {
+        try {
             if (user == null) {
                 return ResponseEntity.status(404).body(Map.of("error", "User not found"));
             }
 
-            List<CalendarEvent> events = entityManager
-                .createQuery("SELECT e FROM CalendarEvent e WHERE e.user = :user", CalendarEvent.class)
-                .setParameter("user", user)
-                .getResultList();
+            List<CalendarEvent> events;
+            Boolean truncated = null;
+            if (from != null || to != null) {
+                if (from != null && to != null && !to.isAfter(from)) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "'to' must be after 'from'"));
+                }
+                events = calendarEventRepository.findInRange(
+                    user.getId(),
+                    from != null ? from : LocalDate.of(1, 1, 1),
+                    to != null ? to : LocalDate.of(9999, 12, 31),
+                    PageRequest.of(0, maxRangeResults + 1));
+                // One extra row tells a full window from one that was cut off
+                truncated = events.size() > maxRangeResults;
+                if (truncated) {
+                    logger.warning("Range " + from + ".." + to + " for user " + user.getId() +
+                                   " has more than " + maxRangeResults + " events, returning the first " + maxRangeResults);
+                    events = events.subList(0, maxRangeResults);
+                }
+            } else {
+                events = calendarEventRepository.findAllForUser(user.getId());
+            }
             
             
             List<Map<String, Object>> eventDtos = new ArrayList<>();
@@ -137,7 +315,12 @@ public class CalendarController {
                 eventDtos.add(convertToDto(event));
             }
             
-            return ResponseEntity.ok(eventDtos);
+            if (truncated == null) {
+                return ResponseEntity.ok(eventDtos);
+            }
+            return ResponseEntity.ok()
+                .header(RESULTS_TRUNCATED_HEADER, truncated.toString())
+                .body(eventDtos);
             
         } catch (Exception e) {
             logger.severe("Error retrieving events: " + e.getMessage());
@@ -146,21 +329,48 @@ public class CalendarController {
         }
     }
 
+    /**
+     * Existing events that would overlap an event on {@code date}, optionally at {@code time}
+     * for {@code durationMinutes}. Lets the UI warn before saving.
+     */
+    @GetMapping("/conflicts")
+    public ResponseEntity<?> checkConflicts(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.TIME) LocalTime time,
+            @RequestParam(required = false) Integer durationMinutes,
+            @RequestParam(required = false) UUID excludeId,
+            @CurrentUser User user) {
+        try {
+            if (user == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+            }
+            
+            CalendarEvent probe = new CalendarEvent(null, date);
+            probe.setId(excludeId);
+            probe.setStartTime(time);
+            probe.setDurationMinutes(durationMinutes);
+            
+            return ResponseEntity.ok(Map.of("conflicts", conflictDetector.findConflicts(user.getId(), probe)));
+            
+        } catch (Exception e) {
+            logger.severe("Error checking conflicts: " + e.getMessage());
+            e.printStackTrace();
+            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized: " + e.getMessage()));
+        }
+    }
+
     @GetMapping("/events/check/{id}")
-    public ResponseEntity<?> checkEventExists(@PathVariable UUID id, HttpServletRequest request) {
+    public ResponseEntity<?> checkEventExists(@PathVariable UUID id, @CurrentUser User user) {
         try {
             
-            String token = extractToken(request);
-            String email = jwtUtil.extractUsername(token);
-            User user = userRepository.findByEmail(email);
             
             if (user == null) {
                 return ResponseEntity.status(404).body(Map.of("error", "User not found"));
             }
 
             
-            CalendarEvent event = entityManager.find(CalendarEvent.class, id);
-            boolean exists = event != null && event.getUser().equals(user);
+            CalendarEvent event = calendarEventRepository.findById(id).orElse(null);
+            boolean exists = event != null && event.getUser().getId().equals(user.getId());
             
             return ResponseEntity.ok(Map.of("exists", exists));
             
@@ -173,12 +383,9 @@ public class CalendarController {
 
     @DeleteMapping("/events/{id}")
     @Transactional
-    public ResponseEntity<?> deleteEvent(@PathVariable UUID id, HttpServletRequest request) {
+    public ResponseEntity<?> deleteEvent(@PathVariable UUID id, @CurrentUser User user) {
         try {
             
-            String token = extractToken(request);
-            String email = jwtUtil.extractUsername(token);
-            User user = userRepository.findByEmail(email);
             
             if (user == null) {
                 return ResponseEntity.status(404).body(Map.of("error", "User not found"));
@@ -192,6 +399,8 @@ public class CalendarController {
                 .executeUpdate();
             
             if (deletedCount > 0) {
+                upcomingEventsCache.onEventDeleted(user.getId(), id);
+                conflictDetector.onEventDeleted(user.getId(), id);
                 logger.info("Event deleted successfully via bulk delete: " + id);
                 return ResponseEntity.ok(Map.of("message", "Event deleted successfully", "deletedCount", deletedCount));
             } else {
@@ -205,7 +414,8 @@ public class CalendarController {
             e.printStackTrace();
             
             
-            if (e.getMessage().contains("database table is locked") || 
+            if (e instanceof PessimisticLockingFailureException ||
+                e.getMessage().contains("database table is locked") || 
                 e.getMessage().contains("SQLITE_LOCKED")) {
                 return ResponseEntity.status(409).body(Map.of("error", "Database busy, please try again"));
             }
@@ -215,22 +425,16 @@ public class CalendarController {
     }
 
     @GetMapping("/events/upcoming")
-    public ResponseEntity<?> getUpcomingEvents(HttpServletRequest request) {
+    public ResponseEntity<?> getUpcomingEvents(@RequestParam(required = false) Integer limit,
+                                               @CurrentUser User user) {
         try {
-            String token = extractToken(request);
-            String email = jwtUtil.extractUsername(token);
-            User user = userRepository.findByEmail(email);
-            
             if (user == null) {
                 return ResponseEntity.status(404).body(Map.of("error", "User not found"));
             }
 
-            LocalDate today = LocalDate.now();
-            List<CalendarEvent> upcomingEvents = entityManager
-                .createQuery("SELECT e FROM CalendarEvent e WHERE e.user = :user AND e.start >= :today ORDER BY e.start", CalendarEvent.class)
-                .setParameter("user", user)
-                .setParameter("today", today)
-                .getResultList();
+            int pageSize = limit != null && limit > 0 ? Math.min(limit, maxRangeResults) : maxRangeResults;
+            List<CalendarEvent> upcomingEvents = calendarEventRepository.findUpcoming(
+                user.getId(), LocalDate.now(), PageRequest.of(0, pageSize));
             
             
             List<Map<String, Object>> eventDtos = new ArrayList<>();
@@ -255,34 +459,11 @@ public class CalendarController {
         dto.put("start", event.getStart());
         dto.put("description", event.getDescription());
         dto.put("allDay", event.getAllDay());
+        dto.put("startTime", event.getStartTime());
+        dto.put("durationMinutes", event.getDurationMinutes());
         dto.put("eventColor", event.getEventColor());
         dto.put("planTitle", event.getPlanTitle());
         return dto;
     }
 
-    
-    public List<CalendarEvent> getUserCalendarEventsDirect(UUID userId) {
-        try {
-            User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-            
-            return entityManager
-                .createQuery("SELECT e FROM CalendarEvent e WHERE e.user = :user ORDER BY e.start", CalendarEvent.class)
-                .setParameter("user", user)
-                .getResultList();
-                
-        } catch (Exception e) {
-            logger.severe("Error fetching calendar events directly: " + e.getMessage());
-            e.printStackTrace();
-            return List.of(); 
-        }
-    }
-
-    private String extractToken(HttpServletRequest request) {
-        String bearerToken = request.getHeader("Authorization");
-        if (bearerToken != null && bearerToken.startsWith("Bearer ")) {
-            return bearerToken.substring(7);
-        }
-        throw new RuntimeException("Invalid or missing Authorization header");
-    }
 }
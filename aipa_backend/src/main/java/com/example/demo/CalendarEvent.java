@@ -3,11 +3,15 @@ package com.example.demo;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.Objects;
 import java.util.UUID;
 
 @Entity
-@Table(name = "calendar_events")
+@Table(name = "calendar_events",
+       indexes = {
+           @Index(name = "idx_calendar_events_user_start", columnList = "user_id, start_date")
+       })
 public class CalendarEvent {
 
     @Id
@@ -26,6 +30,12 @@ public class CalendarEvent {
     @Column(name = "is_all_day")
     private Boolean isAllDay = true;
 
+    @Column(name = "start_time")
+    private LocalTime startTime;
+
+    @Column(name = "duration_minutes")
+    private Integer durationMinutes;
+
     @Column(name = "event_color")
     private String eventColor;
     
@@ -93,6 +103,22 @@ public class CalendarEvent {
         isAllDay = allDay;
     }
 
+    public LocalTime getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(LocalTime startTime) {
+        this.startTime = startTime;
+    }
+
+    public Integer getDurationMinutes() {
+        return durationMinutes;
+    }
+
+    public void setDurationMinutes(Integer durationMinutes) {
+        this.durationMinutes = durationMinutes;
+    }
+
     public String getEventColor() {
         return eventColor;
     }
@@ -131,6 +157,12 @@ public class CalendarEvent {
         if (updatedEvent.getAllDay() != null) {
             this.isAllDay = updatedEvent.getAllDay();
         }
+        if (updatedEvent.getStartTime() != null) {
+            this.startTime = updatedEvent.getStartTime();
+        }
+        if (updatedEvent.getDurationMinutes() != null) {
+            this.durationMinutes = updatedEvent.getDurationMinutes();
+        }
         if (updatedEvent.getEventColor() != null) {
             this.eventColor = updatedEvent.getEventColor();
         }
@@ -163,6 +195,8 @@ public class CalendarEvent {
                 ", start=" + start +
                 ", description='" + description + '\'' +
                 ", isAllDay=" + isAllDay +
+                ", startTime=" + startTime +
+                ", durationMinutes=" + durationMinutes +
                 ", eventColor='" + eventColor + '\'' +
                 ", planTitle='" + planTitle + '\'' +
                 '}';
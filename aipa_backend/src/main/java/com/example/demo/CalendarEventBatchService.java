@@ -0,0 +1,196 @@
+package com.example.demo;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Persists several calendar events for one user in a single transaction.
+ * Duplicates (same title and start date) are found with one query per chunk of the
+ * batch instead of one SELECT per event, and the inserts are flushed together so
+ * Hibernate can send them as a JDBC batch. Events without a title or start date are
+ * returned as invalid rather than saved.
+ */
+@Service
+public class CalendarEventBatchService {
+
+    private static final Logger logger = Logger.getLogger(CalendarEventBatchService.class.getName());
+
+    /**
+     * Events per dedup query. Titles and starts are bound as separate IN lists, so a chunk
+     * binds at most twice this many parameters plus the user, well under SQLite's 999.
+     */
+    static final int LOOKUP_CHUNK_SIZE = 400;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final UpcomingEventsCache upcomingEventsCache;
+    private final CalendarConflictDetector conflictDetector;
+
+    public CalendarEventBatchService(UpcomingEventsCache upcomingEventsCache,
+                                     CalendarConflictDetector conflictDetector) {
+        this.upcomingEventsCache = upcomingEventsCache;
+        this.conflictDetector = conflictDetector;
+    }
+
+    @Transactional
+    public BatchResult saveNewEvents(User user, List<CalendarEvent> candidates) {
+        if (candidates == null || candidates.isEmpty()) {
+            return new BatchResult(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        }
+        return persistNew(user, candidates, findExistingKeys(user, candidates), true);
+    }
+
+    /**
+     * Saves one chunk of a bulk import in its own transaction. The caller keeps
+     * {@code knownKeys} across chunks so dedup is a set lookup rather than a query,
+     * and the persistence context is cleared so long imports do not accumulate entities.
+     */
+    @Transactional
+    public BatchResult saveImportedChunk(User user, List<CalendarEvent> chunk, Set<String> knownKeys) {
+        BatchResult result = persistNew(user, chunk, knownKeys, false);
+        entityManager.clear();
+        return result;
+    }
+
+    /**
+     * Dedup keys for every event the user already has, used to seed a bulk import.
+     */
+    @Transactional(readOnly = true)
+    public Set<String> loadAllKeys(User user) {
+        List<Object[]> rows = entityManager
+            .createQuery("SELECT e.title, e.start FROM CalendarEvent e WHERE e.user = :user", Object[].class)
+            .setParameter("user", user)
+            .getResultList();
+
+        Set<String> keys = new HashSet<>();
+        for (Object[] row : rows) {
+            keys.add(dedupKey((String) row[0], (LocalDate) row[1]));
+        }
+        return keys;
+    }
+
+    private BatchResult persistNew(User user, List<CalendarEvent> candidates, Set<String> seen,
+                                   boolean detectConflicts) {
+        List<CalendarEvent> saved = new ArrayList<>();
+        List<CalendarEvent> duplicates = new ArrayList<>();
+        List<CalendarEvent> invalid = new ArrayList<>();
+
+        for (CalendarEvent event : candidates) {
+            if (event.getTitle() == null || event.getStart() == null) {
+                invalid.add(event);
+                continue;
+            }
+
+            // Set.add also rejects repeats inside the same batch
+            if (!seen.add(dedupKey(event.getTitle(), event.getStart()))) {
+                duplicates.add(event);
+                continue;
+            }
+            saved.add(event);
+        }
+
+        // Checked before persisting so the first load of the index cannot see this batch
+        Map<CalendarEvent, List<CalendarConflictDetector.Conflict>> conflicts = detectConflicts
+            ? conflictDetector.findConflicts(user.getId(), saved)
+            : Collections.emptyMap();
+
+        for (CalendarEvent event : saved) {
+            event.setId(null);
+            event.setUser(user);
+            entityManager.persist(event);
+            upcomingEventsCache.onEventSaved(user.getId(), event);
+            conflictDetector.onEventSaved(user.getId(), event);
+        }
+
+        if (!saved.isEmpty()) {
+            entityManager.flush();
+        }
+
+        List<CalendarConflictDetector.ConflictReport> reports = new ArrayList<>();
+        for (CalendarEvent event : saved) {
+            List<CalendarConflictDetector.Conflict> eventConflicts = conflicts.get(event);
+            if (eventConflicts != null) {
+                reports.add(new CalendarConflictDetector.ConflictReport(event, eventConflicts));
+            }
+        }
+
+        logger.info("Batch saved " + saved.size() + " events, skipped " + duplicates.size() + 
+                    " duplicates and " + invalid.size() + " invalid, " + reports.size() + " with conflicts");
+        return new BatchResult(saved, duplicates, invalid, reports);
+    }
+
+    /**
+     * One query per {@link #LOOKUP_CHUNK_SIZE} events. Title and start are matched
+     * independently and the exact (title, start) pairs are checked in memory, which keeps
+     * the JPQL portable.
+     */
+    private Set<String> findExistingKeys(User user, List<CalendarEvent> candidates) {
+        List<CalendarEvent> valid = new ArrayList<>();
+        for (CalendarEvent event : candidates) {
+            if (event.getTitle() != null && event.getStart() != null) {
+                valid.add(event);
+            }
+        }
+
+        Set<String> keys = new HashSet<>();
+        for (int from = 0; from < valid.size(); from += LOOKUP_CHUNK_SIZE) {
+            Set<String> titles = new HashSet<>();
+            Set<LocalDate> starts = new HashSet<>();
+            for (CalendarEvent event : valid.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, valid.size()))) {
+                titles.add(event.getTitle());
+                starts.add(event.getStart());
+            }
+
+            List<Object[]> rows = entityManager
+                .createQuery("SELECT e.title, e.start FROM CalendarEvent e WHERE e.user = :user " +
+                             "AND e.title IN :titles AND e.start IN :starts", Object[].class)
+                .setParameter("user", user)
+                .setParameter("titles", titles)
+                .setParameter("starts", starts)
+                .getResultList();
+
+            for (Object[] row : rows) {
+                keys.add(dedupKey((String) row[0], (LocalDate) row[1]));
+            }
+        }
+        return keys;
+    }
+
+    static String dedupKey(String title, LocalDate start) {
+        return title + "|" + start;
+    }
+
+    public static class BatchResult {
+        private final List<CalendarEvent> savedEvents;
+        private final List<CalendarEvent> duplicateEvents;
+        private final List<CalendarEvent> invalidEvents;
+        private final List<CalendarConflictDetector.ConflictReport> conflicts;
+
+        public BatchResult(List<CalendarEvent> savedEvents, List<CalendarEvent> duplicateEvents,
+                           List<CalendarEvent> invalidEvents,
+                           List<CalendarConflictDetector.ConflictReport> conflicts) {
+            this.savedEvents = savedEvents;
+            this.duplicateEvents = duplicateEvents;
+            this.invalidEvents = invalidEvents;
+            this.conflicts = conflicts;
+        }
+
+        public List<CalendarEvent> getSavedEvents() { return savedEvents; }
+        public List<CalendarEvent> getDuplicateEvents() { return duplicateEvents; }
+        /** Events missing a title or start date. */
+        public List<CalendarEvent> getInvalidEvents() { return invalidEvents; }
+        public List<CalendarConflictDetector.ConflictReport> getConflicts() { return conflicts; }
+
+        @Override
+        public String toString() {
+            return String.format("BatchResult{saved=%d, duplicates=%d, invalid=%d, conflicts=%d}", 
+                                 savedEvents.size(), duplicateEvents.size(), invalidEvents.size(), conflicts.size());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.example.demo;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -11,15 +12,14 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.logging.Logger;
-import jakarta.transaction.Transactional;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @Service
 public class CalendarEventCreationService {
     
-    private static final Logger logger = Logger.getLogger(CalendarEventCreationService.class.getName());
+    private static final Logger logger = LoggerFactory.getLogger(CalendarEventCreationService.class);
+    private static final PayloadLog payloadLog = PayloadLog.forCategory("calendar");
     
     // Rate limiting and caching - OPTIMIZED FOR REAL AI PERFORMANCE
     private static final Map<String, String> responseCache = new ConcurrentHashMap<>();
@@ -29,21 +29,37 @@ public class CalendarEventCreationService {
     private static final Duration CACHE_EXPIRY = Duration.ofHours(2);
     private static Instant lastApiCall = Instant.EPOCH;
     
+    static final String DEFERRED_EXTRACTION_JOB = "calendar-extraction";
+    
     private final UserRepository userRepository;
+    private final CalendarEventRepository calendarEventRepository;
+    private final CalendarEventBatchService calendarEventBatchService;
+    private final LlmJobQueue llmJobQueue;
+    private final ChatMetrics chatMetrics;
     private final WebClient webClient;
+    private final GeminiPromptCache promptCache;
+    private final GeminiCallGuard callGuard;
     private final ObjectMapper objectMapper = new ObjectMapper();
     
-    @PersistenceContext
-    private EntityManager entityManager;
-    
     @Value("${gemini.api.key}")
     private String geminiApiKey;
     
     @Autowired
-    public CalendarEventCreationService(UserRepository userRepository, WebClient.Builder webClientBuilder) {
+    public CalendarEventCreationService(UserRepository userRepository, CalendarEventRepository calendarEventRepository,
+                                        CalendarEventBatchService calendarEventBatchService,
+                                        WebClient.Builder webClientBuilder, LlmJobQueue llmJobQueue,
+                                        ChatMetrics chatMetrics, GeminiPromptCache promptCache, GeminiCallGuard callGuard,
+                                        @Value("${gemini.base-url:https://generativelanguage.googleapis.com}") String geminiBaseUrl) {
         this.userRepository = userRepository;
+        this.calendarEventRepository = calendarEventRepository;
+        this.calendarEventBatchService = calendarEventBatchService;
+        this.llmJobQueue = llmJobQueue;
+        this.chatMetrics = chatMetrics;
+        this.promptCache = promptCache;
+        this.callGuard = callGuard;
+        llmJobQueue.register(DEFERRED_EXTRACTION_JOB, this::runDeferredExtraction);
         this.webClient = webClientBuilder
-            .baseUrl("https://generativelanguage.googleapis.com")
+            .baseUrl(geminiBaseUrl)
             .defaultHeader("Content-Type", "application/json")
             .build();
         
@@ -52,6 +68,7 @@ public class CalendarEventCreationService {
         logger.info("🧹 Cache cleared on service startup");
     }
     
+    /** Static instructions and examples, sent as a cacheable prefix; see {@link GeminiPromptCache}. */
     private static final String EVENT_EXTRACTION_PROMPT = 
         "You are an expert calendar event extraction AI. Extract calendar events with MAXIMUM ACCURACY.\n\n" +
         "CRITICAL INSTRUCTIONS:\n" +
@@ -61,7 +78,6 @@ public class CalendarEventCreationService {
         "• Return [] if NO REAL events found\n" +
         "• MUST return valid JSON array format\n" +
         "• Use context from recent events to understand references like 'a day later'\n\n" +
-        "%s\n\n" +
         "DATE CALCULATIONS (TODAY = Thursday, August 7, 2025):\n" +
         "• today = 0 days (Thursday, August 7)\n" +
         "• tomorrow = 1 day (Friday, August 8)\n" +
@@ -96,44 +112,114 @@ public class CalendarEventCreationService {
         "Input: \"book reading event a day later\" (with recent Wedding today in context)\n" +
         "Output: [{\"title\":\"Book Reading Event\",\"daysFromToday\":1}]\n\n" +
         "Input: \"what time is my birthday?\"\n" +
-        "Output: []\n\n" +
+        "Output: []\n\n";
+    
+    /** Per-call part after {@link #EVENT_EXTRACTION_PROMPT}: the user's recent events, then the input. */
+    private static final String EVENT_EXTRACTION_PROMPT_SUFFIX =
+        "%s\n\n" +
         "CURRENT DATE CONTEXT: Today is Thursday, August 7, 2025\n" +
         "USER INPUT: \"%s\"\n" +
         "RETURN ONLY JSON (no other text):";
     
-    @Transactional
+    /**
+     * Not transactional: the Gemini round trip must not hold a connection, which under the
+     * sqlite profile would be the only writer. The context read runs in its own read-only
+     * transaction and only {@link CalendarEventBatchService#saveNewEvents} writes.
+     */
     public EventCreationResult createEventsFromInput(UUID userId, String userInput) {
-        logger.info("Creating events using LLM extraction from input: " + userInput);
+        User user = userRepository.findById(userId).orElse(null);
+        if (user == null) {
+            return new EventCreationResult(new ArrayList<>(), new ArrayList<>(), List.of("User not found"));
+        }
+        return createEventsFromInput(user, userInput);
+    }
+
+    public EventCreationResult createEventsFromInput(User user, String userInput) {
+        UUID userId = user.getId();
+        payloadLog.log("Creating events using LLM extraction from input", userInput);
         
         List<CalendarEvent> createdEvents = new ArrayList<>();
+        List<CalendarConflictDetector.ConflictReport> conflicts = new ArrayList<>();
         List<String> errors = new ArrayList<>();
         
         try {
-            User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-            
             List<ExtractedEvent> extractedEvents = extractEventsUsingLLM(userInput, userId);
-            
-            for (ExtractedEvent extractedEvent : extractedEvents) {
-                try {
-                    CalendarEvent event = createCalendarEvent(extractedEvent, user);
-                    if (event != null) {
-                        createdEvents.add(event);
-                        logger.info("Successfully created event: " + event.getTitle() + " on " + event.getStart());
-                    }
-                } catch (Exception e) {
-                    String error = "Failed to create event '" + extractedEvent.title + "': " + e.getMessage();
-                    errors.add(error);
-                    logger.warning(error);
-                }
+            if (extractedEvents == null) {
+                return new EventCreationResult(createdEvents, conflicts, errors, true);
             }
-            
+            saveExtractedEvents(user, extractedEvents, createdEvents, conflicts, errors);
         } catch (Exception e) {
             errors.add("Failed to process input: " + e.getMessage());
-            logger.severe("Error creating events from input: " + e.getMessage());
+            logger.error("Error creating events from input: {}", e.getMessage());
         }
         
-        return new EventCreationResult(createdEvents, errors);
+        return new EventCreationResult(createdEvents, conflicts, errors);
+    }
+    
+    private void saveExtractedEvents(User user, List<ExtractedEvent> extractedEvents, List<CalendarEvent> createdEvents,
+                                     List<CalendarConflictDetector.ConflictReport> conflicts, List<String> errors) {
+        List<CalendarEvent> candidates = new ArrayList<>();
+        for (ExtractedEvent extractedEvent : extractedEvents) {
+            try {
+                candidates.add(buildCalendarEvent(extractedEvent, user));
+            } catch (Exception e) {
+                String error = "Failed to create event '" + extractedEvent.title + "': " + e.getMessage();
+                errors.add(error);
+                logger.warn(error);
+            }
+        }
+        
+        // One dedup query and one flushed batch for every extracted event
+        CalendarEventBatchService.BatchResult batchResult = calendarEventBatchService.saveNewEvents(user, candidates);
+        createdEvents.addAll(batchResult.getSavedEvents());
+        conflicts.addAll(batchResult.getConflicts());
+        for (CalendarEvent duplicate : batchResult.getDuplicateEvents()) {
+            logger.info("Skipped duplicate event: {} on {}", duplicate.getTitle(), duplicate.getStart());
+        }
+    }
+    
+    /**
+     * Job handler for extractions that could not reach Gemini during the chat request. Failures
+     * are thrown so the job queue retries them; only the last attempt settles for the simulator.
+     */
+    private void runDeferredExtraction(LlmJob job, boolean lastAttempt) {
+        User user = userRepository.findById(job.getUserId()).orElse(null);
+        if (user == null) {
+            logger.warn("Dropping deferred calendar extraction for missing user {}", job.getUserId());
+            return;
+        }
+        String userInput = job.getPayload();
+        String cacheKey = userInput.toLowerCase().trim();
+        
+        List<ExtractedEvent> extractedEvents;
+        String cachedResponse = responseCache.get(cacheKey);
+        chatMetrics.recordCacheLookup("calendar_extraction", cachedResponse != null);
+        if (cachedResponse != null) {
+            extractedEvents = parseEventsFromLLMResponse(cachedResponse);
+        } else {
+            try {
+                if (!canMakeApiCall()) {
+                    throw new IllegalStateException("Gemini rate limit cooldown active");
+                }
+                extractedEvents = requestEventsFromGemini(userInput, job.getUserId(), cacheKey);
+            } catch (RuntimeException e) {
+                if (e.getMessage() != null && e.getMessage().contains("429")) {
+                    recordRateLimit();
+                }
+                if (!lastAttempt) {
+                    throw e;
+                }
+                logger.warn("Deferred extraction out of attempts, using fallback: {}", e.getMessage());
+                chatMetrics.recordFallback("calendar_extraction", "retries_exhausted");
+                extractedEvents = simulateAIResponse(userInput);
+            }
+        }
+        
+        List<CalendarEvent> createdEvents = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        saveExtractedEvents(user, extractedEvents, createdEvents, new ArrayList<>(), errors);
+        logger.info("📅 Deferred extraction created {} events for user {}{}", createdEvents.size(), user.getId(),
+            errors.isEmpty() ? "" : ", errors: " + errors);
     }
     
     /**
@@ -145,16 +231,9 @@ public class CalendarEventCreationService {
             LocalDate weekAgo = today.minusDays(7);
             LocalDate weekAhead = today.plusDays(7);
             
-            List<CalendarEvent> recentEvents = entityManager.createQuery(
-                "SELECT e FROM CalendarEvent e WHERE e.user.id = :userId " +
-                "AND e.start BETWEEN :startDate AND :endDate " +
-                "ORDER BY e.start DESC", 
-                CalendarEvent.class)
-                .setParameter("userId", userId)
-                .setParameter("startDate", weekAgo)
-                .setParameter("endDate", weekAhead)
-                .setMaxResults(5)
-                .getResultList();
+            // A repository query runs in a read-only transaction, so it uses the reader pool
+            List<CalendarEvent> recentEvents = calendarEventRepository.findLatestBetween(
+                userId, weekAgo, weekAhead, PageRequest.of(0, 5));
             
             if (recentEvents.isEmpty()) {
                 return "RECENT EVENTS: None";
@@ -181,104 +260,127 @@ public class CalendarEventCreationService {
             
             return context.toString();
         } catch (Exception e) {
-            logger.warning("Failed to get recent events context: " + e.getMessage());
+            logger.warn("Failed to get recent events context: {}", e.getMessage());
             return "RECENT EVENTS: None";
         }
     }
     
+    /**
+     * Returns the extracted events, or null when Gemini could not be used right now and the
+     * input was queued for a later attempt.
+     */
     private List<ExtractedEvent> extractEventsUsingLLM(String userInput, UUID userId) {
+        // Test mode fallback - if API key is missing, null, or placeholder, simulate response
+        if (geminiApiKey == null || geminiApiKey.trim().isEmpty() || 
+            "your-gemini-api-key-here".equals(geminiApiKey) || 
+            "${GEMINI_API_KEY:your-gemini-api-key-here}".equals(geminiApiKey)) {
+            logger.debug("🧪 TEST MODE: Using simulated AI response (no valid API key configured)");
+            chatMetrics.recordFallback("calendar_extraction", "no_api_key");
+            return simulateAIResponse(userInput);
+        }
+        
+        // Check cache first to avoid unnecessary API calls
+        String cacheKey = userInput.toLowerCase().trim();
+        String cachedResponse = responseCache.get(cacheKey);
+        chatMetrics.recordCacheLookup("calendar_extraction", cachedResponse != null);
+        if (cachedResponse != null) {
+            logger.debug("💾 CACHE HIT: Using cached response");
+            return parseEventsFromLLMResponse(cachedResponse);
+        }
+        
+        // Implement rate limiting to avoid 429 errors
+        if (!canMakeApiCall()) {
+            logger.warn("⏳ RATE LIMITED: Deferring extraction to avoid 429 error");
+            return deferExtraction(userInput, userId);
+        }
+        
         try {
-            // Test mode fallback - if API key is missing, null, or placeholder, simulate response
-            if (geminiApiKey == null || geminiApiKey.trim().isEmpty() || 
-                "your-gemini-api-key-here".equals(geminiApiKey) || 
-                "${GEMINI_API_KEY:your-gemini-api-key-here}".equals(geminiApiKey)) {
-                logger.info("🧪 TEST MODE: Using simulated AI response (no valid API key configured)");
-                return simulateAIResponse(userInput);
-            }
-            
-            // Check cache first to avoid unnecessary API calls
-            String cacheKey = userInput.toLowerCase().trim();
-            String cachedResponse = responseCache.get(cacheKey);
-            if (cachedResponse != null) {
-                logger.info("💾 CACHE HIT: Using cached response for: " + userInput);
-                return parseEventsFromLLMResponse(cachedResponse);
-            }
-            
-            // Implement rate limiting to avoid 429 errors
-            if (!canMakeApiCall()) {
-                logger.warning("⏳ RATE LIMITED: Falling back to simulation to avoid 429 error");
-                return simulateAIResponse(userInput);
-            }
-            
-            logger.info("🤖 LIVE MODE: Using real Gemini AI API with key: " + 
-                       geminiApiKey.substring(0, Math.min(10, geminiApiKey.length())) + "...");
-            
-            // Get recent events context for better understanding of follow-up events
-            String recentEventsContext = getRecentEventsContext(userId);
-            String enhancedPrompt = String.format(EVENT_EXTRACTION_PROMPT, recentEventsContext, userInput);
-            
-            // Optimized request configuration for better performance
-            Map<String, Object> request = Map.of(
-                "contents", List.of(
-                    Map.of("parts", List.of(
-                        Map.of("text", enhancedPrompt)
-                    ))
-                ),
-                "generationConfig", Map.of(
-                    "temperature", 0.0,        // Lower temperature for more consistent results
-                    "topP", 0.95,              // Slightly higher for better quality
-                    "maxOutputTokens", 512,    // Reduced tokens since we only need JSON
-                    "candidateCount", 1        // Only need one response
-                ),
-                "safetySettings", List.of(
-                    Map.of("category", "HARM_CATEGORY_DANGEROUS_CONTENT", "threshold", "BLOCK_NONE"),
-                    Map.of("category", "HARM_CATEGORY_HARASSMENT", "threshold", "BLOCK_NONE"),
-                    Map.of("category", "HARM_CATEGORY_HATE_SPEECH", "threshold", "BLOCK_NONE"),
-                    Map.of("category", "HARM_CATEGORY_SEXUALLY_EXPLICIT", "threshold", "BLOCK_NONE")
-                )
-            );
-
-            // Record API call time for rate limiting
-            lastApiCall = Instant.now();
-            
-            JsonNode response = webClient.post()
-                .uri(uriBuilder -> uriBuilder
-                    .path("/v1beta/models/gemini-2.0-flash:generateContent")  // Use advanced model
-                    .queryParam("key", geminiApiKey)
-                    .build())
-                .bodyValue(request)
-                .retrieve()
-                .bodyToMono(JsonNode.class)
-                .timeout(Duration.ofSeconds(10))  // Add timeout to prevent hanging
-                .block();
-
-            String responseText = response
-                .path("candidates").get(0)
-                .path("content")
-                .path("parts").get(0)
-                .path("text")
-                .asText();
-
-            // Cache successful response
-            cacheResponse(cacheKey, responseText);
-            
-            // DEBUG: Log the actual AI response
-            logger.info("🤖 AI Response for input '" + userInput + "': " + responseText);
-
-            return parseEventsFromLLMResponse(responseText);
-
+            return requestEventsFromGemini(userInput, userId, cacheKey);
+        } catch (GeminiCallGuard.CircuitOpenException e) {
+            // Gemini is down; queued jobs would only fail the same way, so answer now
+            logger.warn("⚡ CIRCUIT OPEN: {} - Using simulated response", e.getMessage());
+            chatMetrics.recordFallback("calendar_extraction", "circuit_open");
+            return simulateAIResponse(userInput);
         } catch (Exception e) {
             String errorMsg = e.getMessage();
             if (errorMsg != null && errorMsg.contains("429")) {
-                logger.warning("🚫 API RATE LIMIT: " + errorMsg + " - Using enhanced fallback");
+                logger.warn("🚫 API RATE LIMIT: {} - Deferring extraction", errorMsg);
                 // Implement exponential backoff for 429 errors
                 recordRateLimit();
             } else {
-                logger.severe("❌ API ERROR: " + errorMsg + " - Using fallback");
+                logger.error("❌ API ERROR: {} - Deferring extraction", errorMsg);
             }
             
-            return simulateAIResponse(userInput);
+            return deferExtraction(userInput, userId);
+        }
+    }
+    
+    /**
+     * Queues the input for the job queue to retry instead of guessing events with the
+     * simulator. The simulator is only used when the queue is full.
+     */
+    private List<ExtractedEvent> deferExtraction(String userInput, UUID userId) {
+        if (llmJobQueue.enqueue(DEFERRED_EXTRACTION_JOB, userId, userInput)) {
+            return null;
         }
+        chatMetrics.recordFallback("calendar_extraction", "queue_full");
+        return simulateAIResponse(userInput);
+    }
+    
+    private List<ExtractedEvent> requestEventsFromGemini(String userInput, UUID userId, String cacheKey) {
+        logger.debug("🤖 LIVE MODE: Using real Gemini AI API");
+        
+        // Get recent events context for better understanding of follow-up events
+        String recentEventsContext = getRecentEventsContext(userId);
+        GeminiPromptCache.Prompt prompt = promptCache.prompt("gemini-2.0-flash", EVENT_EXTRACTION_PROMPT,
+            String.format(EVENT_EXTRACTION_PROMPT_SUFFIX, recentEventsContext, userInput));
+        
+        // Optimized request configuration for better performance
+        Map<String, Object> request = prompt.request(Map.of(
+            "generationConfig", Map.of(
+                "temperature", 0.0,        // Lower temperature for more consistent results
+                "topP", 0.95,              // Slightly higher for better quality
+                "maxOutputTokens", 512,    // Reduced tokens since we only need JSON
+                "candidateCount", 1        // Only need one response
+            ),
+            "safetySettings", List.of(
+                Map.of("category", "HARM_CATEGORY_DANGEROUS_CONTENT", "threshold", "BLOCK_NONE"),
+                Map.of("category", "HARM_CATEGORY_HARASSMENT", "threshold", "BLOCK_NONE"),
+                Map.of("category", "HARM_CATEGORY_HATE_SPEECH", "threshold", "BLOCK_NONE"),
+                Map.of("category", "HARM_CATEGORY_SEXUALLY_EXPLICIT", "threshold", "BLOCK_NONE")
+            )
+        ));
+
+        // Record API call time for rate limiting
+        lastApiCall = Instant.now();
+        
+        JsonNode response = callGuard.protect(prompt.getModel(), "generateContent",
+            chatMetrics.timeLlmCall("calendar_extraction", prompt.getModel(), prompt.getSentLength(), webClient.post()
+            .uri(uriBuilder -> uriBuilder
+                .path("/v1beta/models/" + prompt.getModel() + ":generateContent")
+                .queryParam("key", geminiApiKey)
+                .build())
+            .bodyValue(request)
+            .retrieve()
+            .bodyToMono(JsonNode.class)
+            .timeout(Duration.ofSeconds(10))  // Add timeout to prevent hanging
+            .doOnError(e -> promptCache.failed(prompt))))
+            .block();
+
+        String responseText = response
+            .path("candidates").get(0)
+            .path("content")
+            .path("parts").get(0)
+            .path("text")
+            .asText();
+
+        // Cache successful response
+        cacheResponse(cacheKey, responseText);
+        
+        // DEBUG: Log the actual AI response
+        payloadLog.log("🤖 AI Response", responseText);
+
+        return parseEventsFromLLMResponse(responseText);
     }
     
     /**
@@ -312,7 +414,7 @@ public class CalendarEventCreationService {
      */
     private void recordRateLimit() {
         rateLimitTracker.put("lastRateLimit", Instant.now());
-        logger.warning("🔴 Rate limit recorded - implementing backoff strategy");
+        logger.warn("🔴 Rate limit recorded - implementing backoff strategy");
     }
     
     /**
@@ -326,7 +428,7 @@ public class CalendarEventCreationService {
         }
         
         responseCache.put(key, response);
-        logger.info("💾 Cached response for key: " + key.substring(0, Math.min(30, key.length())) + "...");
+        logger.debug("💾 Cached response ({} entries)", responseCache.size());
     }
     
     /**
@@ -339,7 +441,7 @@ public class CalendarEventCreationService {
         
         // Filter out edge cases and invalid inputs first
         if (isEdgeCaseOrInvalid(input)) {
-            logger.info("🎭 Edge case detected for '" + userInput + "': returning no events");
+            logger.debug("🎭 Edge case detected: returning no events");
             return simulatedEvents; // Return empty list
         }
         
@@ -354,10 +456,10 @@ public class CalendarEventCreationService {
             // Special handling for follow-up events like "a day after that" or "a day later"
             if (input.contains("a day after that") || input.contains("day after that")) {
                 days = 1; // Default to tomorrow, but this should be calculated based on recent events
-                logger.info("📚 Book reading event with follow-up reference detected, setting to " + days + " day");
+                logger.debug("📚 Book reading event with follow-up reference detected, setting to {} day", days);
             } else if (input.contains("a day later") || input.contains("day later")) {
                 days = 8; // Default to next Friday when context is missing
-                logger.info("📚 Book reading event 'a day later' detected, setting to " + days + " days");
+                logger.debug("📚 Book reading event 'a day later' detected, setting to {} days", days);
             }
             
             if (days > 0) simulatedEvents.add(new ExtractedEvent("Book Reading Event", days));
@@ -403,11 +505,11 @@ public class CalendarEventCreationService {
             if (input.contains("after") && input.contains("dentist")) {
                 // "2 hours after the dentist appointment"
                 days = 5; // Next Tuesday (when dentist appointment is)
-                logger.info("🔗 Dependency detected: dinner after dentist, setting to " + days + " days");
+                logger.debug("🔗 Dependency detected: dinner after dentist, setting to {} days", days);
             } else if (input.contains("weekend after") && input.contains("graduation")) {
                 // "weekend after the graduation" 
                 days = 32; // Weekend after next month graduation
-                logger.info("🔗 Dependency detected: weekend after graduation, setting to " + days + " days");
+                logger.debug("🔗 Dependency detected: weekend after graduation, setting to {} days", days);
             }
             
             // Force creation for dependency-based events even if days was initially 0
@@ -437,7 +539,7 @@ public class CalendarEventCreationService {
             if (input.contains("call") && input.contains("day before") && input.contains("flight")) {
                 // "conference call the day before my flight to Japan"
                 days = 10; // Day before the flight (which is next Monday = 11 days)
-                logger.info("🔗 Dependency detected: conference call before flight, setting to " + days + " days");
+                logger.debug("🔗 Dependency detected: conference call before flight, setting to {} days", days);
             } else if (input.contains("week after") && input.contains("conference")) {
                 // "week after the conference"
                 days = days + 7; // Add a week
@@ -546,7 +648,7 @@ public class CalendarEventCreationService {
             // Handle recurring training pattern
             if (input.contains("every other day") || input.contains("until")) {
                 days = 2; // Start with day after tomorrow for recurring training
-                logger.info("🏃 Recurring training pattern detected, starting in " + days + " days");
+                logger.debug("🏃 Recurring training pattern detected, starting in {} days", days);
             }
             
             String title = input.contains("training") ? "Training Run" : "Marathon";
@@ -619,7 +721,7 @@ public class CalendarEventCreationService {
             simulatedEvents.add(new ExtractedEvent("Client Presentation", days));
         }
         
-        logger.info("🎭 Enhanced simulation for '" + userInput + "': " + simulatedEvents.size() + " events");
+        logger.debug("🎭 Enhanced simulation: {} events", simulatedEvents.size());
         return simulatedEvents;
     }
     
@@ -633,7 +735,7 @@ public class CalendarEventCreationService {
         // First check for dependency-based time expressions
         int dependencyDays = calculateDependencyDays(input);
         if (dependencyDays > 0) {
-            logger.info("🔗 Dependency calculation: '" + input + "' → " + dependencyDays + " days");
+            logger.debug("🔗 Dependency calculation: {} days", dependencyDays);
             return dependencyDays;
         }
         
@@ -912,7 +1014,7 @@ public class CalendarEventCreationService {
     
     private List<ExtractedEvent> parseEventsFromLLMResponse(String responseText) {
         try {
-            logger.info("🔍 Parsing LLM response: " + responseText);
+            logger.debug("🔍 Parsing LLM response ({} chars)", responseText.length());
             
             String cleanedResponse = responseText.trim();
             
@@ -937,10 +1039,10 @@ public class CalendarEventCreationService {
                 cleanedResponse = cleanedResponse.substring(jsonStart, jsonEnd + 1);
             }
             
-            logger.info("🧹 Cleaned response: " + cleanedResponse);
+            payloadLog.log("🧹 Cleaned response", cleanedResponse);
             
             if (cleanedResponse.equals("[]") || cleanedResponse.isEmpty()) {
-                logger.info("⚠️ AI returned empty array or empty response");
+                logger.debug("⚠️ AI returned empty array or empty response");
                 return new ArrayList<>();
             }
             
@@ -948,35 +1050,37 @@ public class CalendarEventCreationService {
             List<ExtractedEvent> events = new ArrayList<>();
             
             if (!eventsArray.isArray()) {
-                logger.warning("❌ Response is not a JSON array: " + cleanedResponse);
+                logger.warn("❌ Response is not a JSON array ({} chars)", cleanedResponse.length());
+                payloadLog.log("❌ Response is not a JSON array", cleanedResponse);
                 return new ArrayList<>();
             }
             
-            logger.info("📝 Parsed JSON array with " + eventsArray.size() + " items");
+            logger.debug("📝 Parsed JSON array with {} items", eventsArray.size());
             
             for (JsonNode eventNode : eventsArray) {
                 String title = eventNode.path("title").asText("");
                 int daysFromToday = eventNode.path("daysFromToday").asInt(-1);
                 
-                logger.info("🎯 Parsed event: title='" + title + "', daysFromToday=" + daysFromToday);
+                logger.debug("🎯 Parsed event: title='{}', daysFromToday={}", title, daysFromToday);
                 
                 // Enhanced validation
                 if (!title.isEmpty() && daysFromToday >= 0 && daysFromToday <= 365) {
                     // Clean up the title
                     String cleanTitle = formatEventTitle(title);
                     events.add(new ExtractedEvent(cleanTitle, daysFromToday));
-                    logger.info("✅ Added event: " + cleanTitle);
+                    logger.debug("✅ Added event: {}", cleanTitle);
                 } else {
-                    logger.warning("❌ Rejected event: title='" + title + "', daysFromToday=" + daysFromToday + 
-                                 " (invalid title or days out of range)");
+                    logger.warn("❌ Rejected event: title='{}', daysFromToday={} (invalid title or days out of range)",
+                        title, daysFromToday);
                 }
             }
             
-            logger.info("🏁 Total extracted events: " + events.size());
+            logger.debug("🏁 Total extracted events: {}", events.size());
             return events;
             
         } catch (Exception e) {
-            logger.warning("❌ Error parsing LLM response: " + e.getMessage() + ", Response: " + responseText);
+            logger.warn("❌ Error parsing LLM response: {}", e.getMessage());
+            payloadLog.log("❌ Unparseable LLM response", responseText);
             // Try to extract at least something useful from malformed responses
             return attemptFallbackParsing(responseText);
         }
@@ -1006,21 +1110,19 @@ public class CalendarEventCreationService {
                         
                         if (!title.isEmpty() && days >= 0 && days <= 365) {
                             events.add(new ExtractedEvent(formatEventTitle(title), days));
-                            logger.info("🔧 Fallback extracted: " + title + " in " + days + " days");
+                            logger.debug("🔧 Fallback extracted: {} in {} days", title, days);
                         }
                     }
                 }
             }
         } catch (Exception e) {
-            logger.warning("🚫 Fallback parsing also failed: " + e.getMessage());
+            logger.warn("🚫 Fallback parsing also failed: {}", e.getMessage());
         }
         
         return events;
     }
     
-    private CalendarEvent createCalendarEvent(ExtractedEvent extractedEvent, User user) {
-        logger.info("🔧 Creating calendar event from: title='" + extractedEvent.title + "', daysFromToday=" + extractedEvent.daysFromToday);
-        
+    private CalendarEvent buildCalendarEvent(ExtractedEvent extractedEvent, User user) {
         CalendarEvent event = new CalendarEvent();
         event.setUser(user);
         event.setTitle(formatEventTitle(extractedEvent.title));
@@ -1028,18 +1130,10 @@ public class CalendarEventCreationService {
         LocalDate startDate = LocalDate.now().plusDays(extractedEvent.daysFromToday);
         event.setStart(startDate);
         
-        logger.info("📅 Set start date to: " + startDate + " (today + " + extractedEvent.daysFromToday + " days)");
-        
         event.setAllDay(true);
         event.setDescription("Created from: \"" + extractedEvent.title + "\" (" + extractedEvent.daysFromToday + " days from today)");
         event.setEventColor(determineEventColor(extractedEvent.title));
         
-        logger.info("💾 About to persist event: " + event.getTitle() + " on " + event.getStart());
-        
-        entityManager.persist(event);
-        
-        logger.info("✅ Successfully persisted event: " + event.getTitle());
-        
         return event;
     }
     
@@ -1082,22 +1176,38 @@ public class CalendarEventCreationService {
     
     public static class EventCreationResult {
         private final List<CalendarEvent> createdEvents;
+        private final List<CalendarConflictDetector.ConflictReport> conflicts;
         private final List<String> errors;
         
-        public EventCreationResult(List<CalendarEvent> createdEvents, List<String> errors) {
+        private final boolean deferred;
+        
+        public EventCreationResult(List<CalendarEvent> createdEvents, 
+                                   List<CalendarConflictDetector.ConflictReport> conflicts,
+                                   List<String> errors) {
+            this(createdEvents, conflicts, errors, false);
+        }
+        
+        public EventCreationResult(List<CalendarEvent> createdEvents, 
+                                   List<CalendarConflictDetector.ConflictReport> conflicts,
+                                   List<String> errors, boolean deferred) {
             this.createdEvents = createdEvents;
+            this.conflicts = conflicts;
             this.errors = errors;
+            this.deferred = deferred;
         }
         
         public List<CalendarEvent> getCreatedEvents() { return createdEvents; }
+        public List<CalendarConflictDetector.ConflictReport> getConflicts() { return conflicts; }
         public List<String> getErrors() { return errors; }
         public boolean hasEvents() { return !createdEvents.isEmpty(); }
+        public boolean hasConflicts() { return !conflicts.isEmpty(); }
         public boolean hasErrors() { return !errors.isEmpty(); }
+        public boolean isDeferred() { return deferred; }
         
         @Override
         public String toString() {
-            return String.format("EventCreationResult{events=%d, errors=%d}", 
-                               createdEvents.size(), errors.size());
+            return String.format("EventCreationResult{events=%d, conflicts=%d, errors=%d, deferred=%s}", 
+                               createdEvents.size(), conflicts.size(), errors.size(), deferred);
         }
     }
 }
\ No newline at end of file
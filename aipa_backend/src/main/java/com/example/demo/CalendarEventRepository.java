@@ -0,0 +1,28 @@
+package com.example.demo;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface CalendarEventRepository extends JpaRepository<CalendarEvent, UUID> {
+    
+    @Query("SELECT e FROM CalendarEvent e WHERE e.user.id = ?1 AND e.start >= ?2 AND e.start < ?3 ORDER BY e.start")
+    List<CalendarEvent> findInRange(UUID userId, LocalDate from, LocalDate toExclusive, Pageable pageable);
+    
+    @Query("SELECT e FROM CalendarEvent e WHERE e.user.id = ?1 AND e.start BETWEEN ?2 AND ?3 ORDER BY e.start DESC")
+    List<CalendarEvent> findLatestBetween(UUID userId, LocalDate from, LocalDate to, Pageable pageable);
+    
+    @Query("SELECT e FROM CalendarEvent e WHERE e.user.id = ?1 AND e.start >= ?2 ORDER BY e.start")
+    List<CalendarEvent> findUpcoming(UUID userId, LocalDate from, Pageable pageable);
+    
+    @Query("SELECT COUNT(e) FROM CalendarEvent e WHERE e.user.id = ?1 AND e.start >= ?2")
+    long countUpcoming(UUID userId, LocalDate from);
+    
+    @Query("SELECT e FROM CalendarEvent e WHERE e.user.id = ?1")
+    List<CalendarEvent> findAllForUser(UUID userId);
+}
@@ -0,0 +1,384 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Streaming bulk import and export of calendar events as iCalendar (.ics) or NDJSON.
+ * Input is parsed line by line and handed to {@link CalendarEventBatchService} in
+ * fixed-size chunks, so memory use does not grow with the size of the upload.
+ */
+@Service
+public class CalendarImportExportService {
+
+    private static final Logger logger = Logger.getLogger(CalendarImportExportService.class.getName());
+
+    private static final DateTimeFormatter ICS_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final DateTimeFormatter ICS_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    private static final int MAX_REPORTED_ERRORS = 50;
+    private static final int ICS_LINE_LIMIT = 75;
+
+    private final CalendarEventBatchService calendarEventBatchService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.calendar.import.chunk-size:500}")
+    private int chunkSize;
+
+    public CalendarImportExportService(CalendarEventBatchService calendarEventBatchService) {
+        this.calendarEventBatchService = calendarEventBatchService;
+    }
+
+    public enum CalendarFileFormat {
+        ICS("text/calendar", "ics"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        CalendarFileFormat(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() { return contentType; }
+        public String getExtension() { return extension; }
+
+        public static CalendarFileFormat fromName(String name) {
+            if (name == null) {
+                return null;
+            }
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (lower.endsWith(".ics") || lower.equals("ics") || lower.startsWith("text/calendar")) {
+                return ICS;
+            }
+            if (lower.endsWith(".ndjson") || lower.endsWith(".jsonl") || lower.equals("ndjson")
+                    || lower.startsWith("application/x-ndjson")) {
+                return NDJSON;
+            }
+            return null;
+        }
+    }
+
+    public ImportResult importEvents(User user, InputStream input, CalendarFileFormat format) throws IOException {
+        ImportResult result = new ImportResult();
+        Set<String> knownKeys = calendarEventBatchService.loadAllKeys(user);
+        List<CalendarEvent> chunk = new ArrayList<>(chunkSize);
+
+        Consumer<CalendarEvent> sink = event -> {
+            chunk.add(event);
+            if (chunk.size() >= chunkSize) {
+                flushChunk(user, chunk, knownKeys, result);
+            }
+        };
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            if (format == CalendarFileFormat.ICS) {
+                parseIcs(reader, sink, result);
+            } else {
+                parseNdjson(reader, sink, result);
+            }
+        }
+        flushChunk(user, chunk, knownKeys, result);
+
+        logger.info("Calendar import finished for user " + user.getId() + ": " + result);
+        return result;
+    }
+
+    private void flushChunk(User user, List<CalendarEvent> chunk, Set<String> knownKeys, ImportResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        Set<String> newKeys = new HashSet<>();
+        for (CalendarEvent event : chunk) {
+            String key = CalendarEventBatchService.dedupKey(event.getTitle(), event.getStart());
+            if (!knownKeys.contains(key)) {
+                newKeys.add(key);
+            }
+        }
+
+        try {
+            CalendarEventBatchService.BatchResult batch =
+                calendarEventBatchService.saveImportedChunk(user, chunk, knownKeys);
+            result.imported += batch.getSavedEvents().size();
+            result.duplicates += batch.getDuplicateEvents().size();
+            result.rejected += batch.getInvalidEvents().size();
+        } catch (Exception e) {
+            // The chunk was rolled back, so its keys must not block a later retry
+            knownKeys.removeAll(newKeys);
+            result.failed += chunk.size();
+            result.addError("Chunk of " + chunk.size() + " events failed: " + e.getMessage());
+            logger.warning("Calendar import chunk failed: " + e.getMessage());
+        }
+        chunk.clear();
+    }
+
+    private void parseNdjson(BufferedReader reader, Consumer<CalendarEvent> sink, ImportResult result) throws IOException {
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                JsonNode node = objectMapper.readTree(line);
+                CalendarEvent event = new CalendarEvent();
+                event.setTitle(node.path("title").asText(null));
+                String start = node.path("start").asText(null);
+                event.setStart(start == null ? null : LocalDate.parse(start.length() > 10 ? start.substring(0, 10) : start));
+                event.setDescription(node.path("description").asText(null));
+                event.setAllDay(node.has("allDay") ? node.get("allDay").asBoolean(true) : true);
+                event.setEventColor(node.path("eventColor").asText(null));
+                event.setPlanTitle(node.path("planTitle").asText(null));
+                acceptParsed(event, "line " + lineNumber, sink, result);
+            } catch (Exception e) {
+                result.rejected++;
+                result.addError("Line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void parseIcs(BufferedReader reader, Consumer<CalendarEvent> sink, ImportResult result) throws IOException {
+        CalendarEvent current = null;
+        long eventNumber = 0;
+        String pending = reader.readLine();
+
+        while (pending != null) {
+            // RFC 5545 unfolding: continuation lines start with a space or tab
+            StringBuilder logical = new StringBuilder(pending);
+            String next = reader.readLine();
+            while (next != null && !next.isEmpty() && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+                logical.append(next, 1, next.length());
+                next = reader.readLine();
+            }
+            pending = next;
+
+            String line = logical.toString();
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String nameAndParams = line.substring(0, colon);
+            String value = line.substring(colon + 1);
+            int semicolon = nameAndParams.indexOf(';');
+            String name = (semicolon < 0 ? nameAndParams : nameAndParams.substring(0, semicolon)).toUpperCase(Locale.ROOT);
+
+            if (name.equals("BEGIN") && value.equalsIgnoreCase("VEVENT")) {
+                current = new CalendarEvent();
+                current.setAllDay(true);
+                eventNumber++;
+            } else if (name.equals("END") && value.equalsIgnoreCase("VEVENT")) {
+                if (current != null) {
+                    acceptParsed(current, "event " + eventNumber, sink, result);
+                }
+                current = null;
+            } else if (current != null) {
+                try {
+                    switch (name) {
+                        case "SUMMARY" -> current.setTitle(unescapeText(value));
+                        case "DESCRIPTION" -> current.setDescription(unescapeText(value));
+                        case "DTSTART" -> {
+                            current.setStart(LocalDate.parse(value.substring(0, 8), ICS_DATE));
+                            current.setAllDay(value.length() == 8);
+                        }
+                        case "X-AIPA-COLOR", "COLOR" -> current.setEventColor(value);
+                        case "X-AIPA-PLAN-TITLE" -> current.setPlanTitle(unescapeText(value));
+                        default -> { }
+                    }
+                } catch (Exception e) {
+                    result.rejected++;
+                    result.addError("Event " + eventNumber + ": bad " + name + " value '" + value + "'");
+                    current = null;
+                }
+            }
+        }
+    }
+
+    private void acceptParsed(CalendarEvent event, String location, Consumer<CalendarEvent> sink, ImportResult result) {
+        if (event.getTitle() == null || event.getTitle().isBlank() || event.getStart() == null) {
+            result.rejected++;
+            result.addError(location + ": title and start date are required");
+            return;
+        }
+        if (event.getTitle().length() > 255) {
+            event.setTitle(event.getTitle().substring(0, 255));
+        }
+        if (event.getDescription() != null && event.getDescription().length() > 1000) {
+            event.setDescription(event.getDescription().substring(0, 1000));
+        }
+        sink.accept(event);
+    }
+
+    /**
+     * Streams every event of the user to {@code output}. Rows are read through a JPA result
+     * stream and detached as they are written, so the export never holds the whole calendar.
+     */
+    @Transactional(readOnly = true)
+    public void exportEvents(User user, CalendarFileFormat format, OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+
+        if (format == CalendarFileFormat.ICS) {
+            writeIcsLine(writer, "BEGIN:VCALENDAR");
+            writeIcsLine(writer, "VERSION:2.0");
+            writeIcsLine(writer, "PRODID:-//AIPA//Calendar Export//EN");
+        }
+
+        String stamp = ICS_TIMESTAMP.format(Instant.now());
+        try (Stream<CalendarEvent> events = entityManager
+                .createQuery("SELECT e FROM CalendarEvent e WHERE e.user = :user ORDER BY e.start", CalendarEvent.class)
+                .setParameter("user", user)
+                .setHint("org.hibernate.fetchSize", chunkSize)
+                .getResultStream()) {
+
+            Iterator<CalendarEvent> iterator = events.iterator();
+            while (iterator.hasNext()) {
+                CalendarEvent event = iterator.next();
+                if (format == CalendarFileFormat.ICS) {
+                    writeIcsEvent(writer, event, stamp);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(toExportMap(event)));
+                    writer.write('\n');
+                }
+                entityManager.detach(event);
+            }
+        }
+
+        if (format == CalendarFileFormat.ICS) {
+            writeIcsLine(writer, "END:VCALENDAR");
+        }
+        writer.flush();
+    }
+
+    private Map<String, Object> toExportMap(CalendarEvent event) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", event.getId() != null ? event.getId().toString() : null);
+        map.put("title", event.getTitle());
+        map.put("start", event.getStart().toString());
+        map.put("description", event.getDescription());
+        map.put("allDay", event.getAllDay());
+        map.put("eventColor", event.getEventColor());
+        map.put("planTitle", event.getPlanTitle());
+        return map;
+    }
+
+    private void writeIcsEvent(Writer writer, CalendarEvent event, String stamp) throws IOException {
+        writeIcsLine(writer, "BEGIN:VEVENT");
+        writeIcsLine(writer, "UID:" + event.getId() + "@aipa");
+        writeIcsLine(writer, "DTSTAMP:" + stamp);
+        writeIcsLine(writer, "DTSTART;VALUE=DATE:" + ICS_DATE.format(event.getStart()));
+        writeIcsLine(writer, "SUMMARY:" + escapeText(event.getTitle()));
+        if (event.getDescription() != null) {
+            writeIcsLine(writer, "DESCRIPTION:" + escapeText(event.getDescription()));
+        }
+        if (event.getEventColor() != null) {
+            writeIcsLine(writer, "X-AIPA-COLOR:" + event.getEventColor());
+        }
+        if (event.getPlanTitle() != null) {
+            writeIcsLine(writer, "X-AIPA-PLAN-TITLE:" + escapeText(event.getPlanTitle()));
+        }
+        writeIcsLine(writer, "END:VEVENT");
+    }
+
+    /**
+     * Writes one content line, folded as RFC 5545 requires: at most 75 octets per line,
+     * counting the leading space of a continuation, and only split between code points
+     * so no UTF-8 sequence or surrogate pair is cut in half.
+     */
+    private static void writeIcsLine(Writer writer, String line) throws IOException {
+        int start = 0;
+        int octets = 0;
+        int limit = ICS_LINE_LIMIT;
+        for (int i = 0; i < line.length(); ) {
+            int codePoint = line.codePointAt(i);
+            int width = utf8Length(codePoint);
+            if (octets + width > limit) {
+                writer.write(line, start, i - start);
+                writer.write("\r\n ");
+                start = i;
+                octets = 0;
+                limit = ICS_LINE_LIMIT - 1;
+            }
+            octets += width;
+            i += Character.charCount(codePoint);
+        }
+        writer.write(line, start, line.length() - start);
+        writer.write("\r\n");
+    }
+
+    private static int utf8Length(int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        }
+        if (codePoint < 0x800) {
+            return 2;
+        }
+        return codePoint < 0x10000 ? 3 : 4;
+    }
+
+    private static String escapeText(String text) {
+        return text.replace("\\", "\\\\")
+                   .replace(";", "\\;")
+                   .replace(",", "\\,")
+                   .replace("\r\n", "\\n")
+                   .replace("\n", "\\n");
+    }
+
+    private static String unescapeText(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                out.append(next == 'n' || next == 'N' ? '\n' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    public static class ImportResult {
+        private int imported;
+        private int duplicates;
+        private int rejected;
+        private int failed;
+        private final List<String> errors = new ArrayList<>();
+
+        void addError(String error) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(error);
+            }
+        }
+
+        public int getImported() { return imported; }
+        public int getDuplicates() { return duplicates; }
+        public int getRejected() { return rejected; }
+        public int getFailed() { return failed; }
+        public List<String> getErrors() { return errors; }
+
+        @Override
+        public String toString() {
+            return String.format("ImportResult{imported=%d, duplicates=%d, rejected=%d, failed=%d}",
+                               imported, duplicates, rejected, failed);
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.example.demo;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -11,76 +10,38 @@ import java.util.UUID;
 @Service
 public class CalendarSessionContextService {
     
-    private final CalendarController calendarController;
+    private static final int MAX_CONTEXT_EVENTS = 10;
+    
+    private static final String CONTEXT_INSTRUCTIONS = 
+        "\nCONTEXT INSTRUCTIONS FOR AI:\n" +
+        "- Be aware of these events when user mentions dates or scheduling\n" +
+        "- Schedule conflicts are computed by the server and listed separately when present\n" +
+        "- Reference existing events naturally when relevant\n" +
+        "- Help user remember events they might have forgotten\n" +
+        "- Suggest reminders for important upcoming events\n" +
+        "================================================\n";
+    
+    private final UpcomingEventsCache upcomingEventsCache;
     
     @Autowired
-    public CalendarSessionContextService(CalendarController calendarController) {
-        this.calendarController = calendarController;
+    public CalendarSessionContextService(UpcomingEventsCache upcomingEventsCache) {
+        this.upcomingEventsCache = upcomingEventsCache;
     }
     
     
-    @Transactional(readOnly = true)
+    /**
+     * The events block comes pre-rendered from {@link UpcomingEventsCache}; only the
+     * session header is assembled per call, so this is cheap enough to run every turn.
+     */
     public String generateCalendarEventsContext(UUID userId, String sessionId) {
         try {
-            StringBuilder context = new StringBuilder();
-            context.append("\n=== SESSION CALENDAR EVENTS CONTEXT ===\n");
-            context.append("Session ID: ").append(sessionId).append("\n");
-            context.append("Generated at: ").append(LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE)).append("\n\n");
-            
-            
-            List<CalendarEvent> events = getAllUserEvents(userId);
-            
-            if (events.isEmpty()) {
-                context.append("CALENDAR STATUS: No upcoming events found.\n");
-            } else {
-                context.append("CALENDAR STATUS: ").append(events.size()).append(" events found.\n");
-                context.append("EVENTS OVERVIEW:\n");
-                
-                LocalDate today = LocalDate.now();
-                int eventCount = 0;
-                
-                for (CalendarEvent event : events) {
-                    if (eventCount >= 10) { 
-                        context.append("... and ").append(events.size() - eventCount).append(" more events\n");
-                        break;
-                    }
-                    
-                    LocalDate eventDate = event.getStart();
-                    long daysFromToday = java.time.temporal.ChronoUnit.DAYS.between(today, eventDate);
-                    
-                    context.append("- ").append(event.getTitle());
-                    
-                    if (daysFromToday == 0) {
-                        context.append(" (TODAY)");
-                    } else if (daysFromToday == 1) {
-                        context.append(" (TOMORROW)");
-                    } else if (daysFromToday > 0) {
-                        context.append(" (in ").append(daysFromToday).append(" days)");
-                    } else {
-                        context.append(" (").append(Math.abs(daysFromToday)).append(" days ago)");
-                    }
-                    
-                    if (event.getDescription() != null && !event.getDescription().trim().isEmpty()) {
-                        String shortDesc = event.getDescription().length() > 50 ? 
-                            event.getDescription().substring(0, 47) + "..." : 
-                            event.getDescription();
-                        context.append(" - ").append(shortDesc);
-                    }
-                    
-                    context.append("\n");
-                    eventCount++;
-                }
-            }
+            String eventsBlock = upcomingEventsCache.getRendered(userId, MAX_CONTEXT_EVENTS, this::renderEvents);
             
-            context.append("\nCONTEXT INSTRUCTIONS FOR AI:\n");
-            context.append("- Be aware of these events when user mentions dates or scheduling\n");
-            context.append("- Detect potential conflicts when user suggests new events\n");
-            context.append("- Reference existing events naturally when relevant\n");
-            context.append("- Help user remember events they might have forgotten\n");
-            context.append("- Suggest reminders for important upcoming events\n");
-            context.append("================================================\n");
-            
-            return context.toString();
+            return "\n=== SESSION CALENDAR EVENTS CONTEXT ===\n" +
+                   "Session ID: " + sessionId + "\n" +
+                   "Generated at: " + LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE) + "\n\n" +
+                   eventsBlock +
+                   CONTEXT_INSTRUCTIONS;
             
         } catch (Exception e) {
             System.err.println("Error generating calendar events context: " + e.getMessage());
@@ -90,26 +51,54 @@ public class CalendarSessionContextService {
     }
     
     
-    private List<CalendarEvent> getAllUserEvents(UUID userId) {
-        try {
+    private String renderEvents(List<UpcomingEventsCache.UpcomingEvent> events, long totalEvents, LocalDate today) {
+        StringBuilder context = new StringBuilder();
+        
+        if (events.isEmpty()) {
+            context.append("CALENDAR STATUS: No upcoming events found.\n");
+            return context.toString();
+        }
+        
+        context.append("CALENDAR STATUS: ").append(totalEvents).append(" events found.\n");
+        context.append("EVENTS OVERVIEW:\n");
+        
+        for (UpcomingEventsCache.UpcomingEvent event : events) {
+            long daysFromToday = java.time.temporal.ChronoUnit.DAYS.between(today, event.getStart());
             
+            context.append("- ").append(event.getTitle());
             
-            return calendarController.getUserCalendarEventsDirect(userId);
-        } catch (Exception e) {
-            System.err.println("Error fetching user calendar events: " + e.getMessage());
-            return List.of(); 
+            if (daysFromToday == 0) {
+                context.append(" (TODAY)");
+            } else if (daysFromToday == 1) {
+                context.append(" (TOMORROW)");
+            } else {
+                context.append(" (in ").append(daysFromToday).append(" days)");
+            }
+            
+            if (event.getDescription() != null && !event.getDescription().trim().isEmpty()) {
+                String shortDesc = event.getDescription().length() > 50 ? 
+                    event.getDescription().substring(0, 47) + "..." : 
+                    event.getDescription();
+                context.append(" - ").append(shortDesc);
+            }
+            
+            context.append("\n");
         }
+        
+        if (totalEvents > events.size()) {
+            context.append("... and ").append(totalEvents - events.size()).append(" more events\n");
+        }
+        
+        return context.toString();
     }
     
     
     public String generateEventsSummary(UUID userId) {
         try {
-            List<CalendarEvent> events = getAllUserEvents(userId);
-            return String.format("User %s has %d calendar events", 
-                userId.toString().substring(0, 8), events.size());
+            return String.format("User %s has %d upcoming calendar events", 
+                userId.toString().substring(0, 8), upcomingEventsCache.countUpcoming(userId));
         } catch (Exception e) {
             return "Could not generate events summary: " + e.getMessage();
         }
     }
 }
-
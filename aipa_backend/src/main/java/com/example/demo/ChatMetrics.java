@@ -0,0 +1,168 @@
+package com.example.demo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters for the chat pipeline, published at {@code /actuator/prometheus}:
+ *
+ * <ul>
+ *   <li>{@code aipa.chat.request} - a whole {@code /api/generate} call, until the reply is emitted</li>
+ *   <li>{@code aipa.chat.stage} - each step of it, tagged {@code stage}</li>
+ *   <li>{@code aipa.llm.requests} - Gemini calls, tagged {@code call} and {@code outcome}</li>
+ *   <li>{@code aipa.llm.tokens} - token counts Gemini reports, tagged {@code call} and {@code type}</li>
+ *   <li>{@code aipa.llm.fallbacks} - answers produced without Gemini, tagged {@code component} and {@code reason}</li>
+ *   <li>{@code aipa.cache.lookups} - cache hits and misses, tagged {@code cache} and {@code result}</li>
+ * </ul>
+ *
+ * Timers publish percentile histograms so p95/p99 can be computed across instances.
+ *
+ * Stages and Gemini calls are recorded as Observations, so with tracing enabled each one is
+ * also a span: stages are children of the {@code /api/generate} server span, and a Gemini
+ * call is a child of whatever was current when the reply was assembled, with the WebClient
+ * HTTP span beneath it.
+ */
+@Component
+public class ChatMetrics {
+
+    private final MeterRegistry registry;
+    private final ObservationRegistry observationRegistry;
+
+    public ChatMetrics(MeterRegistry registry, ObservationRegistry observationRegistry) {
+        this.registry = registry;
+        this.observationRegistry = observationRegistry;
+    }
+
+    public <T> T timeStage(String stage, Supplier<T> work) {
+        return Observation.createNotStarted("aipa.chat.stage", observationRegistry)
+            .contextualName("chat " + stage)
+            .lowCardinalityKeyValue("stage", stage)
+            .observe(work);
+    }
+
+    public void timeStage(String stage, Runnable work) {
+        timeStage(stage, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Times {@code reply} from the start of the request ({@code startedNanos}) until it completes.
+     * Gemini calls made while the reply is streamed are parented to the observation that was
+     * current here, even though they run on a WebClient thread.
+     */
+    public <T> Flux<T> timeRequest(long startedNanos, Flux<T> reply) {
+        Observation current = observationRegistry.getCurrentObservation();
+        return reply
+            .doFinally(signal -> timer("aipa.chat.request", "Time to answer /api/generate")
+                .record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS))
+            .contextWrite(context -> current == null ? context
+                : context.put(ObservationThreadLocalAccessor.KEY, current));
+    }
+
+    /**
+     * Times a Gemini call from subscription to its result. Outcome is {@code success},
+     * {@code rate_limited} for a 429, {@code error} or {@code cancelled}. When the result is a
+     * Gemini response its {@code usageMetadata} token counts are recorded as well.
+     */
+    public <T> Mono<T> timeLlmCall(String call, String model, int promptChars, Mono<T> request) {
+        return Mono.deferContextual(context -> {
+            Observation observation = Observation.createNotStarted("aipa.llm.requests", observationRegistry)
+                .contextualName("gemini " + call)
+                .parentObservation(context.getOrDefault(ObservationThreadLocalAccessor.KEY,
+                    observationRegistry.getCurrentObservation()))
+                .lowCardinalityKeyValue("call", call)
+                .lowCardinalityKeyValue("model", model)
+                .highCardinalityKeyValue("prompt.chars", String.valueOf(promptChars))
+                .start();
+            return request
+                .doOnSuccess(value -> {
+                    if (value instanceof JsonNode) {
+                        recordTokens(call, (JsonNode) value, observation);
+                    }
+                    stop(observation, "success");
+                })
+                .doOnError(error -> {
+                    observation.error(error);
+                    stop(observation, isRateLimited(error) ? "rate_limited" : "error");
+                })
+                .doOnCancel(() -> stop(observation, "cancelled"))
+                .contextWrite(ctx -> ctx.put(ObservationThreadLocalAccessor.KEY, observation));
+        });
+    }
+
+    public void recordFallback(String component, String reason) {
+        Counter.builder("aipa.llm.fallbacks")
+            .description("Answers produced without Gemini")
+            .tag("component", component)
+            .tag("reason", reason)
+            .register(registry)
+            .increment();
+    }
+
+    public void recordCacheLookup(String cache, boolean hit) {
+        Counter.builder("aipa.cache.lookups")
+            .tag("cache", cache)
+            .tag("result", hit ? "hit" : "miss")
+            .register(registry)
+            .increment();
+    }
+
+    private Timer timer(String name, String description) {
+        return Timer.builder(name)
+            .description(description)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+
+    private static void stop(Observation observation, String outcome) {
+        observation.lowCardinalityKeyValue("outcome", outcome).stop();
+    }
+
+    private void recordTokens(String call, JsonNode response, Observation observation) {
+        JsonNode usage = response.get("usageMetadata");
+        if (usage == null) {
+            return;
+        }
+        recordTokenCount(call, "prompt", usage.path("promptTokenCount"), observation);
+        recordTokenCount(call, "candidates", usage.path("candidatesTokenCount"), observation);
+        recordTokenCount(call, "cached", usage.path("cachedContentTokenCount"), observation);
+    }
+
+    private void recordTokenCount(String call, String type, JsonNode count, Observation observation) {
+        if (!count.isNumber()) {
+            return;
+        }
+        observation.highCardinalityKeyValue("tokens." + type, count.asText());
+        DistributionSummary.builder("aipa.llm.tokens")
+            .description("Tokens per Gemini call")
+            .baseUnit("tokens")
+            .tag("call", call)
+            .tag("type", type)
+            .register(registry)
+            .record(count.asLong());
+    }
+
+    private static boolean isRateLimited(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof WebClientResponseException
+                    && ((WebClientResponseException) cause).getStatusCode().value() == 429) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,320 @@
+package com.example.demo;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Admission control for {@code /api/generate}. At most {@code max-concurrent} chat replies are
+ * generated at once, and at most {@code per-user-concurrent} of them for any one user. A request
+ * over either limit waits in its user's queue of {@code per-user-queue} entries; when that queue
+ * is full it fails at once with {@link QueueFullException} and the endpoint answers 429 with
+ * Retry-After, so one user cannot take the Gemini quota and the request threads from everyone else.
+ *
+ * <p>When a slot frees up, the waiting user with the lowest virtual finish time goes next
+ * (self-clocked weighted fair queuing): each user's requests are stamped {@code 1 / weight}
+ * apart, starting no earlier than the scheduler's virtual clock, so users with work waiting
+ * take turns in proportion to their weight however many requests each has queued. Weights
+ * default to 1 and can be set per user with {@code app.chat.scheduler.weights=<user id>=<weight>,...}.
+ *
+ * <p>A request that got a slot straight away runs on the caller's thread as before. One that
+ * waited runs on the {@code blockingScheduler} from {@link ThreadingConfig}, because the chat
+ * pipeline blocks, and fails with the usual error reply after {@code max-wait-ms}.
+ */
+@Component
+public class ChatScheduler {
+
+    private final ObservationRegistry observationRegistry;
+    private final Scheduler blockingScheduler;
+    private final int maxConcurrent;
+    private final int perUserConcurrent;
+    private final int perUserQueue;
+    private final Duration maxWait;
+    private final Map<String, Double> weights;
+
+    // Guarded by this
+    private final Map<UUID, UserQueue> users = new HashMap<>();
+    private final Set<UserQueue> backlogged = new LinkedHashSet<>();
+    private int inFlight;
+    private int queued;
+    private double virtualTime;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private volatile double meanServiceSeconds = 5;
+
+    public ChatScheduler(ObservationRegistry observationRegistry, Scheduler blockingScheduler,
+                         @Value("${app.chat.scheduler.max-concurrent:16}") int maxConcurrent,
+                         @Value("${app.chat.scheduler.per-user-concurrent:2}") int perUserConcurrent,
+                         @Value("${app.chat.scheduler.per-user-queue:4}") int perUserQueue,
+                         @Value("${app.chat.scheduler.max-wait-ms:30000}") long maxWaitMillis,
+                         @Value("${app.chat.scheduler.weights:}") String weights) {
+        this.observationRegistry = observationRegistry;
+        this.blockingScheduler = blockingScheduler;
+        this.maxConcurrent = maxConcurrent;
+        this.perUserConcurrent = perUserConcurrent;
+        this.perUserQueue = perUserQueue;
+        this.maxWait = Duration.ofMillis(maxWaitMillis);
+        this.weights = parseWeights(weights);
+    }
+
+    /** {@code <user id>=<weight>,...} */
+    static Map<String, Double> parseWeights(String weights) {
+        Map<String, Double> parsed = new HashMap<>();
+        for (String entry : weights.split(",")) {
+            int equals = entry.indexOf('=');
+            if (equals > 0) {
+                parsed.put(entry.substring(0, equals).trim(), Double.parseDouble(entry.substring(equals + 1).trim()));
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Runs {@code reply} for {@code userId} once a slot is free and holds the slot until the
+     * returned Flux terminates or is cancelled.
+     *
+     * @throws QueueFullException when the user already has {@code per-user-queue} requests waiting
+     */
+    public <T> Flux<T> schedule(UUID userId, Supplier<Flux<T>> reply) {
+        Waiter waiter;
+        synchronized (this) {
+            UserQueue user = users.computeIfAbsent(userId, id -> new UserQueue(id, weight(id)));
+            if (user.waiting.isEmpty() && user.inFlight < perUserConcurrent && inFlight < maxConcurrent) {
+                waiter = new Waiter(user, 0);
+                grant(waiter);
+            } else if (user.waiting.size() >= perUserQueue) {
+                rejected.incrementAndGet();
+                throw new QueueFullException(retryAfterSeconds(user));
+            } else {
+                user.lastFinish = Math.max(virtualTime, user.lastFinish) + 1 / user.weight;
+                waiter = new Waiter(user, user.lastFinish);
+                user.waiting.add(waiter);
+                backlogged.add(user);
+                queued++;
+            }
+        }
+
+        if (waiter.permit != null) {
+            admitted.incrementAndGet();
+            Permit permit = waiter.permit;
+            try {
+                return reply.get().doFinally(signal -> permit.release());
+            } catch (RuntimeException e) {
+                permit.release();
+                throw e;
+            }
+        }
+
+        delayed.incrementAndGet();
+        Observation parent = observationRegistry.getCurrentObservation();
+        return waiter.granted.asMono()
+            .doOnCancel(() -> cancel(waiter))
+            .timeout(maxWait)
+            .doOnError(TimeoutException.class, e -> timedOut.incrementAndGet())
+            .publishOn(blockingScheduler)
+            .flatMapMany(permit -> {
+                admitted.incrementAndGet();
+                return runWithin(parent, reply).doFinally(signal -> permit.release());
+            });
+    }
+
+    /** The pipeline's stage observations look for their parent on the current thread. */
+    private static <T> Flux<T> runWithin(Observation parent, Supplier<Flux<T>> reply) {
+        if (parent == null) {
+            return reply.get();
+        }
+        return parent.scoped(reply);
+    }
+
+    private double weight(UUID userId) {
+        Double weight = weights.get(userId.toString());
+        return weight != null && weight > 0 ? weight : 1.0;
+    }
+
+    // Called with the lock held
+    private void grant(Waiter waiter) {
+        waiter.user.inFlight++;
+        inFlight++;
+        waiter.permit = new Permit(waiter.user, System.nanoTime());
+    }
+
+    private void release(Permit permit) {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            permit.user.inFlight--;
+            inFlight--;
+            dispatch(granted);
+            removeIfIdle(permit.user);
+        }
+        long serviceNanos = System.nanoTime() - permit.grantedNanos;
+        meanServiceSeconds = 0.9 * meanServiceSeconds + 0.1 * serviceNanos / 1e9;
+        for (Waiter waiter : granted) {
+            long waited = System.nanoTime() - waiter.queuedNanos;
+            totalWaitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            waiter.granted.tryEmitValue(waiter.permit);
+        }
+    }
+
+    // Called with the lock held
+    private void dispatch(List<Waiter> granted) {
+        while (inFlight < maxConcurrent) {
+            Waiter next = null;
+            for (UserQueue user : backlogged) {
+                Waiter head = user.waiting.peekFirst();
+                if (user.inFlight < perUserConcurrent && (next == null || head.finishTag < next.finishTag)) {
+                    next = head;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            UserQueue user = next.user;
+            user.waiting.removeFirst();
+            queued--;
+            if (user.waiting.isEmpty()) {
+                backlogged.remove(user);
+            }
+            virtualTime = next.finishTag;
+            grant(next);
+            granted.add(next);
+        }
+    }
+
+    private void cancel(Waiter waiter) {
+        Permit permit;
+        synchronized (this) {
+            permit = waiter.permit;
+            if (permit == null && waiter.user.waiting.remove(waiter)) {
+                queued--;
+                if (waiter.user.waiting.isEmpty()) {
+                    backlogged.remove(waiter.user);
+                }
+                removeIfIdle(waiter.user);
+            }
+        }
+        if (permit != null) {
+            // Granted, but the caller went away before the reply started
+            permit.release();
+        }
+    }
+
+    // Called with the lock held
+    private void removeIfIdle(UserQueue user) {
+        if (user.inFlight == 0 && user.waiting.isEmpty()) {
+            users.remove(user.userId, user);
+        }
+    }
+
+    // Called with the lock held
+    private int retryAfterSeconds(UserQueue user) {
+        double seconds = meanServiceSeconds * (user.waiting.size() + 1) / perUserConcurrent;
+        return (int) Math.max(1, Math.ceil(seconds));
+    }
+
+    public synchronized int getInFlightCount() { return inFlight; }
+    public synchronized int getQueuedCount() { return queued; }
+    public synchronized int getActiveUserCount() { return users.size(); }
+    public long getAdmittedCount() { return admitted.get(); }
+    public long getDelayedCount() { return delayed.get(); }
+    public long getRejectedCount() { return rejected.get(); }
+    public long getTimedOutCount() { return timedOut.get(); }
+    public long getMaxWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()); }
+
+    public double getMeanWaitMillis() {
+        long count = delayed.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / count;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("inFlight", getInFlightCount());
+        snapshot.put("queued", getQueuedCount());
+        snapshot.put("activeUsers", getActiveUserCount());
+        snapshot.put("admitted", getAdmittedCount());
+        snapshot.put("delayed", getDelayedCount());
+        snapshot.put("rejected", getRejectedCount());
+        snapshot.put("timedOut", getTimedOutCount());
+        snapshot.put("meanWaitMs", getMeanWaitMillis());
+        snapshot.put("maxWaitMs", getMaxWaitMillis());
+        return snapshot;
+    }
+
+    private static final class UserQueue {
+        final UUID userId;
+        final double weight;
+        final Deque<Waiter> waiting = new ArrayDeque<>();
+        int inFlight;
+        double lastFinish;
+
+        UserQueue(UUID userId, double weight) {
+            this.userId = userId;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Waiter {
+        final UserQueue user;
+        final double finishTag;
+        final long queuedNanos = System.nanoTime();
+        final Sinks.One<Permit> granted = Sinks.one();
+        Permit permit;
+
+        Waiter(UserQueue user, double finishTag) {
+            this.user = user;
+            this.finishTag = finishTag;
+        }
+    }
+
+    /** A held slot. Releasing it more than once has no effect. */
+    private final class Permit {
+        final UserQueue user;
+        final long grantedNanos;
+        final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(UserQueue user, long grantedNanos) {
+            this.user = user;
+            this.grantedNanos = grantedNanos;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                ChatScheduler.this.release(this);
+            }
+        }
+    }
+
+    /**
+     * The user already has as many requests waiting as the scheduler allows.
+     */
+    public static class QueueFullException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int retryAfterSeconds;
+
+        public QueueFullException(int retryAfterSeconds) {
+            super("Too many chat requests in progress, retry in " + retryAfterSeconds + "s");
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
@@ -2,34 +2,43 @@ package com.example.demo;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.PropertySource;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.userdetails.UserDetails;
-import jakarta.servlet.http.HttpServletRequest;
 import java.nio.file.*;
 import java.nio.file.StandardCopyOption;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import org.springframework.lang.NonNull;
 
-@SpringBootApplication
+// Migrations only run in the postgres profile, see PostgresPersistenceConfig
+@SpringBootApplication(exclude = FlywayAutoConfiguration.class)
+@PropertySource("classpath:management.properties")
+@PropertySource("classpath:persistence.properties")
 @RestController
 public class DemoApplication {
 
     private final UserRepository userRepository;
     private final JwtUtil jwtUtil;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final UserCache userCache;
 
-    public DemoApplication(UserRepository userRepository, JwtUtil jwtUtil, PasswordEncoder passwordEncoder) {
+    public DemoApplication(UserRepository userRepository, JwtUtil jwtUtil, PasswordHashingService passwordHashingService,
+                           UserCache userCache) {
         this.userRepository = userRepository;
         this.jwtUtil = jwtUtil;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingService = passwordHashingService;
+        this.userCache = userCache;
     }
 
     public static void main(String[] args) {
@@ -86,51 +95,78 @@ public class DemoApplication {
     }
 
     @PostMapping("/api/auth/login")
-    public ResponseEntity<?> login(@RequestBody Map<String, String> credentials) {
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody Map<String, String> credentials) {
         String email = credentials.get("email");
         String password = credentials.get("password");
         
         if (email == null || password == null) {
-            return ResponseEntity.badRequest().body(Map.of(
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(Map.of(
                 "error", "Email and password are required"
-            ));
+            )));
         }
         
         User user = userRepository.findByEmail(email);
-        if (user == null || !passwordEncoder.matches(password, user.getPassword())) {
-            return ResponseEntity.status(401).body(Map.of(
-                "error", "Invalid email or password"
-            ));
+        if (user == null) {
+            return CompletableFuture.completedFuture(invalidCredentials());
         }
         
+        try {
+            // BCrypt runs on the hashing pool, the request thread is released until it is done
+            return passwordHashingService.matchesAsync(password, user.getPassword())
+                .thenCompose(valid -> {
+                    if (!valid) {
+                        return CompletableFuture.completedFuture(invalidCredentials());
+                    }
+                    if (!passwordHashingService.needsRehash(user.getPassword())) {
+                        return CompletableFuture.completedFuture(completeLogin(user));
+                    }
+                    // Stored with a different cost than configured, replace it while we have the password
+                    return passwordHashingService.encodeAsync(password).thenApply(rehashed -> {
+                        user.setPassword(rehashed);
+                        passwordHashingService.recordRehash();
+                        return completeLogin(user);
+                    });
+                })
+                .exceptionally(this::hashingFailure);
+        } catch (PasswordHashingService.SaturatedException e) {
+            return CompletableFuture.completedFuture(hashingSaturated(e));
+        }
+    }
+
+    private ResponseEntity<?> completeLogin(User user) {
         user.setLastLogin(LocalDateTime.now());
-        userRepository.save(user);
+        userCache.put(userRepository.save(user));
         
         return ResponseEntity.ok(createAuthResponse(user));
     }
 
+    private ResponseEntity<?> invalidCredentials() {
+        return ResponseEntity.status(401).body(Map.of(
+            "error", "Invalid email or password"
+        ));
+    }
+
     @PostMapping("/api/auth/signup")
-    public ResponseEntity<?> signup(@RequestBody Map<String, Object> credentials) {
+    public CompletableFuture<ResponseEntity<?>> signup(@RequestBody Map<String, Object> credentials) {
         String email = (String) credentials.get("email");
         String password = (String) credentials.get("password");
         String fullName = (String) credentials.get("fullName");
         String profileImage = (String) credentials.get("profileImage");
         
         if (email == null || password == null) {
-            return ResponseEntity.badRequest().body(Map.of(
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(Map.of(
                 "error", "Email and password are required"
-            ));
+            )));
         }
         
         if (userRepository.findByEmail(email) != null) {
-            return ResponseEntity.badRequest().body(Map.of(
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(Map.of(
                 "error", "Email already exists"
-            ));
+            )));
         }
         
         User newUser = new User();
         newUser.setEmail(email);
-        newUser.setPassword(passwordEncoder.encode(password));
         
         if (fullName != null && !fullName.isBlank()) {
             newUser.setFullName(fullName);
@@ -140,28 +176,23 @@ public class DemoApplication {
             newUser.setProfileImage(profileImage);
         }
         
-        userRepository.save(newUser);
-        
-        return ResponseEntity.ok(createAuthResponse(newUser));
+        try {
+            return passwordHashingService.encodeAsync(password)
+                .<ResponseEntity<?>>thenApply(hash -> {
+                    newUser.setPassword(hash);
+                    userRepository.save(newUser);
+                    return ResponseEntity.ok(createAuthResponse(newUser));
+                })
+                .exceptionally(this::hashingFailure);
+        } catch (PasswordHashingService.SaturatedException e) {
+            return CompletableFuture.completedFuture(hashingSaturated(e));
+        }
     }
 
     @GetMapping("/api/auth/me")
-    public ResponseEntity<?> getCurrentUser(HttpServletRequest request) {
-        String authHeader = request.getHeader("Authorization");
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
-        }
-        
-        String token = authHeader.substring(7);
-        if (!jwtUtil.validateToken(token)) {
-            return ResponseEntity.status(401).body(Map.of("error", "Invalid token"));
-        }
-        
-        String email = jwtUtil.extractUsername(token);
-        User user = userRepository.findByEmail(email);
-        
+    public ResponseEntity<?> getCurrentUser(@CurrentUser User user) {
         if (user == null) {
-            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
         }
         
         return ResponseEntity.ok(createUserResponse(user));
@@ -169,25 +200,18 @@ public class DemoApplication {
 
     @PutMapping("/api/auth/update-profile")
     public ResponseEntity<?> updateProfile(
-            HttpServletRequest request,
+            @CurrentUser User currentUser,
             @RequestParam(required = false) String fullName,
             @RequestParam(required = false) String currentPassword,
             @RequestParam(required = false) String newPassword,
             @RequestParam(required = false) MultipartFile profileImage) {
         
-        String authHeader = request.getHeader("Authorization");
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+        if (currentUser == null) {
             return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
         }
         
-        String token = authHeader.substring(7);
-        if (!jwtUtil.validateToken(token)) {
-            return ResponseEntity.status(401).body(Map.of("error", "Invalid token"));
-        }
-        
-        String email = jwtUtil.extractUsername(token);
-        User user = userRepository.findByEmail(email);
-        
+        // The resolved user is a shared cached copy, changes go through a freshly loaded one
+        User user = userRepository.findById(currentUser.getId()).orElse(null);
         if (user == null) {
             return ResponseEntity.status(404).body(Map.of("error", "User not found"));
         }
@@ -199,10 +223,10 @@ public class DemoApplication {
             }
             
             if (newPassword != null && !newPassword.trim().isEmpty()) {
-                if (currentPassword == null || !passwordEncoder.matches(currentPassword, user.getPassword())) {
+                if (currentPassword == null || !passwordHashingService.matches(currentPassword, user.getPassword())) {
                     return ResponseEntity.badRequest().body(Map.of("error", "Current password is incorrect"));
                 }
-                user.setPassword(passwordEncoder.encode(newPassword));
+                user.setPassword(passwordHashingService.encode(newPassword));
             }
             
             if (profileImage != null && !profileImage.isEmpty()) {
@@ -212,10 +236,12 @@ public class DemoApplication {
                 }
             }
             
-            userRepository.save(user);
+            userCache.put(userRepository.save(user));
             
             return ResponseEntity.ok(createUserResponse(user));
             
+        } catch (PasswordHashingService.SaturatedException e) {
+            return hashingSaturated(e);
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of("error", "Failed to update profile: " + e.getMessage()));
         }
@@ -223,24 +249,11 @@ public class DemoApplication {
 
     @PostMapping("/api/auth/set-memory-password")
     public ResponseEntity<?> setMemoryPassword(
-            HttpServletRequest request,
+            @CurrentUser User user,
             @RequestBody Map<String, String> payload) {
         
-        String authHeader = request.getHeader("Authorization");
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
-        }
-        
-        String token = authHeader.substring(7);
-        if (!jwtUtil.validateToken(token)) {
-            return ResponseEntity.status(401).body(Map.of("error", "Invalid token"));
-        }
-        
-        String email = jwtUtil.extractUsername(token);
-        User user = userRepository.findByEmail(email);
-        
         if (user == null) {
-            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
         }
         
         String password = payload.get("password");
@@ -249,65 +262,49 @@ public class DemoApplication {
         }
         
         try {
-            user.setMemoryPassword(passwordEncoder.encode(password));
-            userRepository.save(user);
+            User managed = userRepository.findById(user.getId()).orElseThrow();
+            managed.setMemoryPassword(passwordHashingService.encode(password));
+            userCache.put(userRepository.save(managed));
             
             return ResponseEntity.ok(Map.of("success", true, "message", "Memory password set successfully"));
+        } catch (PasswordHashingService.SaturatedException e) {
+            return hashingSaturated(e);
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of("error", "Failed to set memory password"));
         }
     }
 
     @PostMapping("/api/auth/verify-memory-password")
-    public ResponseEntity<?> verifyMemoryPassword(
-            HttpServletRequest request,
+    public CompletableFuture<ResponseEntity<?>> verifyMemoryPassword(
+            @CurrentUser User user,
             @RequestBody Map<String, String> payload) {
         
-        String authHeader = request.getHeader("Authorization");
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
-        }
-        
-        String token = authHeader.substring(7);
-        if (!jwtUtil.validateToken(token)) {
-            return ResponseEntity.status(401).body(Map.of("error", "Invalid token"));
-        }
-        
-        String email = jwtUtil.extractUsername(token);
-        User user = userRepository.findByEmail(email);
-        
         if (user == null) {
-            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(401).body(Map.of("error", "Unauthorized")));
         }
         
         String password = payload.get("password");
         if (password == null) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Password is required"));
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(Map.of("error", "Password is required")));
         }
         
-        boolean isValid = user.getMemoryPassword() != null && 
-                         passwordEncoder.matches(password, user.getMemoryPassword());
+        if (user.getMemoryPassword() == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok(Map.of("valid", false)));
+        }
         
-        return ResponseEntity.ok(Map.of("valid", isValid));
+        try {
+            return passwordHashingService.matchesAsync(password, user.getMemoryPassword())
+                .<ResponseEntity<?>>thenApply(isValid -> ResponseEntity.ok(Map.of("valid", isValid)))
+                .exceptionally(this::hashingFailure);
+        } catch (PasswordHashingService.SaturatedException e) {
+            return CompletableFuture.completedFuture(hashingSaturated(e));
+        }
     }
 
     @GetMapping("/api/auth/memory-password-status")
-    public ResponseEntity<?> getMemoryPasswordStatus(HttpServletRequest request) {
-        String authHeader = request.getHeader("Authorization");
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
-        }
-        
-        String token = authHeader.substring(7);
-        if (!jwtUtil.validateToken(token)) {
-            return ResponseEntity.status(401).body(Map.of("error", "Invalid token"));
-        }
-        
-        String email = jwtUtil.extractUsername(token);
-        User user = userRepository.findByEmail(email);
-        
+    public ResponseEntity<?> getMemoryPasswordStatus(@CurrentUser User user) {
         if (user == null) {
-            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
         }
         
         boolean hasPassword = user.getMemoryPassword() != null && !user.getMemoryPassword().isEmpty();
@@ -316,24 +313,11 @@ public class DemoApplication {
 
     @PostMapping("/api/user/settings")
     public ResponseEntity<?> saveUserSettings(
-            HttpServletRequest request,
+            @CurrentUser User user,
             @RequestBody Map<String, Object> payload) {
         
-        String authHeader = request.getHeader("Authorization");
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
-        }
-        
-        String token = authHeader.substring(7);
-        if (!jwtUtil.validateToken(token)) {
-            return ResponseEntity.status(401).body(Map.of("error", "Invalid token"));
-        }
-        
-        String email = jwtUtil.extractUsername(token);
-        User user = userRepository.findByEmail(email);
-        
         if (user == null) {
-            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
+            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
         }
         
         try {
@@ -358,6 +342,21 @@ public class DemoApplication {
         return "{\"name\":\"Calendar API\",\"version\":\"1.0\",\"status\":\"running\"}";
     }
 
+    private ResponseEntity<?> hashingSaturated(PasswordHashingService.SaturatedException e) {
+        return ResponseEntity.status(503)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(Map.of("error", "Too many password checks in progress, please retry shortly"));
+    }
+
+    private ResponseEntity<?> hashingFailure(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+            ? failure.getCause() : failure;
+        if (cause instanceof PasswordHashingService.SaturatedException) {
+            return hashingSaturated((PasswordHashingService.SaturatedException) cause);
+        }
+        return ResponseEntity.status(500).body(Map.of("error", "Authentication failed: " + cause.getMessage()));
+    }
+
     private Map<String, Object> createAuthResponse(User user) {
         UserDetails userDetails = org.springframework.security.core.userdetails.User
             .withUsername(user.getEmail())
@@ -0,0 +1,308 @@
+package com.example.demo;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breakers and hedging for Gemini calls.
+ *
+ * <p>Each model and endpoint has its own breaker. It opens when at least {@code failure-rate}
+ * percent of the last {@code window} calls failed (errors, timeouts, 429s and 5xx; other 4xx
+ * responses are the request's fault and do not count). While open, calls fail immediately with
+ * {@link CircuitOpenException} so callers go straight to their local fallback instead of each
+ * waiting out a timeout. After {@code open-ms} the breaker is half-open and lets
+ * {@code half-open-probes} calls through: if they succeed it closes, and if one fails it opens
+ * again. Every guarded call also times out after {@code timeout-ms}.
+ *
+ * <p>{@link #hedged} optionally sends a second copy of a slow call: if the first has not
+ * answered within the p95 latency of recent calls of that kind, a backup is sent and whichever
+ * answers first is used, the other cancelled. Off unless {@code app.llm.hedge.enabled=true},
+ * since each hedge costs another Gemini request.
+ */
+@Component
+public class GeminiCallGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiCallGuard.class);
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+
+    @Value("${app.llm.circuit.window:20}")
+    private int window;
+
+    @Value("${app.llm.circuit.min-calls:10}")
+    private int minCalls;
+
+    @Value("${app.llm.circuit.failure-rate:50}")
+    private int failureRatePercent;
+
+    @Value("${app.llm.circuit.open-ms:30000}")
+    private long openMillis;
+
+    @Value("${app.llm.circuit.half-open-probes:1}")
+    private int halfOpenProbes;
+
+    @Value("${app.llm.timeout-ms:30000}")
+    private long timeoutMillis;
+
+    @Value("${app.llm.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${app.llm.hedge.min-samples:20}")
+    private int hedgeMinSamples;
+
+    @Value("${app.llm.hedge.min-delay-ms:500}")
+    private long hedgeMinDelayMillis;
+
+    public GeminiCallGuard(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * {@code call} to {@code endpoint} of {@code model}, failing fast with
+     * {@link CircuitOpenException} while that breaker is open.
+     */
+    public <T> Mono<T> protect(String model, String endpoint, Mono<T> call) {
+        return Mono.defer(() -> {
+            Breaker breaker = breakers.computeIfAbsent(model + ":" + endpoint, this::newBreaker);
+            if (!breaker.tryAcquire()) {
+                breaker.rejected.incrementAndGet();
+                return Mono.error(new CircuitOpenException(breaker.key));
+            }
+            return call
+                .timeout(Duration.ofMillis(timeoutMillis))
+                .doOnSuccess(value -> breaker.onResult(false))
+                .doOnError(error -> breaker.onResult(countsAsFailure(error)))
+                .doOnCancel(breaker::onCancel);
+        });
+    }
+
+    /**
+     * Runs {@code call} and, when hedging is on and it is slower than recent {@code kind} calls
+     * at p95, a second copy of it; the first value wins. {@code call} is subscribed once per copy.
+     * A call that fails before the hedge is sent fails as usual; once both copies are out, the
+     * result is an error only if both fail.
+     */
+    public <T> Mono<T> hedged(String kind, Supplier<Mono<T>> call) {
+        LatencyWindow window = latencies.computeIfAbsent(kind, k -> new LatencyWindow(200));
+        long delay = window.percentile(95, hedgeMinSamples);
+        if (!hedgeEnabled || delay < 0) {
+            return timed(window, Mono.defer(call));
+        }
+        return Mono.defer(() -> {
+            AtomicBoolean hedgeSent = new AtomicBoolean();
+            AtomicInteger failed = new AtomicInteger();
+            Mono<T> primary = timed(window, Mono.defer(call))
+                .onErrorResume(e -> failed.incrementAndGet() == 2 || !hedgeSent.get() ? Mono.error(e) : Mono.never());
+            Mono<T> backup = Mono.delay(Duration.ofMillis(Math.max(delay, hedgeMinDelayMillis)))
+                .doOnNext(tick -> {
+                    hedgeSent.set(true);
+                    hedgesSent.incrementAndGet();
+                })
+                .then(timed(window, Mono.defer(call)))
+                .doOnNext(value -> hedgesWon.incrementAndGet())
+                .onErrorResume(e -> failed.incrementAndGet() == 2 ? Mono.error(e) : Mono.never());
+            return Mono.firstWithSignal(primary, backup);
+        });
+    }
+
+    private static <T> Mono<T> timed(LatencyWindow window, Mono<T> call) {
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            return call.doOnSuccess(value -> window.add(System.nanoTime() - started));
+        });
+    }
+
+    private static boolean countsAsFailure(Throwable error) {
+        if (error instanceof WebClientResponseException) {
+            int status = ((WebClientResponseException) error).getStatusCode().value();
+            return status == 429 || status >= 500;
+        }
+        return true;
+    }
+
+    private Breaker newBreaker(String key) {
+        Breaker breaker = new Breaker(key);
+        Gauge.builder("aipa.llm.circuit.state", breaker, b -> b.state().ordinal())
+            .description("0 closed, 1 half-open, 2 open")
+            .tag("endpoint", key)
+            .register(meterRegistry);
+        FunctionCounter.builder("aipa.llm.circuit.rejected", breaker, b -> b.rejected.get())
+            .description("Calls failed fast by an open circuit")
+            .tag("endpoint", key)
+            .register(meterRegistry);
+        FunctionCounter.builder("aipa.llm.circuit.opened", breaker, b -> b.opened.get())
+            .tag("endpoint", key)
+            .register(meterRegistry);
+        return breaker;
+    }
+
+    public State getState(String model, String endpoint) {
+        Breaker breaker = breakers.get(model + ":" + endpoint);
+        return breaker == null ? State.CLOSED : breaker.state();
+    }
+
+    public long getHedgesSent() { return hedgesSent.get(); }
+    public long getHedgesWon() { return hedgesWon.get(); }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> circuits = new TreeMap<>();
+        breakers.forEach((key, breaker) -> circuits.put(key, Map.of(
+            "state", breaker.state().name(),
+            "rejected", breaker.rejected.get(),
+            "opened", breaker.opened.get()
+        )));
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("circuits", circuits);
+        snapshot.put("hedgeEnabled", hedgeEnabled);
+        snapshot.put("hedgesSent", getHedgesSent());
+        snapshot.put("hedgesWon", getHedgesWon());
+        return snapshot;
+    }
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private final class Breaker {
+        final String key;
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong opened = new AtomicLong();
+
+        // Guarded by this
+        private State state = State.CLOSED;
+        private final boolean[] outcomes = new boolean[Math.max(1, window)];
+        private int recorded;
+        private int next;
+        private int failures;
+        private long openedAtNanos;
+        private int probes;
+        private int probeSuccesses;
+
+        Breaker(String key) {
+            this.key = key;
+        }
+
+        synchronized State state() {
+            return state;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAtNanos < TimeUnit.MILLISECONDS.toNanos(openMillis)) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probes = 0;
+                probeSuccesses = 0;
+                logger.info("Gemini circuit {} half-open, probing", key);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probes >= halfOpenProbes) {
+                    return false;
+                }
+                probes++;
+            }
+            return true;
+        }
+
+        synchronized void onResult(boolean failed) {
+            if (state == State.HALF_OPEN) {
+                if (failed) {
+                    open();
+                } else if (++probeSuccesses >= halfOpenProbes) {
+                    state = State.CLOSED;
+                    recorded = next = failures = 0;
+                    logger.info("Gemini circuit {} closed", key);
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                return;
+            }
+            if (recorded == outcomes.length) {
+                if (outcomes[next]) {
+                    failures--;
+                }
+            } else {
+                recorded++;
+            }
+            outcomes[next] = failed;
+            if (failed) {
+                failures++;
+            }
+            next = (next + 1) % outcomes.length;
+            if (recorded >= minCalls && failures * 100 >= failureRatePercent * recorded) {
+                open();
+            }
+        }
+
+        synchronized void onCancel() {
+            if (state == State.HALF_OPEN && probes > 0) {
+                probes--;
+            }
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+            opened.incrementAndGet();
+            logger.warn("Gemini circuit {} opened for {} ms", key, openMillis);
+        }
+    }
+
+    /** The last {@code capacity} latencies of one kind of call. */
+    private static final class LatencyWindow {
+        private final long[] nanos;
+        private int size;
+        private int next;
+
+        LatencyWindow(int capacity) {
+            this.nanos = new long[capacity];
+        }
+
+        synchronized void add(long value) {
+            nanos[next] = value;
+            next = (next + 1) % nanos.length;
+            size = Math.min(size + 1, nanos.length);
+        }
+
+        /** In milliseconds, or -1 with fewer than {@code minSamples} recorded. */
+        synchronized long percentile(int percentile, int minSamples) {
+            if (size < Math.max(1, minSamples)) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(nanos, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+            return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+        }
+    }
+
+    /**
+     * The breaker for the endpoint is open; the call was not made.
+     */
+    public static class CircuitOpenException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(String endpoint) {
+            super("Gemini circuit open for " + endpoint);
+        }
+    }
+}
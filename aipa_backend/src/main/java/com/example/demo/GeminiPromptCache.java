@@ -0,0 +1,217 @@
+package com.example.demo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the large static part of a prompt to Gemini once, as cached content, so later calls
+ * only send the part that changes. Every Gemini prompt is built as a stable prefix (the
+ * instructions and examples) followed by a suffix (user input, memories, history); keeping the
+ * prefix first also lets Gemini's implicit prefix caching apply when no explicit cache is used.
+ *
+ * <p>A prefix of at least {@code min-prefix-chars} is uploaded to {@code cachedContents} in the
+ * background on first use; calls go inline until the cache exists, and use it until
+ * {@code ttl-seconds} is nearly up. A failed upload (e.g. a prefix under the provider's minimum
+ * cacheable size) is not retried for {@code retry-after-seconds}, and a call that fails while
+ * using a cache drops it. Explicit caches only work with a versioned model, so cached calls go to
+ * {@code app.llm.prompt-cache.model}.
+ */
+@Component
+public class GeminiPromptCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiPromptCache.class);
+
+    private final WebClient webClient;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong createFailures = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+
+    @Value("${gemini.api.key}")
+    private String geminiApiKey;
+
+    @Value("${app.llm.prompt-cache.enabled:true}")
+    private boolean enabled;
+
+    // Gemini rejects explicit caches under 4096 tokens, roughly 4 characters each
+    @Value("${app.llm.prompt-cache.min-prefix-chars:16384}")
+    private int minPrefixChars;
+
+    @Value("${app.llm.prompt-cache.ttl-seconds:3600}")
+    private long ttlSeconds;
+
+    @Value("${app.llm.prompt-cache.retry-after-seconds:600}")
+    private long retryAfterSeconds;
+
+    @Value("${app.llm.prompt-cache.model:gemini-2.0-flash-001}")
+    private String cacheModel;
+
+    public GeminiPromptCache(WebClient.Builder webClientBuilder,
+                             @Value("${gemini.base-url:https://generativelanguage.googleapis.com}") String geminiBaseUrl) {
+        this.webClient = webClientBuilder
+            .baseUrl(geminiBaseUrl)
+            .defaultHeader("Content-Type", "application/json")
+            .build();
+    }
+
+    /**
+     * The prompt {@code prefix + suffix} for {@code model}, referring to a cached copy of
+     * {@code prefix} when one is ready. Never waits for the cache to be created.
+     */
+    public Prompt prompt(String model, String prefix, String suffix) {
+        if (!enabled || prefix.length() < minPrefixChars || !hasApiKey()) {
+            return Prompt.inline(model, prefix, suffix);
+        }
+        Entry entry = entries.computeIfAbsent(cacheModel + ":" + hash(prefix), key -> new Entry());
+        Instant now = Instant.now();
+        String name = entry.name;
+        // Leave a minute for the call itself so the cache does not expire mid-request
+        if (name != null && now.isBefore(entry.expiresAt.minusSeconds(60))) {
+            hits.incrementAndGet();
+            return new Prompt(cacheModel, prefix, suffix, name, entry);
+        }
+        misses.incrementAndGet();
+        if (now.isAfter(entry.retryAt) && entry.creating.compareAndSet(false, true)) {
+            create(entry, prefix);
+        }
+        return Prompt.inline(model, prefix, suffix);
+    }
+
+    /** Drops the cache {@code prompt} used, if any, after a call with it failed. */
+    public void failed(Prompt prompt) {
+        if (prompt.entry != null && prompt.cachedContent.equals(prompt.entry.name)) {
+            prompt.entry.name = null;
+            invalidated.incrementAndGet();
+        }
+    }
+
+    private void create(Entry entry, String prefix) {
+        Map<String, Object> request = Map.of(
+            "model", "models/" + cacheModel,
+            "contents", List.of(Map.of("role", "user", "parts", List.of(Map.of("text", prefix)))),
+            "ttl", ttlSeconds + "s"
+        );
+        webClient.post()
+            .uri(uriBuilder -> uriBuilder
+                .path("/v1beta/cachedContents")
+                .queryParam("key", geminiApiKey)
+                .build())
+            .bodyValue(request)
+            .retrieve()
+            .bodyToMono(JsonNode.class)
+            .timeout(Duration.ofSeconds(30))
+            .doFinally(signal -> entry.creating.set(false))
+            .subscribe(response -> {
+                String expireTime = response.path("expireTime").asText(null);
+                entry.expiresAt = expireTime != null ? Instant.parse(expireTime) : Instant.now().plusSeconds(ttlSeconds);
+                entry.name = response.path("name").asText();
+                created.incrementAndGet();
+                logger.info("Cached a {} char prompt prefix as {}", prefix.length(), entry.name);
+            }, error -> {
+                entry.retryAt = Instant.now().plusSeconds(retryAfterSeconds);
+                createFailures.incrementAndGet();
+                logger.warn("Prompt prefix caching failed, sending it inline for {}s: {}", retryAfterSeconds, error.getMessage());
+            });
+    }
+
+    private boolean hasApiKey() {
+        return geminiApiKey != null && !geminiApiKey.trim().isEmpty()
+            && !"your-gemini-api-key-here".equals(geminiApiKey);
+    }
+
+    private static String hash(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int size() { return entries.size(); }
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+    public long getCreatedCount() { return created.get(); }
+    public long getCreateFailureCount() { return createFailures.get(); }
+    public long getInvalidatedCount() { return invalidated.get(); }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("prefixes", size());
+        snapshot.put("hits", getHitCount());
+        snapshot.put("misses", getMissCount());
+        snapshot.put("created", getCreatedCount());
+        snapshot.put("createFailures", getCreateFailureCount());
+        snapshot.put("invalidated", getInvalidatedCount());
+        return snapshot;
+    }
+
+    private static final class Entry {
+        final AtomicBoolean creating = new AtomicBoolean();
+        volatile String name;
+        volatile Instant expiresAt = Instant.EPOCH;
+        volatile Instant retryAt = Instant.EPOCH;
+    }
+
+    /**
+     * A prompt ready to send: the model to call and the request fields that carry the text.
+     */
+    public static final class Prompt {
+        private final String model;
+        private final String prefix;
+        private final String suffix;
+        private final String cachedContent;
+        private final Entry entry;
+
+        private Prompt(String model, String prefix, String suffix, String cachedContent, Entry entry) {
+            this.model = model;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.cachedContent = cachedContent;
+            this.entry = entry;
+        }
+
+        static Prompt inline(String model, String prefix, String suffix) {
+            return new Prompt(model, prefix, suffix, null, null);
+        }
+
+        public String getModel() { return model; }
+        public boolean isCached() { return cachedContent != null; }
+
+        /** Characters actually sent with the call. */
+        public int getSentLength() {
+            return isCached() ? suffix.length() : prefix.length() + suffix.length();
+        }
+
+        /**
+         * A generateContent request body: the prompt plus {@code options} such as
+         * {@code generationConfig}.
+         */
+        public Map<String, Object> request(Map<String, Object> options) {
+            Map<String, Object> request = new LinkedHashMap<>();
+            if (isCached()) {
+                request.put("cachedContent", cachedContent);
+                request.put("contents", List.of(Map.of("role", "user", "parts", List.of(Map.of("text", suffix)))));
+            } else {
+                request.put("contents", List.of(Map.of("parts", List.of(Map.of("text", prefix + suffix)))));
+            }
+            request.putAll(options);
+            return request;
+        }
+    }
+}
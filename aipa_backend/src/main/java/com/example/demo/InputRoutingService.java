@@ -4,12 +4,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.util.*;
 import java.util.regex.Pattern;
-import java.util.logging.Logger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @Service
 public class InputRoutingService {
     
-    private static final Logger logger = Logger.getLogger(InputRoutingService.class.getName());
+    private static final Logger logger = LoggerFactory.getLogger(InputRoutingService.class);
+    private static final PayloadLog payloadLog = PayloadLog.forCategory("routing");
     
     private final MemoryFilterService memoryFilterService;
     
@@ -59,14 +61,14 @@ public class InputRoutingService {
     
     
     public RoutingDecision routeInput(String userInput) {
-        logger.info("Routing input: " + userInput);
+        payloadLog.log("Routing input", userInput);
         
         
         MemoryFilterService.MemoryWorthinessResult worthinessResult = 
             memoryFilterService.analyzeMemoryWorthiness(userInput);
         
         if (!worthinessResult.isWorthy() && worthinessResult.getReason().contains("Question")) {
-            logger.info("Input filtered out as question: " + userInput);
+            logger.debug("Input filtered out as question");
             return new RoutingDecision(RoutingDestination.NEITHER, 
                 "User input is a question asking for information", 0.0);
         }
@@ -92,7 +94,7 @@ public class InputRoutingService {
         
         RoutingDecision decision = makeRoutingDecision(calendarScore, memoryScore, userInput);
         
-        logger.info("Routing decision: " + decision.toString());
+        logger.debug("Routing decision: {}", decision);
         return decision;
     }
     
@@ -4,6 +4,7 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import io.jsonwebtoken.Claims;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -15,17 +16,40 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Authenticates requests carrying a bearer token.
+ *
+ * A verified token is cached by its SHA-256 hash together with the loaded user for a short
+ * time (never past the token's own expiry), so repeated requests from an active session skip
+ * both the signature check and the users table. The cache is bounded; when it is full of
+ * live entries new tokens are simply verified every time until entries expire.
+ */
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
     
     private final JwtUtil jwtUtil;
     private final UserDetailsService userDetailsService;
+    private final long cacheTtlMillis;
+    private final int cacheMaxEntries;
+    private final Map<String, CachedPrincipal> principalCache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
 
-    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserDetailsService userDetailsService,
+                                   long cacheTtlMillis, int cacheMaxEntries) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.cacheMaxEntries = cacheMaxEntries;
     }
 
     @Override
@@ -44,12 +68,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         final String jwt = authHeader.substring(7);
         
         try {
-            final String username = jwtUtil.extractUsername(jwt);
-            
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
-                
-                if (jwtUtil.validateToken(jwt)) {
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
+                UserDetails userDetails = resolveUser(jwt);
+
+                if (userDetails != null) {
                     UsernamePasswordAuthenticationToken authToken = 
                         new UsernamePasswordAuthenticationToken(
                             userDetails, 
@@ -67,4 +89,62 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         
         filterChain.doFilter(request, response);
     }
+
+    private UserDetails resolveUser(String jwt) {
+        long now = System.currentTimeMillis();
+        String key = hash(jwt);
+        CachedPrincipal cached = principalCache.get(key);
+        if (cached != null) {
+            if (cached.expiresAt > now) {
+                hits.incrementAndGet();
+                return cached.userDetails;
+            }
+            principalCache.remove(key, cached);
+        }
+        misses.incrementAndGet();
+
+        Claims claims = jwtUtil.parseValidClaims(jwt);
+        if (claims == null || claims.getSubject() == null) {
+            return null;
+        }
+        UserDetails userDetails = userDetailsService.loadUserByUsername(claims.getSubject());
+
+        long expiresAt = now + cacheTtlMillis;
+        if (claims.getExpiration() != null) {
+            expiresAt = Math.min(expiresAt, claims.getExpiration().getTime());
+        }
+        if (principalCache.size() >= cacheMaxEntries) {
+            principalCache.values().removeIf(entry -> entry.expiresAt <= now);
+        }
+        if (principalCache.size() < cacheMaxEntries) {
+            principalCache.put(key, new CachedPrincipal(userDetails, expiresAt));
+        }
+        return userDetails;
+    }
+
+    int getCachedPrincipalCount() {
+        return principalCache.size();
+    }
+
+    long getHitCount() { return hits.get(); }
+    long getMissCount() { return misses.get(); }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class CachedPrincipal {
+        final UserDetails userDetails;
+        final long expiresAt;
+
+        CachedPrincipal(UserDetails userDetails, long expiresAt) {
+            this.userDetails = userDetails;
+            this.expiresAt = expiresAt;
+        }
+    }
 }
@@ -1,16 +1,18 @@
 package com.example.demo;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.beans.factory.annotation.Value;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.TextStyle;
 import java.util.Locale;
 import java.io.IOException;
-import java.nio.file.*;
 import java.util.Map;
 import java.util.List;
 import java.util.regex.*;
@@ -18,18 +20,19 @@ import java.util.ArrayList;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.core.type.TypeReference;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.userdetails.UserDetails;
 import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @RestController
 @RequestMapping("/api")
 public class LLMController {
     
-    private static String latestResponse = "";
-    private static final String TEMP_FILE = "tempres.txt";
-    private static final String ANALYSIS_RESULT_FILE = "fpromptres.txt";
-    private static final String PROMPT_TEMPLATE_PATH = "promptmst.txt";
+    private static final Logger logger = LoggerFactory.getLogger(LLMController.class);
+    private static final PayloadLog payloadLog = PayloadLog.forCategory("llm");
+    private static final String PROMPT_TEMPLATE = "promptmst.txt";
+    private static final String CALENDAR_PROMPT_TEMPLATE = "enhanced_ai_calendar_promptmst.txt";
     
     private static final String ANALYSIS_CHECK_PROMPT = 
     "Analyze the given input and determine whether it is actionable or non-actionable based on the following enhanced criteria:\n\n" +
@@ -96,65 +99,42 @@ public class LLMController {
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final WebClient webClient;
     private final MemoryService memoryService;
-    private final UserRepository userRepository;
     private final PlanAnalysisService planAnalysisService;
     private final CalendarEventEnhancementService calendarEventEnhancementService;
     private final CalendarResponseValidationService calendarValidationService;
     private final SessionMemoryService sessionMemoryService;
     private final InputRoutingService inputRoutingService;
     private final CalendarEventCreationService calendarEventCreationService;
+    private final MemoryExtractionPipeline memoryExtractionPipeline;
+    private final ChatMetrics chatMetrics;
+    private final ResponseJournal responseJournal;
+    private final PromptTemplateRegistry promptTemplates;
+    private final GeminiPromptCache promptCache;
+    private final ChatScheduler chatScheduler;
+    private final GeminiCallGuard callGuard;
 
     @Value("${gemini.api.key}")
     private String geminiApiKey;
 
-    public LLMController(WebClient.Builder webClientBuilder, MemoryService memoryService, UserRepository userRepository, PlanAnalysisService planAnalysisService, CalendarEventEnhancementService calendarEventEnhancementService, CalendarResponseValidationService calendarValidationService, SessionMemoryService sessionMemoryService, InputRoutingService inputRoutingService, CalendarEventCreationService calendarEventCreationService) {
+    public LLMController(WebClient.Builder webClientBuilder, MemoryService memoryService, PlanAnalysisService planAnalysisService, CalendarEventEnhancementService calendarEventEnhancementService, CalendarResponseValidationService calendarValidationService, SessionMemoryService sessionMemoryService, InputRoutingService inputRoutingService, CalendarEventCreationService calendarEventCreationService, MemoryExtractionPipeline memoryExtractionPipeline, ChatMetrics chatMetrics, ResponseJournal responseJournal, PromptTemplateRegistry promptTemplates, GeminiPromptCache promptCache, ChatScheduler chatScheduler, GeminiCallGuard callGuard, @Value("${gemini.base-url:https://generativelanguage.googleapis.com}") String geminiBaseUrl) {
         this.webClient = webClientBuilder
-            .baseUrl("https://generativelanguage.googleapis.com")
+            .baseUrl(geminiBaseUrl)
             .defaultHeader("Content-Type", "application/json")
             .build();
         this.memoryService = memoryService;
-        this.userRepository = userRepository;
         this.planAnalysisService = planAnalysisService;
         this.calendarEventEnhancementService = calendarEventEnhancementService;
         this.calendarValidationService = calendarValidationService;
         this.sessionMemoryService = sessionMemoryService;
         this.inputRoutingService = inputRoutingService;
         this.calendarEventCreationService = calendarEventCreationService;
-    }
-
-    private void storeResponse(String response) {
-        latestResponse = response;
-        try {
-            String content = "Generated at: " + Instant.now() + "\n" + response;
-            Files.writeString(
-                Paths.get(TEMP_FILE),
-                content,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING
-            );
-        } catch (IOException e) {
-            System.err.println("File storage failed: " + e.getMessage());
-        }
-    }
-
-    private void storeAnalysisResult(String rawResponse, String finalDecision, String userInput) {
-        try {
-            String content = "=== Analysis Result ===\n" +
-                           "Timestamp: " + Instant.now() + "\n" +
-                           "User Input: " + userInput + "\n" +
-                           "Final Decision: " + finalDecision + "\n" +
-                           "Response Analysis:\n" + rawResponse + "\n" +
-                           "========================\n\n";
-            
-            Files.writeString(
-                Paths.get(ANALYSIS_RESULT_FILE),
-                content,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.APPEND
-            );
-        } catch (IOException e) {
-            System.err.println("Failed to store analysis result: " + e.getMessage());
-        }
+        this.memoryExtractionPipeline = memoryExtractionPipeline;
+        this.chatMetrics = chatMetrics;
+        this.responseJournal = responseJournal;
+        this.promptTemplates = promptTemplates;
+        this.promptCache = promptCache;
+        this.chatScheduler = chatScheduler;
+        this.callGuard = callGuard;
     }
 
     public static class ChatMessage {
@@ -174,13 +154,30 @@ public class LLMController {
     }
 
     @PostMapping("/generate")
-    public Flux<String> generateText(@RequestBody Map<String, Object> request, Authentication authentication) {
+    public ResponseEntity<Flux<String>> generateText(@RequestBody Map<String, Object> request, @CurrentUser User user) {
+        long startedNanos = System.nanoTime();
+        if (user == null) {
+            return ResponseEntity.ok(generateReply(request, null));
+        }
+        try {
+            Flux<String> reply = chatScheduler.schedule(user.getId(), () -> generateReply(request, user))
+                .onErrorResume(TimeoutException.class, e -> {
+                    chatMetrics.recordFallback("chat", "scheduler_timeout");
+                    return Flux.just("{\"error\": \"The assistant is busy, please try again shortly\"}");
+                });
+            return ResponseEntity.ok(chatMetrics.timeRequest(startedNanos, reply));
+        } catch (ChatScheduler.QueueFullException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Flux.just("{\"error\": \"Too many messages in progress, please wait for a reply first\"}"));
+        }
+    }
+
+    private Flux<String> generateReply(Map<String, Object> request, User user) {
         String userInput = (String) request.get("prompt");
         final List<ChatMessage> chatHistory = new ArrayList<>();
         
         
-        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
-        User user = userRepository.findByEmail(userDetails.getUsername());
         if (user == null) {
             return Flux.just("{\"error\": \"User not found\"}");
         }
@@ -195,7 +192,7 @@ public class LLMController {
                 );
                 chatHistory.addAll(history);
             } catch (Exception e) {
-                System.err.println("Failed to parse chat history: " + e.getMessage());
+                logger.warn("Failed to parse chat history: {}", e.getMessage());
             }
         }
         
@@ -208,57 +205,70 @@ public class LLMController {
             String sessionId = (String) request.getOrDefault("sessionId", 
                 "session_" + System.currentTimeMillis() + "_" + userId.toString().substring(0, 8));
             
-            SessionMemoryService.SessionContextResult sessionContext = 
-                sessionMemoryService.trackChatAndGetContext(userId, sessionId, userInput);
+            SessionMemoryService.SessionContextResult sessionContext = chatMetrics.timeStage("session",
+                () -> sessionMemoryService.trackChatAndGetContext(userId, sessionId, userInput));
             
-            System.out.println("📊 Session Context: " + sessionContext.toString());
+            logger.debug("📊 Session Context: {}", sessionContext);
             
             
-            InputRoutingService.RoutingDecision routingDecision = inputRoutingService.routeInput(userInput);
-            System.out.println("🎯 Routing Decision: " + routingDecision.toString());
+            InputRoutingService.RoutingDecision routingDecision = chatMetrics.timeStage("routing",
+                () -> inputRoutingService.routeInput(userInput));
+            logger.debug("🎯 Routing Decision: {}", routingDecision);
             
             
+            List<CalendarConflictDetector.ConflictReport> scheduleConflicts = new ArrayList<>();
             if (routingDecision.shouldProcessCalendar()) {
                 
-                CalendarEventCreationService.EventCreationResult eventCreationResult = 
-                    calendarEventCreationService.createEventsFromInput(userId, userInput);
+                CalendarEventCreationService.EventCreationResult eventCreationResult = chatMetrics.timeStage("calendar_extraction",
+                    () -> calendarEventCreationService.createEventsFromInput(user, userInput));
                 
                 if (eventCreationResult.hasEvents()) {
-                    System.out.println("📅 Created " + eventCreationResult.getCreatedEvents().size() + " calendar events directly");
+                    logger.info("📅 Created {} calendar events directly", eventCreationResult.getCreatedEvents().size());
+                }
+                
+                if (eventCreationResult.hasConflicts()) {
+                    scheduleConflicts.addAll(eventCreationResult.getConflicts());
+                    logger.info("⚠️ Schedule conflicts: {}", eventCreationResult.getConflicts());
                 }
                 
                 if (eventCreationResult.hasErrors()) {
-                    System.out.println("⚠️ Calendar event creation errors: " + eventCreationResult.getErrors());
+                    logger.warn("⚠️ Calendar event creation errors: {}", eventCreationResult.getErrors());
+                }
+                
+                if (eventCreationResult.isDeferred()) {
+                    logger.info("⏳ Calendar extraction queued for retry");
                 }
             }
             
             
-            MemoryAnalysisService.MemoryAnalysisResult memoryAnalysis = null;
+            // Extraction runs in the background; the reply does not wait for it
+            String memoryExtraction;
             if (routingDecision.shouldProcessMemory()) {
-                memoryAnalysis = memoryService.analyzeAndStoreMemory(userId, userInput);
+                memoryExtraction = chatMetrics.timeStage("memory_analysis",
+                    () -> memoryExtractionPipeline.submit(userId, userInput)) ? "queued" : "dropped";
             } else {
-                
-                String reason = routingDecision.getDestination() == InputRoutingService.RoutingDestination.CALENDAR_ONLY 
+                memoryExtraction = routingDecision.getDestination() == InputRoutingService.RoutingDestination.CALENDAR_ONLY 
                     ? "routed_to_calendar" : "not_memory_worthy";
-                memoryAnalysis = new MemoryAnalysisService.MemoryAnalysisResult("None", "None", "None", reason, "None");
             }
             
             
             final CalendarEventEnhancementService.CalendarEventAnalysis calendarAnalysis;
             if (!routingDecision.shouldProcessCalendar()) {
                 
-                calendarAnalysis = calendarEventEnhancementService.analyzeForCalendarEvents(userInput);
+                calendarAnalysis = chatMetrics.timeStage("calendar_analysis",
+                    () -> calendarEventEnhancementService.analyzeForCalendarEvents(userInput));
             } else {
                 
                 calendarAnalysis = new CalendarEventEnhancementService.CalendarEventAnalysis(false, new ArrayList<>(), "");
             }
             
             
-            PlanAnalysisService.PlanAnalysisResult planAnalysis = 
-                planAnalysisService.analyzeForPlan(userInput);
+            PlanAnalysisService.PlanAnalysisResult planAnalysis = chatMetrics.timeStage("plan_analysis",
+                () -> planAnalysisService.analyzeForPlan(userInput));
             
             
-            List<String> relevantMemories = memoryService.getRelevantMemories(userId, userInput);
+            List<String> relevantMemories = chatMetrics.timeStage("memory_recall",
+                () -> memoryService.getRelevantMemories(userId, userInput));
             
             
             StringBuilder contextWithMemories = new StringBuilder();
@@ -277,6 +287,23 @@ public class LLMController {
             }
             
             
+            if (!scheduleConflicts.isEmpty()) {
+                contextWithMemories.append("\n=== SCHEDULE CONFLICTS ===\n");
+                contextWithMemories.append("The events just added overlap existing events; mention this to the user:\n");
+                for (CalendarConflictDetector.ConflictReport report : scheduleConflicts) {
+                    for (CalendarConflictDetector.Conflict conflict : report.getConflicts()) {
+                        contextWithMemories.append("- ").append(report.getTitle())
+                                         .append(" (").append(report.getStart()).append(") overlaps ")
+                                         .append(conflict.getTitle())
+                                         .append(" (").append(conflict.getStart())
+                                         .append(conflict.getStartTime() != null ? " " + conflict.getStartTime() : "")
+                                         .append(")\n");
+                    }
+                }
+                contextWithMemories.append("==========================\n");
+            }
+            
+            
             if (calendarAnalysis.hasEvents()) {
                 contextWithMemories.append("\n=== CALENDAR EVENTS DETECTED ===\n");
                 contextWithMemories.append("CRITICAL: The following calendar events were detected using advanced AI and MUST be included in the response:\n");
@@ -308,55 +335,40 @@ public class LLMController {
             contextWithMemories.append("================================\n");
             
             
-            System.out.println("Memory analysis result: " + memoryAnalysis.getConfidence() + 
-                             ", Type: " + memoryAnalysis.getMemoryType() + 
-                             ", Should store: " + memoryAnalysis.shouldStore());
-            System.out.println("Calendar analysis result: " + calendarAnalysis.toString());
-            System.out.println("Plan analysis result: " + planAnalysis.toString());
+            logger.debug("Memory extraction: {}", memoryExtraction);
+            logger.debug("Calendar analysis result: {}", calendarAnalysis);
+            logger.debug("Plan analysis result: {}", planAnalysis);
                         
             
-            return webClient.post()
-                .uri(uriBuilder -> uriBuilder
-                    .path("/v1beta/models/gemini-2.0-flash:generateContent")  // Use advanced model
-                    .queryParam("key", geminiApiKey)
-                    .build())
-                .bodyValue(createGeminiRequest(ANALYSIS_CHECK_PROMPT + userInput + contextWithMemories.toString()))
-                .retrieve()
-                .onStatus(status -> status.isError(), response -> 
-                    response.bodyToMono(String.class)
-                        .flatMap(errorBody -> Mono.error(new RuntimeException(
-                            "API Error: " + response.statusCode() + " - " + errorBody
-                        )))
-                )
-                .bodyToMono(JsonNode.class)
+            GeminiPromptCache.Prompt analysisPrompt = buildPrompt(ANALYSIS_CHECK_PROMPT, userInput + contextWithMemories);
+            return generate("analysis", analysisPrompt)
                 .flatMapMany(analysisResponse -> {
                     try {
                         String fullResponse = extractGeminiResponse(analysisResponse);
-                        System.out.println("Full Analysis Response:\n" + fullResponse);
+                        payloadLog.log("Full Analysis Response", fullResponse);
                         
                         String finalDecision = parseFinalDecision(fullResponse);
-                        System.out.println("Parsed Decision: " + finalDecision);
+                        logger.debug("Parsed Decision: {}", finalDecision);
                         
-                        storeAnalysisResult(fullResponse, finalDecision, userInput);
+                        responseJournal.recordAnalysis(userId, sessionId, userInput, finalDecision, fullResponse);
 
                         
                         StringBuilder promptWithHistory = new StringBuilder();
+                        PromptTemplateRegistry.Template promptTemplate = finalDecision.equals("yes")
+                            ? promptTemplates.get(calendarAnalysis.hasEvents() ? CALENDAR_PROMPT_TEMPLATE : PROMPT_TEMPLATE)
+                            : null;
                         
-                        
-                        if (finalDecision.equals("yes")) {
-                            String promptTemplatePath = calendarAnalysis.hasEvents() ? 
-                                "enhanced_ai_calendar_promptmst.txt" : PROMPT_TEMPLATE_PATH;
-                            String promptTemplate = Files.readString(Paths.get(promptTemplatePath));
-                            
-                            
+                        // The template text up to its first slot is the same for every user, so it is sent as the cacheable prefix
+                        String promptPrefix;
+                        if (promptTemplate != null) {
                             String formattedDate = getFormattedDate();
-                            promptTemplate = promptTemplate.replace("[DAY_OF_WEEK] the [DAY] of [MONTH] [YEAR]", formattedDate);
-                            
-                            promptWithHistory.append(promptTemplate);
+                            logger.debug("Prompt template: {}", promptTemplate.getVersion());
+                            promptPrefix = promptTemplate.getPrefix();
+                            promptTemplate.appendAfterPrefix(promptWithHistory, Map.of(PromptTemplateRegistry.DATE_SLOT, formattedDate));
                             promptWithHistory.append("User Input & Today is: " + formattedDate + "\n" + userInput);
                             promptWithHistory.append("\n\n**Conversation History:**\n");
                         } else {
-                            promptWithHistory.append("You are an AI assistant helping with a conversation.\n**Conversation History:**\n");
+                            promptPrefix = "You are an AI assistant helping with a conversation.\n**Conversation History:**\n";
                         }
                         
                         
@@ -388,20 +400,9 @@ public class LLMController {
                             promptWithHistory.append("\n**Part 3: Additional Notes** - Optional considerations");
                         }
 
-                        return webClient.post()
-                            .uri(uriBuilder -> uriBuilder
-                                .path("/v1beta/models/gemini-2.0-flash:generateContent")  // Use advanced model
-                                .queryParam("key", geminiApiKey)
-                                .build())
-                            .bodyValue(createGeminiRequest(promptWithHistory.toString()))
-                            .retrieve()
-                            .onStatus(status -> status.isError(), response -> 
-                                response.bodyToMono(String.class)
-                                    .flatMap(errorBody -> Mono.error(new RuntimeException(
-                                        "API Error: " + response.statusCode() + " - " + errorBody
-                                    )))
-                            )
-                            .bodyToMono(JsonNode.class)
+                        GeminiPromptCache.Prompt responsePrompt = buildPrompt(promptPrefix, promptWithHistory.toString());
+                        // The user is waiting on this call, so a slow one may be hedged with a second request
+                        return callGuard.hedged("response", () -> generate("response", responsePrompt))
                             .map(finalResponse -> {
                                 String processed = extractGeminiResponse(finalResponse)
                                     .replace("\\n", "\n")
@@ -409,10 +410,13 @@ public class LLMController {
                                 
                                 
                                 if (calendarAnalysis.hasEvents()) {
-                                    processed = calendarValidationService.validateAndFixCalendarResponse(processed, userInput);
+                                    String unvalidated = processed;
+                                    processed = chatMetrics.timeStage("validation",
+                                        () -> calendarValidationService.validateAndFixCalendarResponse(unvalidated, userInput));
                                 }
                                 
-                                storeResponse(processed);
+                                responseJournal.recordResponse(userId, sessionId, processed,
+                                    promptTemplate == null ? null : promptTemplate.getVersion());
                                 return processed;
                             })
                             .flux();
@@ -422,33 +426,64 @@ public class LLMController {
                         return Flux.just("{\"error\": \"" + e.getMessage() + "\"}");
                     }
                 })
-                .onErrorResume(e -> Flux.just(
-                    "{\"error\": \"" + e.getMessage().replace("\"", "\\\"") + "\"}"
-                ));
+                .onErrorResume(GeminiCallGuard.CircuitOpenException.class, e -> {
+                    chatMetrics.recordFallback("chat", "circuit_open");
+                    return Flux.just("{\"error\": \"The assistant is temporarily unavailable, please try again shortly\"}");
+                })
+                .onErrorResume(e -> {
+                    chatMetrics.recordFallback("chat", "gemini_error");
+                    return Flux.just("{\"error\": \"" + e.getMessage().replace("\"", "\\\"") + "\"}");
+                });
         } catch (Exception e) {
             return Flux.just("{\"error\": \"Failed to process memory analysis: " + e.getMessage() + "\"}");
         }
     }
 
-    private Map<String, Object> createGeminiRequest(String prompt) {
+    /**
+     * The prompt {@code prefix + suffix}, with {@code prefix} the part that is the same on every
+     * call. Prompts that do not ask for the )*! sections get the instructions for them wrapped around.
+     */
+    private GeminiPromptCache.Prompt buildPrompt(String prefix, String suffix) {
         
-        if (!prompt.contains(")*!")) {
-            prompt = "Instructions:\n" + prompt + "\n\nResponse Format:\n)*!\n[Part 1 Content]\n)*!\n[Part 2 Content]\n)*!\n[Part 3 Content]\n)*!";
+        if (!prefix.contains(")*!") && !suffix.contains(")*!")) {
+            prefix = "Instructions:\n" + prefix;
+            suffix = suffix + "\n\nResponse Format:\n)*!\n[Part 1 Content]\n)*!\n[Part 2 Content]\n)*!\n[Part 3 Content]\n)*!";
         }
         
-        return Map.of(
-            "contents", List.of(
-                Map.of("parts", List.of(
-                    Map.of("text", prompt)
-                ))
-            ),
+        return promptCache.prompt("gemini-2.0-flash", prefix, suffix);
+    }
+
+    /**
+     * One generateContent call behind the circuit breaker. Error responses are logged with their
+     * body and surface as {@link WebClientResponseException}, so the breaker and the metrics can
+     * tell a rejected request from Gemini being down.
+     */
+    Mono<JsonNode> generate(String call, GeminiPromptCache.Prompt prompt) {
+        return callGuard.protect(prompt.getModel(), "generateContent",
+            chatMetrics.timeLlmCall(call, prompt.getModel(), prompt.getSentLength(), webClient.post()
+            .uri(uriBuilder -> uriBuilder
+                .path("/v1beta/models/" + prompt.getModel() + ":generateContent")
+                .queryParam("key", geminiApiKey)
+                .build())
+            .bodyValue(createGeminiRequest(prompt))
+            .retrieve()
+            .onStatus(status -> status.isError(), response ->
+                response.createException()
+                    .doOnNext(e -> logger.warn("Gemini {} call failed: {} - {}", call, e.getStatusCode(), e.getResponseBodyAsString()))
+            )
+            .bodyToMono(JsonNode.class)
+            .doOnError(e -> promptCache.failed(prompt))));
+    }
+
+    private Map<String, Object> createGeminiRequest(GeminiPromptCache.Prompt prompt) {
+        return prompt.request(Map.of(
             "generationConfig", Map.of(
                 "temperature", 0.7,
                 "topP", 0.8,
                 "topK", 40,
                 "maxOutputTokens", 2048
             )
-        );
+        ));
     }
 
     private String extractGeminiResponse(JsonNode responseNode) {
@@ -496,9 +531,16 @@ public class LLMController {
         return dayOfWeek + " the " + day + " of " + month + " " + year;
     }
 
+    /**
+     * The latest reply sent to the current user, for the given session or else their most recent one.
+     */
     @GetMapping("/latest")
-    public String getLatestResponse() {
-        return latestResponse;
+    public String getLatestResponse(@CurrentUser User user, @RequestParam(required = false) String sessionId) {
+        if (user == null) {
+            return "";
+        }
+        String latest = responseJournal.getLatest(user.getId(), sessionId);
+        return latest == null ? "" : latest;
     }
 }
 
@@ -0,0 +1,354 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Persistent queue for background LLM work, stored in the {@code llm_jobs} table so queued
+ * work survives restarts and Gemini outages.
+ *
+ * Delivery is at least once: a job row is only deleted after its handler returns, so work
+ * interrupted by a crash runs again on the next start. Only a user's oldest pending job is
+ * eligible to run, which keeps each user's jobs in submission order. Failures are retried
+ * with exponential backoff; after {@code max-attempts} the row is kept with status FAILED.
+ *
+ * Dispatch is paced to {@code requests-per-minute}, and a 429 from Gemini pauses dispatch for
+ * the job's backoff. Unless set explicitly, the worker count is what that rate needs at
+ * {@code expected-latency-ms} per call (Little's law), so workers do not sit on requests
+ * that would only be rate limited.
+ */
+@Component
+public class LlmJobQueue {
+
+    private static final Logger logger = Logger.getLogger(LlmJobQueue.class.getName());
+
+    private final LlmJobRepository repository;
+    private final WriteQueue writeQueue;
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final int requestsPerMinute;
+    private final int workerCount;
+    private final int maxAttempts;
+    private final long maxPending;
+    private final long slotNanos;
+    private final AtomicLong nextSlotNanos = new AtomicLong(System.nanoTime());
+    private final Semaphore workerPermits;
+    private final ThreadPoolExecutor executor;
+
+    // Users with a job on a worker, and jobs that finished since the dispatcher's last scan began
+    private final Set<UUID> busyUsers = ConcurrentHashMap.newKeySet();
+    private final Set<UUID> finishedSinceScan = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private volatile LocalDateTime oldestPending;
+
+    @Value("${app.llm.jobs.backoff-ms:2000}")
+    private long backoffMillis;
+
+    @Value("${app.llm.jobs.max-backoff-ms:300000}")
+    private long maxBackoffMillis;
+
+    @Value("${app.llm.jobs.poll-interval-ms:1000}")
+    private long pollIntervalMillis;
+
+    @Value("${app.llm.jobs.scan-size:200}")
+    private int scanSize;
+
+    private final Object signal = new Object();
+    private boolean signalled;
+    private volatile boolean stopping;
+    private Thread dispatcher;
+
+    public LlmJobQueue(LlmJobRepository repository, WriteQueue writeQueue,
+                       @Value("${app.llm.jobs.requests-per-minute:15}") int requestsPerMinute,
+                       @Value("${app.llm.jobs.workers:0}") int workers,
+                       @Value("${app.llm.jobs.expected-latency-ms:3000}") long expectedLatencyMillis,
+                       @Value("${app.llm.jobs.max-attempts:5}") int maxAttempts,
+                       @Value("${app.llm.jobs.max-pending:5000}") long maxPending) {
+        this.repository = repository;
+        this.writeQueue = writeQueue;
+        this.requestsPerMinute = Math.max(1, requestsPerMinute);
+        this.workerCount = workers > 0 ? workers
+            : (int) Math.max(1, Math.ceil(this.requestsPerMinute * expectedLatencyMillis / 60_000.0));
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.maxPending = maxPending;
+        this.slotNanos = TimeUnit.MINUTES.toNanos(1) / this.requestsPerMinute;
+        this.workerPermits = new Semaphore(workerCount);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(workerCount),
+            runnable -> {
+                Thread thread = new Thread(runnable, "llm-jobs-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Registers the code that runs jobs of {@code type}. Handlers register themselves when
+     * they are constructed; jobs of an unknown type fail like any other error.
+     */
+    public void register(String type, Handler handler) {
+        handlers.put(type, handler);
+    }
+
+    @PostConstruct
+    void start() {
+        try {
+            pending.set(repository.countByStatus(LlmJob.PENDING));
+        } catch (Exception e) {
+            logger.warning("Could not count pending LLM jobs: " + e.getMessage());
+        }
+        dispatcher = new Thread(this::dispatchLoop, "llm-jobs-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Stores a job for later execution. Returns false without storing it when the queue
+     * already holds {@code max-pending} jobs or is shutting down.
+     */
+    public boolean enqueue(String type, UUID userId, String payload) {
+        if (stopping || pending.incrementAndGet() > maxPending) {
+            if (!stopping) {
+                pending.decrementAndGet();
+            }
+            dropped.incrementAndGet();
+            logger.warning("LLM job queue full, dropped " + type + " job for user " + userId);
+            return false;
+        }
+        writeQueue.submit(() -> repository.save(new LlmJob(type, userId, payload))).whenComplete((saved, error) -> {
+            if (error != null) {
+                pending.decrementAndGet();
+                dropped.incrementAndGet();
+                logger.warning("Failed to store " + type + " job for user " + userId + ": " + error.getMessage());
+                return;
+            }
+            enqueued.incrementAndGet();
+            wake();
+        });
+        return true;
+    }
+
+    private void dispatchLoop() {
+        while (!stopping) {
+            long waitMillis = pollIntervalMillis;
+            try {
+                waitMillis = dispatchDue();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                logger.warning("LLM job scan failed: " + e.getMessage());
+            }
+            try {
+                awaitSignal(waitMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hands every due job that is first in line for its user to a free worker and returns
+     * how long to wait before scanning again.
+     */
+    long dispatchDue() throws InterruptedException {
+        finishedSinceScan.clear();
+        List<LlmJob> jobs = repository.findByStatusOrderByCreatedAtAsc(LlmJob.PENDING, PageRequest.of(0, scanSize));
+        oldestPending = jobs.isEmpty() ? null : jobs.get(0).getCreatedAt();
+
+        LocalDateTime now = LocalDateTime.now();
+        long waitMillis = pollIntervalMillis;
+        Set<UUID> seenUsers = new HashSet<>();
+        for (LlmJob job : jobs) {
+            if (!seenUsers.add(job.getUserId()) || busyUsers.contains(job.getUserId())
+                    || finishedSinceScan.contains(job.getId())) {
+                continue;
+            }
+            if (job.getNextAttemptAt().isAfter(now)) {
+                waitMillis = Math.min(waitMillis, Duration.between(now, job.getNextAttemptAt()).toMillis());
+                continue;
+            }
+            if (!workerPermits.tryAcquire()) {
+                break; // a finishing worker wakes the dispatcher again
+            }
+            awaitRateSlot();
+            busyUsers.add(job.getUserId());
+            executor.execute(() -> runJob(job));
+        }
+        return Math.max(1, waitMillis);
+    }
+
+    private void awaitRateSlot() throws InterruptedException {
+        long now = System.nanoTime();
+        long slot = Math.max(now, nextSlotNanos.get());
+        nextSlotNanos.set(slot + slotNanos);
+        if (slot > now) {
+            TimeUnit.NANOSECONDS.sleep(slot - now);
+        }
+    }
+
+    private void runJob(LlmJob job) {
+        int attempt = job.getAttempts() + 1;
+        try {
+            try {
+                Handler handler = handlers.get(job.getType());
+                if (handler == null) {
+                    throw new IllegalStateException("No handler for job type " + job.getType());
+                }
+                handler.handle(job, attempt >= maxAttempts);
+            } catch (Exception e) {
+                recordFailure(job, attempt, e);
+                return;
+            }
+            writeQueue.execute(() -> {
+                repository.deleteById(job.getId());
+                return null;
+            });
+            pending.decrementAndGet();
+            completed.incrementAndGet();
+        } catch (Exception e) {
+            // The row is unchanged, so the job is simply delivered again
+            logger.warning("Could not record outcome of LLM job " + job.getId() + ": " + e.getMessage());
+        } finally {
+            finishedSinceScan.add(job.getId());
+            busyUsers.remove(job.getUserId());
+            workerPermits.release();
+            wake();
+        }
+    }
+
+    private void recordFailure(LlmJob job, int attempt, Exception error) {
+        long delayMillis = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 20));
+        String message = error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage();
+        job.setAttempts(attempt);
+        job.setLastError(message.length() > 1000 ? message.substring(0, 1000) : message);
+        boolean exhausted = attempt >= maxAttempts;
+        if (exhausted) {
+            job.setStatus(LlmJob.FAILED);
+        } else {
+            job.setNextAttemptAt(LocalDateTime.now().plus(Duration.ofMillis(delayMillis)));
+        }
+        if (isRateLimited(error)) {
+            rateLimited.incrementAndGet();
+            nextSlotNanos.accumulateAndGet(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis), Math::max);
+        }
+
+        writeQueue.execute(() -> repository.save(job));
+        if (exhausted) {
+            pending.decrementAndGet();
+            deadLettered.incrementAndGet();
+            logger.warning("LLM job " + job.getId() + " (" + job.getType() + ") failed after "
+                + attempt + " attempts: " + message);
+        } else {
+            retries.incrementAndGet();
+        }
+    }
+
+    private static boolean isRateLimited(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof WebClientResponseException
+                    && ((WebClientResponseException) cause).getStatusCode().value() == 429) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void wake() {
+        synchronized (signal) {
+            signalled = true;
+            signal.notifyAll();
+        }
+    }
+
+    private void awaitSignal(long timeoutMillis) throws InterruptedException {
+        synchronized (signal) {
+            if (!signalled && !stopping) {
+                signal.wait(timeoutMillis);
+            }
+            signalled = false;
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        stopping = true;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+            dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        // Jobs still running stay pending in the table and run again after restart
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    public int getWorkerCount() { return workerCount; }
+    public int getRequestsPerMinute() { return requestsPerMinute; }
+    public int getInFlightCount() { return busyUsers.size(); }
+    public long getPendingCount() { return pending.get(); }
+    public long getEnqueuedCount() { return enqueued.get(); }
+    public long getDroppedCount() { return dropped.get(); }
+    public long getCompletedCount() { return completed.get(); }
+    public long getRetryCount() { return retries.get(); }
+    public long getDeadLetteredCount() { return deadLettered.get(); }
+    public long getRateLimitedCount() { return rateLimited.get(); }
+
+    /**
+     * Age of the oldest pending job as of the dispatcher's last scan, or 0 when there was none.
+     */
+    public long getOldestPendingMillis() {
+        LocalDateTime oldest = oldestPending;
+        return oldest == null ? 0 : Math.max(0, Duration.between(oldest, LocalDateTime.now()).toMillis());
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("workers", getWorkerCount());
+        snapshot.put("requestsPerMinute", getRequestsPerMinute());
+        snapshot.put("inFlight", getInFlightCount());
+        snapshot.put("pending", getPendingCount());
+        snapshot.put("oldestPendingMs", getOldestPendingMillis());
+        snapshot.put("enqueued", getEnqueuedCount());
+        snapshot.put("dropped", getDroppedCount());
+        snapshot.put("completed", getCompletedCount());
+        snapshot.put("retries", getRetryCount());
+        snapshot.put("deadLettered", getDeadLetteredCount());
+        snapshot.put("rateLimited", getRateLimitedCount());
+        return snapshot;
+    }
+
+    /**
+     * Runs one kind of job. Throwing schedules a retry.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * @param lastAttempt true when another failure would exhaust the job's attempts, so a
+         *                    degraded result is better than none
+         */
+        void handle(LlmJob job, boolean lastAttempt) throws Exception;
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.demo;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface LlmJobRepository extends JpaRepository<LlmJob, UUID> {
+
+    List<LlmJob> findByStatusOrderByCreatedAtAsc(String status, Pageable pageable);
+
+    long countByStatus(String status);
+}
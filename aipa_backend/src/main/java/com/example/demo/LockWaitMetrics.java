@@ -0,0 +1,68 @@
+package com.example.demo;
+
+import org.springframework.stereotype.Component;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * How long callers waited for the SQLite write connection. In the sqlite profile there is
+ * exactly one writer connection, so this is the in-process equivalent of waiting for the
+ * database write lock. Stays at zero in other persistence modes.
+ */
+@Component
+public class LockWaitMetrics {
+
+    // Upper bounds in milliseconds; the last bucket takes everything slower
+    private static final long[] BUCKETS_MS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_MS.length + 1);
+
+    public void recordWait(long waitNanos) {
+        acquisitions.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+        int bucket = 0;
+        while (bucket < BUCKETS_MS.length && waitMillis > BUCKETS_MS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+    }
+
+    public void recordTimeout() {
+        timeouts.incrementAndGet();
+    }
+
+    public long getAcquisitions() { return acquisitions.get(); }
+    public long getTimeouts() { return timeouts.get(); }
+    public long getMaxWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()); }
+
+    public double getMeanWaitMillis() {
+        long count = acquisitions.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / count;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKETS_MS.length; i++) {
+            histogram.put("le_" + BUCKETS_MS[i] + "ms", buckets.get(i));
+        }
+        histogram.put("gt_" + BUCKETS_MS[BUCKETS_MS.length - 1] + "ms", buckets.get(BUCKETS_MS.length));
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("acquisitions", getAcquisitions());
+        snapshot.put("timeouts", getTimeouts());
+        snapshot.put("meanWaitMs", getMeanWaitMillis());
+        snapshot.put("maxWaitMs", getMaxWaitMillis());
+        snapshot.put("histogram", histogram);
+        return snapshot;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.demo;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/maintenance")
+public class MaintenanceController {
+
+    private final MaintenanceService maintenanceService;
+    private final SessionTracker sessionTracker;
+    private final WriteQueue writeQueue;
+    private final LockWaitMetrics lockWaitMetrics;
+    private final MemoryExtractionPipeline memoryExtractionPipeline;
+    private final LlmJobQueue llmJobQueue;
+    private final ResponseJournal responseJournal;
+    private final PromptTemplateRegistry promptTemplates;
+    private final GeminiPromptCache promptCache;
+    private final ChatScheduler chatScheduler;
+    private final GeminiCallGuard callGuard;
+
+    public MaintenanceController(MaintenanceService maintenanceService, SessionTracker sessionTracker,
+                                 WriteQueue writeQueue, LockWaitMetrics lockWaitMetrics,
+                                 MemoryExtractionPipeline memoryExtractionPipeline, LlmJobQueue llmJobQueue,
+                                 ResponseJournal responseJournal, PromptTemplateRegistry promptTemplates,
+                                 GeminiPromptCache promptCache, ChatScheduler chatScheduler,
+                                 GeminiCallGuard callGuard) {
+        this.maintenanceService = maintenanceService;
+        this.sessionTracker = sessionTracker;
+        this.writeQueue = writeQueue;
+        this.lockWaitMetrics = lockWaitMetrics;
+        this.memoryExtractionPipeline = memoryExtractionPipeline;
+        this.llmJobQueue = llmJobQueue;
+        this.responseJournal = responseJournal;
+        this.promptTemplates = promptTemplates;
+        this.promptCache = promptCache;
+        this.chatScheduler = chatScheduler;
+        this.callGuard = callGuard;
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<?> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("jobs", maintenanceService.getJobStats());
+        stats.put("sessions", Map.of(
+            "tracked", sessionTracker.getTrackedSessionCount(),
+            "pendingWrites", sessionTracker.getPendingWriteCount(),
+            "flushedRows", sessionTracker.getFlushedRowCount(),
+            "expired", sessionTracker.getExpiredSessionCount()
+        ));
+        stats.put("writeQueue", Map.of(
+            "enabled", writeQueue.isEnabled(),
+            "depth", writeQueue.getQueueDepth(),
+            "submitted", writeQueue.getSubmittedCount(),
+            "rejected", writeQueue.getRejectedCount(),
+            "commits", writeQueue.getCommitCount(),
+            "groupRetries", writeQueue.getGroupRetryCount(),
+            "maxGroupSize", writeQueue.getMaxGroupSize()
+        ));
+        stats.put("writeLockWait", lockWaitMetrics.snapshot());
+        stats.put("memoryExtraction", memoryExtractionPipeline.snapshot());
+        stats.put("llmJobs", llmJobQueue.snapshot());
+        stats.put("responseJournal", responseJournal.snapshot());
+        stats.put("promptTemplates", Map.of(
+            "versions", promptTemplates.versions(),
+            "reloads", promptTemplates.getReloadCount()
+        ));
+        stats.put("promptCache", promptCache.snapshot());
+        stats.put("chatScheduler", chatScheduler.snapshot());
+        stats.put("gemini", callGuard.snapshot());
+        return ResponseEntity.ok(stats);
+    }
+}
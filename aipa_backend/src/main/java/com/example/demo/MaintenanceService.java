@@ -0,0 +1,243 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Background cleanup that used to happen inline on the chat path, or not at all:
+ * bulk expiry of idle sessions, purging of old inactive sessions and soft-deleted
+ * memories, and SQLite housekeeping. Row jobs work in small transactions on the
+ * {@link WriteQueue} and stop when their time budget is used up, so a large backlog is
+ * worked off over several runs instead of holding the write lock for one long statement.
+ */
+@Service
+public class MaintenanceService {
+
+    private static final Logger logger = Logger.getLogger(MaintenanceService.class.getName());
+
+    static final String EXPIRE_SESSIONS = "expire-sessions";
+    static final String PURGE_SESSIONS = "purge-sessions";
+    static final String PURGE_MEMORIES = "purge-memories";
+    static final String WAL_CHECKPOINT = "wal-checkpoint";
+    static final String ANALYZE = "analyze";
+    static final String VACUUM = "vacuum";
+
+    private final SessionMemoryRepository sessionRepository;
+    private final MemoryRepository memoryRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final WriteQueue writeQueue;
+    private final Map<String, JobStats> stats = new ConcurrentHashMap<>();
+    private Boolean sqlite;
+
+    @Value("${app.session.idle-timeout-minutes:1440}")
+    private long sessionIdleTimeoutMinutes;
+
+    @Value("${app.maintenance.session-retention-days:7}")
+    private int sessionRetentionDays;
+
+    @Value("${app.maintenance.memory-retention-days:30}")
+    private int memoryRetentionDays;
+
+    @Value("${app.maintenance.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${app.maintenance.time-budget-ms:2000}")
+    private long timeBudgetMillis;
+
+    public MaintenanceService(SessionMemoryRepository sessionRepository, MemoryRepository memoryRepository,
+                              JdbcTemplate jdbcTemplate, WriteQueue writeQueue) {
+        this.sessionRepository = sessionRepository;
+        this.memoryRepository = memoryRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.writeQueue = writeQueue;
+    }
+
+    @Scheduled(cron = "${app.maintenance.sweep-cron:0 */15 * * * *}")
+    public void sweep() {
+        expireIdleSessions();
+        purgeInactiveSessions();
+        purgeInactiveMemories();
+    }
+
+    /**
+     * Marks sessions inactive that went idle without SessionTracker seeing them expire,
+     * e.g. because the application was restarted.
+     */
+    public int expireIdleSessions() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(sessionIdleTimeoutMinutes);
+        return runChunked(EXPIRE_SESSIONS, () -> {
+            List<UUID> ids = sessionRepository.findIdleActiveSessionIds(cutoff, PageRequest.of(0, chunkSize));
+            return ids.isEmpty() ? 0 : sessionRepository.deactivateByIds(ids);
+        });
+    }
+
+    public int purgeInactiveSessions() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(sessionRetentionDays);
+        return runChunked(PURGE_SESSIONS, () -> {
+            List<UUID> ids = sessionRepository.findInactiveSessionIds(cutoff, PageRequest.of(0, chunkSize));
+            return ids.isEmpty() ? 0 : sessionRepository.deleteByIds(ids);
+        });
+    }
+
+    /**
+     * Hard-deletes memories that were deactivated more than the retention window ago.
+     */
+    public int purgeInactiveMemories() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(memoryRetentionDays);
+        return runChunked(PURGE_MEMORIES, () -> {
+            List<UUID> ids = memoryRepository.findInactiveMemoryIds(cutoff, PageRequest.of(0, chunkSize));
+            return ids.isEmpty() ? 0 : memoryRepository.deleteByIds(ids);
+        });
+    }
+
+    /**
+     * PASSIVE never waits for readers or writers; it copies what it can and leaves the rest
+     * for the next run, which keeps the WAL file from growing between automatic checkpoints.
+     */
+    @Scheduled(fixedDelayString = "${app.maintenance.checkpoint-interval-ms:300000}",
+               initialDelayString = "${app.maintenance.checkpoint-interval-ms:300000}")
+    public void checkpointWal() {
+        runSqlite(WAL_CHECKPOINT, () -> {
+            Map<String, Object> result = jdbcTemplate.queryForMap("PRAGMA wal_checkpoint(PASSIVE)");
+            Object checkpointed = result.get("checkpointed");
+            return checkpointed instanceof Number ? ((Number) checkpointed).intValue() : 0;
+        });
+    }
+
+    @Scheduled(cron = "${app.maintenance.analyze-cron:0 0 3 * * *}")
+    public void analyze() {
+        runSqlite(ANALYZE, () -> {
+            jdbcTemplate.execute("ANALYZE");
+            return 0;
+        });
+    }
+
+    @Scheduled(cron = "${app.maintenance.vacuum-cron:0 30 3 * * SUN}")
+    public void vacuum() {
+        runSqlite(VACUUM, () -> {
+            jdbcTemplate.execute("VACUUM");
+            return 0;
+        });
+    }
+
+    public Map<String, JobStats> getJobStats() {
+        return new TreeMap<>(stats);
+    }
+
+    private int runChunked(String job, IntSupplier chunk) {
+        JobStats jobStats = stats.computeIfAbsent(job, JobStats::new);
+        long started = System.currentTimeMillis();
+        long deadline = started + timeBudgetMillis;
+        int total = 0;
+        int chunks = 0;
+        boolean budgetExhausted = false;
+
+        try {
+            while (true) {
+                Integer affected = writeQueue.execute(chunk::getAsInt);
+                int rows = affected != null ? affected : 0;
+                total += rows;
+                chunks++;
+                if (rows < chunkSize) {
+                    break;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    budgetExhausted = true;
+                    break;
+                }
+            }
+            jobStats.record(total, chunks, System.currentTimeMillis() - started, budgetExhausted, null);
+        } catch (Exception e) {
+            jobStats.record(total, chunks, System.currentTimeMillis() - started, false, e);
+            logger.warning("Maintenance job " + job + " failed after " + total + " rows: " + e.getMessage());
+        }
+
+        if (total > 0 || budgetExhausted) {
+            logger.info(jobStats.toString());
+        }
+        return total;
+    }
+
+    private void runSqlite(String job, IntSupplier statement) {
+        if (!isSqlite()) {
+            return;
+        }
+        JobStats jobStats = stats.computeIfAbsent(job, JobStats::new);
+        long started = System.currentTimeMillis();
+        try {
+            int rows = statement.getAsInt();
+            jobStats.record(rows, 1, System.currentTimeMillis() - started, false, null);
+            logger.info(jobStats.toString());
+        } catch (Exception e) {
+            jobStats.record(0, 1, System.currentTimeMillis() - started, false, e);
+            logger.warning("Maintenance job " + job + " failed: " + e.getMessage());
+        }
+    }
+
+    private boolean isSqlite() {
+        if (sqlite == null) {
+            sqlite = Boolean.TRUE.equals(jdbcTemplate.execute((Connection connection) ->
+                "SQLite".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName())));
+        }
+        return sqlite;
+    }
+
+    public static class JobStats {
+        private final String job;
+        private long runs;
+        private long failures;
+        private long totalRows;
+        private int lastRows;
+        private int lastChunks;
+        private long lastDurationMs;
+        private boolean lastBudgetExhausted;
+        private LocalDateTime lastRunAt;
+        private String lastError;
+
+        JobStats(String job) {
+            this.job = job;
+        }
+
+        synchronized void record(int rows, int chunks, long durationMs, boolean budgetExhausted, Exception error) {
+            runs++;
+            totalRows += rows;
+            lastRows = rows;
+            lastChunks = chunks;
+            lastDurationMs = durationMs;
+            lastBudgetExhausted = budgetExhausted;
+            lastRunAt = LocalDateTime.now();
+            if (error != null) {
+                failures++;
+                lastError = error.getMessage();
+            } else {
+                lastError = null;
+            }
+        }
+
+        public String getJob() { return job; }
+        public synchronized long getRuns() { return runs; }
+        public synchronized long getFailures() { return failures; }
+        public synchronized long getTotalRows() { return totalRows; }
+        public synchronized int getLastRows() { return lastRows; }
+        public synchronized int getLastChunks() { return lastChunks; }
+        public synchronized long getLastDurationMs() { return lastDurationMs; }
+        public synchronized boolean isLastBudgetExhausted() { return lastBudgetExhausted; }
+        public synchronized LocalDateTime getLastRunAt() { return lastRunAt; }
+        public synchronized String getLastError() { return lastError; }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("JobStats{job=%s, rows=%d, chunks=%d, durationMs=%d, budgetExhausted=%s, runs=%d, failures=%d}",
+                job, lastRows, lastChunks, lastDurationMs, lastBudgetExhausted, runs, failures);
+        }
+    }
+}
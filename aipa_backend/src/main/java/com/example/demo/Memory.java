@@ -5,7 +5,11 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "user_memories")
+@Table(name = "user_memories",
+       indexes = {
+           @Index(name = "idx_user_memories_user_active", columnList = "user_id, isActive"),
+           @Index(name = "idx_user_memories_active_updated", columnList = "isActive, updatedAt")
+       })
 public class Memory {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
@@ -17,22 +17,31 @@ public class MemoryAnalysisService {
     private final MemoryFilterService memoryFilterService;
     private final InputRoutingService inputRoutingService;
     private final WebClient webClient;
+    private final ChatMetrics chatMetrics;
+    private final GeminiPromptCache promptCache;
+    private final GeminiCallGuard callGuard;
     private final ObjectMapper objectMapper = new ObjectMapper();
     
     @Value("${gemini.api.key}")
     private String geminiApiKey;
     
     @Autowired
-    public MemoryAnalysisService(MemoryFilterService memoryFilterService, InputRoutingService inputRoutingService, WebClient.Builder webClientBuilder) {
+    public MemoryAnalysisService(MemoryFilterService memoryFilterService, InputRoutingService inputRoutingService, WebClient.Builder webClientBuilder,
+                                 ChatMetrics chatMetrics, GeminiPromptCache promptCache, GeminiCallGuard callGuard,
+                                 @Value("${gemini.base-url:https://generativelanguage.googleapis.com}") String geminiBaseUrl) {
         this.memoryFilterService = memoryFilterService;
         this.inputRoutingService = inputRoutingService;
+        this.chatMetrics = chatMetrics;
+        this.promptCache = promptCache;
+        this.callGuard = callGuard;
         this.webClient = webClientBuilder
-            .baseUrl("https://generativelanguage.googleapis.com")
+            .baseUrl(geminiBaseUrl)
             .defaultHeader("Content-Type", "application/json")
             .build();
     }
     
     
+    /** Static instructions and examples, sent as a cacheable prefix; see {@link GeminiPromptCache}. */
     public static final String ENHANCED_MEMORY_PROMPT = 
         "Extract personal information from user input. BE EXTREMELY GENEROUS - extract ANYTHING personal about the user!\n\n" +
         
@@ -48,8 +57,6 @@ public class MemoryAnalysisService {
         "Use HIGH confidence for clear personal facts, MEDIUM for preferences.\n" +
         "Only use 'None' for pure questions or completely irrelevant content.\n\n" +
         
-        "Categories: %s\n\n" +
-        
         "Return JSON:\n" +
         "{\"categoryMatch\":\"match_or_None\",\"newCategorySuggestion\":\"suggestion_or_None\",\"memoryToStore\":\"fact_or_None\",\"confidence\":\"high_medium_or_low\",\"memoryType\":\"personal_fact_preference_or_goal\"}\n\n" +
         
@@ -59,12 +66,23 @@ public class MemoryAnalysisService {
         "\"My name is Alice\" → {\"categoryMatch\":\"None\",\"newCategorySuggestion\":\"Personal\",\"memoryToStore\":\"Name is Alice\",\"confidence\":\"high\",\"memoryType\":\"personal_fact\"}\n" +
         "\"I love pizza\" → {\"categoryMatch\":\"None\",\"newCategorySuggestion\":\"Preferences\",\"memoryToStore\":\"Loves pizza\",\"confidence\":\"medium\",\"memoryType\":\"preference\"}\n" +
         "\"My phone is 555-1234\" → {\"categoryMatch\":\"None\",\"newCategorySuggestion\":\"Contact\",\"memoryToStore\":\"Phone number is 555-1234\",\"confidence\":\"high\",\"memoryType\":\"personal_fact\"}\n" +
-        "\"I studied at Harvard\" → {\"categoryMatch\":\"None\",\"newCategorySuggestion\":\"Education\",\"memoryToStore\":\"Studied at Harvard\",\"confidence\":\"high\",\"memoryType\":\"personal_fact\"}\n\n" +
-        
+        "\"I studied at Harvard\" → {\"categoryMatch\":\"None\",\"newCategorySuggestion\":\"Education\",\"memoryToStore\":\"Studied at Harvard\",\"confidence\":\"high\",\"memoryType\":\"personal_fact\"}\n\n";
+    
+    /** The per-call part of the prompt, after {@link #ENHANCED_MEMORY_PROMPT}: categories, then the input. */
+    public static final String ENHANCED_MEMORY_PROMPT_SUFFIX =
+        "Categories: %s\n\n" +
         "Input: \"%s\"\n" +
         "JSON:";
     
     public MemoryAnalysisResult analyzeForMemory(String userInput, List<String> existingCategories) {
+        return analyzeForMemory(userInput, existingCategories, true);
+    }
+    
+    /**
+     * With {@code allowPatternFallback} false, a failed Gemini call is thrown instead of being
+     * answered by the pattern extractor, so background jobs can retry it later.
+     */
+    public MemoryAnalysisResult analyzeForMemory(String userInput, List<String> existingCategories, boolean allowPatternFallback) {
         try {
             InputRoutingService.RoutingDecision routingDecision = inputRoutingService.routeInput(userInput);
             
@@ -81,40 +99,45 @@ public class MemoryAnalysisService {
                 return new MemoryAnalysisResult("None", "None", "None", "filtered", "None");
             }
             
-            return extractMemoryUsingLLM(userInput, existingCategories);
+            return extractMemoryUsingLLM(userInput, existingCategories, allowPatternFallback);
             
         } catch (Exception e) {
+            if (!allowPatternFallback) {
+                throw e;
+            }
             logger.severe("Error in memory analysis: " + e.getMessage());
             return new MemoryAnalysisResult("None", "None", "None", "low", "None");
         }
     }
     
-    private MemoryAnalysisResult extractMemoryUsingLLM(String userInput, List<String> existingCategories) {
+    private MemoryAnalysisResult extractMemoryUsingLLM(String userInput, List<String> existingCategories, boolean allowPatternFallback) {
+        if (!hasApiKey()) {
+            chatMetrics.recordFallback("memory_analysis", "no_api_key");
+            return extractMemoryUsingPatterns(userInput, existingCategories);
+        }
         try {
             String categoriesStr = existingCategories.isEmpty() ? "None" : String.join(", ", existingCategories);
-            String prompt = String.format(ENHANCED_MEMORY_PROMPT, categoriesStr, userInput);
+            GeminiPromptCache.Prompt prompt = promptCache.prompt("gemini-2.0-flash", ENHANCED_MEMORY_PROMPT,
+                String.format(ENHANCED_MEMORY_PROMPT_SUFFIX, categoriesStr, userInput));
             
-            Map<String, Object> request = Map.of(
-                "contents", List.of(
-                    Map.of("parts", List.of(
-                        Map.of("text", prompt)
-                    ))
-                ),
+            Map<String, Object> request = prompt.request(Map.of(
                 "generationConfig", Map.of(
                     "temperature", 0.4,  // Increased from 0.3 for even more creative extraction
                     "topP", 0.95,        // Increased from 0.9 for more diverse responses
                     "maxOutputTokens", 300 // Increased from 256 for more detailed responses
                 )
-            );
+            ));
             
-            JsonNode response = webClient.post()
+            JsonNode response = callGuard.protect(prompt.getModel(), "generateContent",
+                chatMetrics.timeLlmCall("memory_analysis", prompt.getModel(), prompt.getSentLength(), webClient.post()
                 .uri(uriBuilder -> uriBuilder
-                    .path("/v1beta/models/gemini-2.0-flash:generateContent")  // Use advanced model
+                    .path("/v1beta/models/" + prompt.getModel() + ":generateContent")
                     .queryParam("key", geminiApiKey)
                     .build())
                 .bodyValue(request)
                 .retrieve()
                 .bodyToMono(JsonNode.class)
+                .doOnError(e -> promptCache.failed(prompt))))
                 .block();
             
             String responseText = response
@@ -127,11 +150,25 @@ public class MemoryAnalysisService {
             return parseMemoryAnalysisResponse(responseText);
             
         } catch (Exception e) {
+            if (!allowPatternFallback) {
+                throw e;
+            }
+            if (e instanceof GeminiCallGuard.CircuitOpenException) {
+                chatMetrics.recordFallback("memory_analysis", "circuit_open");
+                return extractMemoryUsingPatterns(userInput, existingCategories);
+            }
             logger.severe("Error extracting memory using LLM: " + e.getMessage());
+            chatMetrics.recordFallback("memory_analysis", "llm_error");
             return extractMemoryUsingPatterns(userInput, existingCategories);
         }
     }
     
+    // Without a real key every call fails, so test setups go straight to the pattern extractor
+    private boolean hasApiKey() {
+        return geminiApiKey != null && !geminiApiKey.trim().isEmpty()
+            && !"your-gemini-api-key-here".equals(geminiApiKey);
+    }
+    
     private MemoryAnalysisResult parseMemoryAnalysisResponse(String responseText) {
         try {
             String cleanedResponse = responseText.trim();
@@ -17,18 +17,18 @@ public class MemoryController {
     private static final Logger logger = Logger.getLogger(MemoryController.class.getName());
     
     private final MemoryService memoryService;
-    private final UserRepository userRepository;
+    private final UserCache userCache;
 
     @Autowired
-    public MemoryController(MemoryService memoryService, UserRepository userRepository) {
+    public MemoryController(MemoryService memoryService, UserCache userCache) {
         this.memoryService = memoryService;
-        this.userRepository = userRepository;
+        this.userCache = userCache;
     }
     
     private UUID getUserIdFromAuthentication(Authentication authentication) {
         String email = authentication.getName();
         logger.info("Getting user ID for email: " + email);
-        User user = userRepository.findByEmail(email);
+        User user = userCache.findByEmail(email);
         if (user == null) {
             logger.severe("User not found with email: " + email);
             throw new RuntimeException("User not found with email: " + email);
@@ -14,17 +14,17 @@ import java.util.HashMap;
 public class MemoryDebugController {
 
     private final MemoryService memoryService;
-    private final UserRepository userRepository;
+    private final UserCache userCache;
 
     @Autowired
-    public MemoryDebugController(MemoryService memoryService, UserRepository userRepository) {
+    public MemoryDebugController(MemoryService memoryService, UserCache userCache) {
         this.memoryService = memoryService;
-        this.userRepository = userRepository;
+        this.userCache = userCache;
     }
     
     private UUID getUserIdFromAuthentication(Authentication authentication) {
         String email = authentication.getName();
-        User user = userRepository.findByEmail(email);
+        User user = userCache.findByEmail(email);
         if (user == null) {
             throw new RuntimeException("User not found with email: " + email);
         }
@@ -0,0 +1,101 @@
+package com.example.demo;
+
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs memory extraction (the Gemini analysis plus the insert) off the chat request path.
+ * {@link #submit} only records a job in {@link LlmJobQueue}, so a chat reply never waits for
+ * extraction and a new memory becomes visible a little after the reply that produced it.
+ *
+ * Queueing, retries with backoff and rate limiting are the job queue's. A failed Gemini call
+ * is retried rather than answered by the pattern extractor; only the job's last attempt
+ * falls back to patterns. Lag is measured from submission to completion.
+ */
+@Component
+public class MemoryExtractionPipeline implements LlmJobQueue.Handler {
+
+    static final String JOB_TYPE = "memory-extraction";
+
+    private final MemoryService memoryService;
+    private final LlmJobQueue jobQueue;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong totalLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private volatile long lastLagNanos;
+
+    public MemoryExtractionPipeline(MemoryService memoryService, LlmJobQueue jobQueue) {
+        this.memoryService = memoryService;
+        this.jobQueue = jobQueue;
+        jobQueue.register(JOB_TYPE, this);
+    }
+
+    /**
+     * Queues {@code userInput} for extraction. Returns false, without blocking, when the
+     * job queue is full.
+     */
+    public boolean submit(UUID userId, String userInput) {
+        if (!jobQueue.enqueue(JOB_TYPE, userId, userInput)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        submitted.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public void handle(LlmJob job, boolean lastAttempt) {
+        MemoryAnalysisService.MemoryAnalysisResult analysis;
+        try {
+            analysis = memoryService.extractAndStoreMemory(job.getUserId(), job.getPayload(), lastAttempt);
+        } catch (RuntimeException e) {
+            failedAttempts.incrementAndGet();
+            throw e;
+        }
+        if (analysis.shouldStore()) {
+            stored.incrementAndGet();
+        }
+        long lag = Duration.between(job.getCreatedAt(), LocalDateTime.now()).toNanos();
+        completed.incrementAndGet();
+        totalLagNanos.addAndGet(lag);
+        maxLagNanos.accumulateAndGet(lag, Math::max);
+        lastLagNanos = lag;
+    }
+
+    public long getSubmittedCount() { return submitted.get(); }
+    public long getDroppedCount() { return dropped.get(); }
+    public long getCompletedCount() { return completed.get(); }
+    public long getStoredCount() { return stored.get(); }
+    public long getFailedAttemptCount() { return failedAttempts.get(); }
+    public long getLastLagMillis() { return TimeUnit.NANOSECONDS.toMillis(lastLagNanos); }
+    public long getMaxLagMillis() { return TimeUnit.NANOSECONDS.toMillis(maxLagNanos.get()); }
+
+    public double getMeanLagMillis() {
+        long count = completed.get();
+        return count == 0 ? 0 : totalLagNanos.get() / 1_000_000.0 / count;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("submitted", getSubmittedCount());
+        snapshot.put("dropped", getDroppedCount());
+        snapshot.put("completed", getCompletedCount());
+        snapshot.put("stored", getStoredCount());
+        snapshot.put("failedAttempts", getFailedAttemptCount());
+        snapshot.put("lastLagMs", getLastLagMillis());
+        snapshot.put("meanLagMs", getMeanLagMillis());
+        snapshot.put("maxLagMs", getMaxLagMillis());
+        return snapshot;
+    }
+}
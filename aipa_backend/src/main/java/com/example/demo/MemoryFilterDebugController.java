@@ -14,22 +14,22 @@ public class MemoryFilterDebugController {
     private final MemoryFilterService memoryFilterService;
     private final MemoryAnalysisService memoryAnalysisService;
     private final MemoryService memoryService;
-    private final UserRepository userRepository;
+    private final UserCache userCache;
 
     @Autowired
     public MemoryFilterDebugController(MemoryFilterService memoryFilterService,
                                      MemoryAnalysisService memoryAnalysisService,
                                      MemoryService memoryService,
-                                     UserRepository userRepository) {
+                                     UserCache userCache) {
         this.memoryFilterService = memoryFilterService;
         this.memoryAnalysisService = memoryAnalysisService;
         this.memoryService = memoryService;
-        this.userRepository = userRepository;
+        this.userCache = userCache;
     }
     
     private UUID getUserIdFromAuthentication(Authentication authentication) {
         String email = authentication.getName();
-        User user = userRepository.findByEmail(email);
+        User user = userCache.findByEmail(email);
         if (user == null) {
             throw new RuntimeException("User not found with email: " + email);
         }
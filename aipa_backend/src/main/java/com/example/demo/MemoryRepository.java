@@ -1,8 +1,12 @@
 package com.example.demo;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -17,4 +21,11 @@ public interface MemoryRepository extends JpaRepository<Memory, UUID> {
     
     @Query("SELECT m FROM Memory m WHERE m.user.id = ?1 AND m.category = ?2 AND m.isActive = true ORDER BY m.updatedAt DESC")
     List<Memory> findLatestMemoriesByCategory(UUID userId, String category);
+    
+    @Query("SELECT m.id FROM Memory m WHERE m.isActive = false AND m.updatedAt < ?1")
+    List<UUID> findInactiveMemoryIds(LocalDateTime cutoffTime, Pageable pageable);
+    
+    @Modifying
+    @Query("DELETE FROM Memory m WHERE m.id IN ?1")
+    int deleteByIds(Collection<UUID> ids);
 } 
@@ -1,5 +1,7 @@
 package com.example.demo;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -13,6 +15,9 @@ import java.time.LocalDateTime;
 
 @Service
 public class MemoryService {
+    private static final Logger logger = LoggerFactory.getLogger(MemoryService.class);
+    private static final PayloadLog payloadLog = PayloadLog.forCategory("memory");
+
     private final MemoryRepository memoryRepository;
     private final EncryptionUtil encryptionUtil;
     private final UserRepository userRepository;
@@ -29,8 +34,8 @@ public class MemoryService {
 
     @Transactional
     public Memory storeMemory(UUID userId, String category, String content) {
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new RuntimeException("User not found"));
+        // Callers pass the id of an authenticated user, so a reference is enough for the foreign key
+        User user = userRepository.getReferenceById(userId);
             
         Memory memory = new Memory();
         memory.setUser(user);
@@ -143,6 +148,8 @@ public class MemoryService {
     public void deactivateMemory(UUID memoryId) {
         memoryRepository.findById(memoryId).ifPresent(memory -> {
             memory.setActive(false);
+            // updatedAt marks the soft delete for the retention sweep in MaintenanceService
+            memory.setUpdatedAt(LocalDateTime.now());
             memoryRepository.save(memory);
         });
     }
@@ -159,33 +166,41 @@ public class MemoryService {
     @Transactional
     public MemoryAnalysisService.MemoryAnalysisResult analyzeAndStoreMemory(UUID userId, String userInput) {
         try {
-            
-            List<String> existingCategories = getCategories(userId);
-            
-            
-            MemoryAnalysisService.MemoryAnalysisResult analysis = 
-                memoryAnalysisService.analyzeForMemory(userInput, existingCategories);
-            
-            
-            if (analysis.shouldStore()) {
-                String categoryToUse = !analysis.getCategoryMatch().equals("None") 
-                    ? analysis.getCategoryMatch() 
-                    : analysis.getNewCategorySuggestion();
-                    
-                if (!categoryToUse.equals("None")) {
-                    storeMemory(userId, categoryToUse, analysis.getMemoryToStore());
-                    System.out.println("Memory stored - Category: " + categoryToUse + 
-                                     ", Content: " + analysis.getMemoryToStore());
-                }
-            }
-            
-            return analysis;
+            return extractAndStoreMemory(userId, userInput, true);
         } catch (Exception e) {
-            System.err.println("Error in memory analysis and storage: " + e.getMessage());
+            logger.warn("Error in memory analysis and storage: {}", e.getMessage());
             return new MemoryAnalysisService.MemoryAnalysisResult("None", "None", "None", "low", "None");
         }
     }
 
+    /**
+     * Same as {@link #analyzeAndStoreMemory} but lets failures propagate so the caller can retry;
+     * with {@code allowPatternFallback} false that includes a failed Gemini call.
+     * Not transactional itself: the LLM call runs without holding a connection and only the
+     * category lookup and the insert open their own transactions.
+     */
+    public MemoryAnalysisService.MemoryAnalysisResult extractAndStoreMemory(UUID userId, String userInput,
+                                                                            boolean allowPatternFallback) {
+        List<String> existingCategories = getCategories(userId);
+        
+        MemoryAnalysisService.MemoryAnalysisResult analysis = 
+            memoryAnalysisService.analyzeForMemory(userInput, existingCategories, allowPatternFallback);
+        
+        if (analysis.shouldStore()) {
+            String categoryToUse = !analysis.getCategoryMatch().equals("None") 
+                ? analysis.getCategoryMatch() 
+                : analysis.getNewCategorySuggestion();
+                
+            if (!categoryToUse.equals("None")) {
+                storeMemory(userId, categoryToUse, analysis.getMemoryToStore());
+                logger.info("Memory stored - Category: {}", categoryToUse);
+                payloadLog.log("Memory content", analysis.getMemoryToStore());
+            }
+        }
+        
+        return analysis;
+    }
+
     
     @Transactional(readOnly = true)
     public List<String> getRelevantMemories(UUID userId, String context) {
@@ -0,0 +1,62 @@
+package com.example.demo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Logs large request payloads (user input, prompts, model responses) without paying for them
+ * on every request. Each category gets its own logger, {@code aipa.payload.<category>}, which
+ * is off by default; set it to DEBUG to see payloads, e.g. {@code logging.level.aipa.payload.llm=DEBUG}.
+ *
+ * <p>Even at DEBUG only one request in {@code -Daipa.log.payload.sample-every} (default 100) is
+ * logged, and payloads are cut to {@code -Daipa.log.payload.max-chars} (default 2000). Nothing is
+ * copied or formatted for the requests that are skipped.
+ */
+public final class PayloadLog {
+
+    private static final int SAMPLE_EVERY = Math.max(1, Integer.getInteger("aipa.log.payload.sample-every", 100));
+    private static final int MAX_CHARS = Math.max(1, Integer.getInteger("aipa.log.payload.max-chars", 2000));
+
+    private final Logger logger;
+    private final int sampleEvery;
+    private final int maxChars;
+
+    PayloadLog(Logger logger, int sampleEvery, int maxChars) {
+        this.logger = logger;
+        this.sampleEvery = sampleEvery;
+        this.maxChars = maxChars;
+    }
+
+    public static PayloadLog forCategory(String category) {
+        return new PayloadLog(LoggerFactory.getLogger("aipa.payload." + category), SAMPLE_EVERY, MAX_CHARS);
+    }
+
+    /**
+     * Logs {@code payload} under {@code label} if the category is at DEBUG and this call is sampled.
+     */
+    public void log(String label, CharSequence payload) {
+        if (!logger.isDebugEnabled() || !sampled()) {
+            return;
+        }
+        int length = payload == null ? 0 : payload.length();
+        logger.atDebug()
+            .addKeyValue("payload", label)
+            .addKeyValue("chars", length)
+            .log("{} ({} chars): {}", label, length, truncate(payload, maxChars));
+    }
+
+    private boolean sampled() {
+        return sampleEvery == 1 || ThreadLocalRandom.current().nextInt(sampleEvery) == 0;
+    }
+
+    static String truncate(CharSequence payload, int maxChars) {
+        if (payload == null) {
+            return "null";
+        }
+        if (payload.length() <= maxChars) {
+            return payload.toString();
+        }
+        return payload.subSequence(0, maxChars) + "... [" + (payload.length() - maxChars) + " more chars]";
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.demo;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import javax.sql.DataSource;
+
+/**
+ * Persistence mode for a shared PostgreSQL database ({@code --spring.profiles.active=postgres}),
+ * so several application nodes can run against the same data.
+ *
+ * The schema is owned by the migrations in {@code db/migration}, applied by Flyway before the
+ * entity manager starts; Hibernate only validates the mapping against it. UUID keys are native
+ * {@code uuid} columns. Connection settings come from {@code app.persistence.postgres.*} and
+ * override whatever {@code spring.datasource.*} points at for the SQLite setup.
+ */
+@Configuration
+@Profile("postgres")
+public class PostgresPersistenceConfig {
+
+    @Value("${app.persistence.postgres.url:jdbc:postgresql://localhost:5432/aipa}")
+    private String url;
+
+    @Value("${app.persistence.postgres.username:aipa}")
+    private String username;
+
+    @Value("${app.persistence.postgres.password:}")
+    private String password;
+
+    @Value("${app.persistence.postgres.pool-size:10}")
+    private int poolSize;
+
+    @Value("${app.persistence.postgres.ddl-auto:validate}")
+    private String ddlAuto;
+
+    @Bean(destroyMethod = "close")
+    @Primary
+    public HikariDataSource dataSource() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("postgres");
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(poolSize);
+        return new HikariDataSource(config);
+    }
+
+    @Bean(initMethod = "migrate")
+    public Flyway flyway(DataSource dataSource) {
+        return Flyway.configure()
+            .dataSource(dataSource)
+            .locations("classpath:db/migration")
+            .javaMigrations(new V3_1__UpdateUserIdToUuid())
+            .load();
+    }
+
+    @Bean
+    public static EntityManagerFactoryDependsOnPostProcessor entityManagerFactoryDependsOnFlyway() {
+        return new EntityManagerFactoryDependsOnPostProcessor("flyway");
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer postgresHibernateProperties() {
+        return properties -> {
+            properties.put(AvailableSettings.DIALECT, "org.hibernate.dialect.PostgreSQLDialect");
+            properties.put(AvailableSettings.HBM2DDL_AUTO, ddlAuto);
+        };
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.demo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The prompt templates sent to Gemini, read from {@code app.prompts.dir} once at startup instead
+ * of on every request. Each template is split into static text and named slots when it is
+ * loaded, so rendering one is a single pass of appends.
+ *
+ * <p>The directory is watched, and a template file that changes is recompiled and swapped in
+ * whole: a request renders either the old or the new version, never a mix. Every load that
+ * changes a template's content gets a new version, {@code name@vN:hash}, which is recorded with
+ * each response in the {@link ResponseJournal}. A template file that is deleted keeps its last
+ * version; one that is missing fails {@link #get} until it is created.
+ */
+@Component
+public class PromptTemplateRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(PromptTemplateRegistry.class);
+
+    /** Slot for today's date, written as e.g. "Monday the 19 of October 2026". */
+    public static final String DATE_SLOT = "date";
+
+    private static final Map<String, String> SLOT_MARKERS = Map.of(
+        "[DAY_OF_WEEK] the [DAY] of [MONTH] [YEAR]", DATE_SLOT);
+
+    private final Path dir;
+    private final List<String> preload;
+    private final boolean watch;
+    private final long reloadDelayMillis;
+    private final Map<String, Loaded> templates = new ConcurrentHashMap<>();
+    private final AtomicLong reloads = new AtomicLong();
+
+    private volatile WatchService watchService;
+    private Thread watcher;
+
+    public PromptTemplateRegistry(@Value("${app.prompts.dir:.}") String dir,
+                                  @Value("${app.prompts.preload:promptmst.txt,enhanced_ai_calendar_promptmst.txt}") List<String> preload,
+                                  @Value("${app.prompts.watch:true}") boolean watch,
+                                  @Value("${app.prompts.reload-delay-ms:100}") long reloadDelayMillis) {
+        this.dir = Paths.get(dir).toAbsolutePath().normalize();
+        this.preload = preload;
+        this.watch = watch;
+        this.reloadDelayMillis = reloadDelayMillis;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        for (String name : preload) {
+            load(name.trim());
+        }
+        if (!watch || !Files.isDirectory(dir)) {
+            return;
+        }
+        watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watcher = new Thread(this::watch, "prompt-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * The current version of the template in {@code name}, loading it on first use if it was not
+     * preloaded. Throws {@link NoSuchFileException} without touching the disk again while the
+     * file is known to be missing.
+     */
+    public Template get(String name) throws IOException {
+        Loaded loaded = templates.get(name);
+        if (loaded == null) {
+            loaded = load(name);
+        }
+        if (loaded.template == null) {
+            throw loaded.failure;
+        }
+        return loaded.template;
+    }
+
+    private Loaded load(String name) {
+        return templates.compute(name, (key, previous) -> {
+            Path file = dir.resolve(name);
+            try {
+                String text = Files.readString(file);
+                String hash = hash(text);
+                if (previous != null && previous.template != null && previous.template.hash.equals(hash)) {
+                    return previous;
+                }
+                int version = previous == null ? 1 : previous.version + 1;
+                Template template = Template.compile(name, version, hash, text, SLOT_MARKERS);
+                if (previous != null) {
+                    reloads.incrementAndGet();
+                    logger.info("Reloaded prompt template {}", template.getVersion());
+                }
+                return new Loaded(template, version, null);
+            } catch (IOException e) {
+                if (previous != null && previous.template != null) {
+                    logger.warn("Keeping {} after failed reload: {}", previous.template.getVersion(), e.getMessage());
+                    return previous;
+                }
+                logger.warn("Prompt template {} could not be loaded: {}", name, e.getMessage());
+                return new Loaded(null, previous == null ? 0 : previous.version, e);
+            }
+        });
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                // Editors often write a file in several steps; let them finish before reading it
+                Thread.sleep(reloadDelayMillis);
+                Set<String> changed = new HashSet<>();
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() instanceof Path path) {
+                            changed.add(path.toString());
+                        }
+                    }
+                    key.reset();
+                } while ((key = watchService.poll()) != null);
+                for (String name : changed) {
+                    if (templates.containsKey(name)) {
+                        load(name);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    @PreDestroy
+    void stop() throws IOException, InterruptedException {
+        if (watchService != null) {
+            watchService.close();
+            watcher.join(1000);
+        }
+    }
+
+    public long getReloadCount() { return reloads.get(); }
+
+    /** Current version of every known template, or "missing". */
+    public Map<String, String> versions() {
+        Map<String, String> versions = new TreeMap<>();
+        templates.forEach((name, loaded) ->
+            versions.put(name, loaded.template == null ? "missing" : loaded.template.getVersion()));
+        return versions;
+    }
+
+    private static String hash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 4);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Loaded {
+        final Template template;
+        final int version;
+        final IOException failure;
+
+        Loaded(Template template, int version, IOException failure) {
+            this.template = template;
+            this.version = version;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * A compiled template: {@code segments[i]} is followed by the value of {@code slots[i]}, and
+     * the last segment closes the template. Immutable.
+     */
+    public static final class Template {
+        private final String name;
+        private final int version;
+        private final String hash;
+        private final String[] segments;
+        private final String[] slots;
+        private final int staticLength;
+
+        private Template(String name, int version, String hash, String[] segments, String[] slots) {
+            this.name = name;
+            this.version = version;
+            this.hash = hash;
+            this.segments = segments;
+            this.slots = slots;
+            int length = 0;
+            for (String segment : segments) {
+                length += segment.length();
+            }
+            this.staticLength = length;
+        }
+
+        static Template compile(String name, int version, String hash, String text, Map<String, String> markers) {
+            List<String> segments = new ArrayList<>();
+            List<String> slots = new ArrayList<>();
+            int from = 0;
+            while (true) {
+                int next = -1;
+                String marker = null;
+                for (String candidate : markers.keySet()) {
+                    int index = text.indexOf(candidate, from);
+                    if (index >= 0 && (next < 0 || index < next)) {
+                        next = index;
+                        marker = candidate;
+                    }
+                }
+                if (marker == null) {
+                    segments.add(text.substring(from));
+                    break;
+                }
+                segments.add(text.substring(from, next));
+                slots.add(markers.get(marker));
+                from = next + marker.length();
+            }
+            return new Template(name, version, hash, segments.toArray(new String[0]), slots.toArray(new String[0]));
+        }
+
+        /**
+         * Appends the template to {@code out} with each slot replaced by its value in
+         * {@code values}. A slot without a value is left empty.
+         */
+        public StringBuilder appendTo(StringBuilder out, Map<String, String> values) {
+            out.ensureCapacity(out.length() + staticLength + 64 * slots.length);
+            return appendAfterPrefix(out.append(segments[0]), values);
+        }
+
+        /**
+         * Appends everything after {@link #getPrefix()}, for callers that send the prefix
+         * separately (see {@link GeminiPromptCache}).
+         */
+        public StringBuilder appendAfterPrefix(StringBuilder out, Map<String, String> values) {
+            for (int i = 0; i < slots.length; i++) {
+                out.append(values.getOrDefault(slots[i], "")).append(segments[i + 1]);
+            }
+            return out;
+        }
+
+        /** The static text before the first slot, the same on every render of this version. */
+        public String getPrefix() { return segments[0]; }
+
+        public String render(Map<String, String> values) {
+            return appendTo(new StringBuilder(), values).toString();
+        }
+
+        public String getName() { return name; }
+
+        /** {@code name@vN:hash}, where hash is the start of the SHA-256 of the file. */
+        public String getVersion() { return name + "@v" + version + ":" + hash; }
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.demo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only journal of the chat replies and plan analyses that used to be written to
+ * tempres.txt and fpromptres.txt. Request threads only put a record on a bounded queue; one
+ * writer thread appends the records as JSON lines, each keyed by user and session, to
+ * {@code <app.journal.dir>/responses.jsonl}.
+ *
+ * <p>Writes are buffered and fsynced in batches: after {@code sync-every} records or
+ * {@code sync-interval-ms}, whichever comes first, so a crash loses at most that much. When the
+ * file reaches {@code max-file-bytes} it is rotated to {@code responses.1.jsonl} and so on, and
+ * only {@code max-files} files are kept. A full queue drops the record rather than hold up a reply.
+ *
+ * <p>The latest reply of each user and session is also kept in memory for {@code /api/latest},
+ * bounded to {@code latest-entries} sessions, least recently used first out.
+ */
+@Component
+public class ResponseJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseJournal.class);
+    static final String FILE_NAME = "responses";
+    static final String FILE_SUFFIX = ".jsonl";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path dir;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final int syncEvery;
+    private final long syncIntervalNanos;
+    private final BlockingQueue<Map<String, Object>> queue;
+    private final LatestResponses latest;
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+
+    private volatile boolean stopping;
+    private Thread writer;
+
+    // Only touched by the writer thread
+    private FileOutputStream file;
+    private BufferedOutputStream out;
+    private long fileBytes;
+    private int unsynced;
+    private long lastSyncNanos;
+
+    public ResponseJournal(@Value("${app.journal.dir:journal}") String dir,
+                           @Value("${app.journal.capacity:10000}") int capacity,
+                           @Value("${app.journal.max-file-bytes:10485760}") long maxFileBytes,
+                           @Value("${app.journal.max-files:5}") int maxFiles,
+                           @Value("${app.journal.sync-every:256}") int syncEvery,
+                           @Value("${app.journal.sync-interval-ms:1000}") long syncIntervalMillis,
+                           @Value("${app.journal.latest-entries:10000}") int latestEntries) {
+        this.dir = Paths.get(dir);
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+        this.syncEvery = Math.max(1, syncEvery);
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.latest = new LatestResponses(latestEntries);
+    }
+
+    @PostConstruct
+    void start() {
+        writer = new Thread(this::run, "response-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records the reply sent for {@code sessionId} and makes it the user's latest response.
+     * {@code promptTemplate} is the {@link PromptTemplateRegistry} version the prompt was built
+     * from, or null when it used none.
+     */
+    public void recordResponse(UUID userId, String sessionId, String response, String promptTemplate) {
+        latest.put(userId, sessionId, response);
+        Map<String, Object> record = record("response", userId, sessionId);
+        if (promptTemplate != null) {
+            record.put("template", promptTemplate);
+        }
+        record.put("response", response);
+        enqueue(record);
+    }
+
+    public void recordAnalysis(UUID userId, String sessionId, String userInput, String finalDecision, String rawResponse) {
+        Map<String, Object> record = record("analysis", userId, sessionId);
+        record.put("input", userInput);
+        record.put("decision", finalDecision);
+        record.put("response", rawResponse);
+        enqueue(record);
+    }
+
+    /**
+     * The latest reply for the session, or for the user's most recent session when
+     * {@code sessionId} is null. Null when nothing is held for it.
+     */
+    public String getLatest(UUID userId, String sessionId) {
+        return latest.get(userId, sessionId);
+    }
+
+    private Map<String, Object> record(String type, UUID userId, String sessionId) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("ts", Instant.now().toString());
+        record.put("type", type);
+        record.put("user", userId.toString());
+        record.put("session", sessionId);
+        return record;
+    }
+
+    private void enqueue(Map<String, Object> record) {
+        recorded.incrementAndGet();
+        if (stopping || !queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void run() {
+        List<Map<String, Object>> batch = new ArrayList<>();
+        while (!stopping || !queue.isEmpty()) {
+            try {
+                Map<String, Object> first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, 1023);
+                    write(batch);
+                }
+                if (unsynced > 0 && (unsynced >= syncEvery || System.nanoTime() - lastSyncNanos >= syncIntervalNanos)) {
+                    sync();
+                }
+            } catch (InterruptedException e) {
+                if (!stopping) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } catch (IOException e) {
+                writeFailures.incrementAndGet();
+                logger.warn("Response journal write failed: {}", e.getMessage());
+                close();
+            } finally {
+                batch.clear();
+            }
+        }
+        try {
+            if (unsynced > 0) {
+                sync();
+            }
+        } catch (IOException e) {
+            logger.warn("Response journal sync failed: {}", e.getMessage());
+        }
+        close();
+    }
+
+    private void write(List<Map<String, Object>> batch) throws IOException {
+        for (Map<String, Object> record : batch) {
+            byte[] line = objectMapper.writeValueAsBytes(record);
+            if (out == null) {
+                open();
+            }
+            if (fileBytes > 0 && fileBytes + line.length + 1 > maxFileBytes) {
+                rotate();
+            }
+            out.write(line);
+            out.write('\n');
+            fileBytes += line.length + 1;
+            unsynced++;
+            written.incrementAndGet();
+        }
+        out.flush();
+    }
+
+    private void sync() throws IOException {
+        if (out != null) {
+            out.flush();
+            file.getChannel().force(false);
+            syncs.incrementAndGet();
+        }
+        unsynced = 0;
+        lastSyncNanos = System.nanoTime();
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(dir);
+        Path active = file(0);
+        file = new FileOutputStream(active.toFile(), true);
+        out = new BufferedOutputStream(file, 64 * 1024);
+        fileBytes = Files.size(active);
+    }
+
+    /** Shifts responses.jsonl to responses.1.jsonl and so on, dropping the oldest. */
+    private void rotate() throws IOException {
+        sync();
+        close();
+        Files.deleteIfExists(file(maxFiles - 1));
+        for (int i = maxFiles - 2; i >= 0; i--) {
+            if (Files.exists(file(i))) {
+                Files.move(file(i), file(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        rotations.incrementAndGet();
+        open();
+    }
+
+    Path file(int index) {
+        return dir.resolve(index == 0 ? FILE_NAME + FILE_SUFFIX : FILE_NAME + "." + index + FILE_SUFFIX);
+    }
+
+    private void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.warn("Response journal close failed: {}", e.getMessage());
+            }
+            out = null;
+            file = null;
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        stopping = true;
+        if (writer != null) {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    public int getQueueDepth() { return queue.size(); }
+    public long getRecordedCount() { return recorded.get(); }
+    public long getDroppedCount() { return dropped.get(); }
+    public long getWrittenCount() { return written.get(); }
+    public long getWriteFailureCount() { return writeFailures.get(); }
+    public long getSyncCount() { return syncs.get(); }
+    public long getRotationCount() { return rotations.get(); }
+    public int getLatestSize() { return latest.size(); }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("queueDepth", getQueueDepth());
+        snapshot.put("recorded", getRecordedCount());
+        snapshot.put("dropped", getDroppedCount());
+        snapshot.put("written", getWrittenCount());
+        snapshot.put("writeFailures", getWriteFailureCount());
+        snapshot.put("syncs", getSyncCount());
+        snapshot.put("rotations", getRotationCount());
+        snapshot.put("latestSessions", getLatestSize());
+        return snapshot;
+    }
+
+    /**
+     * Latest reply per user and session, plus each user's most recent session, both evicting
+     * the least recently used entry once full.
+     */
+    private static final class LatestResponses {
+        private final Map<String, String> bySession;
+        private final Map<UUID, String> latestSession;
+
+        LatestResponses(int maxEntries) {
+            this.bySession = lru(maxEntries);
+            this.latestSession = lru(maxEntries);
+        }
+
+        synchronized void put(UUID userId, String sessionId, String response) {
+            bySession.put(key(userId, sessionId), response);
+            latestSession.put(userId, sessionId);
+        }
+
+        synchronized String get(UUID userId, String sessionId) {
+            String session = sessionId != null ? sessionId : latestSession.get(userId);
+            return session == null ? null : bySession.get(key(userId, session));
+        }
+
+        synchronized int size() {
+            return bySession.size();
+        }
+
+        private static String key(UUID userId, String sessionId) {
+            return userId + "/" + sessionId;
+        }
+
+        private static <K> Map<K, String> lru(int maxEntries) {
+            return new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, String> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+    }
+}
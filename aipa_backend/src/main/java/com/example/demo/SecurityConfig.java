@@ -1,5 +1,7 @@
 package com.example.demo;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -30,14 +32,31 @@ public class SecurityConfig {
 
     private final JwtUtil jwtUtil;
     private final UserDetailsService userDetailsService;
+    private final MeterRegistry meterRegistry;
 
-    public SecurityConfig(JwtUtil jwtUtil, UserDetailsService userDetailsService) {
+    @Value("${app.security.bcrypt-strength:10}")
+    private int bcryptStrength;
+
+    @Value("${app.security.principal-cache-ttl-seconds:60}")
+    private long principalCacheTtlSeconds;
+
+    @Value("${app.security.principal-cache-max-entries:10000}")
+    private int principalCacheMaxEntries;
+
+    public SecurityConfig(JwtUtil jwtUtil, UserDetailsService userDetailsService, MeterRegistry meterRegistry) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.meterRegistry = meterRegistry;
     }
 
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+        JwtAuthenticationFilter jwtAuthenticationFilter = new JwtAuthenticationFilter(jwtUtil, userDetailsService,
+            principalCacheTtlSeconds * 1000, principalCacheMaxEntries);
+        StatsMeterBinder.bindCache(meterRegistry, "jwt_principal", jwtAuthenticationFilter,
+            JwtAuthenticationFilter::getHitCount, JwtAuthenticationFilter::getMissCount,
+            JwtAuthenticationFilter::getCachedPrincipalCount);
+
         http
             .cors(cors -> cors.configurationSource(corsConfigurationSource()))
             .csrf(AbstractHttpConfigurer::disable)
@@ -59,14 +78,13 @@ public class SecurityConfig {
                     "/test-memory-fix/**", // Memory diagnostic endpoints
                     "/error",
                     "/uploads/**",
-                    "/api/upload"
+                    "/api/upload",
+                    "/actuator/health",
+                    "/actuator/prometheus" // Scraped without a token; meters carry no user data
                 ).permitAll()
                 .anyRequest().authenticated()
             )
-            .addFilterBefore(
-                new JwtAuthenticationFilter(jwtUtil, userDetailsService),
-                UsernamePasswordAuthenticationFilter.class
-            )
+            .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
             .logout(logout -> logout
                 .logoutUrl("/api/auth/logout")
                 .addLogoutHandler(logoutHandler())
@@ -84,7 +102,7 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(List.of("http://localhost:3000"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "PATCH", "OPTIONS"));
         configuration.setAllowedHeaders(List.of("*"));
-        configuration.setExposedHeaders(List.of("Authorization"));
+        configuration.setExposedHeaders(List.of("Authorization", CalendarController.RESULTS_TRUNCATED_HEADER));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
         
@@ -107,6 +125,6 @@ public class SecurityConfig {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 }
@@ -5,7 +5,10 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "session_memories")
+@Table(name = "session_memories",
+       indexes = {
+           @Index(name = "idx_session_memories_active_last_activity", columnList = "is_active, last_activity")
+       })
 public class SessionMemory {
     
     @Id
@@ -1,9 +1,12 @@
 package com.example.demo;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -20,10 +23,28 @@ public interface SessionMemoryRepository extends JpaRepository<SessionMemory, UU
     @Query("SELECT s FROM SessionMemory s WHERE s.user.id = ?1 AND s.isActive = true ORDER BY s.lastActivity DESC")
     Optional<SessionMemory> findMostRecentActiveSession(UUID userId);
     
+    @Modifying
     @Query("UPDATE SessionMemory s SET s.isActive = false WHERE s.user.id = ?1 AND s.lastActivity < ?2")
-    void deactivateOldSessions(UUID userId, LocalDateTime cutoffTime);
+    int deactivateOldSessions(UUID userId, LocalDateTime cutoffTime);
+    
+    @Modifying
+    @Query("UPDATE SessionMemory s SET s.chatCount = ?2, s.lastActivity = ?3, s.lastContextSentAt = ?4, s.isActive = ?5 WHERE s.id = ?1")
+    int updateState(UUID id, Integer chatCount, LocalDateTime lastActivity, LocalDateTime lastContextSentAt, Boolean isActive);
     
     @Query("SELECT COUNT(s) FROM SessionMemory s WHERE s.user.id = ?1 AND s.isActive = true")
     long countActiveSessionsByUser(UUID userId);
+    
+    @Query("SELECT s.id FROM SessionMemory s WHERE s.isActive = true AND s.lastActivity < ?1")
+    List<UUID> findIdleActiveSessionIds(LocalDateTime cutoffTime, Pageable pageable);
+    
+    @Query("SELECT s.id FROM SessionMemory s WHERE s.isActive = false AND s.lastActivity < ?1")
+    List<UUID> findInactiveSessionIds(LocalDateTime cutoffTime, Pageable pageable);
+    
+    @Modifying
+    @Query("UPDATE SessionMemory s SET s.isActive = false WHERE s.id IN ?1")
+    int deactivateByIds(Collection<UUID> ids);
+    
+    @Modifying
+    @Query("DELETE FROM SessionMemory s WHERE s.id IN ?1")
+    int deleteByIds(Collection<UUID> ids);
 }
-
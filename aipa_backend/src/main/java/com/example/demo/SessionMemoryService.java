@@ -1,56 +1,52 @@
 package com.example.demo;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import java.time.LocalDateTime;
-import java.util.Optional;
+import java.util.List;
 import java.util.UUID;
 
 @Service
 public class SessionMemoryService {
     
-    private final SessionMemoryRepository sessionRepository;
-    private final UserRepository userRepository;
+    private static final Logger logger = LoggerFactory.getLogger(SessionMemoryService.class);
+    
+    private final SessionTracker sessionTracker;
     private final CalendarSessionContextService calendarContextService;
     
+    // Calendar context is served from UpcomingEventsCache, so it is cheap enough to send on every turn
+    @Value("${app.session.calendar-context-every-turn:false}")
+    private boolean calendarContextEveryTurn;
+    
     @Autowired
-    public SessionMemoryService(SessionMemoryRepository sessionRepository, 
-                               UserRepository userRepository,
+    public SessionMemoryService(SessionTracker sessionTracker,
                                CalendarSessionContextService calendarContextService) {
-        this.sessionRepository = sessionRepository;
-        this.userRepository = userRepository;
+        this.sessionTracker = sessionTracker;
         this.calendarContextService = calendarContextService;
     }
     
     
-    @Transactional
+    /**
+     * Counts the message in memory; the session row is written behind by {@link SessionTracker}.
+     */
     public SessionContextResult trackChatAndGetContext(UUID userId, String sessionId, String userInput) {
         try {
             
-            LocalDateTime cutoffTime = LocalDateTime.now().minusHours(24);
-            sessionRepository.deactivateOldSessions(userId, cutoffTime);
-            
-            
-            SessionMemory session = getOrCreateSession(userId, sessionId);
-            
+            SessionTracker.SessionState session = sessionTracker.recordChat(userId, sessionId);
             
-            session.incrementChatCount();
             
-            
-            boolean shouldSendContext = session.shouldSendContext();
+            boolean shouldSendContext = calendarContextEveryTurn || session.shouldSendContext();
             String calendarContext = "";
             
             if (shouldSendContext) {
                 calendarContext = calendarContextService.generateCalendarEventsContext(userId, sessionId);
-                session.markContextSent();
-                System.out.println(String.format("📅 Session Memory: Sending calendar context for user %s, session %s, chat #%d", 
-                    userId.toString().substring(0, 8), sessionId, session.getChatCount()));
+                sessionTracker.markContextSent(userId, sessionId);
+                logger.debug("📅 Session Memory: Sending calendar context for user {}, session {}, chat #{}",
+                    userId, sessionId, session.getChatCount());
             }
             
-            
-            sessionRepository.save(session);
-            
             return new SessionContextResult(
                 session.getChatCount(),
                 shouldSendContext,
@@ -59,8 +55,7 @@ public class SessionMemoryService {
             );
             
         } catch (Exception e) {
-            System.err.println("Error tracking chat session: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("Error tracking chat session: {}", e.getMessage(), e);
             
             
             return new SessionContextResult(1, false, "", sessionId);
@@ -68,37 +63,16 @@ public class SessionMemoryService {
     }
     
     
-    @Transactional
-    private SessionMemory getOrCreateSession(UUID userId, String sessionId) {
-        
-        Optional<SessionMemory> existingSession = sessionRepository
-            .findActiveSessionByUserAndSessionId(userId, sessionId);
-            
-        if (existingSession.isPresent()) {
-            return existingSession.get();
-        }
-        
-        
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new RuntimeException("User not found"));
-            
-        SessionMemory newSession = new SessionMemory(user, sessionId);
-        return sessionRepository.save(newSession);
-    }
-    
-    
-    @Transactional(readOnly = true)
     public String getSessionStats(UUID userId) {
         try {
-            long activeSessionCount = sessionRepository.countActiveSessionsByUser(userId);
-            Optional<SessionMemory> recentSession = sessionRepository.findMostRecentActiveSession(userId);
+            List<SessionTracker.SessionState> activeSessions = sessionTracker.getActiveSessions(userId);
             
             StringBuilder stats = new StringBuilder();
             stats.append("Session Statistics for user ").append(userId.toString().substring(0, 8)).append(":\n");
-            stats.append("Active sessions: ").append(activeSessionCount).append("\n");
+            stats.append("Active sessions: ").append(activeSessions.size()).append("\n");
             
-            if (recentSession.isPresent()) {
-                SessionMemory session = recentSession.get();
+            if (!activeSessions.isEmpty()) {
+                SessionTracker.SessionState session = activeSessions.get(0);
                 stats.append("Most recent session: ").append(session.getSessionId()).append("\n");
                 stats.append("Chat count: ").append(session.getChatCount()).append("\n");
                 stats.append("Last activity: ").append(session.getLastActivity()).append("\n");
@@ -114,17 +88,9 @@ public class SessionMemoryService {
     }
     
     
-    @Transactional
     public void forceContextOnNextMessage(UUID userId, String sessionId) {
-        Optional<SessionMemory> session = sessionRepository
-            .findActiveSessionByUserAndSessionId(userId, sessionId);
-            
-        if (session.isPresent()) {
-            SessionMemory s = session.get();
-            
-            s.setChatCount(9);
-            sessionRepository.save(s);
-            System.out.println("Forced context for next message in session: " + sessionId);
+        if (sessionTracker.setChatCount(userId, sessionId, 9)) {
+            logger.info("Forced context for next message in session: {}", sessionId);
         }
     }
     
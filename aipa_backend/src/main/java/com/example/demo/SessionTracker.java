@@ -0,0 +1,367 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Chat session counters kept in memory, keyed by (userId, sessionId), so counting a
+ * message does not touch the database. Changed sessions are written to
+ * {@code session_memories} in write-behind batches, and idle sessions are expired by a
+ * hashed timer wheel instead of an UPDATE on every request.
+ *
+ * The wheel is checked lazily: touching a session only updates its last activity, and
+ * when its slot comes round a session that has been active since is moved to the slot
+ * of its real deadline rather than expired.
+ */
+@Component
+public class SessionTracker {
+
+    private static final Logger logger = Logger.getLogger(SessionTracker.class.getName());
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final SessionMemoryRepository sessionRepository;
+    private final WriteQueue writeQueue;
+
+    private final Map<SessionKey, TrackedSession> sessions = new ConcurrentHashMap<>();
+    private final Set<TrackedSession> pending = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong expiredSessions = new AtomicLong();
+
+    @Value("${app.session.idle-timeout-minutes:1440}")
+    private long idleTimeoutMinutes;
+
+    @Value("${app.session.wheel-tick-seconds:60}")
+    private long tickSeconds;
+
+    @Value("${app.session.flush-batch-size:200}")
+    private int flushBatchSize;
+
+    private List<Set<TrackedSession>> wheel;
+    private volatile long currentTick;
+
+    public SessionTracker(SessionMemoryRepository sessionRepository, WriteQueue writeQueue) {
+        this.sessionRepository = sessionRepository;
+        this.writeQueue = writeQueue;
+    }
+
+    @PostConstruct
+    void initWheel() {
+        int slots = (int) Math.max(2, TimeUnit.MINUTES.toSeconds(idleTimeoutMinutes) / tickSeconds + 1);
+        wheel = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            wheel.add(ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    /**
+     * Counts one chat message and returns the session state after it.
+     */
+    public SessionState recordChat(UUID userId, String sessionId) {
+        SessionKey key = new SessionKey(userId, sessionId);
+        while (true) {
+            TrackedSession session = sessions.get(key);
+            if (session == null) {
+                // Read outside the map so the query does not hold a bin lock other sessions wait on
+                TrackedSession opened = open(key);
+                session = sessions.putIfAbsent(key, opened);
+                if (session == null) {
+                    session = opened;
+                    schedule(opened, idleTimeoutMillis());
+                }
+            }
+            synchronized (session) {
+                if (session.expired) {
+                    continue;
+                }
+                session.chatCount++;
+                session.lastActivity = LocalDateTime.now();
+                session.lastActivityMillis = System.currentTimeMillis();
+                pending.add(session);
+                return new SessionState(session);
+            }
+        }
+    }
+
+    public void markContextSent(UUID userId, String sessionId) {
+        TrackedSession session = sessions.get(new SessionKey(userId, sessionId));
+        if (session != null) {
+            synchronized (session) {
+                session.lastContextSentAt = LocalDateTime.now();
+                pending.add(session);
+            }
+        }
+    }
+
+    /**
+     * Sets the counter so the next message lands on a context turn.
+     */
+    public boolean setChatCount(UUID userId, String sessionId, int chatCount) {
+        TrackedSession session = sessions.get(new SessionKey(userId, sessionId));
+        if (session == null) {
+            return false;
+        }
+        synchronized (session) {
+            session.chatCount = chatCount;
+            pending.add(session);
+        }
+        return true;
+    }
+
+    public List<SessionState> getActiveSessions(UUID userId) {
+        List<SessionState> result = new ArrayList<>();
+        for (TrackedSession session : sessions.values()) {
+            if (session.key.userId.equals(userId)) {
+                synchronized (session) {
+                    result.add(new SessionState(session));
+                }
+            }
+        }
+        result.sort(Comparator.comparing(SessionState::getLastActivity).reversed());
+        return result;
+    }
+
+    /**
+     * First message of a session since startup: resume the stored row if it is still
+     * active, otherwise start a new one that gets inserted on the next flush. The caller
+     * schedules it once it won the race to publish it.
+     */
+    private TrackedSession open(SessionKey key) {
+        TrackedSession session = new TrackedSession(key);
+        try {
+            sessionRepository.findActiveSessionByUserAndSessionId(key.userId, key.sessionId)
+                .filter(row -> row.getLastActivity().isAfter(LocalDateTime.now().minusMinutes(idleTimeoutMinutes)))
+                .ifPresent(row -> {
+                    session.dbId = row.getId();
+                    session.chatCount = row.getChatCount();
+                    session.createdAt = row.getCreatedAt();
+                    session.lastContextSentAt = row.getLastContextSentAt();
+                });
+        } catch (Exception e) {
+            logger.warning("Could not resume session " + key.sessionId + ", starting a new one: " + e.getMessage());
+        }
+        return session;
+    }
+
+    private long idleTimeoutMillis() {
+        return TimeUnit.MINUTES.toMillis(idleTimeoutMinutes);
+    }
+
+    private void schedule(TrackedSession session, long delayMillis) {
+        long tickMillis = TimeUnit.SECONDS.toMillis(tickSeconds);
+        long ticks = Math.min(Math.max(1, (delayMillis + tickMillis - 1) / tickMillis), wheel.size() - 1);
+        wheel.get((int) ((currentTick + ticks) % wheel.size())).add(session);
+    }
+
+    @Scheduled(fixedRateString = "${app.session.wheel-tick-seconds:60}", timeUnit = TimeUnit.SECONDS)
+    public void advanceWheel() {
+        long tick = ++currentTick;
+        Set<TrackedSession> slot = wheel.get((int) (tick % wheel.size()));
+        long now = System.currentTimeMillis();
+
+        for (Iterator<TrackedSession> it = slot.iterator(); it.hasNext(); ) {
+            TrackedSession session = it.next();
+            it.remove();
+            synchronized (session) {
+                long remaining = session.lastActivityMillis + idleTimeoutMillis() - now;
+                if (remaining > 0) {
+                    schedule(session, remaining);
+                    continue;
+                }
+                session.expired = true;
+                sessions.remove(session.key, session);
+                if (session.dbId != null || session.chatCount > 0) {
+                    pending.add(session);
+                }
+                expiredSessions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Writes every changed session. Only one flush runs at a time, so a session's
+     * generated id is known before its next change is written. A lock rather than a monitor,
+     * since the flush waits on the write queue and would pin a virtual thread.
+     */
+    @Scheduled(fixedDelayString = "${app.session.flush-interval-ms:5000}")
+    @PreDestroy
+    public void flush() {
+        flushLock.lock();
+        try {
+            while (!pending.isEmpty()) {
+                List<PendingWrite> batch = new ArrayList<>(Math.min(flushBatchSize, pending.size()));
+                for (Iterator<TrackedSession> it = pending.iterator(); it.hasNext() && batch.size() < flushBatchSize; ) {
+                    TrackedSession session = it.next();
+                    it.remove();
+                    synchronized (session) {
+                        batch.add(new PendingWrite(session));
+                    }
+                }
+
+                try {
+                    writeQueue.execute(() -> {
+                        batch.forEach(this::write);
+                        return null;
+                    });
+                } catch (Exception e) {
+                    // Retry one by one so a single bad row (e.g. a deleted user) does not block the rest
+                    logger.warning("Session batch flush failed, retrying individually: " + e.getMessage());
+                    for (PendingWrite write : batch) {
+                        write.newId = null;
+                        try {
+                            writeQueue.execute(() -> {
+                                write(write);
+                                return null;
+                            });
+                        } catch (Exception single) {
+                            write.newId = null;
+                            logger.warning("Dropping session state for " + write.sessionId + ": " + single.getMessage());
+                        }
+                    }
+                }
+
+                for (PendingWrite write : batch) {
+                    if (write.newId != null) {
+                        synchronized (write.session) {
+                            write.session.dbId = write.newId;
+                        }
+                    }
+                }
+                flushedRows.addAndGet(batch.size());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void write(PendingWrite write) {
+        if (write.dbId != null) {
+            sessionRepository.updateState(write.dbId, write.chatCount, write.lastActivity,
+                                          write.lastContextSentAt, write.active);
+            return;
+        }
+        SessionMemory row = new SessionMemory(entityManager.getReference(User.class, write.userId), write.sessionId);
+        row.setChatCount(write.chatCount);
+        row.setCreatedAt(write.createdAt);
+        row.setLastActivity(write.lastActivity);
+        row.setLastContextSentAt(write.lastContextSentAt);
+        row.setIsActive(write.active);
+        entityManager.persist(row);
+        write.newId = row.getId();
+    }
+
+    public int getTrackedSessionCount() { return sessions.size(); }
+    public int getPendingWriteCount() { return pending.size(); }
+    public long getFlushedRowCount() { return flushedRows.get(); }
+    public long getExpiredSessionCount() { return expiredSessions.get(); }
+
+    private static final class SessionKey {
+        final UUID userId;
+        final String sessionId;
+
+        SessionKey(UUID userId, String sessionId) {
+            this.userId = userId;
+            this.sessionId = sessionId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SessionKey)) return false;
+            SessionKey that = (SessionKey) o;
+            return userId.equals(that.userId) && sessionId.equals(that.sessionId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, sessionId);
+        }
+    }
+
+    // Identity equality on purpose: an expired session and its successor share a key
+    private static final class TrackedSession {
+        final SessionKey key;
+        UUID dbId;
+        int chatCount;
+        LocalDateTime createdAt = LocalDateTime.now();
+        LocalDateTime lastActivity = LocalDateTime.now();
+        long lastActivityMillis = System.currentTimeMillis();
+        LocalDateTime lastContextSentAt;
+        boolean expired;
+
+        TrackedSession(SessionKey key) {
+            this.key = key;
+        }
+    }
+
+    private static final class PendingWrite {
+        final TrackedSession session;
+        final UUID dbId;
+        final UUID userId;
+        final String sessionId;
+        final int chatCount;
+        final LocalDateTime createdAt;
+        final LocalDateTime lastActivity;
+        final LocalDateTime lastContextSentAt;
+        final boolean active;
+        UUID newId;
+
+        PendingWrite(TrackedSession session) {
+            this.session = session;
+            this.dbId = session.dbId;
+            this.userId = session.key.userId;
+            this.sessionId = session.key.sessionId;
+            this.chatCount = session.chatCount;
+            this.createdAt = session.createdAt;
+            this.lastActivity = session.lastActivity;
+            this.lastContextSentAt = session.lastContextSentAt;
+            this.active = !session.expired;
+        }
+    }
+
+    /**
+     * Immutable copy of a session's counters.
+     */
+    public static class SessionState {
+        private final String sessionId;
+        private final int chatCount;
+        private final LocalDateTime lastActivity;
+        private final LocalDateTime lastContextSentAt;
+
+        private SessionState(TrackedSession session) {
+            this.sessionId = session.key.sessionId;
+            this.chatCount = session.chatCount;
+            this.lastActivity = session.lastActivity;
+            this.lastContextSentAt = session.lastContextSentAt;
+        }
+
+        public String getSessionId() { return sessionId; }
+        public int getChatCount() { return chatCount; }
+        public LocalDateTime getLastActivity() { return lastActivity; }
+        public LocalDateTime getLastContextSentAt() { return lastContextSentAt; }
+
+        public boolean shouldSendContext() {
+            return chatCount == 0 || chatCount % 10 == 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("SessionState{sessionId=%s, chatCount=%d, lastActivity=%s}",
+                sessionId, chatCount, lastActivity);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.demo;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Persistence mode for a single SQLite file ({@code --spring.profiles.active=sqlite}).
+ *
+ * SQLite allows one writer at a time, so instead of letting several pooled connections
+ * race for the lock and spin in busy_timeout, all writes share a single connection and
+ * wait for it in the pool, where the wait is measured by {@link LockWaitMetrics}.
+ * Read-only transactions get their own pool of read-only connections, which in WAL mode
+ * never block on the writer. Routing is done by {@link LazyConnectionDataSourceProxy}
+ * from the transaction's read-only flag.
+ */
+@Configuration
+@Profile("sqlite")
+public class SqlitePersistenceConfig {
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${app.persistence.sqlite.read-pool-size:4}")
+    private int readPoolSize;
+
+    @Value("${app.persistence.sqlite.write-wait-timeout-ms:30000}")
+    private long writeWaitTimeoutMillis;
+
+    @Value("${app.persistence.sqlite.busy-timeout-ms:5000}")
+    private int busyTimeoutMillis;
+
+    @Value("${app.persistence.sqlite.cache-size-kib:20000}")
+    private int cacheSizeKib;
+
+    @Value("${app.persistence.sqlite.mmap-size:268435456}")
+    private long mmapSize;
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource sqliteWriteDataSource() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("sqlite-writer");
+        config.setDataSource(sqliteDataSource(false));
+        config.setMaximumPoolSize(1);
+        config.setMinimumIdle(1);
+        config.setConnectionTimeout(writeWaitTimeoutMillis);
+        return new HikariDataSource(config);
+    }
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource sqliteReadDataSource() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("sqlite-reader");
+        config.setDataSource(sqliteDataSource(true));
+        config.setMaximumPoolSize(readPoolSize);
+        config.setMinimumIdle(1);
+        config.setReadOnly(true);
+        return new HikariDataSource(config);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource sqliteWriteDataSource, HikariDataSource sqliteReadDataSource,
+                                 LockWaitMetrics lockWaitMetrics, ObservationRegistry observationRegistry) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(
+            new TimedDataSource(sqliteWriteDataSource, lockWaitMetrics, observationRegistry));
+        proxy.setReadOnlyDataSource(sqliteReadDataSource);
+        return proxy;
+    }
+
+    private SQLiteDataSource sqliteDataSource(boolean readOnly) {
+        SQLiteConfig config = new SQLiteConfig();
+        // journal_mode is persistent in the file, the rest are per connection
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        config.setBusyTimeout(busyTimeoutMillis);
+        config.setCacheSize(-cacheSizeKib);
+        config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(mmapSize));
+        // sqlite-jdbc cannot flip read-only on an open connection, so the reader pool opens them read-only
+        config.setReadOnly(readOnly);
+
+        SQLiteDataSource dataSource = new SQLiteDataSource(config);
+        dataSource.setUrl(url);
+        return dataSource;
+    }
+
+    private static class TimedDataSource extends DelegatingDataSource {
+        private final LockWaitMetrics lockWaitMetrics;
+        private final ObservationRegistry observationRegistry;
+
+        TimedDataSource(DataSource target, LockWaitMetrics lockWaitMetrics, ObservationRegistry observationRegistry) {
+            super(target);
+            this.lockWaitMetrics = lockWaitMetrics;
+            this.observationRegistry = observationRegistry;
+        }
+
+        // The wait is also a span, so a slow trace shows time spent queued for the writer
+        @Override
+        public Connection getConnection() throws SQLException {
+            Observation observation = Observation.start("aipa.db.write_lock.wait", observationRegistry)
+                .contextualName("sqlite write lock");
+            long started = System.nanoTime();
+            try {
+                Connection connection = super.getConnection();
+                lockWaitMetrics.recordWait(System.nanoTime() - started);
+                return connection;
+            } catch (SQLTransientConnectionException e) {
+                lockWaitMetrics.recordTimeout();
+                observation.error(e);
+                throw e;
+            } finally {
+                observation.stop();
+            }
+        }
+    }
+}
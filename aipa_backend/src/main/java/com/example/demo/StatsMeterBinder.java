@@ -0,0 +1,120 @@
+package com.example.demo;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes the counters the background components already keep for
+ * {@code /api/maintenance/stats} as Micrometer meters, so Prometheus sees the same numbers.
+ * The meters read the live values when scraped; nothing is recorded on the hot path.
+ */
+@Component
+public class StatsMeterBinder implements MeterBinder {
+
+    private final LlmJobQueue llmJobQueue;
+    private final MemoryExtractionPipeline memoryExtractionPipeline;
+    private final WriteQueue writeQueue;
+    private final LockWaitMetrics lockWaitMetrics;
+    private final PasswordHashingService passwordHashingService;
+    private final UserCache userCache;
+    private final UpcomingEventsCache upcomingEventsCache;
+    private final ResponseJournal responseJournal;
+    private final GeminiPromptCache promptCache;
+    private final ChatScheduler chatScheduler;
+    private final GeminiCallGuard callGuard;
+
+    public StatsMeterBinder(LlmJobQueue llmJobQueue, MemoryExtractionPipeline memoryExtractionPipeline,
+                            WriteQueue writeQueue, LockWaitMetrics lockWaitMetrics,
+                            PasswordHashingService passwordHashingService, UserCache userCache,
+                            UpcomingEventsCache upcomingEventsCache, ResponseJournal responseJournal,
+                            GeminiPromptCache promptCache, ChatScheduler chatScheduler,
+                            GeminiCallGuard callGuard) {
+        this.llmJobQueue = llmJobQueue;
+        this.memoryExtractionPipeline = memoryExtractionPipeline;
+        this.writeQueue = writeQueue;
+        this.lockWaitMetrics = lockWaitMetrics;
+        this.passwordHashingService = passwordHashingService;
+        this.userCache = userCache;
+        this.upcomingEventsCache = upcomingEventsCache;
+        this.responseJournal = responseJournal;
+        this.promptCache = promptCache;
+        this.chatScheduler = chatScheduler;
+        this.callGuard = callGuard;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        gauge(registry, "aipa.llm.jobs.pending", llmJobQueue, LlmJobQueue::getPendingCount);
+        gauge(registry, "aipa.llm.jobs.in_flight", llmJobQueue, LlmJobQueue::getInFlightCount);
+        gauge(registry, "aipa.llm.jobs.oldest_pending_ms", llmJobQueue, LlmJobQueue::getOldestPendingMillis);
+        counter(registry, "aipa.llm.jobs.completed", llmJobQueue, LlmJobQueue::getCompletedCount);
+        counter(registry, "aipa.llm.jobs.retries", llmJobQueue, LlmJobQueue::getRetryCount);
+        counter(registry, "aipa.llm.jobs.dead_lettered", llmJobQueue, LlmJobQueue::getDeadLetteredCount);
+        counter(registry, "aipa.llm.jobs.dropped", llmJobQueue, LlmJobQueue::getDroppedCount);
+        counter(registry, "aipa.llm.jobs.rate_limited", llmJobQueue, LlmJobQueue::getRateLimitedCount);
+
+        counter(registry, "aipa.memory.extraction.completed", memoryExtractionPipeline, MemoryExtractionPipeline::getCompletedCount);
+        counter(registry, "aipa.memory.extraction.stored", memoryExtractionPipeline, MemoryExtractionPipeline::getStoredCount);
+        gauge(registry, "aipa.memory.extraction.last_lag_ms", memoryExtractionPipeline, MemoryExtractionPipeline::getLastLagMillis);
+        gauge(registry, "aipa.memory.extraction.max_lag_ms", memoryExtractionPipeline, MemoryExtractionPipeline::getMaxLagMillis);
+
+        gauge(registry, "aipa.write_queue.depth", writeQueue, WriteQueue::getQueueDepth);
+        counter(registry, "aipa.write_queue.commits", writeQueue, WriteQueue::getCommitCount);
+        counter(registry, "aipa.write_queue.rejected", writeQueue, WriteQueue::getRejectedCount);
+        gauge(registry, "aipa.db.write_lock.mean_wait_ms", lockWaitMetrics, LockWaitMetrics::getMeanWaitMillis);
+        gauge(registry, "aipa.db.write_lock.max_wait_ms", lockWaitMetrics, LockWaitMetrics::getMaxWaitMillis);
+        counter(registry, "aipa.db.write_lock.timeouts", lockWaitMetrics, LockWaitMetrics::getTimeouts);
+
+        gauge(registry, "aipa.chat.scheduler.in_flight", chatScheduler, ChatScheduler::getInFlightCount);
+        gauge(registry, "aipa.chat.scheduler.queued", chatScheduler, ChatScheduler::getQueuedCount);
+        gauge(registry, "aipa.chat.scheduler.active_users", chatScheduler, ChatScheduler::getActiveUserCount);
+        gauge(registry, "aipa.chat.scheduler.max_wait_ms", chatScheduler, ChatScheduler::getMaxWaitMillis);
+        counter(registry, "aipa.chat.scheduler.delayed", chatScheduler, ChatScheduler::getDelayedCount);
+        counter(registry, "aipa.chat.scheduler.rejected", chatScheduler, ChatScheduler::getRejectedCount);
+        counter(registry, "aipa.chat.scheduler.timed_out", chatScheduler, ChatScheduler::getTimedOutCount);
+
+        // Per-circuit meters are registered by GeminiCallGuard as each circuit is created
+        counter(registry, "aipa.llm.hedge.sent", callGuard, GeminiCallGuard::getHedgesSent);
+        counter(registry, "aipa.llm.hedge.won", callGuard, GeminiCallGuard::getHedgesWon);
+
+        gauge(registry, "aipa.password_hashing.queue_depth", passwordHashingService, PasswordHashingService::getQueueDepth);
+        counter(registry, "aipa.password_hashing.rejected", passwordHashingService, PasswordHashingService::getRejectedCount);
+
+        gauge(registry, "aipa.journal.queue_depth", responseJournal, ResponseJournal::getQueueDepth);
+        counter(registry, "aipa.journal.written", responseJournal, ResponseJournal::getWrittenCount);
+        counter(registry, "aipa.journal.dropped", responseJournal, ResponseJournal::getDroppedCount);
+        counter(registry, "aipa.journal.syncs", responseJournal, ResponseJournal::getSyncCount);
+
+        bindCache(registry, "user", userCache, UserCache::getHitCount, UserCache::getMissCount, UserCache::size);
+        bindCache(registry, "upcoming_events", upcomingEventsCache,
+            UpcomingEventsCache::getHitCount, UpcomingEventsCache::getMissCount, UpcomingEventsCache::size);
+        bindCache(registry, "gemini_prompt_prefix", promptCache,
+            GeminiPromptCache::getHitCount, GeminiPromptCache::getMissCount, GeminiPromptCache::size);
+    }
+
+    /**
+     * Publishes a cache's hits and misses as {@code aipa.cache.lookups} and its entry count as
+     * {@code aipa.cache.size}, the same names {@link ChatMetrics} uses for caches it counts itself.
+     */
+    static <T> void bindCache(MeterRegistry registry, String cache, T source, ToDoubleFunction<T> hits,
+                              ToDoubleFunction<T> misses, ToDoubleFunction<T> size) {
+        FunctionCounter.builder("aipa.cache.lookups", source, hits)
+            .tag("cache", cache).tag("result", "hit").register(registry);
+        FunctionCounter.builder("aipa.cache.lookups", source, misses)
+            .tag("cache", cache).tag("result", "miss").register(registry);
+        Gauge.builder("aipa.cache.size", source, size)
+            .tag("cache", cache).register(registry);
+    }
+
+    private static <T> void gauge(MeterRegistry registry, String name, T source, ToDoubleFunction<T> value) {
+        Gauge.builder(name, source, value).register(registry);
+    }
+
+    private static <T> void counter(MeterRegistry registry, String name, T source, ToDoubleFunction<T> value) {
+        FunctionCounter.builder(name, source, value).register(registry);
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.demo;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -425,7 +426,7 @@ public class TestPromptDatabase {
      * Get all event creation prompts
      */
     public static List<String> getAllEventPrompts() {
-        List<String> allPrompts = Arrays.asList(BASIC_EVENT_PROMPTS);
+        List<String> allPrompts = new ArrayList<>(Arrays.asList(BASIC_EVENT_PROMPTS));
         allPrompts.addAll(Arrays.asList(COMPLEX_TIME_PROMPTS));
         allPrompts.addAll(Arrays.asList(VAGUE_TIME_PROMPTS));
         allPrompts.addAll(Arrays.asList(EVENT_TYPE_PROMPTS));
@@ -438,7 +439,7 @@ public class TestPromptDatabase {
      * Get all memory storage prompts
      */
     public static List<String> getAllMemoryPrompts() {
-        List<String> allPrompts = Arrays.asList(PERSONAL_INFO_PROMPTS);
+        List<String> allPrompts = new ArrayList<>(Arrays.asList(PERSONAL_INFO_PROMPTS));
         allPrompts.addAll(Arrays.asList(PREFERENCES_PROMPTS));
         allPrompts.addAll(Arrays.asList(GOALS_PROMPTS));
         allPrompts.addAll(Arrays.asList(RELATIONSHIP_PROMPTS));
@@ -0,0 +1,47 @@
+package com.example.demo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Threads for blocking work. The chat pipeline blocks on JPA over SQLite and on Gemini calls,
+ * so instead of making it reactive the app can run it on virtual threads: with
+ * {@code spring.threads.virtual.enabled=true} on JDK 21 or later, Spring Boot puts Tomcat's
+ * request handling, the {@code applicationTaskExecutor} (used for {@code @Async} and for MVC's
+ * asynchronous {@code Flux}/{@code CompletableFuture} returns) and {@code @Scheduled} tasks on
+ * virtual threads, and {@link #blockingScheduler} gives {@link ChatScheduler} one virtual thread
+ * per queued chat instead of the bounded-elastic pool. On older JDKs the flag has no effect.
+ *
+ * <p>Blocking while holding a monitor pins a virtual thread to its carrier, so code on these
+ * paths holds {@code synchronized} only around in-memory work and uses {@code ReentrantLock}
+ * where it waits on I/O. The SQLite driver's native calls pin regardless; at most one writer
+ * plus {@code app.persistence.sqlite.read-pool-size} readers are inside it at once, since the
+ * rest wait for a Hikari connection, which does not pin. {@code -Djdk.tracePinnedThreads=short}
+ * logs any pinning that remains.
+ */
+@Configuration
+public class ThreadingConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadingConfig.class);
+
+    @Bean
+    public Scheduler blockingScheduler(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (!virtualThreads) {
+            return Schedulers.boundedElastic();
+        }
+        if (!JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE)) {
+            logger.warn("spring.threads.virtual.enabled is set but virtual threads need JDK 21, using platform threads");
+            return Schedulers.boundedElastic();
+        }
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("chat-");
+        executor.setVirtualThreads(true);
+        return Schedulers.fromExecutor(executor);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.demo;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationFilter;
+import io.micrometer.observation.ObservationPredicate;
+import io.micrometer.observation.ObservationRegistry;
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Span export for the chat pipeline. Spans go to an OTLP collector when
+ * {@code management.otlp.tracing.endpoint} is set (e.g. {@code http://localhost:4318/v1/traces}),
+ * and to the application log, one line per span, with {@code app.tracing.log-exporter=true}.
+ * Both can be on at once.
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.tracing.log-exporter", havingValue = "true")
+    public SpanExporter loggingSpanExporter() {
+        return LoggingSpanExporter.create();
+    }
+
+    /**
+     * JDBC statements are only traced as part of something already being observed, such as a
+     * request. Otherwise the job queue's once-a-second poll would be a trace of its own.
+     */
+    @Bean
+    public ObservationPredicate jdbcOnlyWithinATrace(ObjectProvider<ObservationRegistry> observationRegistry) {
+        return (name, context) -> {
+            if (!name.startsWith("jdbc.")) {
+                return true;
+            }
+            Observation current = observationRegistry.getObject().getCurrentObservation();
+            return current != null && !current.isNoop();
+        };
+    }
+
+    /**
+     * Gemini takes the API key as a query parameter, so the full URL the WebClient observation
+     * records for each call must not reach a span.
+     */
+    @Bean
+    public ObservationFilter stripQueryFromHttpUrl() {
+        return context -> {
+            KeyValue url = context.getHighCardinalityKeyValue("http.url");
+            if (url != null && url.getValue().indexOf('?') >= 0) {
+                String value = url.getValue();
+                context.addHighCardinalityKeyValue(KeyValue.of("http.url", value.substring(0, value.indexOf('?'))));
+            }
+            return context;
+        };
+    }
+}
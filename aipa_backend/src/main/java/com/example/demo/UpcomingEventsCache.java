@@ -0,0 +1,313 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory view of each user's upcoming calendar events, sorted by date, plus the
+ * rendered session-context snippet built from it. Loaded from the database once per
+ * user and then kept current by write-through calls from every calendar write path,
+ * so building calendar context does not touch the database.
+ *
+ * Entries idle for {@code app.calendar.upcoming-cache-idle-minutes} are dropped and at most
+ * {@code app.calendar.upcoming-cache-max-users} users are kept, least recently used first out.
+ */
+@Component
+public class UpcomingEventsCache {
+
+    private final CalendarEventRepository calendarEventRepository;
+    private final Map<UUID, UserEvents> entries = new ConcurrentHashMap<>();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    // Bumped by every write-through, striped by user, so a load can tell it raced a write
+    private final AtomicLongArray writeStamps = new AtomicLongArray(64);
+
+    @Value("${app.calendar.upcoming-cache-size:200}")
+    private int maxEventsPerUser;
+
+    @Value("${app.calendar.upcoming-cache-max-users:10000}")
+    private int maxUsers;
+
+    @Value("${app.calendar.upcoming-cache-idle-minutes:30}")
+    private long idleMinutes;
+
+    public UpcomingEventsCache(CalendarEventRepository calendarEventRepository) {
+        this.calendarEventRepository = calendarEventRepository;
+    }
+
+    @FunctionalInterface
+    public interface Renderer {
+        String render(List<UpcomingEvent> events, long totalCount, LocalDate today);
+    }
+
+    /**
+     * Returns the rendered snippet for the user, re-rendering only when the events
+     * changed or the day rolled over since the last call.
+     */
+    public String getRendered(UUID userId, int limit, Renderer renderer) {
+        lookups.incrementAndGet();
+        LocalDate today = LocalDate.now();
+        while (true) {
+            UserEvents userEvents = entry(userId);
+            synchronized (userEvents) {
+                userEvents.prune(today);
+                // A truncated entry that aged below the limit has to be refilled from the database
+                if (userEvents.complete || userEvents.sorted.size() >= Math.min(limit, maxEventsPerUser)) {
+                    if (userEvents.rendered == null || !today.equals(userEvents.renderedFor)) {
+                        List<UpcomingEvent> head = new ArrayList<>(Math.min(limit, userEvents.sorted.size()));
+                        for (UpcomingEvent event : userEvents.sorted) {
+                            if (head.size() >= limit) {
+                                break;
+                            }
+                            head.add(event);
+                        }
+                        userEvents.rendered = renderer.render(head, userEvents.totalCount, today);
+                        userEvents.renderedFor = today;
+                    }
+                    return userEvents.rendered;
+                }
+            }
+            entries.remove(userId, userEvents);
+        }
+    }
+
+    public long countUpcoming(UUID userId) {
+        lookups.incrementAndGet();
+        UserEvents userEvents = entry(userId);
+        synchronized (userEvents) {
+            userEvents.prune(LocalDate.now());
+            return userEvents.totalCount;
+        }
+    }
+
+    public void onEventSaved(UUID userId, CalendarEvent event) {
+        UpcomingEvent snapshot = new UpcomingEvent(event);
+        afterCommit(() -> {
+            bumpWriteStamp(userId);
+            entries.computeIfPresent(userId, (id, userEvents) -> {
+                synchronized (userEvents) {
+                    return userEvents.apply(snapshot, LocalDate.now(), maxEventsPerUser) ? userEvents : null;
+                }
+            });
+        });
+    }
+
+    public void onEventDeleted(UUID userId, UUID eventId) {
+        afterCommit(() -> {
+            bumpWriteStamp(userId);
+            entries.computeIfPresent(userId, (id, userEvents) -> {
+                synchronized (userEvents) {
+                    return userEvents.remove(eventId) ? userEvents : null;
+                }
+            });
+        });
+    }
+
+    public void invalidate(UUID userId) {
+        afterCommit(() -> {
+            bumpWriteStamp(userId);
+            entries.remove(userId);
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.calendar.cache-sweep-interval-ms:60000}")
+    public void evictIdle() {
+        long idleBefore = System.currentTimeMillis() - idleMinutes * 60_000;
+        entries.values().removeIf(userEvents -> userEvents.lastAccess <= idleBefore);
+    }
+
+    public int size() { return entries.size(); }
+    public long getMissCount() { return loads.get(); }
+    public long getHitCount() { return Math.max(0, lookups.get() - loads.get()); }
+
+    /**
+     * The user's entry, loaded on a miss outside the map so the query does not hold a
+     * ConcurrentHashMap bin lock and block other users. A write-through that lands while
+     * the query runs makes the loaded entry stale, so it then serves this call only.
+     */
+    private UserEvents entry(UUID userId) {
+        long now = System.currentTimeMillis();
+        UserEvents userEvents = entries.get(userId);
+        if (userEvents == null) {
+            int stripe = stripe(userId);
+            long stamp = writeStamps.get(stripe);
+            UserEvents loaded = load(userId);
+            makeRoom();
+            userEvents = entries.putIfAbsent(userId, loaded);
+            if (userEvents == null) {
+                userEvents = loaded;
+                if (writeStamps.get(stripe) != stamp) {
+                    entries.remove(userId, loaded);
+                }
+            }
+        }
+        userEvents.lastAccess = now;
+        return userEvents;
+    }
+
+    private void makeRoom() {
+        if (entries.size() < maxUsers) {
+            return;
+        }
+        evictIdle();
+        while (entries.size() >= maxUsers) {
+            UUID eldest = null;
+            long eldestAccess = Long.MAX_VALUE;
+            for (Map.Entry<UUID, UserEvents> entry : entries.entrySet()) {
+                if (entry.getValue().lastAccess < eldestAccess) {
+                    eldest = entry.getKey();
+                    eldestAccess = entry.getValue().lastAccess;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            entries.remove(eldest);
+        }
+    }
+
+    private int stripe(UUID userId) {
+        return userId.hashCode() & (writeStamps.length() - 1);
+    }
+
+    private void bumpWriteStamp(UUID userId) {
+        writeStamps.incrementAndGet(stripe(userId));
+    }
+
+    private UserEvents load(UUID userId) {
+        loads.incrementAndGet();
+        LocalDate today = LocalDate.now();
+        List<CalendarEvent> events = calendarEventRepository.findUpcoming(
+            userId, today, PageRequest.of(0, maxEventsPerUser + 1));
+
+        UserEvents userEvents = new UserEvents();
+        userEvents.complete = events.size() <= maxEventsPerUser;
+        for (CalendarEvent event : events.subList(0, Math.min(events.size(), maxEventsPerUser))) {
+            UpcomingEvent snapshot = new UpcomingEvent(event);
+            userEvents.sorted.add(snapshot);
+            userEvents.byId.put(snapshot.getId(), snapshot);
+        }
+        userEvents.totalCount = userEvents.complete
+            ? userEvents.sorted.size()
+            : calendarEventRepository.countUpcoming(userId, today);
+        return userEvents;
+    }
+
+    /**
+     * Cache updates must only reflect committed data, otherwise a rolled back insert
+     * would stay visible in the session context. Shared with {@link CalendarConflictDetector}.
+     */
+    static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static class UserEvents {
+        final NavigableSet<UpcomingEvent> sorted = new TreeSet<>(UpcomingEvent.ORDER);
+        final Map<UUID, UpcomingEvent> byId = new HashMap<>();
+        boolean complete;
+        long totalCount;
+        String rendered;
+        LocalDate renderedFor;
+        volatile long lastAccess;
+
+        void prune(LocalDate today) {
+            while (!sorted.isEmpty() && sorted.first().getStart().isBefore(today)) {
+                UpcomingEvent past = sorted.pollFirst();
+                byId.remove(past.getId());
+                totalCount--;
+                rendered = null;
+            }
+        }
+
+        /**
+         * @return false when the entry can no longer be kept exact and should be reloaded
+         */
+        boolean apply(UpcomingEvent event, LocalDate today, int maxEvents) {
+            prune(today);
+            rendered = null;
+
+            UpcomingEvent existing = byId.remove(event.getId());
+            if (existing != null) {
+                sorted.remove(existing);
+                totalCount--;
+            } else if (!complete) {
+                // The event may be one of the untracked ones past the tail
+                return false;
+            }
+
+            if (event.getStart().isBefore(today)) {
+                return true;
+            }
+
+            totalCount++;
+            if (complete || (!sorted.isEmpty() && event.compareTo(sorted.last()) < 0)) {
+                sorted.add(event);
+                byId.put(event.getId(), event);
+                if (sorted.size() > maxEvents) {
+                    UpcomingEvent dropped = sorted.pollLast();
+                    byId.remove(dropped.getId());
+                    complete = false;
+                }
+            }
+            return true;
+        }
+
+        boolean remove(UUID eventId) {
+            UpcomingEvent existing = byId.remove(eventId);
+            if (existing == null) {
+                return complete;
+            }
+            sorted.remove(existing);
+            totalCount--;
+            rendered = null;
+            return true;
+        }
+    }
+
+    public static class UpcomingEvent implements Comparable<UpcomingEvent> {
+        static final Comparator<UpcomingEvent> ORDER = Comparator
+            .comparing(UpcomingEvent::getStart)
+            .thenComparing(UpcomingEvent::getTitle)
+            .thenComparing(UpcomingEvent::getId);
+
+        private final UUID id;
+        private final String title;
+        private final LocalDate start;
+        private final String description;
+
+        UpcomingEvent(CalendarEvent event) {
+            this.id = event.getId();
+            this.title = event.getTitle() != null ? event.getTitle() : "";
+            this.start = event.getStart();
+            this.description = event.getDescription();
+        }
+
+        public UUID getId() { return id; }
+        public String getTitle() { return title; }
+        public LocalDate getStart() { return start; }
+        public String getDescription() { return description; }
+
+        @Override
+        public int compareTo(UpcomingEvent other) {
+            return ORDER.compare(this, other);
+        }
+    }
+}
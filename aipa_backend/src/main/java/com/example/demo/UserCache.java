@@ -0,0 +1,94 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived cache of users by email for the authentication path, so the JWT filter and
+ * the controllers behind it share one lookup. Entries are detached entities: read from them,
+ * but load a managed copy before changing a user and {@link #put} the saved result.
+ *
+ * Unknown emails are not cached. When the cache is full of live entries, new users are
+ * simply looked up every time until entries expire.
+ */
+@Component
+public class UserCache {
+
+    private final UserRepository userRepository;
+    private final Map<String, Entry> users = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Value("${app.security.user-cache-ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${app.security.user-cache-max-entries:1000}")
+    private int maxEntries;
+
+    public UserCache(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    public User findByEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = users.get(email);
+        if (entry != null && entry.expiresAt > now) {
+            hits.incrementAndGet();
+            return entry.user;
+        }
+
+        misses.incrementAndGet();
+        User user = userRepository.findByEmail(email);
+        if (user == null) {
+            users.remove(email);
+            return null;
+        }
+        store(user, now);
+        return user;
+    }
+
+    public void put(User user) {
+        if (user != null && user.getEmail() != null) {
+            store(user, System.currentTimeMillis());
+        }
+    }
+
+    public void evict(String email) {
+        if (email != null) {
+            users.remove(email);
+        }
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+
+    private void store(User user, long now) {
+        if (users.size() >= maxEntries && !users.containsKey(user.getEmail())) {
+            users.values().removeIf(entry -> entry.expiresAt <= now);
+            if (users.size() >= maxEntries) {
+                return;
+            }
+        }
+        users.put(user.getEmail(), new Entry(user, now + ttlSeconds * 1000));
+    }
+
+    private static final class Entry {
+        final User user;
+        final long expiresAt;
+
+        Entry(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
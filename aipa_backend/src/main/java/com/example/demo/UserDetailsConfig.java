@@ -9,9 +9,9 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 public class UserDetailsConfig {
     
     @Bean
-    public UserDetailsService userDetailsService(UserRepository userRepository) {
+    public UserDetailsService userDetailsService(UserCache userCache) {
         return username -> {
-            User user = userRepository.findByEmail(username);
+            User user = userCache.findByEmail(username);
             if (user == null) {
                 throw new UsernameNotFoundException("User not found with email: " + username);
             }
@@ -0,0 +1,172 @@
+package com.example.demo;
+
+import org.flywaydb.core.api.FlywayException;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Portable replacement for the old {@code V3__update_user_id_to_uuid.sql}, which relied on
+ * {@code gen_random_uuid()}. The new keys are generated here instead of in SQL, so the same
+ * migration runs on SQLite and PostgreSQL. Databases whose users table already has UUID keys
+ * (anything created from V1) are left untouched.
+ *
+ * Rows in the tables that reference users are moved to the new keys in the same migration.
+ * Foreign keys to users are dropped and re-created around the rebuild where the database
+ * supports it; SQLite defers them to the commit instead. On PostgreSQL a numeric user_id
+ * column with rows cannot be converted in place, so the migration fails before changing
+ * anything and says which table is in the way.
+ */
+public class V3_1__UpdateUserIdToUuid extends BaseJavaMigration {
+
+    private static final String COLUMNS = "email, password, full_name, profile_image, account_created, last_login, "
+        + "is_active, email_verified, verification_token, reset_token, reset_token_expiry, provider";
+
+    private static final List<String> CHILD_TABLES = List.of("user_memories", "session_memories", "calendar_events");
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+        if (!hasNumericUserIds(connection)) {
+            return;
+        }
+
+        // SQLite column types are advisory, so any referencing column can take the new keys.
+        // Elsewhere only a numeric column can hold old keys, and it has to become a UUID column.
+        boolean sqlite = connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("sqlite");
+        List<String> remapped = new ArrayList<>();
+        List<String> retyped = new ArrayList<>();
+        for (String table : CHILD_TABLES) {
+            Integer type = columnType(connection, table, "user_id");
+            if (type == null) {
+                continue;
+            }
+            if (sqlite) {
+                remapped.add(table);
+            } else if (isNumeric(type)) {
+                if (hasRows(connection, table)) {
+                    throw new FlywayException("Cannot move " + table + ".user_id to UUID keys: the column is numeric "
+                        + "and has rows. Change it to UUID, or empty the table, and run the migration again.");
+                }
+                retyped.add(table);
+            }
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            List<ForeignKey> foreignKeys = sqlite ? List.of() : foreignKeysToUsers(connection);
+            if (sqlite) {
+                statement.execute("PRAGMA defer_foreign_keys = ON");
+            }
+            for (ForeignKey foreignKey : foreignKeys) {
+                statement.execute("ALTER TABLE " + foreignKey.table + " DROP CONSTRAINT " + foreignKey.name);
+            }
+            for (String table : retyped) {
+                statement.execute("ALTER TABLE " + table + " ALTER COLUMN user_id TYPE UUID USING NULL");
+            }
+
+            statement.execute("CREATE TABLE users_new ("
+                + "id UUID PRIMARY KEY, "
+                + "email VARCHAR(50) NOT NULL UNIQUE, "
+                + "password VARCHAR(120) NOT NULL, "
+                + "full_name VARCHAR(100), "
+                + "profile_image VARCHAR(255), "
+                + "account_created TIMESTAMP NOT NULL, "
+                + "last_login TIMESTAMP, "
+                + "is_active BOOLEAN DEFAULT true, "
+                + "email_verified BOOLEAN DEFAULT false, "
+                + "verification_token VARCHAR(255), "
+                + "reset_token VARCHAR(255), "
+                + "reset_token_expiry TIMESTAMP, "
+                + "provider VARCHAR(20) DEFAULT 'LOCAL')");
+
+            Map<Long, UUID> newIds = new LinkedHashMap<>();
+            try (ResultSet rows = statement.executeQuery("SELECT id, " + COLUMNS + " FROM users");
+                 PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO users_new (id, " + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                int columnCount = rows.getMetaData().getColumnCount();
+                while (rows.next()) {
+                    UUID id = UUID.randomUUID();
+                    newIds.put(rows.getLong(1), id);
+                    insert.setObject(1, id);
+                    for (int i = 2; i <= columnCount; i++) {
+                        insert.setObject(i, rows.getObject(i));
+                    }
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+
+            statement.execute("DROP TABLE users");
+            statement.execute("ALTER TABLE users_new RENAME TO users");
+            statement.execute("CREATE INDEX idx_users_verification_token ON users(verification_token)");
+            statement.execute("CREATE INDEX idx_users_reset_token ON users(reset_token)");
+
+            // Remapped only once the new table is users: SQLite counts deferred violations
+            // as rows change, and a child moved to its new key clears the one the drop added.
+            for (String table : remapped) {
+                try (PreparedStatement update = connection.prepareStatement(
+                        "UPDATE " + table + " SET user_id = ? WHERE user_id = ?")) {
+                    for (Map.Entry<Long, UUID> id : newIds.entrySet()) {
+                        update.setObject(1, id.getValue());
+                        update.setLong(2, id.getKey());
+                        update.addBatch();
+                    }
+                    update.executeBatch();
+                }
+            }
+
+            for (ForeignKey foreignKey : foreignKeys) {
+                statement.execute("ALTER TABLE " + foreignKey.table + " ADD CONSTRAINT " + foreignKey.name
+                    + " FOREIGN KEY (" + foreignKey.column + ") REFERENCES users(id)");
+            }
+        }
+    }
+
+    private boolean hasNumericUserIds(Connection connection) throws SQLException {
+        Integer type = columnType(connection, "users", "id");
+        return type != null && isNumeric(type);
+    }
+
+    private static boolean isNumeric(int type) {
+        return type == Types.INTEGER || type == Types.BIGINT || type == Types.SMALLINT;
+    }
+
+    private static Integer columnType(Connection connection, String table, String column) throws SQLException {
+        try (ResultSet columns = connection.getMetaData().getColumns(
+                connection.getCatalog(), connection.getSchema(), table, column)) {
+            return columns.next() ? columns.getInt("DATA_TYPE") : null;
+        }
+    }
+
+    private static boolean hasRows(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT 1 FROM " + table + " LIMIT 1")) {
+            return rows.next();
+        }
+    }
+
+    private static List<ForeignKey> foreignKeysToUsers(Connection connection) throws SQLException {
+        List<ForeignKey> foreignKeys = new ArrayList<>();
+        try (ResultSet keys = connection.getMetaData().getExportedKeys(
+                connection.getCatalog(), connection.getSchema(), "users")) {
+            while (keys.next()) {
+                foreignKeys.add(new ForeignKey(keys.getString("FKTABLE_NAME"), keys.getString("FKCOLUMN_NAME"),
+                    keys.getString("FK_NAME")));
+            }
+        }
+        return foreignKeys;
+    }
+
+    private static final class ForeignKey {
+        final String table;
+        final String column;
+        final String name;
+
+        ForeignKey(String table, String column, String name) {
+            this.table = table;
+            this.column = column;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Serializes background writes through one writer thread and commits them in groups:
+ * whatever is queued when the writer picks up work (up to {@code group-size} tasks) runs
+ * in a single transaction, so many small writes cost one commit and one fsync.
+ *
+ * Enabled by default in the sqlite profile. Otherwise, or with
+ * {@code app.persistence.write-queue.enabled=false}, tasks run on the caller's thread
+ * in their own transaction. The queue is bounded; a full queue fails the task with
+ * {@link RejectedExecutionException} instead of buffering without limit.
+ */
+@Component
+public class WriteQueue {
+
+    private static final Logger logger = Logger.getLogger(WriteQueue.class.getName());
+
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final BlockingQueue<Task<?>> queue;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong groupRetries = new AtomicLong();
+    private final AtomicLong maxGroupSize = new AtomicLong();
+
+    @Value("${app.persistence.write-queue.group-size:64}")
+    private int groupSize;
+
+    @Value("${app.persistence.write-queue.offer-timeout-ms:2000}")
+    private long offerTimeoutMillis;
+
+    private volatile boolean stopping;
+    private Thread writer;
+
+    public WriteQueue(PlatformTransactionManager transactionManager, Environment environment,
+                      @Value("${app.persistence.write-queue.capacity:1000}") int capacity) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = environment.getProperty("app.persistence.write-queue.enabled", Boolean.class,
+            environment.acceptsProfiles(Profiles.of("sqlite")));
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        writer = new Thread(this::run, "sqlite-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Runs {@code work} inside a write transaction and completes with its result after commit.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        submitted.incrementAndGet();
+        if (!enabled) {
+            try {
+                return CompletableFuture.completedFuture(transactionTemplate.execute(status -> work.get()));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        Task<T> task = new Task<>(work);
+        try {
+            if (stopping || !queue.offer(task, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                task.future.completeExceptionally(new RejectedExecutionException("Write queue is full"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.future.completeExceptionally(e);
+        }
+        return task.future;
+    }
+
+    /**
+     * Blocking form of {@link #submit(Supplier)} for callers that need the write done before
+     * they continue. Failures are rethrown as they were raised by {@code work}.
+     */
+    public <T> T execute(Supplier<T> work) {
+        try {
+            return submit(work).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<Void> submit(Runnable work) {
+        return submit(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    private void run() {
+        List<Task<?>> group = new ArrayList<>(groupSize);
+        while (!stopping || !queue.isEmpty()) {
+            try {
+                Task<?> first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                queue.drainTo(group, groupSize - 1);
+                commitGroup(group);
+            } catch (InterruptedException e) {
+                if (!stopping) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } catch (Throwable t) {
+                logger.severe("Writer thread error: " + t.getMessage());
+                group.forEach(task -> task.future.completeExceptionally(t));
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void commitGroup(List<Task<?>> group) {
+        maxGroupSize.accumulateAndGet(group.size(), Math::max);
+        try {
+            List<Object> results = transactionTemplate.execute(status -> {
+                List<Object> values = new ArrayList<>(group.size());
+                for (Task<?> task : group) {
+                    values.add(task.work.get());
+                }
+                return values;
+            });
+            commits.incrementAndGet();
+            for (int i = 0; i < group.size(); i++) {
+                group.get(i).complete(results.get(i));
+            }
+        } catch (Exception e) {
+            if (group.size() == 1) {
+                group.get(0).future.completeExceptionally(e);
+                return;
+            }
+            // One failing task rolled back the whole group; run them separately so the rest still commit
+            groupRetries.incrementAndGet();
+            for (Task<?> task : group) {
+                try {
+                    Object result = transactionTemplate.execute(status -> task.work.get());
+                    commits.incrementAndGet();
+                    task.complete(result);
+                } catch (Exception single) {
+                    task.future.completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        stopping = true;
+        if (writer != null) {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    public boolean isEnabled() { return enabled; }
+    public int getQueueDepth() { return queue.size(); }
+    public long getSubmittedCount() { return submitted.get(); }
+    public long getRejectedCount() { return rejected.get(); }
+    public long getCommitCount() { return commits.get(); }
+    public long getGroupRetryCount() { return groupRetries.get(); }
+    public long getMaxGroupSize() { return maxGroupSize.get(); }
+
+    private static final class Task<T> {
+        final Supplier<T> work;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Task(Supplier<T> work) {
+            this.work = work;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Object result) {
+            future.complete((T) result);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+CREATE TABLE users (
+    id UUID PRIMARY KEY,
+    email VARCHAR(50) NOT NULL UNIQUE,
+    password VARCHAR(120) NOT NULL,
+    full_name VARCHAR(100),
+    profile_image VARCHAR(255),
+    account_created TIMESTAMP NOT NULL,
+    last_login TIMESTAMP,
+    is_active BOOLEAN DEFAULT true,
+    email_verified BOOLEAN DEFAULT false,
+    verification_token VARCHAR(255),
+    reset_token VARCHAR(255),
+    reset_token_expiry TIMESTAMP,
+    provider VARCHAR(20) DEFAULT 'LOCAL'
+);
+
+CREATE INDEX idx_users_verification_token ON users(verification_token);
+CREATE INDEX idx_users_reset_token ON users(reset_token);
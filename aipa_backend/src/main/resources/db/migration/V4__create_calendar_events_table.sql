@@ -0,0 +1,13 @@
+CREATE TABLE calendar_events (
+    id UUID PRIMARY KEY,
+    title VARCHAR(255) NOT NULL,
+    start_date DATE NOT NULL,
+    description VARCHAR(1000),
+    is_all_day BOOLEAN DEFAULT true,
+    event_color VARCHAR(50),
+    plan_title VARCHAR(255),
+    user_id UUID NOT NULL,
+    FOREIGN KEY (user_id) REFERENCES users(id)
+);
+
+CREATE INDEX idx_calendar_events_user_id ON calendar_events(user_id);
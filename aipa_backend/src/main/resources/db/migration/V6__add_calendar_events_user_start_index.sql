@@ -0,0 +1,2 @@
+-- Composite index so per-user date range queries are index range scans
+CREATE INDEX IF NOT EXISTS idx_calendar_events_user_start ON calendar_events(user_id, start_date);
@@ -0,0 +1,3 @@
+-- Optional time of day and length, used for conflict detection; NULL keeps the event all-day
+ALTER TABLE calendar_events ADD COLUMN start_time TIME;
+ALTER TABLE calendar_events ADD COLUMN duration_minutes INTEGER;
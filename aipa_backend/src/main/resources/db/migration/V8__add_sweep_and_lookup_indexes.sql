@@ -0,0 +1,4 @@
+-- Per-user active memory lookups and the maintenance sweeps, which filter on is_active plus a timestamp
+CREATE INDEX IF NOT EXISTS idx_user_memories_user_active ON user_memories(user_id, is_active);
+CREATE INDEX IF NOT EXISTS idx_user_memories_active_updated ON user_memories(is_active, updated_at);
+CREATE INDEX IF NOT EXISTS idx_session_memories_active_last_activity ON session_memories(is_active, last_activity);
@@ -0,0 +1,14 @@
+-- Durable queue for background LLM work (memory extraction, deferred calendar extraction)
+CREATE TABLE llm_jobs (
+    id UUID PRIMARY KEY,
+    user_id UUID NOT NULL,
+    type VARCHAR(64) NOT NULL,
+    payload TEXT NOT NULL,
+    status VARCHAR(16) NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    created_at TIMESTAMP NOT NULL,
+    next_attempt_at TIMESTAMP NOT NULL,
+    last_error VARCHAR(1000)
+);
+
+CREATE INDEX idx_llm_jobs_status_created ON llm_jobs(status, created_at);
@@ -0,0 +1,145 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CalendarConflictDetectorTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 9, 1);
+
+    private CalendarEventRepository repository;
+    private CalendarConflictDetector detector;
+    private final UUID userId = UUID.randomUUID();
+    private final List<CalendarEvent> stored = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CalendarEventRepository.class);
+        when(repository.findAllForUser(userId)).thenReturn(stored);
+        detector = new CalendarConflictDetector(repository);
+        ReflectionTestUtils.setField(detector, "maxUsers", 100);
+        ReflectionTestUtils.setField(detector, "idleMinutes", 30L);
+    }
+
+    private CalendarEvent event(String title, LocalDate date, LocalTime time, Integer minutes) {
+        CalendarEvent event = new CalendarEvent(title, date);
+        event.setStartTime(time);
+        event.setDurationMinutes(minutes);
+        return event;
+    }
+
+    private CalendarEvent saved(String title, LocalDate date, LocalTime time, Integer minutes) {
+        CalendarEvent event = event(title, date, time, minutes);
+        event.setId(UUID.randomUUID());
+        stored.add(event);
+        return event;
+    }
+
+    private List<String> conflictTitles(CalendarEvent candidate) {
+        return detector.findConflicts(userId, candidate).stream()
+            .map(CalendarConflictDetector.Conflict::getTitle)
+            .toList();
+    }
+
+    @Test
+    void timedEventsOverlapOnlyWhenIntervalsIntersect() {
+        saved("Standup", DAY, LocalTime.of(9, 0), 30);
+        saved("Lunch", DAY, LocalTime.of(12, 0), 60);
+
+        assertEquals(List.of("Standup"), conflictTitles(event("Review", DAY, LocalTime.of(9, 15), 30)));
+        assertEquals(List.of(), conflictTitles(event("Call", DAY, LocalTime.of(9, 30), 30)));
+        assertEquals(List.of("Lunch"), conflictTitles(event("Errand", DAY, LocalTime.of(11, 30), null)));
+    }
+
+    @Test
+    void allDayEventsCoverTheirDates() {
+        saved("Conference", DAY, null, 3 * 24 * 60);
+
+        assertEquals(List.of("Conference"), conflictTitles(event("Dinner", DAY.plusDays(2), LocalTime.of(19, 0), 90)));
+        assertEquals(List.of(), conflictTitles(event("Flight home", DAY.plusDays(3), null, null)));
+        assertEquals(List.of(), conflictTitles(event("Packing", DAY.minusDays(1), null, null)));
+    }
+
+    @Test
+    void updatedEventDoesNotConflictWithItselfAndWritesAreApplied() {
+        CalendarEvent gym = saved("Gym", DAY, LocalTime.of(18, 0), 60);
+        assertEquals(List.of(), conflictTitles(gym));
+
+        CalendarEvent movie = event("Movie", DAY, LocalTime.of(18, 30), 120);
+        movie.setId(UUID.randomUUID());
+        detector.onEventSaved(userId, movie);
+        assertEquals(List.of("Movie"), conflictTitles(gym));
+
+        detector.onEventDeleted(userId, movie.getId());
+        assertEquals(List.of(), conflictTitles(gym));
+        verify(repository, times(1)).findAllForUser(userId);
+    }
+
+    @Test
+    void batchReportsOverlapsWithinTheBatch() {
+        CalendarEvent first = event("Dentist", DAY, null, null);
+        CalendarEvent second = event("Haircut", DAY, LocalTime.of(15, 0), 45);
+
+        Map<CalendarEvent, List<CalendarConflictDetector.Conflict>> conflicts =
+            detector.findConflicts(userId, List.of(first, second));
+
+        assertFalse(conflicts.containsKey(first));
+        assertEquals("Dentist", conflicts.get(second).get(0).getTitle());
+        assertEquals(45, conflicts.get(second).get(0).getOverlapMinutes());
+    }
+
+    @Test
+    void twoAllDayEventsOnTheSameDateOnlyConflictWhenEnabled() {
+        saved("Mom's birthday", DAY, null, null);
+
+        assertEquals(List.of(), conflictTitles(event("Pay rent", DAY, null, null)));
+        assertEquals(List.of("Mom's birthday"), conflictTitles(event("Dinner", DAY, LocalTime.of(19, 0), 90)));
+
+        ReflectionTestUtils.setField(detector, "includeAllDayPairs", true);
+
+        assertEquals(List.of("Mom's birthday"), conflictTitles(event("Pay rent", DAY, null, null)));
+    }
+
+    @Test
+    void deletingTheLongestEventStillFindsShorterOverlaps() {
+        CalendarEvent trip = saved("Trip", DAY, null, 10 * 24 * 60);
+        saved("Standup", DAY.plusDays(5), LocalTime.of(9, 0), 30);
+        detector.findConflicts(userId, event("Probe", DAY, LocalTime.of(1, 0), 1));
+
+        detector.onEventDeleted(userId, trip.getId());
+
+        assertEquals(List.of("Standup"), conflictTitles(event("Review", DAY.plusDays(5), LocalTime.of(9, 15), 30)));
+        assertEquals(List.of(), conflictTitles(event("Call", DAY.plusDays(2), LocalTime.of(9, 0), 30)));
+    }
+
+    @Test
+    void writeDuringLoadIsNotLostAndIdleIndexesAreEvicted() {
+        when(repository.findAllForUser(userId)).thenAnswer(invocation -> {
+            CalendarEvent gym = event("Gym", DAY, LocalTime.of(18, 0), 60);
+            gym.setId(UUID.randomUUID());
+            // Commits while the first query is still running
+            detector.onEventSaved(userId, gym);
+            stored.add(gym);
+            return new ArrayList<>(stored.subList(0, stored.size() - 1));
+        }).thenAnswer(invocation -> stored);
+
+        assertEquals(List.of(), conflictTitles(event("Movie", DAY, LocalTime.of(18, 30), 60)));
+        assertEquals(List.of("Gym"), conflictTitles(event("Movie", DAY, LocalTime.of(18, 30), 60)));
+        assertEquals(1, detector.size());
+
+        ReflectionTestUtils.setField(detector, "idleMinutes", 0L);
+        detector.evictIdle();
+
+        assertEquals(0, detector.size());
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.demo;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CalendarControllerTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 9, 1);
+
+    private CalendarEventRepository repository;
+    private CalendarController controller;
+    private EntityManager entityManager;
+    private final User user = new User();
+
+    @BeforeEach
+    void setUp() {
+        user.setId(UUID.randomUUID());
+        repository = mock(CalendarEventRepository.class);
+        controller = new CalendarController(repository, mock(CalendarEventBatchService.class),
+            mock(CalendarImportExportService.class), new UpcomingEventsCache(repository),
+            new CalendarConflictDetector(repository));
+        ReflectionTestUtils.setField(controller, "maxRangeResults", 2);
+        entityManager = mock(EntityManager.class);
+        ReflectionTestUtils.setField(controller, "entityManager", entityManager);
+    }
+
+    /** A stored event whose owner is a different instance than the (cached, detached) request user. */
+    private CalendarEvent storedEvent(UUID ownerId) {
+        User owner = new User();
+        owner.setId(ownerId);
+        CalendarEvent event = new CalendarEvent("Dentist", DAY);
+        event.setId(UUID.randomUUID());
+        event.setUser(owner);
+        when(entityManager.find(CalendarEvent.class, event.getId())).thenReturn(event);
+        when(repository.findById(event.getId())).thenReturn(Optional.of(event));
+        return event;
+    }
+
+    private List<CalendarEvent> events(int count) {
+        List<CalendarEvent> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(new CalendarEvent("Event " + i, DAY.plusDays(i)));
+        }
+        return events;
+    }
+
+    @Test
+    void rangeResponseSaysWhenItWasCutOff() {
+        when(repository.findInRange(eq(user.getId()), any(), any(), any(Pageable.class))).thenReturn(events(3));
+
+        ResponseEntity<?> response = controller.getEvents(DAY, DAY.plusDays(7), user);
+
+        assertEquals(2, ((List<?>) response.getBody()).size());
+        assertEquals("true", response.getHeaders().getFirst(CalendarController.RESULTS_TRUNCATED_HEADER));
+    }
+
+    @Test
+    void rangeResponseThatFitsIsNotTruncated() {
+        when(repository.findInRange(eq(user.getId()), any(), any(), any(Pageable.class))).thenReturn(events(2));
+
+        ResponseEntity<?> response = controller.getEvents(DAY, DAY.plusDays(7), user);
+
+        assertEquals(2, ((List<?>) response.getBody()).size());
+        assertEquals("false", response.getHeaders().getFirst(CalendarController.RESULTS_TRUNCATED_HEADER));
+    }
+
+    @Test
+    void ownerCanEditEventLoadedAsAnotherUserInstance() {
+        CalendarEvent stored = storedEvent(user.getId());
+        CalendarEvent edit = new CalendarEvent("Dentist checkup", DAY.plusDays(1));
+        edit.setId(stored.getId());
+
+        ResponseEntity<?> response = controller.addEvent(edit, user);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals("Dentist checkup", stored.getTitle());
+        assertEquals(DAY.plusDays(1), stored.getStart());
+        verify(entityManager).merge(stored);
+    }
+
+    @Test
+    void otherUsersCannotEditTheEvent() {
+        CalendarEvent stored = storedEvent(UUID.randomUUID());
+        CalendarEvent edit = new CalendarEvent("Hijacked", DAY);
+        edit.setId(stored.getId());
+
+        ResponseEntity<?> response = controller.addEvent(edit, user);
+
+        assertEquals(404, response.getStatusCode().value());
+        assertEquals("Dentist", stored.getTitle());
+        verify(entityManager, never()).merge(any());
+    }
+
+    @Test
+    void eventExistsOnlyForItsOwner() {
+        CalendarEvent own = storedEvent(user.getId());
+        CalendarEvent foreign = storedEvent(UUID.randomUUID());
+
+        assertEquals(Map.of("exists", true), controller.checkEventExists(own.getId(), user).getBody());
+        assertEquals(Map.of("exists", false), controller.checkEventExists(foreign.getId(), user).getBody());
+    }
+}
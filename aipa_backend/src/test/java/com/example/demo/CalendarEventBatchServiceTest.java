@@ -0,0 +1,104 @@
+package com.example.demo;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CalendarEventBatchServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 9, 1);
+
+    private EntityManager entityManager;
+    private TypedQuery<Object[]> query;
+    private CalendarEventBatchService batchService;
+    private final List<Object[]> existingRows = new ArrayList<>();
+    private final User user = new User();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        user.setId(UUID.randomUUID());
+        entityManager = mock(EntityManager.class);
+        query = mock(TypedQuery.class);
+        when(entityManager.createQuery(anyString(), eq(Object[].class))).thenReturn(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.getResultList()).thenReturn(existingRows);
+
+        CalendarEventRepository repository = mock(CalendarEventRepository.class);
+        batchService = new CalendarEventBatchService(new UpcomingEventsCache(repository),
+            new CalendarConflictDetector(repository));
+        ReflectionTestUtils.setField(batchService, "entityManager", entityManager);
+    }
+
+    private List<String> titles(List<CalendarEvent> events) {
+        return events.stream().map(CalendarEvent::getTitle).toList();
+    }
+
+    @Test
+    void repeatsInsideTheBatchAreDuplicates() {
+        CalendarEventBatchService.BatchResult result = batchService.saveNewEvents(user, List.of(
+            new CalendarEvent("Dentist", DAY),
+            new CalendarEvent("Dentist", DAY),
+            new CalendarEvent("Dentist", DAY.plusDays(1))));
+
+        assertEquals(List.of("Dentist", "Dentist"), titles(result.getSavedEvents()));
+        assertEquals(1, result.getDuplicateEvents().size());
+        verify(entityManager, times(2)).persist(any(CalendarEvent.class));
+    }
+
+    @Test
+    void eventsMatchingStoredRowsAreDuplicates() {
+        existingRows.add(new Object[] {"Dentist", DAY});
+        existingRows.add(new Object[] {"Gym", DAY.plusDays(1)});
+
+        CalendarEventBatchService.BatchResult result = batchService.saveNewEvents(user, List.of(
+            new CalendarEvent("Dentist", DAY),
+            new CalendarEvent("Gym", DAY)));
+
+        assertEquals(List.of("Gym"), titles(result.getSavedEvents()));
+        assertEquals(List.of("Dentist"), titles(result.getDuplicateEvents()));
+        assertSame(user, result.getSavedEvents().get(0).getUser());
+    }
+
+    @Test
+    void eventsWithoutTitleOrStartAreInvalidNotDuplicates() {
+        CalendarEventBatchService.BatchResult result = batchService.saveNewEvents(user, List.of(
+            new CalendarEvent(null, DAY),
+            new CalendarEvent("Dentist", null)));
+
+        assertTrue(result.getSavedEvents().isEmpty());
+        assertTrue(result.getDuplicateEvents().isEmpty());
+        assertEquals(2, result.getInvalidEvents().size());
+        verify(entityManager, never()).createQuery(anyString(), eq(Object[].class));
+        verify(entityManager, never()).persist(any());
+    }
+
+    @Test
+    void largeBatchesAreLookedUpInChunks() {
+        List<CalendarEvent> events = new ArrayList<>();
+        for (int i = 0; i < CalendarEventBatchService.LOOKUP_CHUNK_SIZE * 2 + 1; i++) {
+            events.add(new CalendarEvent("Event " + i, DAY.plusDays(i)));
+        }
+
+        batchService.saveNewEvents(user, events);
+
+        ArgumentCaptor<Object> titles = ArgumentCaptor.forClass(Object.class);
+        verify(query, times(3)).setParameter(eq("titles"), titles.capture());
+        for (Object chunk : titles.getAllValues()) {
+            assertTrue(((Collection<?>) chunk).size() <= CalendarEventBatchService.LOOKUP_CHUNK_SIZE);
+        }
+        verify(query, times(3)).setParameter(eq("starts"), any());
+    }
+}
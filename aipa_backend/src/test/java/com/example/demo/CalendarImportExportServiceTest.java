@@ -0,0 +1,205 @@
+package com.example.demo;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CalendarImportExportServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 9, 1);
+
+    private CalendarEventBatchService batchService;
+    private EntityManager entityManager;
+    private CalendarImportExportService service;
+    private final Set<String> knownKeys = new HashSet<>();
+    private final List<CalendarEvent> imported = new ArrayList<>();
+    private final User user = new User();
+
+    @BeforeEach
+    void setUp() {
+        user.setId(UUID.randomUUID());
+        batchService = mock(CalendarEventBatchService.class);
+        entityManager = mock(EntityManager.class);
+        when(batchService.loadAllKeys(user)).thenReturn(knownKeys);
+        when(batchService.saveImportedChunk(eq(user), anyList(), anySet())).thenAnswer(invocation -> {
+            List<CalendarEvent> chunk = new ArrayList<>(invocation.getArgument(1));
+            imported.addAll(chunk);
+            return new CalendarEventBatchService.BatchResult(chunk, List.of(), List.of(), List.of());
+        });
+
+        service = new CalendarImportExportService(batchService);
+        ReflectionTestUtils.setField(service, "entityManager", entityManager);
+        ReflectionTestUtils.setField(service, "chunkSize", 2);
+    }
+
+    private CalendarImportExportService.ImportResult importText(String text,
+                                                                CalendarImportExportService.CalendarFileFormat format)
+            throws Exception {
+        return service.importEvents(user, new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), format);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] export(List<CalendarEvent> events, CalendarImportExportService.CalendarFileFormat format)
+            throws Exception {
+        TypedQuery<CalendarEvent> query = mock(TypedQuery.class);
+        when(entityManager.createQuery(anyString(), eq(CalendarEvent.class))).thenReturn(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.setHint(anyString(), any())).thenReturn(query);
+        when(query.getResultStream()).thenReturn(events.stream());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        service.exportEvents(user, format, output);
+        return output.toByteArray();
+    }
+
+    @Test
+    void icsContinuationLinesAreUnfoldedAndTextUnescaped() throws Exception {
+        String ics = String.join("\r\n",
+            "BEGIN:VCALENDAR",
+            "BEGIN:VEVENT",
+            "SUMMARY:Quarterly plan",
+            " ning review",
+            "DESCRIPTION:Bring notes\\, slides\\; and\\nthe C:\\\\ drive",
+            "\t backup",
+            "DTSTART;VALUE=DATE:20250901",
+            "END:VEVENT",
+            "END:VCALENDAR",
+            "");
+
+        CalendarImportExportService.ImportResult result = importText(ics, CalendarImportExportService.CalendarFileFormat.ICS);
+
+        assertEquals(1, result.getImported());
+        CalendarEvent event = imported.get(0);
+        assertEquals("Quarterly planning review", event.getTitle());
+        assertEquals("Bring notes, slides; and\nthe C:\\ drive backup", event.getDescription());
+        assertEquals(DAY, event.getStart());
+    }
+
+    @Test
+    void icsDtstartDateIsAllDayAndDateTimeIsNot() throws Exception {
+        String ics = String.join("\n",
+            "BEGIN:VEVENT", "SUMMARY:Holiday", "DTSTART;VALUE=DATE:20250901", "END:VEVENT",
+            "BEGIN:VEVENT", "SUMMARY:Standup", "DTSTART;TZID=Europe/Berlin:20250902T090000", "END:VEVENT",
+            "BEGIN:VEVENT", "SUMMARY:Call", "DTSTART:20250903T140000Z", "END:VEVENT",
+            "BEGIN:VEVENT", "SUMMARY:Broken", "DTSTART:2025-9", "END:VEVENT");
+
+        CalendarImportExportService.ImportResult result = importText(ics, CalendarImportExportService.CalendarFileFormat.ICS);
+
+        assertEquals(3, result.getImported());
+        assertEquals(1, result.getRejected());
+        assertEquals(List.of(DAY, DAY.plusDays(1), DAY.plusDays(2)), imported.stream().map(CalendarEvent::getStart).toList());
+        assertEquals(List.of(true, false, false), imported.stream().map(CalendarEvent::getAllDay).toList());
+        assertTrue(result.getErrors().get(0).contains("DTSTART"), result.getErrors().toString());
+    }
+
+    @Test
+    void ndjsonLinesWithoutTitleOrValidJsonAreRejected() throws Exception {
+        String ndjson = String.join("\n",
+            "{\"title\":\"Dentist\",\"start\":\"2025-09-01T10:00:00\",\"allDay\":false}",
+            "",
+            "{\"start\":\"2025-09-02\"}",
+            "not json",
+            "{\"title\":\"Gym\",\"start\":\"2025-09-03\"}");
+
+        CalendarImportExportService.ImportResult result = importText(ndjson, CalendarImportExportService.CalendarFileFormat.NDJSON);
+
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getRejected());
+        assertEquals(List.of("Dentist", "Gym"), imported.stream().map(CalendarEvent::getTitle).toList());
+        assertEquals(DAY, imported.get(0).getStart());
+        assertFalse(imported.get(0).getAllDay());
+        assertTrue(imported.get(1).getAllDay());
+    }
+
+    @Test
+    void failedChunkIsCountedAndItsKeysReleased() throws Exception {
+        knownKeys.add(CalendarEventBatchService.dedupKey("Existing", DAY));
+        when(batchService.saveImportedChunk(eq(user), anyList(), anySet()))
+            .thenAnswer(invocation -> {
+                List<CalendarEvent> chunk = invocation.getArgument(1);
+                Set<String> keys = invocation.getArgument(2);
+                chunk.forEach(e -> keys.add(CalendarEventBatchService.dedupKey(e.getTitle(), e.getStart())));
+                throw new IllegalStateException("database is locked");
+            })
+            .thenAnswer(invocation -> new CalendarEventBatchService.BatchResult(
+                new ArrayList<>(invocation.getArgument(1)), List.of(), List.of(), List.of()));
+
+        String ndjson = String.join("\n",
+            "{\"title\":\"A\",\"start\":\"2025-09-01\"}",
+            "{\"title\":\"B\",\"start\":\"2025-09-01\"}",
+            "{\"title\":\"C\",\"start\":\"2025-09-01\"}");
+
+        CalendarImportExportService.ImportResult result = importText(ndjson, CalendarImportExportService.CalendarFileFormat.NDJSON);
+
+        assertEquals(2, result.getFailed());
+        assertEquals(1, result.getImported());
+        assertTrue(result.getErrors().get(0).contains("database is locked"));
+        assertEquals(Set.of(CalendarEventBatchService.dedupKey("Existing", DAY)), knownKeys);
+    }
+
+    @Test
+    void icsExportFoldsByOctetsAndRoundTrips() throws Exception {
+        CalendarEvent event = new CalendarEvent("Geburtstag von Jürgen 🎂 ".repeat(6).trim(), DAY);
+        event.setId(UUID.randomUUID());
+        event.setDescription("Gifts; cake, candles\nand a card with \\ backslash " + "日本語のテキスト".repeat(8));
+        event.setPlanTitle("Party, planning");
+
+        byte[] ics = export(List.of(event), CalendarImportExportService.CalendarFileFormat.ICS);
+
+        int lineStart = 0;
+        for (int i = 0; i + 1 < ics.length; i++) {
+            if (ics[i] == '\r' && ics[i + 1] == '\n') {
+                byte[] line = Arrays.copyOfRange(ics, lineStart, i);
+                assertTrue(line.length <= 75, "line of " + line.length + " octets");
+                assertDoesNotThrow(() -> strictUtf8(line), "fold split a UTF-8 sequence");
+                lineStart = i + 2;
+            }
+        }
+        assertEquals(ics.length, lineStart, "every line ends with CRLF");
+
+        CalendarImportExportService.ImportResult result =
+            service.importEvents(user, new ByteArrayInputStream(ics), CalendarImportExportService.CalendarFileFormat.ICS);
+
+        assertEquals(1, result.getImported());
+        CalendarEvent parsed = imported.get(0);
+        assertEquals(event.getTitle(), parsed.getTitle());
+        assertEquals(event.getDescription(), parsed.getDescription());
+        assertEquals(event.getPlanTitle(), parsed.getPlanTitle());
+        assertEquals(DAY, parsed.getStart());
+    }
+
+    @Test
+    void ndjsonExportRoundTrips() throws Exception {
+        CalendarEvent event = new CalendarEvent("Dentist \"checkup\"", DAY);
+        event.setDescription("Line one\nline two");
+        event.setAllDay(false);
+        event.setEventColor("#ff0000");
+
+        byte[] ndjson = export(List.of(event), CalendarImportExportService.CalendarFileFormat.NDJSON);
+        service.importEvents(user, new ByteArrayInputStream(ndjson), CalendarImportExportService.CalendarFileFormat.NDJSON);
+
+        CalendarEvent parsed = imported.get(0);
+        assertEquals(event.getTitle(), parsed.getTitle());
+        assertEquals(event.getDescription(), parsed.getDescription());
+        assertEquals(DAY, parsed.getStart());
+        assertFalse(parsed.getAllDay());
+        assertEquals("#ff0000", parsed.getEventColor());
+    }
+
+    private static String strictUtf8(byte[] bytes) throws CharacterCodingException {
+        return StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes)).toString();
+    }
+}
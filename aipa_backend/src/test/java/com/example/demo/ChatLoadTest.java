@@ -0,0 +1,272 @@
+package com.example.demo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test for {@code /api/generate} that needs no network: the whole app runs against a
+ * fresh SQLite file and {@link StubGeminiServer}, which answers each kind of Gemini call the
+ * pipeline makes with a reply in the shape it expects.
+ *
+ * {@link LoadTestData} creates the users and their memories, then the driver sends
+ * {@link TestPromptDatabase} prompts round-robin across the users at a fixed rate for a fixed
+ * time. The rate does not slow down when replies do, and latency is measured from when each
+ * request was due, so a backlog shows up in the percentiles instead of being hidden. The
+ * report has p50/p95/p99 latency, throughput, the error rate (failed requests and error
+ * replies), 429s from the chat scheduler counted separately, and waits for the SQLite write
+ * lock. It is printed and written to {@code target/load-test-report.json}.
+ *
+ * Opt-in, with these defaults:
+ * {@code mvn test -Dtest=ChatLoadTest -Dbenchmark=true -Dload.users=20 -Dload.qps=5
+ * -Dload.duration-seconds=30 -Dload.memories-per-user=20 -Dload.latency=lognormal:800:4000
+ * -Dload.error-rate=0}. The latency is {@code fixed:<ms>}, {@code uniform:<min>:<max>} or
+ * {@code lognormal:<median>:<p99>}. Set {@code -Dload.max-error-rate=0.01} to fail the run
+ * above that error rate.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "spring.datasource.driver-class-name=org.sqlite.JDBC",
+    "spring.jpa.database-platform=org.hibernate.community.dialect.SQLiteDialect",
+    "spring.jpa.hibernate.ddl-auto=update",
+    "gemini.api.key=load-test-key",
+    "app.encryption.key=load-test-encryption-key"
+})
+@ActiveProfiles("sqlite")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ChatLoadTest {
+
+    private static final int USERS = Integer.getInteger("load.users", 20);
+    private static final double QPS = Double.parseDouble(System.getProperty("load.qps", "5"));
+    private static final int DURATION_SECONDS = Integer.getInteger("load.duration-seconds", 30);
+    private static final int MEMORIES_PER_USER = Integer.getInteger("load.memories-per-user", 20);
+    private static final String LATENCY = System.getProperty("load.latency", "lognormal:800:4000");
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("load.error-rate", "0"));
+    private static final String MAX_ERROR_RATE = System.getProperty("load.max-error-rate");
+
+    private static StubGeminiServer stub;
+    private static Path dir;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MemoryService memoryService;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private LockWaitMetrics lockWaitMetrics;
+
+    @Autowired
+    private ChatScheduler chatScheduler;
+
+    @Autowired
+    private GeminiCallGuard callGuard;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) throws IOException {
+        dir = Files.createTempDirectory("chat-load-test");
+        stub = new StubGeminiServer();
+        stub.latencyMillis = StubGeminiServer.latency(LATENCY);
+        stub.errorRate = ERROR_RATE;
+        stub.responder = ChatLoadTest::reply;
+        registry.add("gemini.base-url", stub::baseUrl);
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + dir.resolve("load-test.db"));
+        registry.add("app.journal.dir", () -> dir.resolve("journal").toString());
+    }
+
+    @AfterAll
+    static void stopStub() {
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    /** A reply in the shape each of the pipeline's prompts asks for. */
+    private static String reply(String prompt) {
+        int hash = Math.abs(prompt.hashCode() % 1000);
+        if (prompt.contains("ACTIONABLE CRITERIA")) {
+            return hash % 2 == 0 ? "The input asks for something concrete.\n).* YES" : "Small talk.\n).* NO";
+        }
+        if (prompt.endsWith("JSON:")) {
+            String memory = hash % 3 == 0 ? "Enjoys long walks on weekends" : "None";
+            return "{\"categoryMatch\":\"Personal\",\"newCategorySuggestion\":\"None\",\"memoryToStore\":\""
+                + memory + "\",\"confidence\":\"high\",\"memoryType\":\"Personal\"}";
+        }
+        if (prompt.contains("USER INPUT:") && prompt.contains("daysFromToday")) {
+            return hash % 4 == 0 ? "[]" : "[{\"title\":\"Load Test Event\",\"daysFromToday\":" + hash % 14 + "}]";
+        }
+        return ")*!\nThinking it through.\n)*!\nHere is what I would do next.\n)*!\nNothing else to add.\n)*!";
+    }
+
+    @Test
+    void generateAtTargetRate() throws Exception {
+        LoadTestData data = new LoadTestData(42);
+        List<LoadTestData.LoadUser> users = data.createUsers(userRepository, memoryService, jwtUtil, USERS, MEMORIES_PER_USER);
+        List<String> prompts = data.prompts();
+
+        long lockAcquisitionsBefore = lockWaitMetrics.getAcquisitions();
+        double lockWaitMillisBefore = lockWaitMetrics.getMeanWaitMillis() * lockAcquisitionsBefore;
+        long lockTimeoutsBefore = lockWaitMetrics.getTimeouts();
+        long geminiCallsBefore = stub.generateCalls.get();
+
+        ExecutorService clientThreads = Executors.newCachedThreadPool();
+        HttpClient client = HttpClient.newBuilder()
+            .executor(clientThreads)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+        int total = (int) Math.round(QPS * DURATION_SECONDS);
+        long intervalNanos = (long) (1_000_000_000L / QPS);
+        List<CompletableFuture<Outcome>> pending = new ArrayList<>(total);
+
+        long started = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long due = started + i * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            int userIndex = i % users.size();
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/generate"))
+                .timeout(Duration.ofMinutes(2))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + users.get(userIndex).token)
+                .POST(HttpRequest.BodyPublishers.ofString(new ObjectMapper().writeValueAsString(Map.of(
+                    "prompt", prompts.get(i % prompts.size()),
+                    "sessionId", "load-session-" + userIndex))))
+                .build();
+            pending.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .handle((response, error) -> new Outcome(due, System.nanoTime(),
+                    response == null ? -1 : response.statusCode(),
+                    response != null && response.body().startsWith("{\"error\""))));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.MINUTES);
+        clientThreads.shutdown();
+
+        List<Outcome> outcomes = new ArrayList<>(total);
+        for (CompletableFuture<Outcome> outcome : pending) {
+            outcomes.add(outcome.get());
+        }
+        long lockAcquisitions = lockWaitMetrics.getAcquisitions() - lockAcquisitionsBefore;
+        double lockWaitMillis = lockWaitMetrics.getMeanWaitMillis() * lockWaitMetrics.getAcquisitions() - lockWaitMillisBefore;
+
+        Map<String, Object> report = report(outcomes, started);
+        Map<String, Object> lockWait = new LinkedHashMap<>();
+        lockWait.put("acquisitions", lockAcquisitions);
+        lockWait.put("meanWaitMs", lockAcquisitions == 0 ? 0 : lockWaitMillis / lockAcquisitions);
+        lockWait.put("maxWaitMs", lockWaitMetrics.getMaxWaitMillis());
+        lockWait.put("timeouts", lockWaitMetrics.getTimeouts() - lockTimeoutsBefore);
+        report.put("dbWriteLock", lockWait);
+        report.put("geminiCalls", stub.generateCalls.get() - geminiCallsBefore);
+        report.put("geminiFailuresInjected", stub.failedCalls.get());
+        report.put("chatScheduler", chatScheduler.snapshot());
+        report.put("gemini", callGuard.snapshot());
+
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("users", USERS);
+        config.put("qps", QPS);
+        config.put("durationSeconds", DURATION_SECONDS);
+        config.put("memoriesPerUser", MEMORIES_PER_USER);
+        config.put("latency", LATENCY);
+        config.put("errorRate", ERROR_RATE);
+        report.put("config", config);
+
+        print(report, lockWait);
+        Path file = Path.of("target", "load-test-report.json");
+        Files.createDirectories(file.getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+
+        if (MAX_ERROR_RATE != null) {
+            double errorRate = (double) report.get("errorRate");
+            assertTrue(errorRate <= Double.parseDouble(MAX_ERROR_RATE),
+                "Error rate " + errorRate + " above load.max-error-rate " + MAX_ERROR_RATE);
+        }
+    }
+
+    private static Map<String, Object> report(List<Outcome> outcomes, long started) {
+        List<Long> latencies = new ArrayList<>();
+        int errors = 0;
+        int rejected = 0;
+        long lastCompleted = started;
+        for (Outcome outcome : outcomes) {
+            lastCompleted = Math.max(lastCompleted, outcome.completedNanos);
+            if (outcome.status == 429) {
+                rejected++;
+            } else if (outcome.status != 200 || outcome.errorReply) {
+                errors++;
+            } else {
+                latencies.add(outcome.completedNanos - outcome.dueNanos);
+            }
+        }
+        double seconds = (lastCompleted - started) / 1e9;
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("requests", outcomes.size());
+        report.put("succeeded", latencies.size());
+        report.put("throughputPerSecond", seconds == 0 ? 0 : latencies.size() / seconds);
+        report.put("p50Ms", percentile(latencies, 50));
+        report.put("p95Ms", percentile(latencies, 95));
+        report.put("p99Ms", percentile(latencies, 99));
+        report.put("maxMs", percentile(latencies, 100));
+        report.put("errors", errors);
+        report.put("errorRate", outcomes.isEmpty() ? 0.0 : (double) errors / outcomes.size());
+        report.put("rejected429", rejected);
+        return report;
+    }
+
+    private static void print(Map<String, Object> report, Map<String, Object> lockWait) {
+        System.out.println("requests  ok     req/s   p50       p95       p99       errors  429s   lock waits  lock mean  lock max");
+        System.out.printf("%-9d %-6d %6.1f %7.0fms %7.0fms %7.0fms %6.2f%% %5d %11d %8.1fms %7dms%n",
+            report.get("requests"), report.get("succeeded"), report.get("throughputPerSecond"),
+            report.get("p50Ms"), report.get("p95Ms"), report.get("p99Ms"),
+            (double) report.get("errorRate") * 100, report.get("rejected429"),
+            lockWait.get("acquisitions"), lockWait.get("meanWaitMs"), lockWait.get("maxWaitMs"));
+    }
+
+    private static double percentile(List<Long> nanos, int percentile) {
+        if (nanos.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(nanos);
+        int index = (int) Math.ceil(percentile / 100.0 * nanos.size()) - 1;
+        return nanos.get(Math.max(0, index)) / 1_000_000.0;
+    }
+
+    private static final class Outcome {
+        final long dueNanos;
+        final long completedNanos;
+        final int status;
+        final boolean errorReply;
+
+        Outcome(long dueNanos, long completedNanos, int status, boolean errorReply) {
+            this.dueNanos = dueNanos;
+            this.completedNanos = completedNanos;
+            this.status = status;
+            this.errorReply = errorReply;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.demo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ObservationRegistry observationRegistry = ObservationRegistry.create();
+    private final List<Observation.Context> finished = new CopyOnWriteArrayList<>();
+    private final ChatMetrics metrics = new ChatMetrics(registry, observationRegistry);
+
+    ChatMetricsTest() {
+        observationRegistry.observationConfig()
+            .observationHandler(new DefaultMeterObservationHandler(registry))
+            .observationHandler(new ObservationHandler<>() {
+                @Override
+                public void onStop(Observation.Context context) {
+                    finished.add(context);
+                }
+
+                @Override
+                public boolean supportsContext(Observation.Context context) {
+                    return true;
+                }
+            });
+    }
+
+    @Test
+    void stagesAreTimedEvenWhenTheyThrow() {
+        assertEquals("ok", metrics.timeStage("routing", () -> "ok"));
+        assertThrows(IllegalStateException.class, () -> metrics.timeStage("session", () -> {
+            throw new IllegalStateException("database is locked");
+        }));
+
+        assertEquals(1, registry.get("aipa.chat.stage").tag("stage", "routing").timer().count());
+        assertEquals(1, registry.get("aipa.chat.stage").tag("stage", "session").timer().count());
+    }
+
+    @Test
+    void llmCallsAreTaggedWithTheirOutcome() {
+        metrics.timeLlmCall("analysis", "gemini-2.0-flash", 100, Mono.just("reply")).block();
+        assertThrows(WebClientResponseException.class, () -> metrics.timeLlmCall("analysis", "gemini-2.0-flash", 100,
+            Mono.error(WebClientResponseException.create(429, "Too Many Requests", null, null, null))).block());
+
+        assertEquals(1, registry.get("aipa.llm.requests").tags("call", "analysis", "outcome", "success").timer().count());
+        assertEquals(1, registry.get("aipa.llm.requests").tags("call", "analysis", "outcome", "rate_limited").timer().count());
+    }
+
+    @Test
+    void tokenCountsComeFromUsageMetadata() throws Exception {
+        metrics.timeLlmCall("response", "gemini-2.0-flash", 900, Mono.just(new ObjectMapper().readTree(
+            "{\"usageMetadata\":{\"promptTokenCount\":120,\"candidatesTokenCount\":40,\"totalTokenCount\":160}}"))).block();
+        metrics.timeLlmCall("response", "gemini-2.0-flash", 900,
+            Mono.just(new ObjectMapper().readTree("{\"candidates\":[]}"))).block();
+
+        assertEquals(120, registry.get("aipa.llm.tokens").tags("call", "response", "type", "prompt").summary().totalAmount());
+        assertEquals(40, registry.get("aipa.llm.tokens").tags("call", "response", "type", "candidates").summary().totalAmount());
+        assertEquals(1, registry.get("aipa.llm.tokens").tags("type", "prompt").summary().count());
+    }
+
+    @Test
+    void geminiCallsStreamedLaterAreChildrenOfTheRequest() throws Exception {
+        JsonNode usage = new ObjectMapper().readTree("{\"usageMetadata\":{\"promptTokenCount\":7}}");
+        Observation request = Observation.start("http.server.requests", observationRegistry);
+        Flux<String> reply = request.scoped(() -> metrics.timeRequest(System.nanoTime(), Flux.just("prompt")
+            .publishOn(Schedulers.boundedElastic()) // the second Gemini call starts on another thread
+            .flatMap(prompt -> metrics.timeLlmCall("response", "gemini-2.0-flash", prompt.length(),
+                Mono.just(usage))
+                .map(response -> "answer"))));
+        assertEquals("answer", reply.blockLast());
+        request.stop();
+
+        Observation.Context gemini = finished.stream()
+            .filter(context -> "gemini response".equals(context.getContextualName()))
+            .findFirst().orElseThrow();
+        assertSame(request.getContext(), gemini.getParentObservation().getContextView());
+        assertEquals("6", gemini.getHighCardinalityKeyValue("prompt.chars").getValue());
+        assertEquals("7", gemini.getHighCardinalityKeyValue("tokens.prompt").getValue());
+        assertEquals("success", gemini.getLowCardinalityKeyValue("outcome").getValue());
+    }
+}
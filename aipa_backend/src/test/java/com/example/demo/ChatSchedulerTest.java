@@ -0,0 +1,111 @@
+package com.example.demo;
+
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatSchedulerTest {
+
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+    private final List<String> started = new CopyOnWriteArrayList<>();
+    private final Map<String, Sinks.Many<String>> replies = new ConcurrentHashMap<>();
+
+    private ChatScheduler scheduler(int maxConcurrent, int perUserConcurrent, int perUserQueue) {
+        return new ChatScheduler(ObservationRegistry.NOOP, Schedulers.boundedElastic(), maxConcurrent, perUserConcurrent, perUserQueue, 30_000, "");
+    }
+
+    /** Schedules a reply that stays open until {@link #finish} is called for it. */
+    private Disposable chat(ChatScheduler scheduler, UUID userId, String name) {
+        return scheduler.schedule(userId, () -> {
+            started.add(name);
+            Sinks.Many<String> reply = Sinks.many().unicast().onBackpressureBuffer();
+            replies.put(name, reply);
+            return reply.asFlux();
+        }).subscribe();
+    }
+
+    private void finish(String name) {
+        replies.get(name).tryEmitComplete();
+    }
+
+    @Test
+    void userOverTheirLimitWaitsAndIsRejectedOnceTheirQueueIsFull() throws Exception {
+        ChatScheduler scheduler = scheduler(8, 1, 1);
+        chat(scheduler, alice, "a1");
+        chat(scheduler, alice, "a2");
+
+        ChatScheduler.QueueFullException rejected = assertThrows(ChatScheduler.QueueFullException.class,
+            () -> scheduler.schedule(alice, Flux::empty));
+        assertTrue(rejected.getRetryAfterSeconds() >= 1);
+
+        chat(scheduler, bob, "b1");
+        assertEquals(List.of("a1", "b1"), started);
+        assertEquals(1, scheduler.getQueuedCount());
+
+        finish("a1");
+        await(() -> started.contains("a2"));
+        assertEquals(1, scheduler.getRejectedCount());
+        assertEquals(2, scheduler.getInFlightCount());
+    }
+
+    @Test
+    void waitingUsersTakeTurnsWhateverTheirBacklog() throws Exception {
+        ChatScheduler scheduler = scheduler(1, 1, 10);
+        chat(scheduler, alice, "a0");
+        chat(scheduler, alice, "a1");
+        chat(scheduler, alice, "a2");
+        chat(scheduler, alice, "a3");
+        chat(scheduler, bob, "b1");
+
+        for (String next : List.of("a0", "a1", "b1", "a2")) {
+            await(() -> replies.containsKey(next));
+            finish(next);
+        }
+        await(() -> started.size() == 5);
+
+        assertEquals(List.of("a0", "a1", "b1", "a2", "a3"), started);
+    }
+
+    @Test
+    void cancelledWaiterGivesUpItsPlace() throws Exception {
+        ChatScheduler scheduler = scheduler(1, 1, 10);
+        chat(scheduler, alice, "a1");
+        Disposable waiting = chat(scheduler, bob, "b1");
+        assertEquals(1, scheduler.getQueuedCount());
+
+        waiting.dispose();
+        finish("a1");
+
+        await(() -> scheduler.getInFlightCount() == 0);
+        assertEquals(0, scheduler.getQueuedCount());
+        assertEquals(0, scheduler.getActiveUserCount());
+        assertEquals(List.of("a1"), started);
+    }
+
+    @Test
+    void weightsAreReadPerUser() {
+        assertEquals(Map.of(alice.toString(), 2.0, bob.toString(), 0.5),
+            ChatScheduler.parseWeights(alice + "=2, " + bob + "=0.5"));
+        assertTrue(ChatScheduler.parseWeights("").isEmpty());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
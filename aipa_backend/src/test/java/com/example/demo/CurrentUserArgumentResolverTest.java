@@ -0,0 +1,76 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CurrentUserArgumentResolverTest {
+
+    private UserRepository userRepository;
+    private UserCache userCache;
+    private CurrentUserArgumentResolver resolver;
+    private final User alice = new User("alice@example.com", "hash");
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findByEmail("alice@example.com")).thenReturn(alice);
+        userCache = new UserCache(userRepository);
+        ReflectionTestUtils.setField(userCache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(userCache, "maxEntries", 10);
+        resolver = new CurrentUserArgumentResolver(userCache);
+    }
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private void authenticateAs(String email) {
+        SecurityContextHolder.getContext().setAuthentication(
+            new UsernamePasswordAuthenticationToken(email, null, AuthorityUtils.createAuthorityList("USER")));
+    }
+
+    private Object resolve(ServletWebRequest request) {
+        return resolver.resolveArgument(null, null, request, null);
+    }
+
+    @Test
+    void userIsLoadedOnceAcrossRequests() {
+        authenticateAs("alice@example.com");
+        ServletWebRequest first = new ServletWebRequest(new MockHttpServletRequest());
+
+        assertSame(alice, resolve(first));
+        assertSame(alice, resolve(first));
+        assertSame(alice, resolve(new ServletWebRequest(new MockHttpServletRequest())));
+
+        verify(userRepository, times(1)).findByEmail("alice@example.com");
+    }
+
+    @Test
+    void unauthenticatedRequestsResolveToNull() {
+        assertNull(resolve(new ServletWebRequest(new MockHttpServletRequest())));
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void savedUsersReplaceTheCachedCopy() {
+        authenticateAs("alice@example.com");
+        resolve(new ServletWebRequest(new MockHttpServletRequest()));
+
+        User updated = new User("alice@example.com", "new-hash");
+        userCache.put(updated);
+
+        assertSame(updated, resolve(new ServletWebRequest(new MockHttpServletRequest())));
+        verify(userRepository, times(1)).findByEmail("alice@example.com");
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.demo;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeminiCallGuardTest {
+
+    private static final String MODEL = "gemini-2.0-flash";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private GeminiCallGuard guard;
+
+    @BeforeEach
+    void setUp() {
+        guard = new GeminiCallGuard(registry);
+        ReflectionTestUtils.setField(guard, "window", 10);
+        ReflectionTestUtils.setField(guard, "minCalls", 4);
+        ReflectionTestUtils.setField(guard, "failureRatePercent", 50);
+        ReflectionTestUtils.setField(guard, "openMillis", 200L);
+        ReflectionTestUtils.setField(guard, "halfOpenProbes", 1);
+        ReflectionTestUtils.setField(guard, "timeoutMillis", 5000L);
+        ReflectionTestUtils.setField(guard, "hedgeEnabled", false);
+        ReflectionTestUtils.setField(guard, "hedgeMinSamples", 5);
+        ReflectionTestUtils.setField(guard, "hedgeMinDelayMillis", 0L);
+    }
+
+    @Test
+    void opensAfterEnoughFailuresAndFailsFastWithoutCalling() {
+        AtomicInteger calls = new AtomicInteger();
+        Mono<String> failing = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.error(new IllegalStateException("503"));
+        });
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> guard.protect(MODEL, "generateContent", failing).block());
+        }
+        assertEquals(GeminiCallGuard.State.OPEN, guard.getState(MODEL, "generateContent"));
+
+        assertThrows(GeminiCallGuard.CircuitOpenException.class, () -> guard.protect(MODEL, "generateContent", failing).block());
+        assertEquals(4, calls.get());
+        assertEquals(1.0, registry.get("aipa.llm.circuit.rejected").functionCounter().count());
+        assertEquals(GeminiCallGuard.State.CLOSED, guard.getState("other-model", "generateContent"));
+    }
+
+    @Test
+    void clientErrorsDoNotOpenTheCircuit() {
+        Mono<String> badRequest = Mono.error(WebClientResponseException.create(
+            HttpStatus.BAD_REQUEST.value(), "Bad Request", null, null, null));
+
+        for (int i = 0; i < 6; i++) {
+            assertThrows(WebClientResponseException.class, () -> guard.protect(MODEL, "generateContent", badRequest).block());
+        }
+        assertEquals(GeminiCallGuard.State.CLOSED, guard.getState(MODEL, "generateContent"));
+    }
+
+    @Test
+    void halfOpenLetsOneProbeThroughAndClosesWhenItSucceeds() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            guard.protect(MODEL, "generateContent", Mono.error(new IllegalStateException("timeout")))
+                .onErrorResume(e -> Mono.empty()).block();
+        }
+        Thread.sleep(250);
+
+        Mono<String> slowProbe = guard.protect(MODEL, "generateContent", Mono.just("ok").delayElement(Duration.ofMillis(100)));
+        var probe = slowProbe.toFuture();
+        assertEquals(GeminiCallGuard.State.HALF_OPEN, guard.getState(MODEL, "generateContent"));
+        assertThrows(GeminiCallGuard.CircuitOpenException.class,
+            () -> guard.protect(MODEL, "generateContent", Mono.just("second")).block());
+
+        assertEquals("ok", probe.get());
+        assertEquals(GeminiCallGuard.State.CLOSED, guard.getState(MODEL, "generateContent"));
+        assertEquals("after", guard.protect(MODEL, "generateContent", Mono.just("after")).block());
+    }
+
+    @Test
+    void slowCallIsHedgedOnceThereIsEnoughHistory() {
+        ReflectionTestUtils.setField(guard, "hedgeEnabled", true);
+        for (int i = 0; i < 5; i++) {
+            guard.hedged("response", () -> Mono.just("warm").delayElement(Duration.ofMillis(20))).block();
+        }
+        assertEquals(0, guard.getHedgesSent());
+
+        AtomicInteger attempts = new AtomicInteger();
+        String reply = guard.hedged("response", () -> attempts.incrementAndGet() == 1
+            ? Mono.just("stuck").delayElement(Duration.ofSeconds(5))
+            : Mono.just("hedge")).block(Duration.ofSeconds(2));
+
+        assertEquals("hedge", reply);
+        assertEquals(1, guard.getHedgesSent());
+        assertEquals(1, guard.getHedgesWon());
+    }
+}
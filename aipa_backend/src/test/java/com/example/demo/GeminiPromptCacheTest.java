@@ -0,0 +1,128 @@
+package com.example.demo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeminiPromptCacheTest {
+
+    private static final String PREFIX = "Extract calendar events. Examples follow.\n".repeat(20);
+
+    private StubGeminiServer stub;
+    private GeminiPromptCache cache;
+    private WebClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubGeminiServer();
+        stub.minCacheTokens = 100;
+        cache = new GeminiPromptCache(WebClient.builder(), stub.baseUrl());
+        ReflectionTestUtils.setField(cache, "geminiApiKey", "test-key");
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "minPrefixChars", 400);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 3600L);
+        ReflectionTestUtils.setField(cache, "retryAfterSeconds", 600L);
+        ReflectionTestUtils.setField(cache, "cacheModel", "gemini-2.0-flash-001");
+        client = WebClient.builder().baseUrl(stub.baseUrl()).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void shortPrefixesAreSentInline() {
+        GeminiPromptCache.Prompt prompt = cache.prompt("gemini-2.0-flash", "Short instructions\n", "USER INPUT: hi");
+
+        assertFalse(prompt.isCached());
+        assertEquals("gemini-2.0-flash", prompt.getModel());
+        assertEquals("Stub reply", text(send(prompt)));
+        assertEquals(0, cache.size());
+        assertEquals(0, stub.cacheCreates.get());
+    }
+
+    @Test
+    void laterCallsSendOnlyTheSuffixOnceThePrefixIsCached() throws Exception {
+        AtomicReference<String> seenByModel = new AtomicReference<>();
+        stub.responder = prompt -> {
+            seenByModel.set(prompt);
+            return "[]";
+        };
+
+        GeminiPromptCache.Prompt first = cache.prompt("gemini-2.0-flash", PREFIX, "USER INPUT: dentist tomorrow");
+        assertFalse(first.isCached());
+        send(first);
+        awaitCreated();
+
+        GeminiPromptCache.Prompt second = cache.prompt("gemini-2.0-flash", PREFIX, "USER INPUT: gym on Friday");
+        JsonNode response = send(second);
+
+        assertTrue(second.isCached());
+        assertEquals("gemini-2.0-flash-001", second.getModel());
+        assertEquals("USER INPUT: gym on Friday".length(), second.getSentLength());
+        assertEquals("USER INPUT: gym on Friday", stub.lastSentText);
+        assertEquals(PREFIX + "USER INPUT: gym on Friday", seenByModel.get());
+        assertEquals(PREFIX.length() / 4, response.path("usageMetadata").path("cachedContentTokenCount").asInt());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void rejectedPrefixIsSentInlineWithoutRetrying() throws Exception {
+        stub.minCacheTokens = 100_000;
+
+        cache.prompt("gemini-2.0-flash", PREFIX, "USER INPUT: one");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.getCreateFailureCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        GeminiPromptCache.Prompt prompt = cache.prompt("gemini-2.0-flash", PREFIX, "USER INPUT: two");
+
+        assertEquals(1, cache.getCreateFailureCount());
+        assertFalse(prompt.isCached());
+        assertEquals("Stub reply", text(send(prompt)));
+    }
+
+    @Test
+    void failedCallDropsTheCacheItUsed() throws Exception {
+        cache.prompt("gemini-2.0-flash", PREFIX, "USER INPUT: one");
+        awaitCreated();
+        GeminiPromptCache.Prompt cached = cache.prompt("gemini-2.0-flash", PREFIX, "USER INPUT: two");
+        stub.expireCaches();
+
+        assertThrows(WebClientResponseException.Forbidden.class, () -> send(cached));
+        cache.failed(cached);
+
+        assertFalse(cache.prompt("gemini-2.0-flash", PREFIX, "USER INPUT: three").isCached());
+        assertEquals(1, cache.getInvalidatedCount());
+    }
+
+    private void awaitCreated() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.getCreatedCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, cache.getCreatedCount());
+    }
+
+    private JsonNode send(GeminiPromptCache.Prompt prompt) {
+        return client.post()
+            .uri("/v1beta/models/" + prompt.getModel() + ":generateContent?key=test-key")
+            .bodyValue(prompt.request(Map.of("generationConfig", Map.of("temperature", 0.0))))
+            .retrieve()
+            .bodyToMono(JsonNode.class)
+            .block();
+    }
+
+    private static String text(JsonNode response) {
+        return response.path("candidates").get(0).path("content").path("parts").get(0).path("text").asText();
+    }
+}
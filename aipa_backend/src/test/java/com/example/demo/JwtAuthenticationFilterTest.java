@@ -0,0 +1,89 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class JwtAuthenticationFilterTest {
+
+    private final JwtUtil jwtUtil = new JwtUtil();
+    private UserDetailsService userDetailsService;
+    private UserDetails user;
+
+    @BeforeEach
+    void setUp() {
+        user = User.withUsername("alice@example.com").password("hash").authorities("USER").build();
+        userDetailsService = mock(UserDetailsService.class);
+        when(userDetailsService.loadUserByUsername("alice@example.com")).thenReturn(user);
+    }
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private String authenticate(JwtAuthenticationFilter filter, String token) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? null : ((UserDetails) authentication.getPrincipal()).getUsername();
+    }
+
+    @Test
+    void repeatedTokenSkipsVerificationAndUserLookup() throws Exception {
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter(jwtUtil, userDetailsService, 60_000, 100);
+        String token = jwtUtil.generateToken(user);
+
+        assertEquals("alice@example.com", authenticate(filter, token));
+        assertEquals("alice@example.com", authenticate(filter, token));
+
+        verify(userDetailsService, times(1)).loadUserByUsername("alice@example.com");
+        assertEquals(1, filter.getCachedPrincipalCount());
+    }
+
+    @Test
+    void invalidTokensAreRejectedAndNotCached() throws Exception {
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter(jwtUtil, userDetailsService, 60_000, 100);
+        String token = jwtUtil.generateToken(user);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+        assertNull(authenticate(filter, tampered));
+        assertNull(authenticate(filter, "not-a-jwt"));
+
+        verifyNoInteractions(userDetailsService);
+        assertEquals(0, filter.getCachedPrincipalCount());
+    }
+
+    @Test
+    void expiredEntriesAreVerifiedAgain() throws Exception {
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter(jwtUtil, userDetailsService, 0, 100);
+        String token = jwtUtil.generateToken(user);
+
+        authenticate(filter, token);
+        authenticate(filter, token);
+
+        verify(userDetailsService, times(2)).loadUserByUsername("alice@example.com");
+    }
+
+    @Test
+    void fullCacheStillAuthenticates() throws Exception {
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter(jwtUtil, userDetailsService, 60_000, 1);
+        authenticate(filter, jwtUtil.generateToken(Map.of("device", "laptop"), user));
+
+        assertEquals("alice@example.com", authenticate(filter, jwtUtil.generateToken(Map.of("device", "phone"), user)));
+        assertEquals(1, filter.getCachedPrincipalCount());
+    }
+}
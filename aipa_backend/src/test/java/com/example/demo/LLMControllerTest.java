@@ -0,0 +1,81 @@
+package com.example.demo;
+
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class LLMControllerTest {
+
+    private static final String MODEL = "gemini-2.0-flash";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private StubGeminiServer stub;
+    private GeminiCallGuard callGuard;
+    private LLMController controller;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubGeminiServer();
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(registry));
+
+        callGuard = new GeminiCallGuard(registry);
+        ReflectionTestUtils.setField(callGuard, "window", 10);
+        ReflectionTestUtils.setField(callGuard, "minCalls", 4);
+        ReflectionTestUtils.setField(callGuard, "failureRatePercent", 50);
+        ReflectionTestUtils.setField(callGuard, "openMillis", 60_000L);
+        ReflectionTestUtils.setField(callGuard, "halfOpenProbes", 1);
+        ReflectionTestUtils.setField(callGuard, "timeoutMillis", 5000L);
+
+        controller = new LLMController(WebClient.builder(), mock(MemoryService.class), mock(PlanAnalysisService.class),
+            mock(CalendarEventEnhancementService.class), mock(CalendarResponseValidationService.class),
+            mock(SessionMemoryService.class), mock(InputRoutingService.class), mock(CalendarEventCreationService.class),
+            mock(MemoryExtractionPipeline.class), new ChatMetrics(registry, observationRegistry), mock(ResponseJournal.class),
+            mock(PromptTemplateRegistry.class), new GeminiPromptCache(WebClient.builder(), stub.baseUrl()),
+            mock(ChatScheduler.class), callGuard, stub.baseUrl());
+        ReflectionTestUtils.setField(controller, "geminiApiKey", "test-key");
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    private WebClientResponseException failedCall() {
+        GeminiPromptCache.Prompt prompt = GeminiPromptCache.Prompt.inline(MODEL, "Instructions\n", "USER INPUT: hi");
+        return assertThrows(WebClientResponseException.class, () -> controller.generate("analysis", prompt).block());
+    }
+
+    @Test
+    void rejectedRequestsDoNotOpenTheCircuit() {
+        stub.errorStatus = 400;
+
+        for (int i = 0; i < 6; i++) {
+            WebClientResponseException error = failedCall();
+            assertEquals(400, error.getStatusCode().value());
+            assertTrue(error.getResponseBodyAsString().contains("INVALID_ARGUMENT"));
+        }
+        assertEquals(6, stub.failedCalls.get());
+        assertEquals(GeminiCallGuard.State.CLOSED, callGuard.getState(MODEL, "generateContent"));
+    }
+
+    @Test
+    void rateLimitsOpenTheCircuitAndAreTaggedAsSuch() {
+        stub.errorStatus = 429;
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(429, failedCall().getStatusCode().value());
+        }
+        assertEquals(GeminiCallGuard.State.OPEN, callGuard.getState(MODEL, "generateContent"));
+        assertEquals(4, registry.get("aipa.llm.requests").tags("call", "analysis", "outcome", "rate_limited").timer().count());
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class LlmJobQueueTest {
+
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+    private final Map<UUID, LlmJob> table = Collections.synchronizedMap(new LinkedHashMap<>());
+    private LlmJobRepository repository;
+    private LlmJobQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(LlmJobRepository.class);
+        when(repository.save(any())).thenAnswer(invocation -> {
+            LlmJob job = invocation.getArgument(0);
+            if (job.getId() == null) {
+                job.setId(UUID.randomUUID());
+            }
+            table.put(job.getId(), job);
+            return job;
+        });
+        doAnswer(invocation -> table.remove(invocation.<UUID>getArgument(0))).when(repository).deleteById(any());
+        when(repository.countByStatus(anyString())).thenAnswer(invocation -> (long) rows(invocation.getArgument(0)).size());
+        when(repository.findByStatusOrderByCreatedAtAsc(anyString(), any()))
+            .thenAnswer(invocation -> rows(invocation.getArgument(0)));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (queue != null) {
+            queue.stop();
+        }
+    }
+
+    private List<LlmJob> rows(String status) {
+        synchronized (table) {
+            return table.values().stream()
+                .filter(job -> status.equals(job.getStatus()))
+                .sorted(Comparator.comparing(LlmJob::getCreatedAt))
+                .collect(Collectors.toList());
+        }
+    }
+
+    private LlmJobQueue newQueue(int maxAttempts, long maxPending) {
+        queue = new LlmJobQueue(repository,
+            new WriteQueue(mock(PlatformTransactionManager.class), new MockEnvironment(), 10),
+            6000, 2, 0, maxAttempts, maxPending);
+        ReflectionTestUtils.setField(queue, "backoffMillis", 20L);
+        ReflectionTestUtils.setField(queue, "maxBackoffMillis", 1000L);
+        ReflectionTestUtils.setField(queue, "pollIntervalMillis", 50L);
+        ReflectionTestUtils.setField(queue, "scanSize", 100);
+        return queue;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not reached in time");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void aUsersJobsRunInOrderEvenWhenTheFirstOneFails() throws Exception {
+        newQueue(3, 100);
+        List<String> attempts = Collections.synchronizedList(new ArrayList<>());
+        queue.register("extract", (job, lastAttempt) -> {
+            attempts.add(job.getPayload());
+            if (job.getPayload().equals("a1") && job.getAttempts() == 0) {
+                throw new IllegalStateException("Gemini unavailable");
+            }
+        });
+        queue.enqueue("extract", alice, "a1");
+        Thread.sleep(5); // distinct creation times
+        queue.enqueue("extract", alice, "a2");
+        queue.enqueue("extract", bob, "b1");
+
+        queue.start();
+
+        awaitTrue(() -> queue.getCompletedCount() == 3);
+        List<String> aliceAttempts = attempts.stream().filter(p -> p.startsWith("a")).collect(Collectors.toList());
+        assertEquals(List.of("a1", "a1", "a2"), aliceAttempts);
+        assertEquals(1, queue.getRetryCount());
+        assertEquals(0, queue.getPendingCount());
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    void exhaustedJobsAreKeptAsFailed() throws Exception {
+        newQueue(3, 100);
+        List<Boolean> lastAttemptFlags = Collections.synchronizedList(new ArrayList<>());
+        queue.register("extract", (job, lastAttempt) -> {
+            lastAttemptFlags.add(lastAttempt);
+            throw new IllegalStateException("Gemini unavailable");
+        });
+        queue.enqueue("extract", alice, "a1");
+
+        queue.start();
+
+        awaitTrue(() -> queue.getDeadLetteredCount() == 1);
+        assertEquals(List.of(false, false, true), lastAttemptFlags);
+        LlmJob failed = table.values().iterator().next();
+        assertEquals(LlmJob.FAILED, failed.getStatus());
+        assertEquals(3, failed.getAttempts());
+        assertEquals("Gemini unavailable", failed.getLastError());
+    }
+
+    @Test
+    void jobsLeftByAnEarlierRunAreDelivered() throws Exception {
+        LlmJob leftover = new LlmJob("extract", alice, "from last run");
+        leftover.setId(UUID.randomUUID());
+        table.put(leftover.getId(), leftover);
+        newQueue(3, 100);
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        queue.register("extract", (job, lastAttempt) -> handled.add(job.getPayload()));
+
+        queue.start();
+
+        awaitTrue(() -> queue.getCompletedCount() == 1);
+        assertEquals(List.of("from last run"), handled);
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test
+    void fullQueueRejectsNewJobs() {
+        newQueue(3, 1);
+
+        assertTrue(queue.enqueue("extract", alice, "a1"));
+        assertFalse(queue.enqueue("extract", alice, "a2"));
+
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(1, table.size());
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.demo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic users, memories and chat prompts for load tests, all drawn from
+ * {@link TestPromptDatabase} with a fixed seed so two runs send the same traffic.
+ */
+final class LoadTestData {
+
+    /** Memory prompts by the category they are stored under. */
+    private static final String[][] MEMORIES = {
+        TestPromptDatabase.PERSONAL_INFO_PROMPTS,
+        TestPromptDatabase.PREFERENCES_PROMPTS,
+        TestPromptDatabase.GOALS_PROMPTS,
+        TestPromptDatabase.RELATIONSHIP_PROMPTS,
+        TestPromptDatabase.COMPLEX_CONTEXT_PROMPTS
+    };
+    private static final String[] CATEGORIES = {"Personal", "Preferences", "Goals", "Relationships", "Routine"};
+
+    private final Random random;
+
+    LoadTestData(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Creates {@code count} users with {@code memoriesPerUser} memories each and a token
+     * for each of them.
+     */
+    List<LoadUser> createUsers(UserRepository userRepository, MemoryService memoryService, JwtUtil jwtUtil,
+                               int count, int memoriesPerUser) {
+        List<LoadUser> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.setEmail("load-" + i + "-" + Long.toHexString(random.nextLong()) + "@example.com");
+            user.setFullName("Load User " + i);
+            user.setPassword("not-used");
+            user = userRepository.save(user);
+
+            for (int m = 0; m < memoriesPerUser; m++) {
+                int category = random.nextInt(MEMORIES.length);
+                String[] prompts = MEMORIES[category];
+                memoryService.storeMemory(user.getId(), CATEGORIES[category], prompts[random.nextInt(prompts.length)]);
+            }
+
+            String token = jwtUtil.generateToken(org.springframework.security.core.userdetails.User
+                .withUsername(user.getEmail())
+                .password(user.getPassword())
+                .authorities("USER")
+                .build());
+            users.add(new LoadUser(user, token));
+        }
+        return users;
+    }
+
+    /**
+     * Every event, memory and real-world prompt in a shuffled order, the mix a chat sees.
+     * Edge cases are left out so the error rate counts failures of the service, not replies
+     * to deliberately invalid input such as an empty prompt.
+     */
+    List<String> prompts() {
+        List<String> prompts = new ArrayList<>(TestPromptDatabase.getAllEventPrompts());
+        prompts.addAll(TestPromptDatabase.getAllMemoryPrompts());
+        for (String[] pair : TestPromptDatabase.SEQUENTIAL_TEST_PAIRS) {
+            prompts.addAll(Arrays.asList(pair));
+        }
+        Collections.shuffle(prompts, random);
+        return prompts;
+    }
+
+    static final class LoadUser {
+        final User user;
+        final String token;
+
+        LoadUser(User user, String token) {
+            this.user = user;
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.demo;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Chat requests per second when only the logging of {@code /api/generate} is measured, with the
+ * old output (every step and the full model response printed to an autoflushing stream, like
+ * System.out) and with SLF4J at the default levels, written directly and through the
+ * {@code AsyncAppender} that logback-spring.xml sets up.
+ *
+ * Opt-in: {@code mvn test -Dtest=LoggingThroughputBenchmarkTest -Dbenchmark=true}
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class LoggingThroughputBenchmarkTest {
+
+    private static final int THREADS = 8;
+    private static final int REQUESTS = 100_000;
+    private static final String USER_INPUT = "I have a dentist appointment next Tuesday at 3pm and dinner with Sam after";
+    private static final String ANALYSIS_RESPONSE = ("The user mentions a dentist appointment with a specific date. "
+        + "This is a scheduling statement rather than a question, so a plan is not needed. ").repeat(30)
+        + "\nFinal decision: no";
+
+    @TempDir
+    Path logDir;
+
+    @Test
+    void chatRequestLogging() throws Exception {
+        System.out.println("mode             req/s    p50 us   p99 us  lines written");
+        for (int round = 0; round < 3; round++) { // the first rounds warm up the JIT
+            boolean print = round == 2;
+            report(print, "println", run(this::printlnRequest, printStream("println.log")), "println.log");
+            report(print, "slf4j sync", run(this::slf4jRequest, context("sync.log", false)), "sync.log");
+            report(print, "slf4j async", run(this::slf4jRequest, context("async.log", true)), "async.log");
+        }
+    }
+
+    private void printlnRequest(Object sink, UUID userId) {
+        PrintStream out = (PrintStream) sink;
+        out.println("📊 Session Context: SessionContextResult{chatCount=3, shouldSendContext=false, sessionId=session_" + userId + "}");
+        out.println("Routing input: " + USER_INPUT);
+        out.println("Routing decision: RoutingDecision{destination=CALENDAR, reasoning=temporal context, confidence=0.85}");
+        out.println("Creating events using LLM extraction from input: " + USER_INPUT);
+        out.println("🤖 AI Response for input '" + USER_INPUT + "': [{\"title\":\"Dentist appointment\",\"daysFromToday\":6}]");
+        out.println("📅 Created " + 1 + " calendar events directly");
+        out.println("Memory extraction: queued");
+        out.println("Calendar analysis result: CalendarAnalysisResult{hasEvents=true, events=1}");
+        out.println("Plan analysis result: PlanAnalysisResult{shouldCreatePlan=false}");
+        out.println("Full Analysis Response:\n" + ANALYSIS_RESPONSE);
+        out.println("Parsed Decision: " + "no");
+    }
+
+    private void slf4jRequest(Object sink, UUID userId) {
+        Logger logger = ((LoggerContext) sink).getLogger("com.example.demo.LLMController");
+        PayloadLog payloadLog = new PayloadLog(((LoggerContext) sink).getLogger("aipa.payload.llm"), 100, 2000);
+        logger.debug("📊 Session Context: {}", userId);
+        payloadLog.log("Routing input", USER_INPUT);
+        logger.debug("Routing decision: {}", "CALENDAR");
+        payloadLog.log("Creating events using LLM extraction from input", USER_INPUT);
+        payloadLog.log("🤖 AI Response", "[{\"title\":\"Dentist appointment\",\"daysFromToday\":6}]");
+        logger.info("📅 Created {} calendar events directly", 1);
+        logger.debug("Memory extraction: {}", "queued");
+        logger.debug("Calendar analysis result: {}", "hasEvents=true");
+        logger.debug("Plan analysis result: {}", "shouldCreatePlan=false");
+        payloadLog.log("Full Analysis Response", ANALYSIS_RESPONSE);
+        logger.debug("Parsed Decision: {}", "no");
+        logger.info("Memory stored - Category: {}", "Health");
+    }
+
+    private Result run(BiConsumer<Object, UUID> request, Object sink) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>(REQUESTS));
+        long started = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                UUID userId = UUID.randomUUID();
+                for (int i = 0; i < REQUESTS / THREADS; i++) {
+                    long requestStarted = System.nanoTime();
+                    request.accept(sink, userId);
+                    latencies.add(System.nanoTime() - requestStarted);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - started;
+        pool.shutdown();
+        if (sink instanceof PrintStream) {
+            ((PrintStream) sink).close();
+        } else {
+            ((LoggerContext) sink).stop(); // flushes whatever the async appender still holds
+        }
+        return new Result(REQUESTS * 1_000_000_000.0 / elapsed, latencies);
+    }
+
+    private PrintStream printStream(String name) throws Exception {
+        return new PrintStream(new FileOutputStream(logDir.resolve(name).toFile()), true);
+    }
+
+    private LoggerContext context(String name, boolean async) {
+        LoggerContext context = new LoggerContext();
+        context.setMDCAdapter(new LogbackMDCAdapter()); // normally installed by the SLF4J provider
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p --- [%t] %-40.40logger{39} : %m%n");
+        encoder.start();
+        FileAppender<ILoggingEvent> file = new FileAppender<>();
+        file.setContext(context);
+        file.setFile(logDir.resolve(name).toString());
+        file.setAppend(false);
+        file.setEncoder(encoder);
+        file.start();
+
+        Appender<ILoggingEvent> appender = file;
+        if (async) {
+            AsyncAppender asyncAppender = new AsyncAppender();
+            asyncAppender.setContext(context);
+            asyncAppender.setQueueSize(8192);
+            asyncAppender.setNeverBlock(true);
+            asyncAppender.addAppender(file);
+            asyncAppender.start();
+            appender = asyncAppender;
+        }
+        ch.qos.logback.classic.Logger root = context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.INFO);
+        root.addAppender(appender);
+        return context;
+    }
+
+    /** Lines written shows what the async appender dropped rather than block a request. */
+    private void report(boolean print, String mode, Result result, String logFile) throws IOException {
+        if (print) {
+            long lines;
+            try (Stream<String> stream = Files.lines(logDir.resolve(logFile))) {
+                lines = stream.count();
+            }
+            System.out.printf("%-14s %7.0f %9.1f %8.1f  %13d%n", mode, result.requestsPerSecond,
+                percentile(result.latencies, 50) / 1000.0, percentile(result.latencies, 99) / 1000.0, lines);
+        }
+    }
+
+    private static long percentile(List<Long> values, int percentile) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    private static final class Result {
+        final double requestsPerSecond;
+        final List<Long> latencies;
+
+        Result(double requestsPerSecond, List<Long> latencies) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.latencies = latencies;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Login and chat latency while a burst of logins arrives during steady chat traffic, with
+ * BCrypt inline on the request threads (the old behaviour) and on {@link PasswordHashingService}.
+ *
+ * The request pool stands in for the servlet container's worker threads. A chat request is a
+ * little CPU work plus a blocking wait standing in for the Gemini call. In pooled mode a
+ * login only occupies a request thread long enough to hand the hash off, like the async
+ * login endpoint, and rejected logins are counted as 503s.
+ *
+ * Opt-in: {@code mvn test -Dtest=LoginUnderChatLoadBenchmarkTest -Dbenchmark=true}
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class LoginUnderChatLoadBenchmarkTest {
+
+    private static final int REQUEST_THREADS = 16;
+    private static final int CHAT_CLIENTS = 12;
+    private static final int LOGINS = 64;
+    private static final int BCRYPT_STRENGTH = 10;
+    private static final long CHAT_WORK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long CHAT_UPSTREAM_MILLIS = 40;
+
+    @Test
+    void loginBurstDuringChatTraffic() throws Exception {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(BCRYPT_STRENGTH);
+        String hash = encoder.encode("correct horse");
+
+        System.out.println("mode     login p50  login p99  chat p50  chat p99  chat reqs  503s");
+        report("inline", run(hash, null, encoder));
+        PasswordHashingService service = new PasswordHashingService(encoder, BCRYPT_STRENGTH, 0, 64);
+        try {
+            report("pooled", run(hash, service, encoder));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private Result run(String hash, PasswordHashingService service, BCryptPasswordEncoder encoder) throws Exception {
+        ExecutorService requestPool = Executors.newFixedThreadPool(REQUEST_THREADS);
+        List<Long> chatLatencies = Collections.synchronizedList(new ArrayList<>());
+        List<Long> loginLatencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        ExecutorService chatClients = Executors.newFixedThreadPool(CHAT_CLIENTS);
+        for (int i = 0; i < CHAT_CLIENTS; i++) {
+            chatClients.submit(() -> {
+                while (running.get()) {
+                    long started = System.nanoTime();
+                    requestPool.submit(() -> {
+                        chatWork();
+                        return null;
+                    }).get();
+                    chatLatencies.add(System.nanoTime() - started);
+                }
+                return null;
+            });
+        }
+        Thread.sleep(500); // warm up the chat loop before the burst
+
+        CountDownLatch loginsDone = new CountDownLatch(LOGINS);
+        chatLatencies.clear();
+        for (int i = 0; i < LOGINS; i++) {
+            long started = System.nanoTime();
+            requestPool.submit(() -> {
+                if (service == null) {
+                    encoder.matches("correct horse", hash);
+                    loginLatencies.add(System.nanoTime() - started);
+                    loginsDone.countDown();
+                    return;
+                }
+                try {
+                    service.matchesAsync("correct horse", hash).whenComplete((valid, error) -> {
+                        loginLatencies.add(System.nanoTime() - started);
+                        loginsDone.countDown();
+                    });
+                } catch (PasswordHashingService.SaturatedException e) {
+                    rejected.incrementAndGet();
+                    loginsDone.countDown();
+                }
+            });
+        }
+        loginsDone.await();
+        running.set(false);
+        chatClients.shutdown();
+        chatClients.awaitTermination(10, TimeUnit.SECONDS);
+        requestPool.shutdown();
+
+        return new Result(new ArrayList<>(loginLatencies), new ArrayList<>(chatLatencies), rejected.get());
+    }
+
+    private static void chatWork() throws InterruptedException {
+        long until = System.nanoTime() + CHAT_WORK_NANOS;
+        long spin = 0;
+        while (System.nanoTime() < until) {
+            spin++;
+        }
+        if (spin == -1) {
+            throw new IllegalStateException();
+        }
+        Thread.sleep(CHAT_UPSTREAM_MILLIS);
+    }
+
+    private static void report(String mode, Result result) {
+        System.out.printf("%-8s %8.1fms %8.1fms %7.1fms %7.1fms %10d %5d%n", mode,
+            percentile(result.logins, 50), percentile(result.logins, 99),
+            percentile(result.chats, 50), percentile(result.chats, 99),
+            result.chats.size(), result.rejected);
+    }
+
+    private static double percentile(List<Long> nanos, int percentile) {
+        if (nanos.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(nanos);
+        int index = (int) Math.ceil(percentile / 100.0 * nanos.size()) - 1;
+        return nanos.get(Math.max(0, index)) / 1_000_000.0;
+    }
+
+    private static final class Result {
+        final List<Long> logins;
+        final List<Long> chats;
+        final int rejected;
+
+        Result(List<Long> logins, List<Long> chats, int rejected) {
+            this.logins = logins;
+            this.chats = chats;
+            this.rejected = rejected;
+        }
+    }
+}
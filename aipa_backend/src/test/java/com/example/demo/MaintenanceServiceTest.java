@@ -0,0 +1,77 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MaintenanceServiceTest {
+
+    private SessionMemoryRepository sessionRepository;
+    private MemoryRepository memoryRepository;
+    private MaintenanceService maintenanceService;
+
+    @BeforeEach
+    void setUp() {
+        sessionRepository = mock(SessionMemoryRepository.class);
+        memoryRepository = mock(MemoryRepository.class);
+        maintenanceService = new MaintenanceService(sessionRepository, memoryRepository,
+            mock(JdbcTemplate.class), new WriteQueue(mock(PlatformTransactionManager.class), new MockEnvironment(), 10));
+        ReflectionTestUtils.setField(maintenanceService, "chunkSize", 2);
+        ReflectionTestUtils.setField(maintenanceService, "timeBudgetMillis", 60_000L);
+        ReflectionTestUtils.setField(maintenanceService, "memoryRetentionDays", 30);
+    }
+
+    private List<UUID> ids(int count) {
+        return Collections.nCopies(count, UUID.randomUUID());
+    }
+
+    @Test
+    void purgesInChunksUntilAShortChunk() {
+        when(memoryRepository.findInactiveMemoryIds(any(), any(Pageable.class)))
+            .thenReturn(ids(2))
+            .thenReturn(ids(2))
+            .thenReturn(ids(1));
+        when(memoryRepository.deleteByIds(anyCollection()))
+            .thenAnswer(invocation -> ((java.util.Collection<?>) invocation.getArgument(0)).size());
+
+        assertEquals(5, maintenanceService.purgeInactiveMemories());
+
+        MaintenanceService.JobStats stats = maintenanceService.getJobStats().get(MaintenanceService.PURGE_MEMORIES);
+        assertEquals(3, stats.getLastChunks());
+        assertEquals(5, stats.getTotalRows());
+        assertFalse(stats.isLastBudgetExhausted());
+    }
+
+    @Test
+    void stopsWhenTheTimeBudgetIsUsed() {
+        ReflectionTestUtils.setField(maintenanceService, "timeBudgetMillis", 0L);
+        when(sessionRepository.findIdleActiveSessionIds(any(), any(Pageable.class))).thenReturn(ids(2));
+        when(sessionRepository.deactivateByIds(anyCollection())).thenReturn(2);
+
+        assertEquals(2, maintenanceService.expireIdleSessions());
+        assertTrue(maintenanceService.getJobStats().get(MaintenanceService.EXPIRE_SESSIONS).isLastBudgetExhausted());
+    }
+
+    @Test
+    void failuresAreCountedNotThrown() {
+        when(sessionRepository.findInactiveSessionIds(any(), any(Pageable.class)))
+            .thenThrow(new RuntimeException("database is locked"));
+
+        assertEquals(0, maintenanceService.purgeInactiveSessions());
+
+        MaintenanceService.JobStats stats = maintenanceService.getJobStats().get(MaintenanceService.PURGE_SESSIONS);
+        assertEquals(1, stats.getFailures());
+        assertEquals("database is locked", stats.getLastError());
+    }
+}
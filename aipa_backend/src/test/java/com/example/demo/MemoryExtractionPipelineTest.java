@@ -0,0 +1,85 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MemoryExtractionPipelineTest {
+
+    private final UUID userId = UUID.randomUUID();
+    private final MemoryAnalysisService.MemoryAnalysisResult storable =
+        new MemoryAnalysisService.MemoryAnalysisResult("Preferences", "None", "Likes tea", "High", "Preference");
+    private MemoryService memoryService;
+    private LlmJobQueue jobQueue;
+    private MemoryExtractionPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        memoryService = mock(MemoryService.class);
+        jobQueue = mock(LlmJobQueue.class);
+        pipeline = new MemoryExtractionPipeline(memoryService, jobQueue);
+    }
+
+    @Test
+    void submitOnlyQueuesTheInput() {
+        when(jobQueue.enqueue(MemoryExtractionPipeline.JOB_TYPE, userId, "I like tea")).thenReturn(true);
+
+        assertTrue(pipeline.submit(userId, "I like tea"));
+
+        verify(jobQueue).register(MemoryExtractionPipeline.JOB_TYPE, pipeline);
+        verifyNoInteractions(memoryService);
+        assertEquals(1, pipeline.getSubmittedCount());
+    }
+
+    @Test
+    void fullQueueIsCountedAsDropped() {
+        when(jobQueue.enqueue(anyString(), any(), anyString())).thenReturn(false);
+
+        assertFalse(pipeline.submit(userId, "I like tea"));
+
+        assertEquals(1, pipeline.getDroppedCount());
+        assertEquals(0, pipeline.getSubmittedCount());
+    }
+
+    @Test
+    void patternFallbackIsOnlyAllowedOnTheLastAttempt() {
+        when(memoryService.extractAndStoreMemory(any(), anyString(), anyBoolean())).thenReturn(storable);
+        LlmJob job = new LlmJob(MemoryExtractionPipeline.JOB_TYPE, userId, "I like tea");
+
+        pipeline.handle(job, false);
+        pipeline.handle(job, true);
+
+        verify(memoryService).extractAndStoreMemory(userId, "I like tea", false);
+        verify(memoryService).extractAndStoreMemory(userId, "I like tea", true);
+        assertEquals(2, pipeline.getStoredCount());
+    }
+
+    @Test
+    void failuresPropagateSoTheJobIsRetried() {
+        when(memoryService.extractAndStoreMemory(any(), anyString(), anyBoolean()))
+            .thenThrow(new IllegalStateException("Gemini unavailable"));
+        LlmJob job = new LlmJob(MemoryExtractionPipeline.JOB_TYPE, userId, "I like tea");
+
+        assertThrows(IllegalStateException.class, () -> pipeline.handle(job, false));
+
+        assertEquals(1, pipeline.getFailedAttemptCount());
+        assertEquals(0, pipeline.getCompletedCount());
+    }
+
+    @Test
+    void lagIsMeasuredFromSubmission() {
+        when(memoryService.extractAndStoreMemory(any(), anyString(), anyBoolean())).thenReturn(storable);
+        LlmJob job = new LlmJob(MemoryExtractionPipeline.JOB_TYPE, userId, "I like tea");
+        job.setCreatedAt(LocalDateTime.now().minusSeconds(2));
+
+        pipeline.handle(job, false);
+
+        assertTrue(pipeline.getLastLagMillis() >= 2000);
+        assertEquals(pipeline.getLastLagMillis(), pipeline.getMaxLagMillis());
+    }
+}
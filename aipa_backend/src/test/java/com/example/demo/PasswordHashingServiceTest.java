@@ -0,0 +1,69 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class PasswordHashingServiceTest {
+
+    private PasswordHashingService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void hashesAndVerifiesOnThePool() {
+        service = new PasswordHashingService(new BCryptPasswordEncoder(4), 4, 1, 4);
+
+        String hash = service.encode("secret");
+
+        assertTrue(service.matches("secret", hash));
+        assertFalse(service.matches("wrong", hash));
+        assertFalse(service.matches("secret", null));
+    }
+
+    @Test
+    void saturatedPoolRejectsWithRetryAfter() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder slow = mock(PasswordEncoder.class);
+        when(slow.encode(anyString())).thenAnswer(invocation -> {
+            release.await();
+            return "hash";
+        });
+        service = new PasswordHashingService(slow, 10, 1, 1);
+        ReflectionTestUtils.setField(service, "retryAfterSeconds", 3);
+
+        CompletableFuture<String> running = service.encodeAsync("a");
+        CompletableFuture<String> queued = service.encodeAsync("b");
+        PasswordHashingService.SaturatedException rejected =
+            assertThrows(PasswordHashingService.SaturatedException.class, () -> service.encodeAsync("c"));
+
+        assertEquals(3, rejected.getRetryAfterSeconds());
+        assertEquals(1, service.getRejectedCount());
+        release.countDown();
+        assertEquals("hash", running.join());
+        assertEquals("hash", queued.join());
+    }
+
+    @Test
+    void hashesWithAnotherCostNeedRehash() {
+        service = new PasswordHashingService(new BCryptPasswordEncoder(5), 5, 1, 4);
+
+        assertFalse(service.needsRehash(service.encode("secret")));
+        assertTrue(service.needsRehash(new BCryptPasswordEncoder(4).encode("secret")));
+        assertTrue(service.needsRehash(new BCryptPasswordEncoder(6).encode("secret")));
+        assertFalse(service.needsRehash("not-bcrypt"));
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.demo;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadLogTest {
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger("aipa.payload.test");
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    @BeforeEach
+    void setUp() {
+        appender.start();
+        logger.addAppender(appender);
+        logger.setAdditive(false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(appender);
+        logger.setAdditive(true);
+        logger.setLevel(null);
+    }
+
+    @Test
+    void payloadsAreNotTouchedWhileTheCategoryIsOff() {
+        logger.setLevel(Level.INFO);
+        CountingText payload = new CountingText("Full Analysis Response: yes");
+
+        new PayloadLog(logger, 1, 100).log("Full Analysis Response", payload);
+
+        assertTrue(appender.list.isEmpty());
+        assertEquals(0, payload.reads);
+    }
+
+    @Test
+    void largePayloadsAreTruncated() {
+        logger.setLevel(Level.DEBUG);
+
+        new PayloadLog(logger, 1, 10).log("AI Response", "x".repeat(25));
+
+        assertEquals(1, appender.list.size());
+        assertEquals("AI Response (25 chars): xxxxxxxxxx... [15 more chars]",
+            appender.list.get(0).getFormattedMessage());
+    }
+
+    @Test
+    void onlySampledCallsAreLogged() {
+        logger.setLevel(Level.DEBUG);
+        PayloadLog payloadLog = new PayloadLog(logger, 50, 100);
+
+        for (int i = 0; i < 5000; i++) {
+            payloadLog.log("Routing input", "I have a dentist appointment tomorrow");
+        }
+
+        assertTrue(appender.list.size() > 40 && appender.list.size() < 200,
+            "expected about 100 sampled events, got " + appender.list.size());
+    }
+
+    /** Records whether the logger ever read the payload. */
+    private static final class CountingText implements CharSequence {
+        private final String text;
+        private int reads;
+
+        CountingText(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int length() {
+            reads++;
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            reads++;
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            reads++;
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            reads++;
+            return text;
+        }
+    }
+}
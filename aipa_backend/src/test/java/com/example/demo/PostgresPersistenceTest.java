@@ -0,0 +1,110 @@
+package com.example.demo;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the postgres profile against an embedded PostgreSQL server: migrations apply from empty,
+ * Hibernate validates the entities against them, and the repositories work on native UUID columns.
+ *
+ * Opt-in with {@code -Dpostgres.embedded=true}, since it unpacks a PostgreSQL binary and
+ * PostgreSQL refuses to start as root.
+ */
+@SpringBootTest
+@ActiveProfiles("postgres")
+@EnabledIfSystemProperty(named = "postgres.embedded", matches = "true")
+class PostgresPersistenceTest {
+
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MemoryRepository memoryRepository;
+
+    @Autowired
+    private SessionMemoryRepository sessionMemoryRepository;
+
+    @Autowired
+    private CalendarEventRepository calendarEventRepository;
+
+    @Autowired
+    private LlmJobRepository llmJobRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void postgresProperties(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.start();
+        registry.add("app.persistence.postgres.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("app.persistence.postgres.username", () -> "postgres");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @Test
+    void migrationsCreateNativeUuidKeys() {
+        List<String> idTypes = jdbcTemplate.queryForList(
+            "SELECT data_type FROM information_schema.columns WHERE table_schema = current_schema() "
+                + "AND column_name IN ('id', 'user_id') "
+                + "AND table_name IN ('users', 'user_memories', 'session_memories', 'calendar_events', 'llm_jobs')",
+            String.class);
+
+        assertEquals(9, idTypes.size());
+        assertTrue(idTypes.stream().allMatch("uuid"::equals), idTypes.toString());
+        assertEquals(0, jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM flyway_schema_history WHERE NOT success", Integer.class));
+        assertEquals(1, jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM flyway_schema_history WHERE version = '3.1'", Integer.class));
+    }
+
+    @Test
+    void repositoriesRoundTripOnPostgres() {
+        User user = userRepository.save(new User("pg-" + System.nanoTime() + "@example.com", "hash"));
+
+        Memory memory = new Memory();
+        memory.setUser(user);
+        memory.setCategory("preferences");
+        memory.setEncryptedContent("ciphertext");
+        memoryRepository.save(memory);
+
+        sessionMemoryRepository.save(new SessionMemory(user, "session-1"));
+
+        CalendarEvent event = new CalendarEvent("Standup", LocalDate.now(), user);
+        event.setStartTime(LocalTime.of(9, 30));
+        event.setDurationMinutes(15);
+        calendarEventRepository.save(event);
+
+        LlmJob job = new LlmJob("round-trip", user.getId(), "payload");
+        job.setNextAttemptAt(LocalDateTime.now().plusDays(1)); // keep the dispatcher away from it
+        llmJobRepository.save(job);
+
+        assertEquals(user.getId(), userRepository.findByEmail(user.getEmail()).getId());
+        assertEquals(1, memoryRepository.findByUserIdAndIsActiveTrue(user.getId()).size());
+        assertTrue(sessionMemoryRepository.findActiveSessionByUserAndSessionId(user.getId(), "session-1").isPresent());
+        assertEquals(LocalTime.of(9, 30), calendarEventRepository.findAllForUser(user.getId()).get(0).getStartTime());
+        assertEquals("payload", llmJobRepository.findById(job.getId()).orElseThrow().getPayload());
+    }
+}
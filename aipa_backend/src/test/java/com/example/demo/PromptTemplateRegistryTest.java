@@ -0,0 +1,95 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptTemplateRegistryTest {
+
+    private static final String DATE_MARKER = "[DAY_OF_WEEK] the [DAY] of [MONTH] [YEAR]";
+
+    @TempDir
+    Path dir;
+
+    private PromptTemplateRegistry registry;
+
+    private PromptTemplateRegistry registry(boolean watch, String... preload) throws IOException {
+        registry = new PromptTemplateRegistry(dir.toString(), List.of(preload), watch, 20);
+        registry.start();
+        return registry;
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (registry != null) {
+            registry.stop();
+        }
+    }
+
+    @Test
+    void renderingMatchesReplacingThePlaceholder() throws IOException {
+        String text = "You are a planner. Today is " + DATE_MARKER + ".\nPlan: [TITLE]\n"
+            + "User Input & Today is: " + DATE_MARKER;
+        Files.writeString(dir.resolve("promptmst.txt"), text);
+        PromptTemplateRegistry registry = registry(false, "promptmst.txt");
+
+        String date = "Monday the 19 of October 2026";
+        PromptTemplateRegistry.Template template = registry.get("promptmst.txt");
+
+        assertEquals(text.replace(DATE_MARKER, date), template.render(Map.of(PromptTemplateRegistry.DATE_SLOT, date)));
+        assertEquals("prefix " + text.replace(DATE_MARKER, date),
+            template.appendTo(new StringBuilder("prefix "), Map.of(PromptTemplateRegistry.DATE_SLOT, date)).toString());
+        assertTrue(template.getVersion().startsWith("promptmst.txt@v1:"));
+    }
+
+    @Test
+    void changedFilesAreReloadedWithANewVersion() throws Exception {
+        Path file = dir.resolve("promptmst.txt");
+        Files.writeString(file, "first " + DATE_MARKER);
+        PromptTemplateRegistry registry = registry(true, "promptmst.txt");
+        PromptTemplateRegistry.Template first = registry.get("promptmst.txt");
+
+        Files.writeString(file, "second " + DATE_MARKER);
+        PromptTemplateRegistry.Template second = awaitChange(registry, "promptmst.txt", first);
+
+        assertEquals("second today", second.render(Map.of(PromptTemplateRegistry.DATE_SLOT, "today")));
+        assertTrue(second.getVersion().startsWith("promptmst.txt@v2:"));
+        assertEquals("first today", first.render(Map.of(PromptTemplateRegistry.DATE_SLOT, "today")));
+        assertEquals(1, registry.getReloadCount());
+    }
+
+    @Test
+    void missingTemplateFailsUntilItIsCreated() throws Exception {
+        PromptTemplateRegistry registry = registry(true, "enhanced_ai_calendar_promptmst.txt");
+        assertThrows(NoSuchFileException.class, () -> registry.get("enhanced_ai_calendar_promptmst.txt"));
+        assertEquals("missing", registry.versions().get("enhanced_ai_calendar_promptmst.txt"));
+
+        Files.writeString(dir.resolve("enhanced_ai_calendar_promptmst.txt"), "calendar prompt");
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (registry.versions().get("enhanced_ai_calendar_promptmst.txt").equals("missing")
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertEquals("calendar prompt", registry.get("enhanced_ai_calendar_promptmst.txt").render(Map.of()));
+    }
+
+    private static PromptTemplateRegistry.Template awaitChange(PromptTemplateRegistry registry, String name,
+                                                               PromptTemplateRegistry.Template previous) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        PromptTemplateRegistry.Template current = registry.get(name);
+        while (current == previous && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            current = registry.get(name);
+        }
+        return current;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.demo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private ResponseJournal journal;
+
+    private ResponseJournal journal(long maxFileBytes, int maxFiles, int latestEntries) {
+        journal = new ResponseJournal(dir.toString(), 100, maxFileBytes, maxFiles, 256, 1000, latestEntries);
+        return journal;
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (journal != null) {
+            journal.stop();
+        }
+    }
+
+    @Test
+    void recordsAreAppendedAsJsonLinesKeyedByUserAndSession() throws Exception {
+        ResponseJournal journal = journal(1_000_000, 5, 100);
+        UUID userId = UUID.randomUUID();
+        journal.recordAnalysis(userId, "s1", "learn Java", "yes", "Thinking Space: ... YES");
+        journal.recordResponse(userId, "s1", "Here is a plan", "promptmst.txt@v1:0a1b2c3d");
+
+        journal.start();
+        journal.stop();
+
+        List<String> lines = Files.readAllLines(journal.file(0));
+        assertEquals(2, lines.size());
+        JsonNode analysis = new ObjectMapper().readTree(lines.get(0));
+        assertEquals("analysis", analysis.get("type").asText());
+        assertEquals(userId.toString(), analysis.get("user").asText());
+        assertEquals("s1", analysis.get("session").asText());
+        assertEquals("yes", analysis.get("decision").asText());
+        JsonNode response = new ObjectMapper().readTree(lines.get(1));
+        assertEquals("promptmst.txt@v1:0a1b2c3d", response.get("template").asText());
+        assertEquals("Here is a plan", response.get("response").asText());
+        assertEquals(1, journal.getSyncCount());
+    }
+
+    @Test
+    void fullFilesAreRotatedAndOnlyMaxFilesKept() throws Exception {
+        ResponseJournal journal = journal(300, 3, 100);
+        UUID userId = UUID.randomUUID();
+        for (int i = 0; i < 20; i++) {
+            journal.recordResponse(userId, "s1", "reply " + i + " " + "x".repeat(100), null);
+        }
+
+        journal.start();
+        journal.stop();
+
+        assertTrue(journal.getRotationCount() > 2);
+        assertTrue(Files.exists(journal.file(1)));
+        assertTrue(Files.exists(journal.file(2)));
+        assertFalse(Files.exists(journal.file(3)));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(Files.size(journal.file(i)) <= 300);
+        }
+        List<String> newest = Files.readAllLines(journal.file(0));
+        assertTrue(newest.get(newest.size() - 1).contains("reply 19 "));
+    }
+
+    @Test
+    void latestResponseIsPerUserAndSession() {
+        ResponseJournal journal = journal(1_000_000, 5, 100);
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        journal.recordResponse(alice, "a1", "first", null);
+        journal.recordResponse(alice, "a2", "second", null);
+        journal.recordResponse(bob, "b1", "bob's", null);
+
+        assertEquals("first", journal.getLatest(alice, "a1"));
+        assertEquals("second", journal.getLatest(alice, null));
+        assertEquals("bob's", journal.getLatest(bob, null));
+        assertNull(journal.getLatest(bob, "a1"));
+        assertNull(journal.getLatest(UUID.randomUUID(), null));
+    }
+
+    @Test
+    void latestResponsesAreBounded() {
+        ResponseJournal journal = journal(1_000_000, 5, 2);
+        UUID userId = UUID.randomUUID();
+        journal.recordResponse(userId, "s1", "one", null);
+        journal.recordResponse(userId, "s2", "two", null);
+        journal.recordResponse(userId, "s3", "three", null);
+
+        assertEquals(2, journal.getLatestSize());
+        assertNull(journal.getLatest(userId, "s1"));
+        assertEquals("three", journal.getLatest(userId, null));
+    }
+}
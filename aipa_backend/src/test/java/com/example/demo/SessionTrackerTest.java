@@ -0,0 +1,112 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
+import jakarta.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SessionTrackerTest {
+
+    private SessionMemoryRepository repository;
+    private EntityManager entityManager;
+    private SessionTracker tracker;
+    private final UUID userId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(SessionMemoryRepository.class);
+        entityManager = mock(EntityManager.class);
+        when(repository.findActiveSessionByUserAndSessionId(any(), any())).thenReturn(Optional.empty());
+
+        tracker = new SessionTracker(repository,
+            new WriteQueue(mock(PlatformTransactionManager.class), new MockEnvironment(), 10));
+        ReflectionTestUtils.setField(tracker, "entityManager", entityManager);
+        ReflectionTestUtils.setField(tracker, "idleTimeoutMinutes", 60L);
+        ReflectionTestUtils.setField(tracker, "tickSeconds", 60L);
+        ReflectionTestUtils.setField(tracker, "flushBatchSize", 10);
+    }
+
+    @Test
+    void countsInMemoryAndWritesOnlyOnFlush() {
+        SessionMemory row = new SessionMemory();
+        row.setId(UUID.randomUUID());
+        row.setChatCount(4);
+        when(repository.findActiveSessionByUserAndSessionId(userId, "s1")).thenReturn(Optional.of(row));
+        tracker.initWheel();
+
+        tracker.recordChat(userId, "s1");
+        assertEquals(6, tracker.recordChat(userId, "s1").getChatCount());
+        verify(repository, never()).updateState(any(), any(), any(), any(), any());
+
+        tracker.flush();
+
+        verify(repository, times(1)).findActiveSessionByUserAndSessionId(userId, "s1");
+        verify(repository).updateState(eq(row.getId()), eq(6), any(LocalDateTime.class), isNull(), eq(true));
+        assertEquals(0, tracker.getPendingWriteCount());
+    }
+
+    @Test
+    void idleSessionsExpireOnTheirWheelSlot() {
+        ReflectionTestUtils.setField(tracker, "idleTimeoutMinutes", 0L);
+        tracker.initWheel();
+
+        tracker.recordChat(userId, "s1");
+        tracker.advanceWheel();
+
+        assertEquals(0, tracker.getTrackedSessionCount());
+        assertEquals(1, tracker.getExpiredSessionCount());
+
+        tracker.flush();
+        verify(entityManager).persist(argThat((SessionMemory s) -> !s.getIsActive() && s.getChatCount() == 1));
+
+        // The next message starts a fresh session
+        assertEquals(1, tracker.recordChat(userId, "s1").getChatCount());
+    }
+
+    @Test
+    void activeSessionsAreRescheduledInsteadOfExpired() {
+        tracker.initWheel();
+        tracker.recordChat(userId, "s1");
+
+        for (int i = 0; i < 61; i++) {
+            tracker.advanceWheel();
+        }
+
+        assertEquals(1, tracker.getTrackedSessionCount());
+        assertEquals(0, tracker.getExpiredSessionCount());
+    }
+
+    @Test
+    void concurrentFirstMessagesLoadOutsideTheMapAndCountOnce() throws Exception {
+        tracker.initWheel();
+        CountDownLatch bothLoading = new CountDownLatch(2);
+        when(repository.findActiveSessionByUserAndSessionId(userId, "s1")).thenAnswer(invocation -> {
+            bothLoading.countDown();
+            // Only reachable by both threads when the read does not hold the map's lock
+            assertTrue(bothLoading.await(5, TimeUnit.SECONDS));
+            return Optional.empty();
+        });
+
+        CompletableFuture<SessionTracker.SessionState> first =
+            CompletableFuture.supplyAsync(() -> tracker.recordChat(userId, "s1"));
+        CompletableFuture<SessionTracker.SessionState> second =
+            CompletableFuture.supplyAsync(() -> tracker.recordChat(userId, "s1"));
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, tracker.getTrackedSessionCount());
+        assertEquals(3, tracker.recordChat(userId, "s1").getChatCount());
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.demo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Local stand-in for the parts of the Gemini REST API the backend calls, for tests that have
+ * to run offline: {@code models/*:generateContent} and {@code cachedContents}. Point the
+ * backend at it with {@code gemini.base-url}.
+ *
+ * <p>Prompts are counted at four characters a token. Each call sleeps a delay drawn from
+ * {@code latencyMillis} plus {@code microsPerPromptToken} for every prompt token that was not
+ * served from a cache, so sending less text is measurably faster, and replies report
+ * {@code usageMetadata} the way Gemini does, including {@code cachedContentTokenCount}.
+ * A fraction {@code errorRate} of generate calls fails with 503 after the delay, and every
+ * generate call fails with {@code errorStatus} when it is set.
+ */
+final class StubGeminiServer implements AutoCloseable {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "stub-gemini");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Cached> caches = new ConcurrentHashMap<>();
+    private final AtomicLong cacheIds = new AtomicLong();
+
+    final AtomicLong generateCalls = new AtomicLong();
+    final AtomicLong cacheCreates = new AtomicLong();
+    final AtomicLong promptTokens = new AtomicLong();
+    final AtomicLong cachedTokens = new AtomicLong();
+    final AtomicLong failedCalls = new AtomicLong();
+
+    volatile Function<String, String> responder = prompt -> "Stub reply";
+    volatile LongSupplier latencyMillis = fixed(0);
+    volatile double errorRate;
+    volatile int errorStatus;
+    volatile long microsPerPromptToken;
+    volatile int minCacheTokens;
+    volatile String lastSentText;
+
+    StubGeminiServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/v1beta/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    static LongSupplier fixed(long millis) {
+        return () -> millis;
+    }
+
+    static LongSupplier uniform(long minMillis, long maxMillis) {
+        return () -> ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1);
+    }
+
+    /** Log-normal with the given median and 99th percentile, the long tail LLM latency has. */
+    static LongSupplier logNormal(long medianMillis, long p99Millis) {
+        double sigma = Math.log((double) p99Millis / medianMillis) / 2.326;
+        return () -> Math.round(medianMillis * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    /** {@code fixed:<ms>}, {@code uniform:<min>:<max>} or {@code lognormal:<median>:<p99>}. */
+    static LongSupplier latency(String spec) {
+        String[] parts = spec.split(":");
+        switch (parts[0]) {
+            case "fixed":
+                return fixed(Long.parseLong(parts[1]));
+            case "uniform":
+                return uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            case "lognormal":
+                return logNormal(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            default:
+                throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+        }
+    }
+
+    /** Makes every cache unknown, as if they had all expired. */
+    void expireCaches() {
+        caches.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            if (path.equals("/v1beta/cachedContents")) {
+                createCache(exchange, body);
+            } else if (path.startsWith("/v1beta/models/") && path.endsWith(":generateContent")) {
+                String model = path.substring("/v1beta/models/".length(), path.length() - ":generateContent".length());
+                generate(exchange, model, body);
+            } else {
+                error(exchange, 404, "NOT_FOUND", "No such method: " + path);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void createCache(HttpExchange exchange, JsonNode body) throws IOException {
+        String text = text(body.path("contents"));
+        int tokens = tokens(text);
+        if (tokens < minCacheTokens) {
+            error(exchange, 400, "INVALID_ARGUMENT", "Cached content is too small. total_token_count=" + tokens
+                + ", min_total_token_count=" + minCacheTokens);
+            return;
+        }
+        String name = "cachedContents/stub-" + cacheIds.incrementAndGet();
+        String model = body.path("model").asText().replace("models/", "");
+        long ttlSeconds = Long.parseLong(body.path("ttl").asText("3600s").replace("s", ""));
+        Instant expireTime = Instant.now().plusSeconds(ttlSeconds);
+        caches.put(name, new Cached(model, text, tokens));
+        cacheCreates.incrementAndGet();
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("name", name);
+        response.put("model", "models/" + model);
+        response.put("expireTime", expireTime.toString());
+        response.putObject("usageMetadata").put("totalTokenCount", tokens);
+        send(exchange, 200, response);
+    }
+
+    private void generate(HttpExchange exchange, String model, JsonNode body) throws IOException, InterruptedException {
+        String sent = text(body.path("contents"));
+        String prompt = sent;
+        int cached = 0;
+        if (body.hasNonNull("cachedContent")) {
+            Cached cache = caches.get(body.get("cachedContent").asText());
+            if (cache == null) {
+                error(exchange, 403, "PERMISSION_DENIED", "CachedContent not found (or permission denied)");
+                return;
+            }
+            if (!cache.model.equals(model)) {
+                error(exchange, 400, "INVALID_ARGUMENT", "Model " + model + " does not match cached content model " + cache.model);
+                return;
+            }
+            prompt = cache.text + sent;
+            cached = cache.tokens;
+        }
+        int uncached = tokens(sent);
+        generateCalls.incrementAndGet();
+        promptTokens.addAndGet(cached + uncached);
+        cachedTokens.addAndGet(cached);
+        lastSentText = sent;
+
+        long delayMicros = latencyMillis.getAsLong() * 1000 + microsPerPromptToken * uncached;
+        if (delayMicros > 0) {
+            Thread.sleep(delayMicros / 1000, (int) (delayMicros % 1000) * 1000);
+        }
+        if (errorStatus != 0) {
+            failedCalls.incrementAndGet();
+            error(exchange, errorStatus, errorStatus == 429 ? "RESOURCE_EXHAUSTED" : "INVALID_ARGUMENT",
+                "Request rejected by the stub.");
+            return;
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            failedCalls.incrementAndGet();
+            error(exchange, 503, "UNAVAILABLE", "The model is overloaded. Please try again later.");
+            return;
+        }
+
+        String reply = responder.apply(prompt);
+        ObjectNode response = objectMapper.createObjectNode();
+        response.putArray("candidates").addObject()
+            .putObject("content").putArray("parts").addObject().put("text", reply);
+        ObjectNode usage = response.putObject("usageMetadata");
+        usage.put("promptTokenCount", cached + uncached);
+        usage.put("candidatesTokenCount", tokens(reply));
+        if (cached > 0) {
+            usage.put("cachedContentTokenCount", cached);
+        }
+        send(exchange, 200, response);
+    }
+
+    private static String text(JsonNode contents) {
+        StringBuilder text = new StringBuilder();
+        for (JsonNode content : contents) {
+            for (JsonNode part : content.path("parts")) {
+                text.append(part.path("text").asText());
+            }
+        }
+        return text.toString();
+    }
+
+    private static int tokens(String text) {
+        return (text.length() + 3) / 4;
+    }
+
+    private void error(HttpExchange exchange, int code, String status, String message) throws IOException {
+        ObjectNode response = objectMapper.createObjectNode();
+        ObjectNode error = response.putObject("error");
+        error.put("code", code);
+        error.put("message", message);
+        error.put("status", status);
+        send(exchange, code, response);
+    }
+
+    private void send(HttpExchange exchange, int code, JsonNode response) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(response);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static final class Cached {
+        final String model;
+        final String text;
+        final int tokens;
+
+        Cached(String model, String text, int tokens) {
+            this.model = model;
+            this.text = text;
+            this.tokens = tokens;
+        }
+    }
+}
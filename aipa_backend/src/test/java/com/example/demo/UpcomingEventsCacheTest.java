@@ -0,0 +1,133 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UpcomingEventsCacheTest {
+
+    private CalendarEventRepository repository;
+    private UpcomingEventsCache cache;
+    private final UUID userId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CalendarEventRepository.class);
+        cache = new UpcomingEventsCache(repository);
+        ReflectionTestUtils.setField(cache, "maxEventsPerUser", 3);
+        ReflectionTestUtils.setField(cache, "maxUsers", 100);
+        ReflectionTestUtils.setField(cache, "idleMinutes", 30L);
+    }
+
+    private CalendarEvent event(String title, int daysFromToday) {
+        CalendarEvent event = new CalendarEvent(title, LocalDate.now().plusDays(daysFromToday));
+        event.setId(UUID.randomUUID());
+        return event;
+    }
+
+    private List<String> titles() {
+        List<String> titles = new ArrayList<>();
+        cache.getRendered(userId, 10, (events, total, today) -> {
+            events.forEach(e -> titles.add(e.getTitle()));
+            return "";
+        });
+        return titles;
+    }
+
+    @Test
+    void writesAreAppliedWithoutReloading() {
+        CalendarEvent dentist = event("Dentist", 3);
+        when(repository.findUpcoming(eq(userId), any(), any(Pageable.class)))
+            .thenReturn(new ArrayList<>(List.of(dentist)));
+
+        assertEquals(List.of("Dentist"), titles());
+
+        cache.onEventSaved(userId, event("Wedding", 1));
+        dentist.setStart(LocalDate.now().plusDays(5));
+        cache.onEventSaved(userId, dentist);
+
+        assertEquals(List.of("Wedding", "Dentist"), titles());
+
+        cache.onEventDeleted(userId, dentist.getId());
+
+        assertEquals(List.of("Wedding"), titles());
+        verify(repository, times(1)).findUpcoming(eq(userId), any(), any(Pageable.class));
+    }
+
+    @Test
+    void renderedSnippetIsReusedUntilSomethingChanges() {
+        when(repository.findUpcoming(eq(userId), any(), any(Pageable.class))).thenReturn(new ArrayList<>());
+        int[] renders = {0};
+        UpcomingEventsCache.Renderer renderer = (events, total, today) -> "render " + (++renders[0]);
+
+        assertEquals("render 1", cache.getRendered(userId, 10, renderer));
+        assertEquals("render 1", cache.getRendered(userId, 10, renderer));
+
+        cache.onEventSaved(userId, event("Lunch", 0));
+
+        assertEquals("render 2", cache.getRendered(userId, 10, renderer));
+    }
+
+    @Test
+    void truncatedEntryKeepsTotalCountAndReloadsOnUnknownEvent() {
+        List<CalendarEvent> loaded = new ArrayList<>(List.of(
+            event("A", 1), event("B", 2), event("C", 3), event("D", 4)));
+        when(repository.findUpcoming(eq(userId), any(), any(Pageable.class))).thenReturn(loaded);
+        when(repository.countUpcoming(eq(userId), any())).thenReturn(7L);
+
+        assertEquals(7L, cache.countUpcoming(userId));
+        assertEquals(List.of("A", "B", "C"), titles());
+
+        // An id the cache has never seen may be one of the untracked events, so the entry is dropped
+        cache.onEventDeleted(userId, UUID.randomUUID());
+        cache.countUpcoming(userId);
+
+        verify(repository, times(2)).findUpcoming(eq(userId), any(), any(Pageable.class));
+    }
+
+    @Test
+    void writeDuringLoadIsNotLost() {
+        CalendarEvent dentist = event("Dentist", 3);
+        when(repository.findUpcoming(eq(userId), any(), any(Pageable.class)))
+            .thenAnswer(invocation -> {
+                // Commits while the first query is still running
+                cache.onEventSaved(userId, event("Wedding", 1));
+                return new ArrayList<>(List.of(dentist));
+            })
+            .thenReturn(new ArrayList<>(List.of(event("Wedding", 1), dentist)));
+
+        assertEquals(List.of("Dentist"), titles());
+        assertEquals(List.of("Wedding", "Dentist"), titles());
+        cache.countUpcoming(userId);
+        verify(repository, times(2)).findUpcoming(eq(userId), any(), any(Pageable.class));
+    }
+
+    @Test
+    void idleAndLeastRecentlyUsedEntriesAreEvicted() {
+        when(repository.findUpcoming(any(), any(), any(Pageable.class))).thenReturn(new ArrayList<>());
+        ReflectionTestUtils.setField(cache, "maxUsers", 2);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+
+        cache.countUpcoming(first);
+        cache.countUpcoming(second);
+        cache.countUpcoming(third);
+
+        assertEquals(2, cache.size());
+
+        ReflectionTestUtils.setField(cache, "idleMinutes", 0L);
+        cache.evictIdle();
+
+        assertEquals(0, cache.size());
+    }
+}
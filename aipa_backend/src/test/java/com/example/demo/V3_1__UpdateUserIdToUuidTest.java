@@ -0,0 +1,101 @@
+package com.example.demo;
+
+import org.flywaydb.core.api.migration.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class V3_1__UpdateUserIdToUuidTest {
+
+    @TempDir
+    Path dir;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite:" + dir.resolve("legacy.db") + "?foreign_keys=on");
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE users (id INTEGER PRIMARY KEY, email VARCHAR(50) NOT NULL UNIQUE, "
+                + "password VARCHAR(120) NOT NULL, full_name VARCHAR(100), profile_image VARCHAR(255), "
+                + "account_created TIMESTAMP NOT NULL, last_login TIMESTAMP, is_active BOOLEAN, "
+                + "email_verified BOOLEAN, verification_token VARCHAR(255), reset_token VARCHAR(255), "
+                + "reset_token_expiry TIMESTAMP, provider VARCHAR(20))");
+            statement.execute("CREATE TABLE user_memories (id VARCHAR(36) PRIMARY KEY, "
+                + "user_id BIGINT NOT NULL REFERENCES users(id), category VARCHAR(255))");
+            statement.execute("CREATE TABLE session_memories (id VARCHAR(36) PRIMARY KEY, "
+                + "user_id BIGINT NOT NULL REFERENCES users(id), session_id VARCHAR(255))");
+            for (int id = 1; id <= 2; id++) {
+                statement.execute("INSERT INTO users (id, email, password, account_created) VALUES "
+                    + "(" + id + ", 'user" + id + "@example.com', 'hash', CURRENT_TIMESTAMP)");
+            }
+            statement.execute("INSERT INTO user_memories VALUES ('m1', 1, 'Personal'), ('m2', 2, 'Goals'), ('m3', 2, 'Work')");
+            statement.execute("INSERT INTO session_memories VALUES ('s1', 1, 'chat')");
+        }
+        connection.commit();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void childRowsFollowTheirUsersToTheNewKeys() throws Exception {
+        Context context = mock(Context.class);
+        when(context.getConnection()).thenReturn(connection);
+
+        new V3_1__UpdateUserIdToUuid().migrate(context);
+        connection.commit();
+
+        Map<String, Integer> memoriesByEmail = new HashMap<>();
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet rows = statement.executeQuery("SELECT u.email, COUNT(m.id) FROM users u "
+                    + "JOIN user_memories m ON m.user_id = u.id GROUP BY u.email")) {
+                while (rows.next()) {
+                    memoriesByEmail.put(rows.getString(1), rows.getInt(2));
+                }
+            }
+            assertEquals(Map.of("user1@example.com", 1, "user2@example.com", 2), memoriesByEmail);
+
+            try (ResultSet rows = statement.executeQuery("SELECT u.email FROM session_memories s "
+                    + "JOIN users u ON s.user_id = u.id")) {
+                assertTrue(rows.next());
+                assertEquals("user1@example.com", rows.getString(1));
+            }
+            try (ResultSet rows = statement.executeQuery("PRAGMA foreign_key_check")) {
+                assertFalse(rows.next(), "no dangling user_id left behind");
+            }
+        }
+    }
+
+    @Test
+    void uuidUsersAreLeftAlone() throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE session_memories");
+            statement.execute("DROP TABLE user_memories");
+            statement.execute("DROP TABLE users");
+            statement.execute("CREATE TABLE users (id UUID PRIMARY KEY, email VARCHAR(50))");
+            statement.execute("INSERT INTO users VALUES ('6f1c1d3e-0000-4000-8000-000000000001', 'kept@example.com')");
+        }
+        Context context = mock(Context.class);
+        when(context.getConnection()).thenReturn(connection);
+
+        new V3_1__UpdateUserIdToUuid().migrate(context);
+
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT id FROM users")) {
+            assertTrue(rows.next());
+            assertEquals("6f1c1d3e-0000-4000-8000-000000000001", rows.getString(1));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.demo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chat throughput with 500 concurrent chats when requests are handled on a pool of platform
+ * threads sized like Tomcat's default ({@code server.tomcat.threads.max=200}) and when each
+ * request gets its own virtual thread, as with {@code spring.threads.virtual.enabled=true}.
+ *
+ * A chat request does what the pipeline does between its blocking points: reads the user's
+ * memories from SQLite through a pool as small as the app's read pool, makes a blocking
+ * Gemini call against {@link StubGeminiServer}, and does a little CPU work on the reply.
+ * The virtual-thread run needs JDK 21 and is reported as skipped on older JDKs.
+ *
+ * Opt-in: {@code mvn test -Dtest=VirtualThreadChatBenchmarkTest -Dbenchmark=true}
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class VirtualThreadChatBenchmarkTest {
+
+    private static final int CONCURRENT_CHATS = 500;
+    private static final int PLATFORM_THREADS = 200;
+    private static final int READ_POOL_SIZE = 4;
+    private static final long GEMINI_LATENCY_MILLIS = 200;
+    private static final long CHAT_WORK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long WARMUP_MILLIS = 2_000;
+    private static final long MEASURE_MILLIS = 10_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void platformVersusVirtualThreads() throws Exception {
+        try (StubGeminiServer stub = new StubGeminiServer(); HikariDataSource db = memories()) {
+            stub.latencyMillis = StubGeminiServer.fixed(GEMINI_LATENCY_MILLIS);
+            ConnectionProvider connections = ConnectionProvider.builder("benchmark")
+                .maxConnections(CONCURRENT_CHATS * 2)
+                .pendingAcquireMaxCount(-1)
+                .build();
+            WebClient gemini = WebClient.builder()
+                .baseUrl(stub.baseUrl())
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                .build();
+
+            System.out.println("threads   chats/s   p50       p99       errors");
+            ExecutorService platform = Executors.newFixedThreadPool(PLATFORM_THREADS);
+            try {
+                report("platform", run(platform, db, gemini));
+            } finally {
+                platform.shutdownNow();
+            }
+
+            if (!JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE)) {
+                System.out.println("virtual   skipped, needs JDK 21 (running " + System.getProperty("java.version") + ")");
+            } else {
+                SimpleAsyncTaskExecutor virtual = new SimpleAsyncTaskExecutor("chat-");
+                virtual.setVirtualThreads(true);
+                report("virtual", run(virtual, db, gemini));
+            }
+            connections.dispose();
+        }
+    }
+
+    private HikariDataSource memories() throws Exception {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:sqlite:" + dir.resolve("benchmark.db"));
+        config.setMaximumPoolSize(READ_POOL_SIZE);
+        HikariDataSource db = new HikariDataSource(config);
+        try (Connection connection = db.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("CREATE TABLE memories (user_id INTEGER, content TEXT)");
+            for (int user = 0; user < CONCURRENT_CHATS; user++) {
+                for (int i = 0; i < 20; i++) {
+                    statement.execute("INSERT INTO memories VALUES (" + user + ", 'Memory " + i + " of user " + user + "')");
+                }
+            }
+            statement.execute("CREATE INDEX memories_user ON memories (user_id)");
+        }
+        return db;
+    }
+
+    private Result run(Executor requestThreads, HikariDataSource db, WebClient gemini) throws Exception {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger errors = new AtomicInteger();
+        AtomicBoolean measuring = new AtomicBoolean();
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        // The clients only wait for replies, so they are cheap threads either way
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENT_CHATS);
+        for (int i = 0; i < CONCURRENT_CHATS; i++) {
+            int user = i;
+            clients.submit(() -> {
+                while (running.get()) {
+                    long started = System.nanoTime();
+                    CompletableFuture<Void> reply = CompletableFuture.runAsync(() -> chat(user, db, gemini), requestThreads);
+                    try {
+                        reply.get();
+                        if (measuring.get()) {
+                            latencies.add(System.nanoTime() - started);
+                        }
+                    } catch (ExecutionException e) {
+                        if (measuring.get()) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            });
+        }
+
+        Thread.sleep(WARMUP_MILLIS);
+        measuring.set(true);
+        Thread.sleep(MEASURE_MILLIS);
+        measuring.set(false);
+        running.set(false);
+        clients.shutdown();
+        clients.awaitTermination(30, TimeUnit.SECONDS);
+
+        return new Result(new ArrayList<>(latencies), errors.get());
+    }
+
+    private static void chat(int user, HikariDataSource db, WebClient gemini) {
+        StringBuilder prompt = new StringBuilder("USER MEMORIES:\n");
+        try (Connection connection = db.getConnection();
+             PreparedStatement query = connection.prepareStatement("SELECT content FROM memories WHERE user_id = ?")) {
+            query.setInt(1, user);
+            try (ResultSet rows = query.executeQuery()) {
+                while (rows.next()) {
+                    prompt.append("- ").append(rows.getString(1)).append('\n');
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+
+        JsonNode response = gemini.post()
+            .uri("/v1beta/models/gemini-2.0-flash:generateContent?key=benchmark")
+            .bodyValue(Map.of("contents", List.of(Map.of("parts", List.of(Map.of("text", prompt.toString()))))))
+            .retrieve()
+            .bodyToMono(JsonNode.class)
+            .block();
+
+        long until = System.nanoTime() + CHAT_WORK_NANOS;
+        long spin = response.path("candidates").size();
+        while (System.nanoTime() < until) {
+            spin++;
+        }
+        if (spin == -1) {
+            throw new IllegalStateException();
+        }
+    }
+
+    private static void report(String mode, Result result) {
+        System.out.printf("%-9s %7.1f %7.1fms %7.1fms %8d%n", mode,
+            result.latencies.size() * 1000.0 / MEASURE_MILLIS,
+            percentile(result.latencies, 50), percentile(result.latencies, 99), result.errors);
+    }
+
+    private static double percentile(List<Long> nanos, int percentile) {
+        if (nanos.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(nanos);
+        int index = (int) Math.ceil(percentile / 100.0 * nanos.size()) - 1;
+        return nanos.get(Math.max(0, index)) / 1_000_000.0;
+    }
+
+    private static final class Result {
+        final List<Long> latencies;
+        final int errors;
+
+        Result(List<Long> latencies, int errors) {
+            this.latencies = latencies;
+            this.errors = errors;
+        }
+    }
+}
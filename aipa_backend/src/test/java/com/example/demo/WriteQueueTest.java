@@ -0,0 +1,73 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class WriteQueueTest {
+
+    private WriteQueue writeQueue;
+
+    private WriteQueue enabledQueue(int capacity) {
+        writeQueue = new WriteQueue(mock(PlatformTransactionManager.class),
+            new MockEnvironment().withProperty("app.persistence.write-queue.enabled", "true"), capacity);
+        ReflectionTestUtils.setField(writeQueue, "groupSize", 64);
+        ReflectionTestUtils.setField(writeQueue, "offerTimeoutMillis", 0L);
+        return writeQueue;
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (writeQueue != null) {
+            writeQueue.stop();
+        }
+    }
+
+    @Test
+    void queuedWritesCommitAsOneGroup() {
+        WriteQueue queue = enabledQueue(10);
+        CompletableFuture<Integer> first = queue.submit(() -> 1);
+        CompletableFuture<Integer> second = queue.submit(() -> 2);
+        CompletableFuture<Integer> third = queue.submit(() -> 3);
+
+        queue.start();
+
+        assertEquals(6, first.join() + second.join() + third.join());
+        assertEquals(1, queue.getCommitCount());
+        assertEquals(3, queue.getMaxGroupSize());
+    }
+
+    @Test
+    void failingTaskDoesNotFailTheRestOfItsGroup() {
+        WriteQueue queue = enabledQueue(10);
+        CompletableFuture<String> ok = queue.submit(() -> "ok");
+        CompletableFuture<String> broken = queue.submit(() -> {
+            throw new IllegalStateException("constraint violation");
+        });
+
+        queue.start();
+
+        assertEquals("ok", ok.join());
+        CompletionException failure = assertThrows(CompletionException.class, broken::join);
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertEquals(1, queue.getGroupRetryCount());
+    }
+
+    @Test
+    void fullQueueRejectsInsteadOfBlocking() {
+        WriteQueue queue = enabledQueue(1);
+        queue.submit(() -> 1);
+
+        CompletionException failure = assertThrows(CompletionException.class, () -> queue.submit(() -> 2).join());
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+        assertEquals(1, queue.getRejectedCount());
+    }
+}